@@ -0,0 +1,132 @@
+/*
+ * @(#)DefaultRowCountCache.java    Created on 2026-10-18
+ * Copyright (c) 2026 Guomi. All rights reserved.
+ */
+package com.guomi.meazza.dao;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.guomi.meazza.util.LruCache;
+
+/**
+ * 基于内存的 {@link RowCountCache} 实现，缓存的总记录数在超过有效期后失效。
+ *
+ * <p>
+ * 每个区域维护一个版本号，{@link #evict(String)} 只是增加版本号，旧版本的缓存在读取时被忽略，并最终被 LRU 淘汰。
+ *
+ * @author akuma
+ */
+public class DefaultRowCountCache implements RowCountCache {
+
+    private static final int DEFAULT_MAX_SIZE = 10000;
+    private static final long DEFAULT_TTL_SECONDS = 60;
+
+    private final LruCache<String, Entry> cache;
+    private final ConcurrentMap<String, AtomicLong> regionVersions = new ConcurrentHashMap<>();
+    private final long ttlMillis;
+
+    /**
+     * 构造方法，最多缓存 10000 个记录数，有效期 60 秒。
+     */
+    public DefaultRowCountCache() {
+        this(DEFAULT_MAX_SIZE, DEFAULT_TTL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 构造方法。
+     *
+     * @param maxSize
+     *            最多缓存多少个记录数
+     * @param ttl
+     *            缓存有效期
+     * @param unit
+     *            有效期的时间单位
+     */
+    public DefaultRowCountCache(int maxSize, long ttl, TimeUnit unit) {
+        this.cache = new LruCache<>(maxSize);
+        this.ttlMillis = unit.toMillis(ttl);
+    }
+
+    @Override
+    public Integer get(String region, String key) {
+        Entry entry = cache.get(getCacheKey(region, key));
+        if (entry == null) {
+            return null;
+        }
+
+        if (entry.version != getRegionVersion(region).get() || entry.expireTime < System.currentTimeMillis()) {
+            return null;
+        }
+        return entry.count;
+    }
+
+    @Override
+    public void put(String region, String key, int count) {
+        put(region, key, count, getVersion(region));
+    }
+
+    @Override
+    public long getVersion(String region) {
+        return getRegionVersion(region).get();
+    }
+
+    @Override
+    public void put(String region, String key, int count, long version) {
+        // 查询期间区域已经失效，记录数可能是修改之前的
+        if (version != getVersion(region)) {
+            return;
+        }
+        cache.put(getCacheKey(region, key), new Entry(count, version, System.currentTimeMillis() + ttlMillis));
+    }
+
+    @Override
+    public void evict(String region) {
+        getRegionVersion(region).incrementAndGet();
+    }
+
+    @Override
+    public void clear() {
+        cache.clear();
+    }
+
+    /**
+     * 获取底层的 LRU 缓存，可以用于查看缓存的命中情况。
+     */
+    public LruCache<String, ?> getCache() {
+        return cache;
+    }
+
+    private AtomicLong getRegionVersion(String region) {
+        AtomicLong version = regionVersions.get(region);
+        if (version == null) {
+            AtomicLong newVersion = new AtomicLong();
+            version = regionVersions.putIfAbsent(region, newVersion);
+            if (version == null) {
+                version = newVersion;
+            }
+        }
+        return version;
+    }
+
+    private static String getCacheKey(String region, String key) {
+        return region + '\u0000' + key;
+    }
+
+    private static class Entry {
+
+        final int count;
+        final long version;
+        final long expireTime;
+
+        Entry(int count, long version, long expireTime) {
+            this.count = count;
+            this.version = version;
+            this.expireTime = expireTime;
+        }
+
+    }
+
+}
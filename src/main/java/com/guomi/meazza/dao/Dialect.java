@@ -4,8 +4,18 @@
  */
 package com.guomi.meazza.dao;
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import com.guomi.meazza.util.SqlUtils;
+
 /**
  * 数据库 SQL 方言接口。
+ *
+ * <p>
+ * 参数化分页和计数方式相关的方法有默认实现：不支持参数化的带 limit 查询的 SQL，不支持估算记录数，有上限的计数按精确计数执行。
+ * 逐行读取和多行写入相关的方法也有默认实现：使用 JDBC 驱动默认的 fetch size，多行插入使用标准的 {@code VALUES (...), (...)}
+ * 语法但每条语句只插入一行，不支持插入或更新。
  * 
  * @author akuma
  */
@@ -46,6 +56,139 @@ public interface Dialect {
      */
     String getLimitSql(String sql, int offset, int limit, String orderBy);
 
-    // String getLimitString(String sql, boolean hasOffset);
+    /**
+     * 获取参数化的带 limit 查询的 SQL，结果集的偏移量和记录限制条数使用 ? 占位符，翻页时 SQL 不变，可以利用数据库和 JDBC 驱动的语句缓存。
+     * 占位符都在原 SQL 的参数之后，其值通过 {@link #getLimitArgs(int, int)} 获取。
+     * 
+     * @param sql
+     *            原 SQL
+     * @param hasOffset
+     *            结果集的偏移量是否大于 0
+     * @return 参数化的带 limit 查询的 SQL，不支持时返回 null，这时使用 {@link #getLimitSql(String, int, int)} 生成分页 SQL
+     */
+    default String getLimitSql(String sql, boolean hasOffset) {
+        return null;
+    }
+
+    /**
+     * 获取 {@link #getLimitSql(String, boolean)} 生成的 SQL 中追加的参数值，顺序和占位符一致。
+     * 
+     * @param offset
+     *            结果集的偏移量
+     * @param limit
+     *            记录限制条数
+     * @return 追加的参数值，不支持参数化的带 limit 查询的 SQL 时返回空数组
+     */
+    default Object[] getLimitArgs(int offset, int limit) {
+        return new Object[0];
+    }
+
+    /**
+     * 获取最多计数到 {@code cap} 行的 count SQL。count 查询只扫描不超过 {@code cap} 行的记录，所以代价不会随着表的增长而增长。
+     * 
+     * @param sql
+     *            原 SQL
+     * @param cap
+     *            最多计数到多少行
+     * @return 有上限的 count SQL，SQL 中的参数和原 SQL 一致
+     */
+    default String getCappedCountSql(String sql, int cap) {
+        // 默认不限制计数的上限，计数结果超过上限时和有上限的计数效果相同
+        return SqlUtils.generateCountSql(sql, isBackslashEscape());
+    }
+
+    /**
+     * 判断字符串中的反斜杠是否是转义字符，解析 SQL 时用于确定字符串的结束位置。标准 SQL 中不是，MySQL 中是。
+     */
+    default boolean isBackslashEscape() {
+        return false;
+    }
+
+    /**
+     * 获取估算查询结果记录数的 SQL，估算使用数据库的执行计划或统计信息，不会真正执行原 SQL。
+     * 
+     * @param sql
+     *            原 SQL
+     * @return 估算记录数的 SQL，不支持估算时返回 null
+     */
+    default String getEstimatedCountSql(String sql) {
+        return null;
+    }
+
+    /**
+     * 判断估算记录数的 SQL 中是否包含原 SQL 中的参数，包含时需要按原 SQL 的方式设置参数。
+     * 
+     * @return <code>true</code> / <code>false</code>
+     */
+    default boolean isEstimatedCountParameterized() {
+        return false;
+    }
+
+    /**
+     * 从估算记录数 SQL 的查询结果中读取估算的记录数。
+     * 
+     * @param rs
+     *            估算记录数 SQL 的查询结果
+     * @return 估算的记录数
+     */
+    default int getEstimatedCount(ResultSet rs) throws SQLException {
+        return rs.next() ? rs.getInt(1) : 0;
+    }
+
+    /**
+     * 获取逐行读取大量记录时使用的 fetch size，使 JDBC 驱动每次只从数据库读取少量记录，而不是把整个结果集读到内存中。
+     * 
+     * @return fetch size，为 0 时使用 JDBC 驱动的默认设置（默认）
+     */
+    default int getStreamingFetchSize() {
+        return 0;
+    }
+
+    /**
+     * 获取一条多行插入或更新语句最多可以包含的行数，受数据库对参数个数和行数的限制。
+     * 
+     * @param columnCount
+     *            每行的列数
+     * @return 最多的行数，默认为 1
+     */
+    default int getMaxInsertRows(int columnCount) {
+        return 1;
+    }
+
+    /**
+     * 获取一次插入多行的 SQL，参数按行依次排列，每行的参数顺序和 {@code columns} 一致。默认使用标准的
+     * {@code INSERT INTO ... VALUES (...), (...)} 语法。
+     * 
+     * @param table
+     *            表名
+     * @param columns
+     *            列名
+     * @param rows
+     *            行数，不能超过 {@link #getMaxInsertRows(int)}
+     * @return 插入多行的 SQL
+     */
+    default String getMultiRowInsertSql(String table, String[] columns, int rows) {
+        SqlUtils.checkInsertRows(columns, rows, this::getMaxInsertRows);
+        return "INSERT INTO " + table + " (" + String.join(", ", columns) + ") VALUES "
+                + SqlUtils.getRowValuesSql(columns.length, rows);
+    }
+
+    /**
+     * 获取一次插入或更新多行的 SQL，按 {@code keyColumns} 判断记录是否已存在，已存在时更新其余的列。参数的排列方式和
+     * {@link #getMultiRowInsertSql(String, String[], int)} 相同。默认不支持，抛出 {@code UnsupportedOperationException}。
+     * 
+     * @param table
+     *            表名
+     * @param columns
+     *            列名，包含 {@code keyColumns}
+     * @param keyColumns
+     *            判断记录是否已存在的列，MySQL 使用表上的主键和唯一索引判断，忽略该参数
+     * @param rows
+     *            行数，不能超过 {@link #getMaxInsertRows(int)}
+     * @return 插入或更新多行的 SQL
+     */
+    default String getUpsertSql(String table, String[] columns, String[] keyColumns, int rows) {
+        throw new UnsupportedOperationException("upsert");
+    }
 
 }
@@ -0,0 +1,255 @@
+/*
+ * @(#)EntityCache.java    Created on 2026-10-18
+ * Copyright (c) 2026 Guomi. All rights reserved.
+ */
+package com.guomi.meazza.dao;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import com.guomi.meazza.util.LruCache;
+
+/**
+ * 按 ID 缓存实体的读穿透缓存，容量有限，超出容量时按 LRU 淘汰，缓存的实体在超过有效期后失效。
+ *
+ * <p>
+ * 不存在的 ID 也会被缓存（负缓存），有效期单独设置，一般比实体的有效期短。
+ *
+ * <p>
+ * 数据修改时通过 {@link #evict(Object)} 或 {@link #clear()} 让缓存失效。每次失效都会增加版本号，失效之前开始、失效之后才完成的加载结果不会被缓存，
+ * 避免把修改前读到的旧数据放回缓存。
+ *
+ * @author akuma
+ */
+public class EntityCache<K, V> {
+
+    private static final int DEFAULT_MAX_SIZE = 10000;
+    private static final long DEFAULT_TTL_SECONDS = 300;
+    private static final long DEFAULT_NEGATIVE_TTL_SECONDS = 30;
+
+    private final LruCache<K, Entry<V>> cache;
+    private final long ttlMillis;
+    private final long negativeTtlMillis;
+
+    private final AtomicLong version = new AtomicLong();
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong loadCount = new AtomicLong();
+    private final AtomicLong totalLoadTime = new AtomicLong();
+
+    /**
+     * 构造方法，最多缓存 10000 个实体，有效期 300 秒，不存在的 ID 的有效期 30 秒。
+     */
+    public EntityCache() {
+        this(DEFAULT_MAX_SIZE, DEFAULT_TTL_SECONDS, DEFAULT_NEGATIVE_TTL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 构造方法。
+     *
+     * @param maxSize
+     *            最多缓存多少个实体（包括不存在的 ID）
+     * @param ttl
+     *            实体的有效期
+     * @param negativeTtl
+     *            不存在的 ID 的有效期，为 0 时不缓存不存在的 ID
+     * @param unit
+     *            有效期的时间单位
+     */
+    public EntityCache(int maxSize, long ttl, long negativeTtl, TimeUnit unit) {
+        this.cache = new LruCache<>(maxSize);
+        this.ttlMillis = unit.toMillis(ttl);
+        this.negativeTtlMillis = unit.toMillis(negativeTtl);
+    }
+
+    /**
+     * 获取缓存的实体，缓存中没有时通过 {@code loader} 加载并放入缓存。
+     *
+     * @param key
+     *            实体的 ID
+     * @param loader
+     *            加载实体的方法，实体不存在时返回 null
+     * @return 实体，不存在时返回 null
+     */
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        Entry<V> entry = getEntry(key);
+        if (entry != null) {
+            hitCount.incrementAndGet();
+            return entry.value;
+        }
+
+        missCount.incrementAndGet();
+        long loadVersion = version.get();
+        long start = System.nanoTime();
+        V value = loader.apply(key);
+        recordLoad(start);
+        put(key, value, loadVersion);
+        return value;
+    }
+
+    /**
+     * 批量获取缓存的实体，缓存中没有的 ID 通过 {@code loader} 一次加载并放入缓存。
+     *
+     * @param keys
+     *            实体的 ID
+     * @param loader
+     *            加载实体的方法，参数是缓存中没有的 ID，返回 ID 和实体的映射，不存在的 ID 不需要包含在内
+     * @return ID 和实体的映射，顺序和 {@code keys} 一致，不包含不存在的 ID
+     */
+    public Map<K, V> getAll(Collection<? extends K> keys, Function<? super List<K>, ? extends Map<K, V>> loader) {
+        Map<K, V> values = new LinkedHashMap<>(keys.size() * 4 / 3 + 1);
+        List<K> missingKeys = new ArrayList<>();
+        for (K key : keys) {
+            Entry<V> entry = getEntry(key);
+            if (entry == null) {
+                missingKeys.add(key);
+                values.put(key, null);
+            } else if (entry.value != null) {
+                values.put(key, entry.value);
+            }
+        }
+        hitCount.addAndGet(keys.size() - missingKeys.size());
+        if (missingKeys.isEmpty()) {
+            return values;
+        }
+
+        missCount.addAndGet(missingKeys.size());
+        long loadVersion = version.get();
+        long start = System.nanoTime();
+        Map<K, V> loaded = loader.apply(missingKeys);
+        recordLoad(start);
+
+        for (K key : missingKeys) {
+            V value = loaded.get(key);
+            put(key, value, loadVersion);
+            if (value == null) {
+                values.remove(key);
+            } else {
+                values.put(key, value);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * 让指定 ID 的缓存失效。
+     */
+    public void evict(K key) {
+        version.incrementAndGet();
+        cache.remove(key);
+    }
+
+    /**
+     * 清空所有缓存。
+     */
+    public void clear() {
+        version.incrementAndGet();
+        cache.clear();
+    }
+
+    /**
+     * 获取缓存的实体个数（包括不存在的 ID）。
+     */
+    public int size() {
+        return cache.size();
+    }
+
+    /**
+     * 获取缓存命中次数，命中不存在的 ID 也计算在内。
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * 获取缓存未命中次数。
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * 获取缓存命中率，没有访问记录时返回 0。
+     */
+    public double getHitRate() {
+        long hits = hitCount.get();
+        long total = hits + missCount.get();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * 获取加载次数，批量加载只计一次。
+     */
+    public long getLoadCount() {
+        return loadCount.get();
+    }
+
+    /**
+     * 获取平均每次加载耗费的时间（毫秒），没有加载记录时返回 0。
+     */
+    public double getAverageLoadTime() {
+        long loads = loadCount.get();
+        return loads == 0 ? 0 : totalLoadTime.get() / 1000000.0 / loads;
+    }
+
+    /**
+     * 获取因容量限制被淘汰的实体个数。
+     */
+    public long getEvictionCount() {
+        return cache.getEvictionCount();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("EntityCache(");
+        sb.append("size: " + size() + "/" + cache.getMaxSize());
+        sb.append(", hits: " + getHitCount());
+        sb.append(", misses: " + getMissCount());
+        sb.append(", loads: " + getLoadCount());
+        sb.append(", avgLoadTime: " + String.format("%.3f", getAverageLoadTime()) + "ms)");
+        return sb.toString();
+    }
+
+    private Entry<V> getEntry(K key) {
+        Entry<V> entry = cache.get(key);
+        if (entry == null || entry.expireTime < System.currentTimeMillis()) {
+            return null;
+        }
+        return entry;
+    }
+
+    private void put(K key, V value, long loadVersion) {
+        long ttl = value == null ? negativeTtlMillis : ttlMillis;
+        if (ttl <= 0 || version.get() != loadVersion) {
+            return;
+        }
+        cache.put(key, new Entry<>(value, System.currentTimeMillis() + ttl));
+        if (version.get() != loadVersion) {
+            cache.remove(key);
+        }
+    }
+
+    private void recordLoad(long start) {
+        loadCount.incrementAndGet();
+        totalLoadTime.addAndGet(System.nanoTime() - start);
+    }
+
+    private static class Entry<V> {
+
+        final V value;
+        final long expireTime;
+
+        Entry(V value, long expireTime) {
+            this.value = value;
+            this.expireTime = expireTime;
+        }
+
+    }
+
+}
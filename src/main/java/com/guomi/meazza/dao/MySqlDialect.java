@@ -4,6 +4,11 @@
  */
 package com.guomi.meazza.dao;
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.apache.commons.lang3.ArrayUtils;
+
 /**
  * 适用于 MySQL 数据库的 SQL 方言类。
  * 
@@ -11,6 +16,8 @@ package com.guomi.meazza.dao;
  */
 public class MySqlDialect implements Dialect {
 
+    private static final int MAX_PARAMETERS = 65535;
+
     /**
      * {@inheritDoc}
      */
@@ -30,6 +37,115 @@ public class MySqlDialect implements Dialect {
         return getLimitSql(sql, offset, limit);
     }
 
+    /**
+     * MySQL 默认没有开启 {@code NO_BACKSLASH_ESCAPES}，字符串中的反斜杠是转义字符。
+     */
+    @Override
+    public boolean isBackslashEscape() {
+        return true;
+    }
+
+    /**
+     * 偏移量总是使用占位符，所以不同页使用相同的 SQL。
+     */
+    @Override
+    public String getLimitSql(String sql, boolean hasOffset) {
+        return sql.trim() + " limit ?, ?";
+    }
+
+    @Override
+    public Object[] getLimitArgs(int offset, int limit) {
+        return new Object[] { offset, limit };
+    }
+
+    /**
+     * 原 SQL 已经带有 LIMIT 时先包装成子查询再加上 LIMIT，否则直接在原 SQL 之后加上 LIMIT。不影响结果的 ORDER BY 会被去掉。
+     */
+    @Override
+    public String getCappedCountSql(String sql, int cap) {
+        SqlLexer lexer = new SqlLexer(sql.trim(), true);
+        String cappedSql;
+        if (lexer.hasLimit()) {
+            cappedSql = "SELECT 1 FROM (" + lexer.getSql() + ") AS tmp_capped_result LIMIT " + cap;
+        } else {
+            cappedSql = getLimitSql(lexer.isOrderByRemovable() ? lexer.removeOrderBy() : lexer.getSql(), 0, cap);
+        }
+        return "SELECT COUNT(1) FROM (" + cappedSql + ") AS tmp_count_result";
+    }
+
+    /**
+     * 使用 {@code EXPLAIN} 估算记录数，估算值为执行计划第一行的 rows 乘以 filtered 的百分比，会考虑查询条件。
+     */
+    @Override
+    public String getEstimatedCountSql(String sql) {
+        return "EXPLAIN " + sql.trim();
+    }
+
+    @Override
+    public boolean isEstimatedCountParameterized() {
+        return true;
+    }
+
+    /**
+     * MySQL 的 JDBC 驱动只有在 fetch size 为 {@link Integer#MIN_VALUE} 时才逐行读取结果集，读取完之前同一个连接上不能执行其他语句。
+     */
+    @Override
+    public int getStreamingFetchSize() {
+        return Integer.MIN_VALUE;
+    }
+
+    /**
+     * MySQL 预编译语句最多 65535 个参数。
+     */
+    @Override
+    public int getMaxInsertRows(int columnCount) {
+        return MAX_PARAMETERS / columnCount;
+    }
+
+    /**
+     * 使用 {@code INSERT ... ON DUPLICATE KEY UPDATE}，记录是否已存在由表上的主键和唯一索引决定。
+     */
+    @Override
+    public String getUpsertSql(String table, String[] columns, String[] keyColumns, int rows) {
+        StringBuilder sql = new StringBuilder(getMultiRowInsertSql(table, columns, rows));
+        sql.append(" ON DUPLICATE KEY UPDATE ");
+        boolean first = true;
+        for (String column : columns) {
+            if (ArrayUtils.contains(keyColumns, column)) {
+                continue;
+            }
+            if (!first) {
+                sql.append(", ");
+            }
+            sql.append(column).append(" = VALUES(").append(column).append(")");
+            first = false;
+        }
+        if (first) {
+            // 只有主键列时不需要更新
+            sql.append(columns[0]).append(" = ").append(columns[0]);
+        }
+        return sql.toString();
+    }
+
+    @Override
+    public int getEstimatedCount(ResultSet rs) throws SQLException {
+        if (!rs.next()) {
+            return 0;
+        }
+
+        double rows = rs.getDouble("rows");
+        double filtered = 100;
+        try {
+            filtered = rs.getDouble("filtered");
+            if (rs.wasNull()) {
+                filtered = 100;
+            }
+        } catch (SQLException e) {
+            // MySQL 5.7 之前的版本没有 filtered 列
+        }
+        return (int) Math.min(Integer.MAX_VALUE, Math.round(rows * filtered / 100));
+    }
+
     @Override
     public boolean supportsLimit() {
         return true;
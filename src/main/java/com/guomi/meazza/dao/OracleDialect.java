@@ -4,6 +4,13 @@
  */
 package com.guomi.meazza.dao;
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.guomi.meazza.util.SqlUtils;
+
 /**
  * 适用于 Oracle 数据库的 SQL 方言类。
  * 
@@ -11,24 +18,136 @@ package com.guomi.meazza.dao;
  */
 public class OracleDialect implements Dialect {
 
+    // 逐行读取时每次从数据库读取的记录数，Oracle 驱动默认只有 10
+    private static final int STREAMING_FETCH_SIZE = 500;
+
+    private static final int MAX_PARAMETERS = 65535;
+    private static final int MAX_INSERT_ROWS = 1000;
+
     /**
      * {@inheritDoc}
      */
     @Override
     public String getLimitSql(String aSql, int offset, int limit) {
-        boolean hasOffset = offset > 0;
-
-        String sql = aSql.trim();
-        String forUpdateClause = null;
-        boolean isForUpdate = false;
-        final int forUpdateIndex = sql.toLowerCase().lastIndexOf("for update");
-
-        if (forUpdateIndex > -1) {
-            // Save 'for update ...' and then remove it
-            forUpdateClause = sql.substring(forUpdateIndex);
-            sql = sql.substring(0, forUpdateIndex - 1);
-            isForUpdate = true;
+        return getLimitSql(aSql, String.valueOf(offset + limit), String.valueOf(offset), offset > 0);
+    }
+
+    @Override
+    public String getLimitSql(String sql, int offset, int limit, String orderBy) {
+        return getLimitSql(sql, offset, limit);
+    }
+
+    @Override
+    public String getCappedCountSql(String sql, int cap) {
+        return "select count(1) from (" + getLimitSql(sql, 0, cap) + ") tmp_count_result";
+    }
+
+    /**
+     * 使用统计信息中第一个表的 num_rows 估算记录数，不考虑查询条件，表没有统计信息时估算值为 0。
+     */
+    @Override
+    public String getEstimatedCountSql(String sql) {
+        String tableName = SqlUtils.getTableName(sql);
+        if (tableName == null || tableName.indexOf('\'') != -1) {
+            return null;
+        }
+
+        // 没有用双引号括起来的表名在数据字典中是大写的
+        tableName = tableName.indexOf('"') == -1 ? tableName.toUpperCase() : tableName.replace("\"", "");
+        int dotIndex = tableName.indexOf('.');
+        if (dotIndex == -1) {
+            return "select num_rows from user_tables where table_name = '" + tableName + "'";
+        }
+        return "select num_rows from all_tables where owner = '" + tableName.substring(0, dotIndex)
+                + "' and table_name = '" + tableName.substring(dotIndex + 1) + "'";
+    }
+
+    @Override
+    public boolean isEstimatedCountParameterized() {
+        return false;
+    }
+
+    @Override
+    public int getStreamingFetchSize() {
+        return STREAMING_FETCH_SIZE;
+    }
+
+    /**
+     * Oracle 的 {@code INSERT ALL} 语句行数过多时解析很慢，最多 1000 行。
+     */
+    @Override
+    public int getMaxInsertRows(int columnCount) {
+        return Math.min(MAX_INSERT_ROWS, MAX_PARAMETERS / columnCount);
+    }
+
+    /**
+     * 使用 {@code INSERT ALL INTO ... SELECT 1 FROM DUAL}。
+     */
+    @Override
+    public String getMultiRowInsertSql(String table, String[] columns, int rows) {
+        SqlUtils.checkInsertRows(columns, rows, this::getMaxInsertRows);
+
+        String into = " INTO " + table + " (" + StringUtils.join(columns, ", ") + ") VALUES "
+                + SqlUtils.getRowValuesSql(columns.length);
+        StringBuilder sql = new StringBuilder(10 + into.length() * rows + 20);
+        sql.append("INSERT ALL");
+        for (int i = 0; i < rows; i++) {
+            sql.append(into);
         }
+        return sql.append(" SELECT 1 FROM DUAL").toString();
+    }
+
+    /**
+     * 使用 {@code MERGE}，数据源是多个 {@code SELECT ... FROM DUAL} 的 {@code UNION ALL}。
+     */
+    @Override
+    public String getUpsertSql(String table, String[] columns, String[] keyColumns, int rows) {
+        SqlUtils.checkInsertRows(columns, rows, this::getMaxInsertRows);
+
+        StringBuilder sql = new StringBuilder();
+        sql.append("MERGE INTO ").append(table).append(" target USING (");
+        for (int i = 0; i < rows; i++) {
+            sql.append(i == 0 ? "SELECT " : " UNION ALL SELECT ");
+            for (int j = 0; j < columns.length; j++) {
+                sql.append(j == 0 ? "?" : ", ?");
+                if (i == 0) {
+                    sql.append(' ').append(columns[j]);
+                }
+            }
+            sql.append(" FROM DUAL");
+        }
+        sql.append(") source ").append(SqlUtils.getMergeClauses(columns, keyColumns));
+        return sql.toString();
+    }
+
+    @Override
+    public int getEstimatedCount(ResultSet rs) throws SQLException {
+        return rs.next() ? (int) Math.min(Integer.MAX_VALUE, rs.getLong(1)) : 0;
+    }
+
+    @Override
+    public String getLimitSql(String sql, boolean hasOffset) {
+        return getLimitSql(sql, "?", "?", hasOffset);
+    }
+
+    @Override
+    public Object[] getLimitArgs(int offset, int limit) {
+        if (offset > 0) {
+            return new Object[] { offset + limit, offset };
+        }
+        return new Object[] { limit };
+    }
+
+    /**
+     * 生成带 rownum 条件的 SQL，行号可以是数字或占位符。
+     */
+    private static String getLimitSql(String aSql, String endRow, String offset, boolean hasOffset) {
+        SqlLexer lexer = new SqlLexer(aSql.trim());
+        String forUpdateClause = lexer.getForUpdateClause();
+        boolean isForUpdate = forUpdateClause != null;
+
+        // Save 'for update ...' and then remove it
+        String sql = lexer.removeForUpdate();
 
         StringBuilder pagingSelect = new StringBuilder(sql.length() + 100);
         if (hasOffset) {
@@ -38,9 +157,9 @@ public class OracleDialect implements Dialect {
         }
         pagingSelect.append(sql);
         if (hasOffset) {
-            pagingSelect.append(") row_ where rownum <= " + limit + ") where rownum_ > " + offset);
+            pagingSelect.append(") row_ where rownum <= " + endRow + ") where rownum_ > " + offset);
         } else {
-            pagingSelect.append(") where rownum <= " + limit);
+            pagingSelect.append(") where rownum <= " + endRow);
         }
 
         if (isForUpdate) {
@@ -51,49 +170,6 @@ public class OracleDialect implements Dialect {
         return pagingSelect.toString();
     }
 
-    @Override
-    public String getLimitSql(String sql, int offset, int limit, String orderBy) {
-        return getLimitSql(sql, offset, limit);
-    }
-
-    // public String getLimitString(String sql, boolean hasOffset) {
-    // sql = sql.trim();
-    // String forUpdateClause = null;
-    // boolean isForUpdate = false;
-    // final int forUpdateIndex = sql.toLowerCase().lastIndexOf("for update");
-    //
-    // if (forUpdateIndex > -1) {
-    // // save 'for update ...' and then remove it
-    // forUpdateClause = sql.substring(forUpdateIndex);
-    // sql = sql.substring(0, forUpdateIndex - 1);
-    // isForUpdate = true;
-    // }
-    //
-    // StringBuilder pagingSelect = new StringBuilder(sql.length() + 100);
-    // if (hasOffset) {
-    // pagingSelect.append("select * from (select row_.*, rownum rownum_ from (");
-    // }
-    // else {
-    // pagingSelect.append("select * from (");
-    //
-    // }
-    // pagingSelect.append(sql);
-    // if (hasOffset) {
-    // pagingSelect.append(") row_ where rownum <= ?) where rownum_ > ?");
-    // }
-    // else {
-    // pagingSelect.append(") where rownum <= ?");
-    //
-    // }
-    //
-    // if (isForUpdate) {
-    // pagingSelect.append(" ");
-    // pagingSelect.append(forUpdateClause);
-    // }
-    //
-    // return pagingSelect.toString();
-    // }
-
     @Override
     public boolean supportsLimit() {
         return true;
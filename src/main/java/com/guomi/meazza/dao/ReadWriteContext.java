@@ -0,0 +1,102 @@
+/*
+ * @(#)ReadWriteContext.java    Created on 2026-10-18
+ * Copyright (c) 2026 Guomi. All rights reserved.
+ */
+package com.guomi.meazza.dao;
+
+import java.util.concurrent.Callable;
+import java.util.function.Supplier;
+
+/**
+ * 当前线程的读写状态，供 {@link ReadWriteRoutingDataSource} 决定使用主库还是只读库。
+ *
+ * <p>
+ * 只有在 {@link #read(Supplier)} 中获取的连接才可能来自只读库；{@link #markWrite()} 记录当前线程最近一次写入的时间，
+ * 写入之后的一段时间内读取仍然使用主库，保证能读到自己刚写入的数据。线程被线程池复用时，可以在请求开始时调用 {@link #clear()}。
+ *
+ * @author akuma
+ */
+public abstract class ReadWriteContext {
+
+    private static final ThreadLocal<State> states = ThreadLocal.withInitial(State::new);
+
+    /**
+     * 以只读方式执行，期间获取的连接可以来自只读库。可以嵌套调用。
+     */
+    public static <T> T read(Supplier<T> action) {
+        State state = states.get();
+        state.readDepth++;
+        try {
+            return action.get();
+        } finally {
+            state.readDepth--;
+        }
+    }
+
+    /**
+     * 以只读方式执行，期间获取的连接可以来自只读库。可以嵌套调用。
+     */
+    public static void read(Runnable action) {
+        read(() -> {
+            action.run();
+            return null;
+        });
+    }
+
+    /**
+     * 判断当前线程是否处于只读方式中。
+     */
+    public static boolean isRead() {
+        return states.get().readDepth > 0;
+    }
+
+    /**
+     * 记录当前线程进行了写入。
+     */
+    public static void markWrite() {
+        states.get().lastWriteTime = System.currentTimeMillis();
+    }
+
+    /**
+     * 获取当前线程最近一次写入的时间，没有写入时返回 0。
+     */
+    public static long getLastWriteTime() {
+        return states.get().lastWriteTime;
+    }
+
+    /**
+     * 清除当前线程的读写状态。
+     */
+    public static void clear() {
+        states.remove();
+    }
+
+    /**
+     * 把当前线程的读写状态传递给在其他线程中执行的任务，例如并发执行的 count 查询。
+     */
+    public static <T> Callable<T> wrap(Callable<T> task) {
+        final boolean read = isRead();
+        final long lastWriteTime = getLastWriteTime();
+        return () -> {
+            State state = states.get();
+            int readDepth = state.readDepth;
+            long writeTime = state.lastWriteTime;
+            state.readDepth = read ? 1 : 0;
+            state.lastWriteTime = lastWriteTime;
+            try {
+                return task.call();
+            } finally {
+                state.readDepth = readDepth;
+                state.lastWriteTime = writeTime;
+            }
+        };
+    }
+
+    private static class State {
+
+        int readDepth;
+        long lastWriteTime;
+
+    }
+
+}
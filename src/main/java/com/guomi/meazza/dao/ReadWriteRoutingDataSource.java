@@ -0,0 +1,255 @@
+/*
+ * @(#)ReadWriteRoutingDataSource.java    Created on 2026-10-18
+ * Copyright (c) 2026 Guomi. All rights reserved.
+ */
+package com.guomi.meazza.dao;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * 读写分离的数据源，只读操作的连接从若干只读库中选择，其余连接都来自主库。
+ *
+ * <p>
+ * 以下两种情况使用只读库，并且距离当前线程最近一次写入（{@link ReadWriteContext#markWrite()}）已经超过
+ * {@code readYourWritesWindow} 毫秒：
+ * <ul>
+ * <li>不在事务同步范围内，当前线程处于 {@link ReadWriteContext#read(java.util.function.Supplier)} 中；</li>
+ * <li>在只读事务中获取连接（{@code TransactionSynchronizationManager.isCurrentTransactionReadOnly()}）。</li>
+ * </ul>
+ * 读写事务，以及没有实际事务的事务同步范围（例如 {@code SUPPORTS} 传播方式）总是使用主库：这些范围内第一次获取的连接会被之后的写入复用。
+ * 只读库获取连接失败时使用主库。
+ *
+ * <p>
+ * 注意：{@code DataSourceTransactionManager} 在设置事务的只读状态之前就获取了连接，直接使用本数据源时只读事务也会使用主库。
+ * 需要只读事务使用只读库时，用 {@code LazyConnectionDataSourceProxy} 包装本数据源，连接推迟到第一次执行语句时才获取。
+ *
+ * <p>
+ * 只读库的选择方式有轮询（{@link Strategy#ROUND_ROBIN}）和最少活动连接（{@link Strategy#LEAST_ACTIVE}，默认）两种。
+ *
+ * @author akuma
+ */
+public class ReadWriteRoutingDataSource extends AbstractDataSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReadWriteRoutingDataSource.class);
+
+    private static final long DEFAULT_READ_YOUR_WRITES_WINDOW = 1000;
+
+    /**
+     * 只读库的选择方式。
+     */
+    public enum Strategy {
+
+        /**
+         * 轮询。
+         */
+        ROUND_ROBIN,
+
+        /**
+         * 选择当前活动连接最少的只读库。
+         */
+        LEAST_ACTIVE
+
+    }
+
+    private DataSource primary;
+    private List<Replica> replicas = new ArrayList<>();
+    private Strategy strategy = Strategy.LEAST_ACTIVE;
+    private long readYourWritesWindow = DEFAULT_READ_YOUR_WRITES_WINDOW;
+
+    private final AtomicInteger nextReplica = new AtomicInteger();
+
+    /**
+     * 构造方法，需要通过 setter 设置主库和只读库。
+     */
+    public ReadWriteRoutingDataSource() {
+    }
+
+    /**
+     * 构造方法。
+     *
+     * @param primary
+     *            主库
+     * @param replicas
+     *            只读库
+     */
+    public ReadWriteRoutingDataSource(DataSource primary, List<DataSource> replicas) {
+        setPrimary(primary);
+        setReplicas(replicas);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return getConnection(null, null);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        Replica replica = isReplicaAllowed() ? selectReplica() : null;
+        if (replica != null) {
+            try {
+                return replica.getConnection(username, password);
+            } catch (SQLException e) {
+                logger.warn("Get connection from read replica failed, use primary instead", e);
+            }
+        }
+        return getConnection(primary, username, password);
+    }
+
+    /**
+     * 获取主库。
+     */
+    public DataSource getPrimary() {
+        return primary;
+    }
+
+    /**
+     * 设置主库。
+     */
+    public void setPrimary(DataSource primary) {
+        if (primary == null) {
+            throw new IllegalArgumentException("primary must not be null");
+        }
+        this.primary = primary;
+    }
+
+    /**
+     * 设置只读库，为空时所有连接都来自主库。
+     */
+    public void setReplicas(List<DataSource> replicas) {
+        List<Replica> list = new ArrayList<>();
+        if (replicas != null) {
+            for (DataSource dataSource : replicas) {
+                list.add(new Replica(dataSource));
+            }
+        }
+        this.replicas = list;
+    }
+
+    /**
+     * 设置只读库的选择方式，默认为 {@link Strategy#LEAST_ACTIVE}。
+     */
+    public void setStrategy(Strategy strategy) {
+        this.strategy = strategy;
+    }
+
+    /**
+     * 设置写入之后继续读取主库的时间（毫秒），默认 1000。
+     */
+    public void setReadYourWritesWindow(long readYourWritesWindow) {
+        this.readYourWritesWindow = readYourWritesWindow;
+    }
+
+    /**
+     * 获取每个只读库当前的活动连接数，顺序和设置时一致。
+     */
+    public int[] getReplicaActiveCounts() {
+        List<Replica> list = replicas;
+        int[] counts = new int[list.size()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = list.get(i).active.get();
+        }
+        return counts;
+    }
+
+    private boolean isReplicaAllowed() {
+        if (replicas.isEmpty()) {
+            return false;
+        }
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+                return false;
+            }
+        } else if (TransactionSynchronizationManager.isSynchronizationActive() || !ReadWriteContext.isRead()) {
+            // 没有实际事务的同步范围内，只读方式获取的连接会被之后的写入复用
+            return false;
+        }
+
+        long lastWriteTime = ReadWriteContext.getLastWriteTime();
+        return lastWriteTime == 0 || System.currentTimeMillis() - lastWriteTime >= readYourWritesWindow;
+    }
+
+    private Replica selectReplica() {
+        List<Replica> list = replicas;
+        int size = list.size();
+        int start = (nextReplica.getAndIncrement() & Integer.MAX_VALUE) % size;
+        if (strategy == Strategy.ROUND_ROBIN) {
+            return list.get(start);
+        }
+
+        // 从轮询位置开始查找，活动连接数相同时不会总是选择第一个
+        Replica selected = null;
+        for (int i = 0; i < size; i++) {
+            Replica replica = list.get((start + i) % size);
+            if (selected == null || replica.active.get() < selected.active.get()) {
+                selected = replica;
+            }
+        }
+        return selected;
+    }
+
+    private static Connection getConnection(DataSource dataSource, String username, String password)
+            throws SQLException {
+        return username == null ? dataSource.getConnection() : dataSource.getConnection(username, password);
+    }
+
+    /**
+     * 只读库，记录当前的活动连接数。
+     */
+    private static class Replica {
+
+        final DataSource dataSource;
+        final AtomicInteger active = new AtomicInteger();
+
+        Replica(DataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+
+        Connection getConnection(String username, String password) throws SQLException {
+            Connection connection = ReadWriteRoutingDataSource.getConnection(dataSource, username, password);
+            active.incrementAndGet();
+            return trackClose(connection);
+        }
+
+        /**
+         * 返回连接的代理，连接关闭时减少活动连接数。
+         */
+        private Connection trackClose(Connection connection) {
+            final boolean[] closed = new boolean[1];
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[] { Connection.class }, (proxy, method, args) -> {
+                        if ("equals".equals(method.getName()) && method.getParameterCount() == 1) {
+                            return proxy == args[0];
+                        } else if ("hashCode".equals(method.getName()) && method.getParameterCount() == 0) {
+                            return System.identityHashCode(proxy);
+                        } else if ("close".equals(method.getName()) && method.getParameterCount() == 0) {
+                            synchronized (closed) {
+                                if (!closed[0]) {
+                                    closed[0] = true;
+                                    active.decrementAndGet();
+                                }
+                            }
+                        }
+                        try {
+                            return method.invoke(connection, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getTargetException();
+                        }
+                    });
+        }
+
+    }
+
+}
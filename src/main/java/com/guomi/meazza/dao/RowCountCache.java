@@ -0,0 +1,78 @@
+/*
+ * @(#)RowCountCache.java    Created on 2026-10-18
+ * Copyright (c) 2026 Guomi. All rights reserved.
+ */
+package com.guomi.meazza.dao;
+
+/**
+ * 分页查询总记录数的缓存接口。
+ *
+ * <p>
+ * 翻页时同一个查询条件的总记录数通常不会变化，缓存后翻到第 2、3、4 页时就不需要再次执行 count 查询。 缓存按区域（region）划分，
+ * 区域一般是 MyBatis Mapper 的命名空间或者 Mongo 的集合名称，数据发生修改时可以通过 {@link #evict(String)} 让整个区域的缓存失效。
+ *
+ * @author akuma
+ */
+public interface RowCountCache {
+
+    /**
+     * 获取缓存的总记录数。
+     *
+     * @param region
+     *            缓存区域，例如 Mapper 命名空间、集合名称
+     * @param key
+     *            查询的标识，一般由 count 语句和查询参数组成
+     * @return 总记录数，缓存不存在或者已过期时返回 null
+     */
+    Integer get(String region, String key);
+
+    /**
+     * 缓存总记录数。
+     *
+     * @param region
+     *            缓存区域，例如 Mapper 命名空间、集合名称
+     * @param key
+     *            查询的标识，一般由 count 语句和查询参数组成
+     * @param count
+     *            总记录数
+     */
+    void put(String region, String key, int count);
+
+    /**
+     * 获取区域当前的版本号，每次 {@link #evict(String)} 都会改变版本号。在执行 count 查询之前获取，查询完成后传给
+     * {@link #put(String, String, int, long)}，避免把失效之前开始查询的旧记录数放入缓存。
+     *
+     * <p>
+     * 默认实现不区分版本，总是返回 0。
+     */
+    default long getVersion(String region) {
+        return 0;
+    }
+
+    /**
+     * 缓存总记录数，查询期间区域的缓存已经失效（版本号发生变化）时不缓存。
+     *
+     * <p>
+     * 默认实现忽略版本号，直接调用 {@link #put(String, String, int)}。
+     *
+     * @param version
+     *            执行 count 查询之前通过 {@link #getVersion(String)} 获取的版本号
+     */
+    default void put(String region, String key, int count, long version) {
+        put(region, key, count);
+    }
+
+    /**
+     * 让某个区域下的所有缓存失效，在数据发生修改时调用。
+     *
+     * @param region
+     *            缓存区域
+     */
+    void evict(String region);
+
+    /**
+     * 清空所有缓存。
+     */
+    void clear();
+
+}
@@ -6,13 +6,14 @@ package com.guomi.meazza.dao;
 
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.Arrays;
 import java.util.List;
 
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
 
+import com.guomi.meazza.util.SqlUtils;
+
 /**
  * 动态查询 SQL 语句生成工具类。
  * 
@@ -24,9 +25,11 @@ public class SqlCreator implements Serializable {
 
     private StringBuilder sql;
     private List<Object> args;
-    private List<Integer> argTypes;
+    private int[] argTypes;
+    private int argTypeCount;
     private boolean hasOrderBy = false;
     private boolean hasWhere = true;
+    private boolean endsWithWhere;
     private boolean isFirst = true;
 
     /**
@@ -53,10 +56,11 @@ public class SqlCreator implements Serializable {
         }
 
         args = new ArrayList<Object>();
-        argTypes = new ArrayList<Integer>();
+        argTypes = new int[8];
         sql = new StringBuilder();
         sql.append(baseSQL.trim());
         this.hasWhere = hasWhere;
+        this.endsWithWhere = StringUtils.endsWithIgnoreCase(sql, "where");
     }
 
     /**
@@ -108,27 +112,15 @@ public class SqlCreator implements Serializable {
             return;
         }
 
-        if (isFirst) {
-            if (hasWhere) {
-                if (!sql.toString().toLowerCase().endsWith("where")) {
-                    sql.append(" " + operator);
-                }
-            } else {
-                sql.append(" WHERE");
-            }
-            isFirst = false;
-        } else {
-            sql.append(" " + operator);
-        }
-
-        sql.append(" " + expression);
+        appendOperator(operator);
+        sql.append(' ').append(expression);
 
         if (arg != null) {
             args.add(arg);
         }
 
         if (argType != Integer.MIN_VALUE) {
-            argTypes.add(argType);
+            addArgType(argType);
         }
     }
 
@@ -175,7 +167,8 @@ public class SqlCreator implements Serializable {
     }
 
     /**
-     * 增加 AND IN 查询条件，比如AND id IN (?, ?, ?);
+     * 增加 AND IN 查询条件，比如AND id IN (?, ?, ?)。参数超过 1000 个时拆分成多个 IN 条件，比如 AND (id IN (...) OR id IN (...))，
+     * 每个 IN 条件的参数个数补齐到几种固定的个数，参见 {@link SqlUtils#partitionInArgs(Object[])}。
      * 
      * @param columnName
      *            列名称，比如 id
@@ -191,26 +184,28 @@ public class SqlCreator implements Serializable {
             return;
         }
 
-        if (isFirst) {
-            if (hasWhere) {
-                if (!sql.toString().toLowerCase().endsWith("where")) {
-                    sql.append(" AND");
-                }
-            } else {
-                sql.append(" WHERE");
+        appendOperator("AND");
+        sql.append(' ');
+
+        List<Object[]> chunks = SqlUtils.partitionInArgs(args);
+        if (chunks.size() > 1) {
+            sql.append("(");
+        }
+        for (int i = 0; i < chunks.size(); i++) {
+            Object[] chunk = chunks.get(i);
+            if (i > 0) {
+                sql.append(" OR ");
+            }
+            sql.append(columnName);
+            sql.append(" IN ");
+            sql.append(getInSQL(chunk.length));
+            for (Object arg : chunk) {
+                this.args.add(arg);
+                addArgType(argType);
             }
-            sql.append(" ");
-            isFirst = false;
-        } else {
-            sql.append(" AND ");
         }
-
-        sql.append(columnName);
-        sql.append(" IN ");
-        sql.append(getInSQL(args.length));
-        for (Object arg : args) {
-            this.args.add(arg);
-            argTypes.add(argType);
+        if (chunks.size() > 1) {
+            sql.append(")");
         }
     }
 
@@ -332,12 +327,7 @@ public class SqlCreator implements Serializable {
      * @return 所有参数的类型数组
      */
     public int[] getArgTypes() {
-        Integer[] objectTypes = argTypes.toArray(new Integer[argTypes.size()]);
-        int[] intTypes = new int[objectTypes.length];
-        for (int i = 0; i < objectTypes.length; i++) {
-            intTypes[i] = objectTypes[i].intValue();
-        }
-        return intTypes;
+        return Arrays.copyOf(argTypes, argTypeCount);
     }
 
     /**
@@ -349,6 +339,29 @@ public class SqlCreator implements Serializable {
         return sql.toString();
     }
 
+    /**
+     * 追加查询条件之前的操作符，第一个查询条件之前根据原始 sql 追加 WHERE 或者不追加。
+     */
+    private void appendOperator(String operator) {
+        if (isFirst) {
+            if (!hasWhere) {
+                sql.append(" WHERE");
+            } else if (!endsWithWhere) {
+                sql.append(' ').append(operator);
+            }
+            isFirst = false;
+        } else {
+            sql.append(' ').append(operator);
+        }
+    }
+
+    private void addArgType(int argType) {
+        if (argTypeCount == argTypes.length) {
+            argTypes = Arrays.copyOf(argTypes, argTypeCount * 2);
+        }
+        argTypes[argTypeCount++] = argType;
+    }
+
     /**
      * 根据参数个数生成 IN 括弧里面的部分 sql，包含括弧。
      * 
@@ -373,43 +386,27 @@ public class SqlCreator implements Serializable {
     }
 
     /**
-     * 取得执行count的sql
+     * 取得执行count的sql，最外层的 ORDER BY 子句会被去掉。
      * 
      * @param sql
      *            执行查询的sql
      * @return 执行count的sql
      */
     public static String getCountSQL(String sql) {
-        String normalSql = sql;
-        String lowerCaseSql = sql.toLowerCase();
-
-        int index = lowerCaseSql.indexOf(" order ");
-        if (index != -1) {
-            String orderSuffix = normalSql.substring(index);
-            normalSql = normalSql.substring(0, index);
-            if (orderSuffix.contains(")")) {
-                normalSql = normalSql + ") temp_rs";
-            }
-            lowerCaseSql = normalSql.toLowerCase();
-        }
-
-        int fromIndex = getFirstPairIndex(lowerCaseSql, "select ", " from ");
-        if (fromIndex == -1) {
+        SqlLexer lexer = new SqlLexer(sql);
+        if (!lexer.isSelect() || lexer.getFromIndex() == -1) {
             throw new IllegalArgumentException("Could not get count sql[" + sql + "]");
         }
 
-        String resultSql = null;
-        int groupByIndex = getFirstPairIndex(lowerCaseSql, " group ", " by ");
-        if (groupByIndex != -1 || lowerCaseSql.contains(" union ")) {
-            resultSql = "SELECT COUNT(1) FROM (" + normalSql + ") temp_rs";
-        } else {
-            resultSql = "SELECT COUNT(1)" + normalSql.substring(fromIndex);
+        if (lexer.isSimpleSelect()) {
+            return "SELECT COUNT(1) " + sql.substring(lexer.getFromIndex(), lexer.getTableIndex())
+                    + lexer.getCountTables();
         }
-        return resultSql;
+        return "SELECT COUNT(1) FROM (" + lexer.getCountBody() + ") temp_rs";
     }
 
     /**
-     * 获得成对出现的第一个关键字对应的关键字的位置。
+     * 获得成对出现的第一个关键字对应的关键字的位置，两个关键字按括号的方式配对。
      * 
      * @param str
      * @param keyword
@@ -417,85 +414,31 @@ public class SqlCreator implements Serializable {
      * @param oppositeKeyword
      *            对应的关键字，例如：from
      * @return 第一个关键字对应的关键字的位置
+     * @deprecated 不识别字符串和注释，请使用 {@link SqlLexer}
      */
+    @Deprecated
     public static int getFirstPairIndex(String str, String keyword, String oppositeKeyword) {
-        ArrayList<PairKeyword> keywordArray = new ArrayList<PairKeyword>();
-        int index = -1;
-        while ((index = str.indexOf(keyword, index)) != -1) {
-            keywordArray.add(new PairKeyword(keyword, index));
-            index += keyword.length();
-        }
-
-        index = -1;
-        while ((index = str.indexOf(oppositeKeyword, index)) != -1) {
-            keywordArray.add(new PairKeyword(oppositeKeyword, index));
-            index += oppositeKeyword.length();
-        }
-
-        if (keywordArray.size() < 2) {
+        int keywordIndex = str.indexOf(keyword);
+        int oppositeIndex = str.indexOf(oppositeKeyword);
+        if (keywordIndex == -1 || (oppositeIndex != -1 && oppositeIndex < keywordIndex)) {
             return -1;
         }
 
-        Collections.sort(keywordArray, new Comparator<PairKeyword>() {
-            @Override
-            public int compare(PairKeyword keyword0, PairKeyword keyword1) {
-                return keyword0.getIndex() > keyword1.getIndex() ? 1 : -1;
-            }
-        });
-
-        PairKeyword firstKeyword = keywordArray.get(0);
-        if (!firstKeyword.getName().equals(keyword)) {
-            return -1;
-        }
-
-        while (keywordArray.size() > 2) {
-            boolean hasOpposite = false;
-            for (int i = 2; i < keywordArray.size(); i++) {
-                PairKeyword keyword0 = keywordArray.get(i - 1);
-                PairKeyword keyword1 = keywordArray.get(i);
-                if (keyword0.getName().equals(keyword) && keyword1.getName().equals(oppositeKeyword)) {
-                    keywordArray.remove(i);
-                    keywordArray.remove(i - 1);
-                    hasOpposite = true;
-                    break;
+        // 两个关键字的出现位置按顺序合并扫描，关键字加一层，对应的关键字减一层
+        int depth = 0;
+        while (oppositeIndex != -1) {
+            if (keywordIndex != -1 && keywordIndex < oppositeIndex) {
+                depth++;
+                keywordIndex = str.indexOf(keyword, keywordIndex + keyword.length());
+            } else {
+                depth--;
+                if (depth == 0) {
+                    return oppositeIndex;
                 }
+                oppositeIndex = str.indexOf(oppositeKeyword, oppositeIndex + oppositeKeyword.length());
             }
-            if (!hasOpposite) {
-                return -1;
-            }
-        }
-
-        if (keywordArray.size() != 2) {
-            return -1;
-        }
-
-        PairKeyword lastKeyword = keywordArray.get(1);
-        if (!lastKeyword.getName().equals(oppositeKeyword)) {
-            return -1;
-        }
-
-        return lastKeyword.getIndex();
-    }
-
-    /**
-     * 关键字对，用于列表排序。
-     */
-    private static class PairKeyword {
-        private String name;
-        private int index;
-
-        public PairKeyword(String name, int index) {
-            this.name = name;
-            this.index = index;
-        }
-
-        public int getIndex() {
-            return index;
-        }
-
-        public String getName() {
-            return name;
         }
+        return -1;
     }
 
 }
@@ -0,0 +1,472 @@
+/*
+ * @(#)SqlLexer.java    Created on 2026-10-18
+ * Copyright (c) 2026 Guomi. All rights reserved.
+ */
+package com.guomi.meazza.dao;
+
+/**
+ * 单遍扫描的 SQL 词法分析器，用于生成 count SQL 和分页 SQL。
+ *
+ * <p>
+ * 扫描时识别字符串、带引号的标识符、注释和括号的嵌套层次，只记录最外层查询中 SELECT、FROM、GROUP BY、UNION、ORDER BY、FOR UPDATE
+ * 等子句关键字的位置，子查询、字符串和注释中的关键字不会被误认。扫描过程不生成词法单元对象。
+ *
+ * <p>
+ * 默认按标准 SQL 处理字符串，只有连续两个引号表示引号本身，例如 Oracle、SQL Server 中的 {@code 'C:\'} 是完整的字符串。
+ * MySQL 的字符串中反斜杠是转义字符，需要通过 {@link #SqlLexer(String, boolean)} 指定。
+ *
+ * @author akuma
+ */
+public class SqlLexer {
+
+    private static final int OTHER = 0;
+    private static final int SELECT = 1;
+    private static final int DISTINCT = 2;
+    private static final int FROM = 3;
+    private static final int GROUP = 4;
+    private static final int ORDER = 5;
+    private static final int BY = 6;
+    private static final int FOR = 7;
+    private static final int UPDATE = 8;
+    private static final int SET_OPERATOR = 9;
+    private static final int LIMIT = 10;
+    private static final int TOP = 11;
+
+    private final String sql;
+    private final boolean backslashEscape; // 单引号字符串中的反斜杠是否是转义字符
+
+    private boolean select; // 是否是以 SELECT 开头的查询语句
+    private boolean distinct; // 最外层查询是否是 SELECT DISTINCT
+    private int selectIndex = -1; // 最外层第一个 SELECT 关键字的位置
+    private int selectListIndex = -1; // SELECT [DISTINCT] 关键字的结束位置，即选择列表的起始位置
+    private int fromIndex = -1; // 和最外层第一个 SELECT 对应的 FROM 关键字的位置
+    private int tableIndex = -1; // FROM 关键字之后第一个词法单元的位置
+    private int groupByIndex = -1; // 最外层第一个 GROUP BY 的位置
+    private int setOperatorIndex = -1; // 最外层第一个 UNION/INTERSECT/EXCEPT/MINUS 的位置
+    private int orderByIndex = -1; // 最外层最后一个 ORDER BY 的位置
+    private int orderByListIndex = -1; // ORDER BY 关键字的结束位置，即排序字段的起始位置
+    private int forUpdateIndex = -1; // 最外层 FOR UPDATE 的位置
+    private int limitIndex = -1; // 最外层第一个 LIMIT/OFFSET/FETCH/TOP 的位置
+
+    /**
+     * 构造方法，按标准 SQL 扫描 SQL 语句，字符串中的反斜杠不是转义字符。
+     *
+     * @param sql
+     *            SQL 语句
+     */
+    public SqlLexer(String sql) {
+        this(sql, false);
+    }
+
+    /**
+     * 构造方法，扫描 SQL 语句。
+     *
+     * @param sql
+     *            SQL 语句
+     * @param backslashEscape
+     *            单引号字符串中的反斜杠是否是转义字符，MySQL 为 true
+     */
+    public SqlLexer(String sql, boolean backslashEscape) {
+        this.sql = sql;
+        this.backslashEscape = backslashEscape;
+        scan();
+    }
+
+    /**
+     * 获取 SQL 语句。
+     */
+    public String getSql() {
+        return sql;
+    }
+
+    /**
+     * 判断是否是以 SELECT 开头的查询语句。以 WITH 或括号开头的语句返回 false。
+     */
+    public boolean isSelect() {
+        return select;
+    }
+
+    /**
+     * 判断最外层查询是否是 SELECT DISTINCT。
+     */
+    public boolean isDistinct() {
+        return distinct;
+    }
+
+    /**
+     * 判断最外层查询是否带有 LIMIT、OFFSET、FETCH 或 TOP 这类限制结果集行数的子句，带有这类子句时排序会影响结果集。
+     */
+    public boolean hasLimit() {
+        return limitIndex != -1;
+    }
+
+    /**
+     * 判断是否是简单的查询语句，即以 SELECT 开头，带有 FROM 子句，最外层没有 DISTINCT、GROUP BY、UNION 和限制行数的子句，
+     * 并且 ORDER BY 子句（如果有）可以去掉。简单查询的 count SQL 可以直接替换选择列表生成，不需要包装成子查询。
+     */
+    public boolean isSimpleSelect() {
+        return select && tableIndex != -1 && !distinct && groupByIndex == -1 && setOperatorIndex == -1
+                && limitIndex == -1 && (orderByIndex == -1 || isOrderByRemovable());
+    }
+
+    /**
+     * 获取选择列表的起始位置，即 SELECT [DISTINCT] 关键字的结束位置，不是查询语句时返回 -1。
+     */
+    public int getSelectListIndex() {
+        return select ? selectListIndex : -1;
+    }
+
+    /**
+     * 获取最外层第一个 FROM 关键字的位置，没有时返回 -1。
+     */
+    public int getFromIndex() {
+        return fromIndex;
+    }
+
+    /**
+     * 获取 FROM 关键字之后第一个词法单元（表名或子查询的左括号）的位置，没有时返回 -1。
+     */
+    public int getTableIndex() {
+        return tableIndex;
+    }
+
+    /**
+     * 获取最外层 ORDER BY 的位置，没有时返回 -1。
+     */
+    public int getOrderByIndex() {
+        return orderByIndex;
+    }
+
+    /**
+     * 获取最外层 FOR UPDATE 的位置，没有时返回 -1。
+     */
+    public int getForUpdateIndex() {
+        return forUpdateIndex;
+    }
+
+    /**
+     * 获取最外层 ORDER BY 之后的排序字段，例如 {@code a, b desc}，没有时返回 null。
+     */
+    public String getOrderBy() {
+        if (orderByIndex == -1) {
+            return null;
+        }
+        return sql.substring(orderByListIndex, getOrderByEnd()).trim();
+    }
+
+    /**
+     * 判断最外层的 ORDER BY 子句是否可以去掉：没有限制行数的子句，并且排序字段中没有 ? 占位符。去掉带有占位符的 ORDER BY
+     * 会使之后的参数和占位符错位。没有 ORDER BY 时返回 false。
+     */
+    public boolean isOrderByRemovable() {
+        return orderByIndex != -1 && limitIndex == -1 && !hasParameter(orderByListIndex, getOrderByEnd());
+    }
+
+    /**
+     * 获取最外层的 FOR UPDATE 子句，例如 {@code for update nowait}，没有时返回 null。
+     */
+    public String getForUpdateClause() {
+        return forUpdateIndex == -1 ? null : sql.substring(forUpdateIndex).trim();
+    }
+
+    /**
+     * 获取去掉最外层 ORDER BY 子句之后的 SQL，ORDER BY 之后的其它子句会保留。
+     */
+    public String removeOrderBy() {
+        if (orderByIndex == -1) {
+            return sql;
+        }
+
+        int end = getOrderByEnd();
+        String head = sql.substring(0, orderByIndex).trim();
+        return end == sql.length() ? head : head + " " + sql.substring(end).trim();
+    }
+
+    /**
+     * 获取去掉最外层 FOR UPDATE 子句之后的 SQL。
+     */
+    public String removeForUpdate() {
+        return forUpdateIndex == -1 ? sql : sql.substring(0, forUpdateIndex).trim();
+    }
+
+    /**
+     * 获取用于计数的查询主体，即去掉最外层 ORDER BY 和 FOR UPDATE 子句之后的 SQL。带有限制行数的子句时排序会影响结果，
+     * 排序字段中带有 ? 占位符时去掉会使参数错位，这两种情况保留 ORDER BY，参见 {@link #isOrderByRemovable()}。
+     */
+    public String getCountBody() {
+        return sql.substring(0, getCountEnd()).trim();
+    }
+
+    /**
+     * 获取简单查询的 FROM 关键字之后、ORDER BY 之前的部分，例如 {@code user where id > ?}。只适用于
+     * {@link #isSimpleSelect()} 为 true 的查询。
+     */
+    public String getCountTables() {
+        if (!isSimpleSelect()) {
+            throw new IllegalStateException("Not a simple select statement: " + sql);
+        }
+        return sql.substring(tableIndex, getCountEnd()).trim();
+    }
+
+    private int getCountEnd() {
+        int end = isOrderByRemovable() ? orderByIndex : sql.length();
+        if (forUpdateIndex != -1 && forUpdateIndex < end) {
+            end = forUpdateIndex;
+        }
+        return end;
+    }
+
+    private int getOrderByEnd() {
+        int end = sql.length();
+        if (limitIndex > orderByIndex && limitIndex < end) {
+            end = limitIndex;
+        }
+        if (forUpdateIndex > orderByIndex && forUpdateIndex < end) {
+            end = forUpdateIndex;
+        }
+        return end;
+    }
+
+    private void scan() {
+        final int length = sql.length();
+        int depth = 0;
+        int lastKeyword = OTHER; // 最外层上一个词法单元对应的关键字，用于识别 GROUP BY 这类由两个词组成的关键字
+        int lastStart = -1;
+        boolean first = true;
+        boolean markTable = false;
+
+        int i = 0;
+        while (i < length) {
+            char c = sql.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+                continue;
+            }
+
+            char next = (i + 1 < length) ? sql.charAt(i + 1) : 0;
+            if (c == '-' && next == '-') {
+                i = skipLineComment(i + 2);
+                continue;
+            }
+            if (c == '/' && next == '*') {
+                i = skipBlockComment(i + 2);
+                continue;
+            }
+
+            int start = i;
+            if (markTable) {
+                tableIndex = start;
+                markTable = false;
+            }
+
+            if (isWordChar(c)) {
+                int end = i + 1;
+                while (end < length && isWordChar(sql.charAt(end))) {
+                    end++;
+                }
+                i = end;
+
+                if (depth != 0) {
+                    continue;
+                }
+
+                int keyword = getKeyword(start, end);
+                switch (keyword) {
+                case SELECT:
+                    if (selectIndex == -1) {
+                        select = first;
+                        selectIndex = start;
+                        selectListIndex = end;
+                    }
+                    break;
+                case DISTINCT:
+                    if (lastKeyword == SELECT && lastStart == selectIndex) {
+                        distinct = true;
+                        selectListIndex = end;
+                    }
+                    break;
+                case TOP:
+                    if ((lastKeyword == SELECT || lastKeyword == DISTINCT) && limitIndex == -1) {
+                        limitIndex = start;
+                    }
+                    break;
+                case FROM:
+                    if (fromIndex == -1 && selectIndex != -1) {
+                        fromIndex = start;
+                        markTable = true;
+                    }
+                    break;
+                case BY:
+                    if (lastKeyword == GROUP && groupByIndex == -1) {
+                        groupByIndex = lastStart;
+                    } else if (lastKeyword == ORDER) {
+                        orderByIndex = lastStart;
+                        orderByListIndex = end;
+                    }
+                    break;
+                case UPDATE:
+                    if (lastKeyword == FOR && forUpdateIndex == -1) {
+                        forUpdateIndex = lastStart;
+                    }
+                    break;
+                case SET_OPERATOR:
+                    if (setOperatorIndex == -1) {
+                        setOperatorIndex = start;
+                    }
+                    break;
+                case LIMIT:
+                    // OFFSET 等不是所有数据库的保留字，只识别 FROM 之后的
+                    if (fromIndex != -1 && limitIndex == -1) {
+                        limitIndex = start;
+                    }
+                    break;
+                default:
+                    break;
+                }
+
+                lastKeyword = keyword;
+                lastStart = start;
+                first = false;
+                continue;
+            }
+
+            switch (c) {
+            case '\'':
+                i = skipQuoted(i + 1, '\'', backslashEscape);
+                break;
+            case '"':
+            case '`':
+                i = skipQuoted(i + 1, c, false);
+                break;
+            case '[':
+                i = skipQuoted(i + 1, ']', false);
+                break;
+            case '(':
+                depth++;
+                i++;
+                break;
+            case ')':
+                depth--;
+                i++;
+                break;
+            default:
+                i++;
+                break;
+            }
+
+            if (depth == 0 || c == '(') {
+                lastKeyword = OTHER;
+            }
+            first = false;
+        }
+    }
+
+    /**
+     * 跳过引号括起来的字符串或标识符，连续两个结束引号表示引号本身。返回结束引号之后的位置。
+     */
+    private int skipQuoted(int from, char quote, boolean backslashEscape) {
+        final int length = sql.length();
+        int i = from;
+        while (i < length) {
+            char c = sql.charAt(i);
+            if (backslashEscape && c == '\\') {
+                i += 2;
+            } else if (c == quote) {
+                if (i + 1 < length && sql.charAt(i + 1) == quote) {
+                    i += 2;
+                } else {
+                    return i + 1;
+                }
+            } else {
+                i++;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * 判断指定区间内字符串和注释之外是否有 ? 占位符。
+     */
+    private boolean hasParameter(int from, int to) {
+        int i = from;
+        while (i < to) {
+            char c = sql.charAt(i);
+            char next = (i + 1 < to) ? sql.charAt(i + 1) : 0;
+            if (c == '?') {
+                return true;
+            } else if (c == '\'' || c == '"' || c == '`') {
+                i = skipQuoted(i + 1, c, backslashEscape && c == '\'');
+            } else if (c == '[') {
+                i = skipQuoted(i + 1, ']', false);
+            } else if (c == '-' && next == '-') {
+                i = skipLineComment(i + 2);
+            } else if (c == '/' && next == '*') {
+                i = skipBlockComment(i + 2);
+            } else {
+                i++;
+            }
+        }
+        return false;
+    }
+
+    private int skipLineComment(int from) {
+        int index = sql.indexOf('\n', from);
+        return index == -1 ? sql.length() : index + 1;
+    }
+
+    private int skipBlockComment(int from) {
+        int index = sql.indexOf("*/", from);
+        return index == -1 ? sql.length() : index + 2;
+    }
+
+    private int getKeyword(int start, int end) {
+        switch (end - start) {
+        case 2:
+            return matches(start, "by") ? BY : OTHER;
+        case 3:
+            if (matches(start, "for")) {
+                return FOR;
+            }
+            return matches(start, "top") ? TOP : OTHER;
+        case 4:
+            return matches(start, "from") ? FROM : OTHER;
+        case 5:
+            if (matches(start, "order")) {
+                return ORDER;
+            } else if (matches(start, "group")) {
+                return GROUP;
+            } else if (matches(start, "union") || matches(start, "minus")) {
+                return SET_OPERATOR;
+            } else if (matches(start, "limit") || matches(start, "fetch")) {
+                return LIMIT;
+            }
+            return OTHER;
+        case 6:
+            if (matches(start, "select")) {
+                return SELECT;
+            } else if (matches(start, "update")) {
+                return UPDATE;
+            } else if (matches(start, "except")) {
+                return SET_OPERATOR;
+            } else if (matches(start, "offset")) {
+                return LIMIT;
+            }
+            return OTHER;
+        case 8:
+            return matches(start, "distinct") ? DISTINCT : OTHER;
+        case 9:
+            return matches(start, "intersect") ? SET_OPERATOR : OTHER;
+        default:
+            return OTHER;
+        }
+    }
+
+    private boolean matches(int start, String keyword) {
+        return sql.regionMatches(true, start, keyword, 0, keyword.length());
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$' || c == '#' || c == '@';
+    }
+
+}
@@ -4,6 +4,14 @@
  */
 package com.guomi.meazza.dao;
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.guomi.meazza.util.SqlUtils;
+
 /**
  * 适用于 MS SQL Server 数据库的 SQL 方言类。
  * 
@@ -11,12 +19,26 @@ package com.guomi.meazza.dao;
  */
 public class SqlServerDialect implements Dialect {
 
+    // 逐行读取时每次从数据库读取的记录数，驱动使用 adaptive 缓冲时按需读取
+    private static final int STREAMING_FETCH_SIZE = 500;
+
+    // 一条语句最多 2100 个参数，留出 2 个给驱动内部使用
+    private static final int MAX_PARAMETERS = 2098;
+    private static final int MAX_INSERT_ROWS = 1000;
+
+    // 排序字段的表别名前缀，例如 u.name 中的 u.
+    private static final Pattern COLUMN_QUALIFIER_PATTERN = Pattern.compile("[\\w$#@\\[\\]\"]+\\.(?=[\\w\\[\"])");
+
     /**
-     * 获取带有 LIMIT 的 SQL 查询语句。SQL 采用了 MS SQL Server 的 row_number() 函数，排序字段写死为 <b>id</b>，这要求被查询的表结构中必须带有字段：id。
+     * 获取带有 LIMIT 的 SQL 查询语句。SQL 采用了 MS SQL Server 的 row_number() 函数，排序字段使用原 SQL 最外层的 order by
+     * 子句，去掉表别名前缀，所以排序字段必须是查询结果中的列。原 SQL 没有 order by 子句时排序字段为 <b>id</b>，这要求被查询的表结构中必须带有字段：id。
+     * order by 子句中带有 ? 占位符时移到 row_number() over 中会使参数错位，抛出 {@code IllegalArgumentException}。
      */
     @Override
     public String getLimitSql(String sql, int offset, int limit) {
-        return getLimitSql(sql, offset, limit, "id");
+        SqlLexer lexer = new SqlLexer(sql.trim());
+        return getLimitSql(lexer, String.valueOf(offset + 1), String.valueOf(offset + limit), offset > 0,
+                getOrderBy(lexer));
     }
 
     /**
@@ -27,23 +49,128 @@ public class SqlServerDialect implements Dialect {
      */
     @Override
     public String getLimitSql(String sql, int offset, int limit, String orderBy) {
-        boolean hasOffset = offset > 0;
+        return getLimitSql(new SqlLexer(sql.trim()), String.valueOf(offset + 1), String.valueOf(offset + limit),
+                offset > 0, orderBy);
+    }
 
-        sql = sql.trim();
+    /**
+     * 获取参数化的带有 LIMIT 的 SQL 查询语句，排序字段和 {@link #getLimitSql(String, int, int)} 相同。
+     */
+    @Override
+    public String getLimitSql(String sql, boolean hasOffset) {
+        SqlLexer lexer = new SqlLexer(sql.trim());
+        return getLimitSql(lexer, "?", "?", hasOffset, getOrderBy(lexer));
+    }
+
+    @Override
+    public Object[] getLimitArgs(int offset, int limit) {
+        if (offset > 0) {
+            return new Object[] { offset + 1, offset + limit };
+        }
+        return new Object[] { limit };
+    }
+
+    /**
+     * 获取 row_number() over 中的排序字段：原 SQL 最外层 order by 子句去掉表别名前缀之后的排序字段，没有时为 id。
+     */
+    private static String getOrderBy(SqlLexer lexer) {
+        String orderBy = lexer.hasLimit() ? null : lexer.getOrderBy();
+        return orderBy == null ? "id" : COLUMN_QUALIFIER_PATTERN.matcher(orderBy).replaceAll("");
+    }
+
+    /**
+     * 生成带有 LIMIT 的 SQL 查询语句，起止行号可以是数字或占位符。
+     */
+    private static String getLimitSql(SqlLexer lexer, String startRow, String endRow, boolean hasOffset,
+            String orderBy) {
+        // 子查询中不能带有 order by 子句，排序已经由 row_number() over 指定
+        if (!lexer.hasLimit() && lexer.getOrderByIndex() != -1 && !lexer.isOrderByRemovable()) {
+            throw new IllegalArgumentException("Order by with parameters can not be moved into row_number() over: "
+                    + lexer.getSql());
+        }
+        String sql = lexer.hasLimit() ? lexer.getSql() : lexer.removeOrderBy();
 
         StringBuilder pagingSelect = new StringBuilder(sql.length() + 100);
         pagingSelect
                 .append("select row_.* from (select row_number() over(order by " + orderBy + ") rownum, t.* from (");
         pagingSelect.append(sql);
         if (hasOffset) {
-            pagingSelect.append(") t) row_ where row_.rownum between " + (offset + 1) + " and " + limit);
+            pagingSelect.append(") t) row_ where row_.rownum between " + startRow + " and " + endRow);
         } else {
-            pagingSelect.append(") t) row_ where row_.rownum <= " + limit);
+            pagingSelect.append(") t) row_ where row_.rownum <= " + endRow);
         }
 
         return pagingSelect.toString();
     }
 
+    /**
+     * 通过在原 SQL 中加上 {@code TOP} 限制计数的上限，原 SQL 中可以带有 order by 子句。
+     */
+    @Override
+    public String getCappedCountSql(String sql, int cap) {
+        SqlLexer lexer = new SqlLexer(sql.trim());
+        if (!lexer.isSelect()) {
+            throw new IllegalArgumentException("Not a select statement: " + sql);
+        }
+
+        String topSql;
+        if (lexer.hasLimit()) {
+            topSql = "select top " + cap + " * from (" + lexer.getSql() + ") t";
+        } else {
+            int index = lexer.getSelectListIndex();
+            topSql = lexer.getSql().substring(0, index) + " top " + cap + lexer.getSql().substring(index);
+        }
+        return "select count(1) from (" + topSql + ") tmp_count_result";
+    }
+
+    /**
+     * 使用 sys.dm_db_partition_stats 中第一个表的行数估算记录数，不考虑查询条件。
+     */
+    @Override
+    public String getEstimatedCountSql(String sql) {
+        String tableName = SqlUtils.getTableName(sql);
+        if (tableName == null || tableName.indexOf('\'') != -1) {
+            return null;
+        }
+
+        return "select sum(row_count) from sys.dm_db_partition_stats where object_id = object_id('" + tableName
+                + "') and index_id in (0, 1)";
+    }
+
+    @Override
+    public boolean isEstimatedCountParameterized() {
+        return false;
+    }
+
+    @Override
+    public int getStreamingFetchSize() {
+        return STREAMING_FETCH_SIZE;
+    }
+
+    /**
+     * SQL Server 一条语句最多 2100 个参数，{@code VALUES} 最多 1000 行。
+     */
+    @Override
+    public int getMaxInsertRows(int columnCount) {
+        return Math.min(MAX_INSERT_ROWS, MAX_PARAMETERS / columnCount);
+    }
+
+    /**
+     * 使用 {@code MERGE}，数据源是 {@code VALUES} 构造的派生表。
+     */
+    @Override
+    public String getUpsertSql(String table, String[] columns, String[] keyColumns, int rows) {
+        SqlUtils.checkInsertRows(columns, rows, this::getMaxInsertRows);
+        return "MERGE INTO " + table + " AS target USING (VALUES " + SqlUtils.getRowValuesSql(columns.length, rows)
+                + ") AS source (" + StringUtils.join(columns, ", ") + ") "
+                + SqlUtils.getMergeClauses(columns, keyColumns) + ";";
+    }
+
+    @Override
+    public int getEstimatedCount(ResultSet rs) throws SQLException {
+        return rs.next() ? (int) Math.min(Integer.MAX_VALUE, rs.getLong(1)) : 0;
+    }
+
     @Override
     public boolean supportsLimit() {
         return true;
@@ -0,0 +1,481 @@
+/*
+ * @(#)SqlTemplate.java    Created on 2026-10-18
+ * Copyright (c) 2026 Guomi. All rights reserved.
+ */
+package com.guomi.meazza.dao;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.lang3.ArrayUtils;
+import org.apache.commons.lang3.StringUtils;
+
+import com.guomi.meazza.util.SqlUtils;
+
+/**
+ * 预先编译的动态查询 SQL 模板，是 {@link SqlCreator} 的不可变版本，线程安全，可以保存在静态变量中重复使用。
+ *
+ * <p>
+ * 模板由原始 SQL 和若干个可选的查询条件组成，每组生效的查询条件对应的 SQL 只生成一次：不超过 {@value #EAGER_PREDICATES}
+ * 个查询条件时在编译时全部生成，否则在第一次使用时生成并缓存。执行时按参数值确定生效的查询条件，直接取出对应的 SQL 并填充参数数组。
+ *
+ * <pre>
+ * private static final SqlTemplate USER_QUERY = SqlTemplate.builder("SELECT * FROM user WHERE")
+ *         .and("name = ?", Types.VARCHAR).and("age &gt; ?", Types.INTEGER).andIn("dept_id", Types.BIGINT)
+ *         .orderBy("id").build();
+ *
+ * SqlTemplate.Query query = USER_QUERY.bind(name, null, deptIds);
+ * jdbcTemplate.query(query.getSQL(), query.getArgs(), query.getArgTypes(), rowMapper);
+ * </pre>
+ *
+ * @author akuma
+ */
+public final class SqlTemplate {
+
+    /**
+     * 查询条件个数不超过该值时，在编译时生成所有组合的 SQL。
+     */
+    public static final int EAGER_PREDICATES = 10;
+
+    private static final int MAX_PREDICATES = 63;
+
+    private final String baseSql;
+    private final String firstPrefix;
+    private final String suffix;
+    private final Predicate[] predicates;
+
+    // 按生效的查询条件的位掩码缓存的 SQL
+    private final Variant[] variants;
+    private final ConcurrentMap<Long, Variant> lazyVariants;
+
+    private SqlTemplate(Builder builder) {
+        this.baseSql = builder.baseSql;
+        this.suffix = builder.suffix.toString();
+        this.predicates = builder.predicates.toArray(new Predicate[builder.predicates.size()]);
+        if (!builder.hasWhere) {
+            this.firstPrefix = " WHERE";
+        } else if (baseSql.toLowerCase().endsWith("where")) {
+            this.firstPrefix = "";
+        } else {
+            this.firstPrefix = null;
+        }
+
+        if (predicates.length <= EAGER_PREDICATES) {
+            variants = new Variant[1 << predicates.length];
+            for (int mask = 0; mask < variants.length; mask++) {
+                variants[mask] = compile(mask);
+            }
+            lazyVariants = null;
+        } else {
+            variants = null;
+            lazyVariants = new ConcurrentHashMap<>();
+        }
+    }
+
+    /**
+     * 创建模板的构造器。
+     *
+     * @param baseSQL
+     *            带有 WHERE 关键字的原始 sql
+     */
+    public static Builder builder(String baseSQL) {
+        return new Builder(baseSQL, true);
+    }
+
+    /**
+     * 创建模板的构造器。
+     *
+     * @param baseSQL
+     *            原始 sql
+     * @param hasWhere
+     *            原始 sql 是否带有 WHERE 关键字
+     */
+    public static Builder builder(String baseSQL, boolean hasWhere) {
+        return new Builder(baseSQL, hasWhere);
+    }
+
+    /**
+     * 按参数值生成查询。参数值和查询条件按定义的顺序一一对应：参数值为 null 的查询条件不生效；IN 条件的参数值是数组或集合，为空时不生效；
+     * 没有参数的查询条件的参数值是 {@code Boolean}，为 {@code true} 时生效。
+     *
+     * @param values
+     *            每个查询条件的参数值
+     * @return 查询的 SQL 和参数
+     */
+    public Query bind(Object... values) {
+        if (values.length != predicates.length) {
+            throw new IllegalArgumentException("Expected " + predicates.length + " values, but was " + values.length);
+        }
+
+        long mask = 0;
+        int argCount = 0;
+        for (int i = 0; i < predicates.length; i++) {
+            Predicate predicate = predicates[i];
+            int count = predicate.getArgCount(values[i]);
+            if (count >= 0) {
+                mask |= 1L << i;
+                argCount += count;
+            }
+        }
+
+        Variant variant = getVariant(mask);
+        Object[] args = new Object[argCount];
+        int[] argTypes = new int[argCount];
+        if (variant.inPredicates.length == 0) {
+            // 没有 IN 条件时参数类型是固定的
+            System.arraycopy(variant.argTypes, 0, argTypes, 0, argCount);
+            int index = 0;
+            for (int i = 0; i < predicates.length; i++) {
+                if ((mask & (1L << i)) != 0 && predicates[i].hasArg) {
+                    args[index++] = values[i];
+                }
+            }
+            return new Query(variant.segments[0], args, argTypes);
+        }
+
+        StringBuilder sql = new StringBuilder(variant.length);
+        int segment = 0;
+        int index = 0;
+        for (int i = 0; i < predicates.length; i++) {
+            if ((mask & (1L << i)) == 0) {
+                continue;
+            }
+
+            Predicate predicate = predicates[i];
+            if (predicate.in) {
+                sql.append(variant.segments[segment++]);
+                Object[] inValues = predicate.toArray(values[i]);
+                sql.append(predicate.getInSql(inValues.length));
+                index = predicate.fillInArgs(inValues, args, argTypes, index);
+            } else if (predicate.hasArg) {
+                args[index] = values[i];
+                argTypes[index++] = predicate.argType;
+            }
+        }
+        sql.append(variant.segments[segment]);
+        return new Query(sql.toString(), args, argTypes);
+    }
+
+    /**
+     * 获取查询条件的个数。
+     */
+    public int getPredicateCount() {
+        return predicates.length;
+    }
+
+    private Variant getVariant(long mask) {
+        if (variants != null) {
+            return variants[(int) mask];
+        }
+        return lazyVariants.computeIfAbsent(mask, this::compile);
+    }
+
+    private Variant compile(long mask) {
+        StringBuilder sql = new StringBuilder(baseSql);
+        List<String> segments = new ArrayList<>();
+        List<Predicate> inPredicates = new ArrayList<>();
+        int[] argTypes = new int[Long.bitCount(mask)];
+        int argCount = 0;
+        boolean first = true;
+        for (int i = 0; i < predicates.length; i++) {
+            if ((mask & (1L << i)) == 0) {
+                continue;
+            }
+
+            Predicate predicate = predicates[i];
+            if (first && firstPrefix != null) {
+                sql.append(firstPrefix);
+            } else {
+                sql.append(" ").append(predicate.operator);
+            }
+            first = false;
+            sql.append(" ");
+
+            if (predicate.in) {
+                segments.add(sql.toString());
+                sql.setLength(0);
+                inPredicates.add(predicate);
+            } else {
+                sql.append(predicate.expression);
+                if (predicate.hasArg) {
+                    argTypes[argCount++] = predicate.argType;
+                }
+            }
+        }
+        sql.append(suffix);
+        segments.add(sql.toString());
+
+        int length = 0;
+        for (String segment : segments) {
+            length += segment.length();
+        }
+        return new Variant(segments.toArray(new String[segments.size()]),
+                inPredicates.toArray(new Predicate[inPredicates.size()]), ArrayUtils.subarray(argTypes, 0, argCount),
+                length);
+    }
+
+    /**
+     * 模板的构造器。
+     */
+    public static final class Builder {
+
+        private final String baseSql;
+        private final boolean hasWhere;
+        private final List<Predicate> predicates = new ArrayList<>();
+        private final StringBuilder suffix = new StringBuilder();
+        private boolean hasOrderBy;
+
+        private Builder(String baseSQL, boolean hasWhere) {
+            if (StringUtils.isEmpty(baseSQL)) {
+                throw new IllegalArgumentException("baseSQL can't be null");
+            }
+            this.baseSql = baseSQL.trim();
+            this.hasWhere = hasWhere;
+        }
+
+        /**
+         * 增加没有参数的 AND 查询条件，参数值为 {@code true} 时生效。
+         */
+        public Builder and(String expression) {
+            return add(new Predicate("AND", expression, Integer.MIN_VALUE, false, false));
+        }
+
+        /**
+         * 增加带有一个参数的 AND 查询条件，例如 {@code name = ?}。
+         */
+        public Builder and(String expression, int argType) {
+            return add(new Predicate("AND", expression, argType, true, false));
+        }
+
+        /**
+         * 增加 AND IN 查询条件，参数个数的处理方式和 {@link SqlCreator#andIn(String, Object[], int, boolean)} 相同。
+         *
+         * @param columnName
+         *            列名称，比如 id
+         * @param argType
+         *            参数的类型
+         */
+        public Builder andIn(String columnName, int argType) {
+            return add(new Predicate("AND", columnName, argType, true, true));
+        }
+
+        /**
+         * 增加没有参数的 OR 查询条件，参数值为 {@code true} 时生效。
+         */
+        public Builder or(String expression) {
+            return add(new Predicate("OR", expression, Integer.MIN_VALUE, false, false));
+        }
+
+        /**
+         * 增加带有一个参数的 OR 查询条件。
+         */
+        public Builder or(String expression, int argType) {
+            return add(new Predicate("OR", expression, argType, true, false));
+        }
+
+        /**
+         * 添加 GROUP BY 语句，需要在排序之前调用。
+         */
+        public Builder groupBy(String... columnNames) {
+            if (ArrayUtils.isNotEmpty(columnNames)) {
+                suffix.append(" GROUP BY ").append(StringUtils.join(columnNames, ", "));
+            }
+            return this;
+        }
+
+        /**
+         * 升序排序。
+         */
+        public Builder orderBy(String columnName) {
+            return orderBy(columnName, false);
+        }
+
+        /**
+         * 降序排序。
+         */
+        public Builder orderByDesc(String columnName) {
+            return orderBy(columnName, true);
+        }
+
+        /**
+         * 排序。
+         */
+        public Builder orderBy(String columnName, boolean isDesc) {
+            suffix.append(hasOrderBy ? ", " : " ORDER BY ").append(columnName);
+            if (isDesc) {
+                suffix.append(" DESC");
+            }
+            hasOrderBy = true;
+            return this;
+        }
+
+        /**
+         * 编译模板。
+         */
+        public SqlTemplate build() {
+            return new SqlTemplate(this);
+        }
+
+        private Builder add(Predicate predicate) {
+            if (predicates.size() >= MAX_PREDICATES) {
+                throw new IllegalArgumentException("Too many predicates, max " + MAX_PREDICATES);
+            }
+            predicates.add(predicate);
+            return this;
+        }
+
+    }
+
+    /**
+     * 按参数值生成的查询，包含 SQL、参数值和参数类型。
+     */
+    public static final class Query {
+
+        private final String sql;
+        private final Object[] args;
+        private final int[] argTypes;
+
+        Query(String sql, Object[] args, int[] argTypes) {
+            this.sql = sql;
+            this.args = args;
+            this.argTypes = argTypes;
+        }
+
+        /**
+         * 取得查询 sql。
+         */
+        public String getSQL() {
+            return sql;
+        }
+
+        /**
+         * 取得所有参数的值数组。
+         */
+        public Object[] getArgs() {
+            return args;
+        }
+
+        /**
+         * 取得所有参数的类型数组。
+         */
+        public int[] getArgTypes() {
+            return argTypes;
+        }
+
+    }
+
+    /**
+     * 查询条件。
+     */
+    private static final class Predicate {
+
+        final String operator;
+        final String expression;
+        final int argType;
+        final boolean hasArg;
+        final boolean in;
+
+        // 按补齐后的参数个数缓存 IN 条件的 SQL
+        final ConcurrentMap<Integer, String> inSqlCache;
+
+        Predicate(String operator, String expression, int argType, boolean hasArg, boolean in) {
+            this.operator = operator;
+            this.expression = expression;
+            this.argType = argType;
+            this.hasArg = hasArg;
+            this.in = in;
+            this.inSqlCache = in ? new ConcurrentHashMap<>() : null;
+        }
+
+        /**
+         * 获取参数值对应的参数个数，查询条件不生效时返回 -1。
+         */
+        int getArgCount(Object value) {
+            if (!hasArg) {
+                return Boolean.TRUE.equals(value) ? 0 : -1;
+            }
+            if (value == null) {
+                return -1;
+            }
+            if (!in) {
+                return 1;
+            }
+
+            int size = value instanceof Collection ? ((Collection<?>) value).size() : ((Object[]) value).length;
+            return size == 0 ? -1 : getPaddedSize(size);
+        }
+
+        Object[] toArray(Object value) {
+            return value instanceof Collection ? ((Collection<?>) value).toArray() : (Object[]) value;
+        }
+
+        /**
+         * 获取 IN 条件的 SQL，例如 {@code id IN (?,?)}，参数超过 {@link SqlUtils#MAX_IN_SIZE} 个时拆分成多个 IN 条件。
+         */
+        String getInSql(int size) {
+            return inSqlCache.computeIfAbsent(getPaddedSize(size), paddedSize -> {
+                int chunks = (size + SqlUtils.MAX_IN_SIZE - 1) / SqlUtils.MAX_IN_SIZE;
+                StringBuilder sql = new StringBuilder();
+                if (chunks > 1) {
+                    sql.append("(");
+                }
+                for (int from = 0; from < size; from += SqlUtils.MAX_IN_SIZE) {
+                    if (from > 0) {
+                        sql.append(" OR ");
+                    }
+                    int bucketSize = SqlUtils.getInBucketSize(Math.min(SqlUtils.MAX_IN_SIZE, size - from));
+                    sql.append(expression).append(" IN ").append(SqlCreator.getInSQL(bucketSize));
+                }
+                if (chunks > 1) {
+                    sql.append(")");
+                }
+                return sql.toString();
+            });
+        }
+
+        /**
+         * 把 IN 条件的参数值按补齐后的个数填充到参数数组中，返回下一个参数的位置。
+         */
+        int fillInArgs(Object[] values, Object[] args, int[] argTypes, int index) {
+            for (int from = 0; from < values.length; from += SqlUtils.MAX_IN_SIZE) {
+                int size = Math.min(SqlUtils.MAX_IN_SIZE, values.length - from);
+                int bucketSize = SqlUtils.getInBucketSize(size);
+                for (int i = 0; i < bucketSize; i++) {
+                    args[index] = values[from + Math.min(i, size - 1)];
+                    argTypes[index++] = argType;
+                }
+            }
+            return index;
+        }
+
+        private static int getPaddedSize(int size) {
+            int fullChunks = (size - 1) / SqlUtils.MAX_IN_SIZE;
+            return fullChunks * SqlUtils.MAX_IN_SIZE + SqlUtils.getInBucketSize(size - fullChunks
+                    * SqlUtils.MAX_IN_SIZE);
+        }
+
+    }
+
+    /**
+     * 一组生效的查询条件对应的 SQL。IN 条件的 SQL 和参数个数有关，SQL 在 IN 条件处分段。
+     */
+    private static final class Variant {
+
+        final String[] segments;
+        final Predicate[] inPredicates;
+        final int[] argTypes;
+        final int length;
+
+        Variant(String[] segments, Predicate[] inPredicates, int[] argTypes, int length) {
+            this.segments = segments;
+            this.inPredicates = inPredicates;
+            this.argTypes = argTypes;
+            this.length = length;
+        }
+
+    }
+
+}
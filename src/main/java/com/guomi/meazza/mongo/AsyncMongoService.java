@@ -0,0 +1,312 @@
+/*
+ * @(#)AsyncMongoService.java    Created on 2026-10-18
+ * Copyright (c) 2026 Guomi. All rights reserved.
+ */
+package com.guomi.meazza.mongo;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import com.guomi.meazza.util.Pagination;
+import com.mongodb.WriteResult;
+
+/**
+ * {@link BasicMongoService} 的异步版本，操作在单独的有界线程池中执行并返回 {@link CompletableFuture}。
+ *
+ * <p>
+ * 用于一个请求中需要执行多个互不依赖的查询的场景，例如：
+ *
+ * <pre>
+ * CompletableFuture&lt;User&gt; user = asyncMongoService.findById(userId, User.class);
+ * CompletableFuture&lt;List&lt;Post&gt;&gt; posts = asyncMongoService.find(query, page, Post.class);
+ * CompletableFuture.allOf(user, posts).join();
+ * </pre>
+ *
+ * 多个查询的总耗时接近最慢的一个，而不是所有查询耗时之和。调用线程仍然需要等待结果，所以这里只减少请求的响应时间，不减少占用的线程数。
+ *
+ * <p>
+ * 线程池的队列满时由调用线程执行操作，不会无限制地堆积任务。分页查询会修改 {@link Pagination} 对象，在 Future 完成之前不要读取分页信息。
+ *
+ * @author akuma
+ */
+public class AsyncMongoService {
+
+    private static final int DEFAULT_THREADS = 16;
+    private static final int QUEUE_SIZE_PER_THREAD = 64;
+
+    private final BasicMongoService mongoService;
+    private final ExecutorService executor;
+    private final boolean ownExecutor;
+
+    /**
+     * 构造方法，使用 16 个线程的线程池。
+     */
+    public AsyncMongoService(BasicMongoService mongoService) {
+        this(mongoService, DEFAULT_THREADS);
+    }
+
+    /**
+     * 构造方法。
+     *
+     * @param threads
+     *            线程池的线程数，一般和 Mongo 连接池中每个应用实例可以使用的连接数相当
+     */
+    public AsyncMongoService(BasicMongoService mongoService, int threads) {
+        this(mongoService, newExecutor(threads), true);
+    }
+
+    /**
+     * 构造方法，使用外部的线程池，线程池应该是有界的，队列满时建议由调用线程执行。外部线程池不会随此对象关闭。
+     */
+    public AsyncMongoService(BasicMongoService mongoService, ExecutorService executor) {
+        this(mongoService, executor, false);
+    }
+
+    private AsyncMongoService(BasicMongoService mongoService, ExecutorService executor, boolean ownExecutor) {
+        if (mongoService == null || executor == null) {
+            throw new IllegalArgumentException("mongoService and executor must not be null");
+        }
+        this.mongoService = mongoService;
+        this.executor = executor;
+        this.ownExecutor = ownExecutor;
+    }
+
+    /**
+     * 获取同步版本的 Mongo Service。
+     */
+    public BasicMongoService getMongoService() {
+        return mongoService;
+    }
+
+    /**
+     * 在线程池中执行任意操作，用于没有异步版本的方法，例如 {@code submit(() -> mongoService.aggregate(...))}。
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> operation) {
+        return CompletableFuture.supplyAsync(operation, executor);
+    }
+
+    /**
+     * 根据 ID 查询文档。
+     */
+    public <T> CompletableFuture<T> findById(Object id, Class<T> entityClass) {
+        return submit(() -> mongoService.findById(id, entityClass));
+    }
+
+    /**
+     * 根据 ID 查询文档。
+     */
+    public <T> CompletableFuture<T> findById(Object id, Class<T> entityClass, String collectionName) {
+        return submit(() -> mongoService.findById(id, entityClass, collectionName));
+    }
+
+    /**
+     * 根据多个 ID 查询文档。
+     */
+    public <T> CompletableFuture<List<T>> findByIds(List<?> ids, Class<T> entityClass) {
+        return submit(() -> mongoService.findByIds(ids, entityClass));
+    }
+
+    /**
+     * 根据多个 ID 查询文档。
+     */
+    public <T> CompletableFuture<List<T>> findByIds(List<?> ids, Class<T> entityClass, String collectionName) {
+        return submit(() -> mongoService.findByIds(ids, entityClass, collectionName));
+    }
+
+    /**
+     * 根据 {@code Query} 条件获取一个文档。
+     */
+    public <T> CompletableFuture<T> findOne(Query query, Class<T> entityClass) {
+        return submit(() -> mongoService.findOne(query, entityClass));
+    }
+
+    /**
+     * 根据 {@code Query} 条件获取一个文档。
+     */
+    public <T> CompletableFuture<T> findOne(Query query, Class<T> entityClass, String collectionName) {
+        return submit(() -> mongoService.findOne(query, entityClass, collectionName));
+    }
+
+    /**
+     * 根据 {@code Query} 条件获取文档列表。
+     */
+    public <T> CompletableFuture<List<T>> find(Query query, Class<T> entityClass) {
+        return submit(() -> mongoService.find(query, entityClass));
+    }
+
+    /**
+     * 根据 {@code Query} 条件获取文档列表。
+     */
+    public <T> CompletableFuture<List<T>> find(Query query, Class<T> entityClass, String collectionName) {
+        return submit(() -> mongoService.find(query, entityClass, collectionName));
+    }
+
+    /**
+     * 根据 {@code Query} 条件获取文档列表，只返回投影中的字段。
+     */
+    public <T> CompletableFuture<List<T>> find(Query query, MongoProjection projection, Class<T> entityClass) {
+        return submit(() -> mongoService.find(query, projection, entityClass));
+    }
+
+    /**
+     * 根据 {@code Query} 条件和分页信息获取文档列表，Future 完成后 {@code page} 中的分页信息才可用。
+     */
+    public <T> CompletableFuture<List<T>> find(Query query, Pagination page, Class<T> entityClass) {
+        return submit(() -> mongoService.find(query, page, entityClass));
+    }
+
+    /**
+     * 根据 {@code Query} 条件和分页信息获取文档列表，Future 完成后 {@code page} 中的分页信息才可用。
+     */
+    public <T> CompletableFuture<List<T>> find(Query query, Pagination page, Class<T> entityClass,
+            String collectionName) {
+        return submit(() -> mongoService.find(query, page, entityClass, collectionName));
+    }
+
+    /**
+     * 根据 {@code Query} 条件和分页信息获取文档列表，只返回投影中的字段，Future 完成后 {@code page} 中的分页信息才可用。
+     */
+    public <T> CompletableFuture<List<T>> find(Query query, Pagination page, MongoProjection projection,
+            Class<T> entityClass) {
+        return submit(() -> mongoService.find(query, page, projection, entityClass));
+    }
+
+    /**
+     * 获取满足 {@code query} 条件的文档数。
+     */
+    public CompletableFuture<Long> count(Query query, Class<?> entityClass) {
+        return submit(() -> mongoService.count(query, entityClass));
+    }
+
+    /**
+     * 获取满足 {@code query} 条件的文档数。
+     */
+    public CompletableFuture<Long> count(Query query, String collectionName) {
+        return submit(() -> mongoService.count(query, collectionName));
+    }
+
+    /**
+     * 保存对象到文档中，参见 {@link BasicMongoService#save(Object)}。
+     */
+    public CompletableFuture<Void> save(Object object) {
+        return submit(() -> {
+            mongoService.save(object);
+            return null;
+        });
+    }
+
+    /**
+     * 将对象作为一个新文档添加到集合中，参见 {@link BasicMongoService#insert(Object)}。
+     */
+    public CompletableFuture<Void> insert(Object object) {
+        return submit(() -> {
+            mongoService.insert(object);
+            return null;
+        });
+    }
+
+    /**
+     * 将对象作为一个新文档添加到集合中，参见 {@link BasicMongoService#insert(Object)}。
+     */
+    public CompletableFuture<Void> insert(Object object, String collectionName) {
+        return submit(() -> {
+            mongoService.insert(object, collectionName);
+            return null;
+        });
+    }
+
+    /**
+     * 将多个对象作为新文档添加到集合中。
+     */
+    public <T> CompletableFuture<Void> insert(Collection<T> objects, Class<T> entityClass) {
+        return submit(() -> {
+            mongoService.insert(objects, entityClass);
+            return null;
+        });
+    }
+
+    /**
+     * 更新指定 {@code id} 的文档。
+     */
+    public CompletableFuture<WriteResult> updateById(Object id, Update update, Class<?> entityClass) {
+        return submit(() -> mongoService.updateById(id, update, entityClass));
+    }
+
+    /**
+     * 更新指定 {@code id} 的文档。
+     */
+    public CompletableFuture<WriteResult> updateById(Object id, Update update, String collectionName) {
+        return submit(() -> mongoService.updateById(id, update, collectionName));
+    }
+
+    /**
+     * 删除指定 {@code id} 的文档。
+     */
+    public CompletableFuture<Void> removeById(Object id, Class<?> entityClass) {
+        return submit(() -> {
+            mongoService.removeById(id, entityClass);
+            return null;
+        });
+    }
+
+    /**
+     * 批量删除指定 {@code id} 的文档。
+     */
+    public CompletableFuture<Void> removeByIds(Collection<?> ids, Class<?> entityClass) {
+        return submit(() -> {
+            mongoService.removeByIds(ids, entityClass);
+            return null;
+        });
+    }
+
+    /**
+     * 批量删除指定 {@code id} 的文档。
+     */
+    public CompletableFuture<Void> removeByIds(Collection<?> ids, String collectionName) {
+        return submit(() -> {
+            mongoService.removeByIds(ids, collectionName);
+            return null;
+        });
+    }
+
+    /**
+     * 关闭自己创建的线程池，已提交的操作会继续执行完。
+     */
+    @PreDestroy
+    public void destroy() {
+        if (ownExecutor && !executor.isShutdown()) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * 创建执行 Mongo 操作的线程池，线程数固定，队列满时由调用线程执行。
+     */
+    private static ExecutorService newExecutor(int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("threads must be greater than 0");
+        }
+
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("async-mongo-");
+        threadFactory.setDaemon(true);
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(threads * QUEUE_SIZE_PER_THREAD), threadFactory,
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+}
@@ -4,11 +4,25 @@
  */
 package com.guomi.meazza.mongo;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
 
 import javax.annotation.Resource;
 
@@ -17,6 +31,7 @@ import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.domain.Sort.Direction;
 import org.springframework.data.mongodb.core.FindAndModifyOptions;
@@ -24,17 +39,28 @@ import org.springframework.data.mongodb.core.MongoOperations;
 import org.springframework.data.mongodb.core.aggregation.Aggregation;
 import org.springframework.data.mongodb.core.aggregation.AggregationResults;
 import org.springframework.data.mongodb.core.aggregation.TypedAggregation;
+import org.springframework.data.mongodb.core.convert.QueryMapper;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
 import org.springframework.data.mongodb.core.mapreduce.GroupBy;
 import org.springframework.data.mongodb.core.mapreduce.GroupByResults;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.util.CloseableIterator;
 
+import com.guomi.meazza.dao.RowCountCache;
 import com.guomi.meazza.support.LongIdEntity;
 import com.guomi.meazza.support.StringIdEntity;
+import com.guomi.meazza.util.LruCache;
 import com.guomi.meazza.util.ObjectHelper;
 import com.guomi.meazza.util.Pagination;
+import com.guomi.meazza.util.Pagination.CountMode;
 import com.guomi.meazza.util.StringUtils;
+import com.mongodb.BasicDBObject;
+import com.mongodb.Bytes;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
 import com.mongodb.WriteResult;
 
 /**
@@ -44,11 +70,32 @@ import com.mongodb.WriteResult;
  */
 public abstract class BasicMongoService {
 
+    private static final int DEFAULT_STREAM_BATCH_SIZE = 500;
+    private static final int SORT_INDEX_CACHE_SIZE = 1000;
+    private static final long DEFAULT_SORT_INDEX_TTL = TimeUnit.SECONDS.toMillis(60);
+
     protected Logger logger = LoggerFactory.getLogger(BasicMongoService.class);
 
     @Resource
     protected MongoOperations mongoOps;
 
+    // 分页查询的总记录数缓存，没有配置时不缓存
+    @Autowired(required = false)
+    protected RowCountCache rowCountCache;
+
+    // 按 ID 读取的文档缓存，没有配置时不缓存
+    @Autowired(required = false)
+    protected MongoDocumentCache documentCache;
+
+    // 分页查询时并发执行 count 查询的线程池，为 null 时在分页查询之前串行执行 count 查询
+    private ExecutorService countExecutor;
+
+    // 查询条件和排序方式对应的索引，过期后重新查找
+    private final LruCache<String, SortIndex> sortIndexes = new LruCache<>(SORT_INDEX_CACHE_SIZE);
+
+    // 索引在缓存中的有效时间（毫秒），小于等于 0 时每次都重新查找
+    private long sortIndexTtl = DEFAULT_SORT_INDEX_TTL;
+
     //    public abstract String getCollectionName();
 
     /**
@@ -73,6 +120,15 @@ public abstract class BasicMongoService {
             }
         }
 
+        if (documentCache != null) {
+            String collection = getCollectionName(entityClass, collectionName);
+            if (documentCache.isCacheable(collection)) {
+                DBObject document = documentCache.get(collection, id, key -> mongoOps.findOne(Query.query(
+                        Criteria.where("_id").is(key)), DBObject.class, collection));
+                return document == null ? null : mongoOps.getConverter().read(entityClass, document);
+            }
+        }
+
         if (StringUtils.isBlank(collectionName)) {
             return mongoOps.findById(id, entityClass);
         }
@@ -95,6 +151,19 @@ public abstract class BasicMongoService {
             return Collections.emptyList();
         }
 
+        if (documentCache != null) {
+            String collection = getCollectionName(entityClass, collectionName);
+            if (documentCache.isCacheable(collection)) {
+                List<DBObject> documents = documentCache.getAll(collection, ids, missingIds -> mongoOps.find(
+                        Query.query(Criteria.where("_id").in(missingIds)), DBObject.class, collection));
+                List<T> entities = new ArrayList<>(documents.size());
+                for (DBObject document : documents) {
+                    entities.add(mongoOps.getConverter().read(entityClass, document));
+                }
+                return entities;
+            }
+        }
+
         if (StringUtils.isBlank(collectionName)) {
             return mongoOps.find(getQueryByIds(ids), entityClass);
         }
@@ -102,6 +171,43 @@ public abstract class BasicMongoService {
         return mongoOps.find(getQueryByIds(ids), entityClass, collectionName);
     }
 
+    /**
+     * 根据 ID 查询文档，只返回 {@code projection} 指定的字段。
+     */
+    public <T> T findById(Object id, MongoProjection projection, Class<T> entityClass) {
+        return findById(id, projection, entityClass, null);
+    }
+
+    /**
+     * 根据 ID 查询文档，只返回 {@code projection} 指定的字段。
+     */
+    public <T> T findById(Object id, MongoProjection projection, Class<T> entityClass, String collectionName) {
+        if (isEmptyId(id)) {
+            return null;
+        }
+        return mongoOps.findOne(applyProjection(getQueryById(id), projection), entityClass, getCollectionName(
+                entityClass, collectionName));
+    }
+
+    /**
+     * 根据多个 ID 查询文档，只返回 {@code projection} 指定的字段。
+     */
+    public <T> List<T> findByIds(List<?> ids, MongoProjection projection, Class<T> entityClass) {
+        return findByIds(ids, projection, entityClass, null);
+    }
+
+    /**
+     * 根据多个 ID 查询文档，只返回 {@code projection} 指定的字段。
+     */
+    public <T> List<T> findByIds(List<?> ids, MongoProjection projection, Class<T> entityClass,
+            String collectionName) {
+        if (CollectionUtils.isEmpty(ids)) {
+            return Collections.emptyList();
+        }
+        return mongoOps.find(applyProjection(getQueryByIds(ids), projection), entityClass, getCollectionName(
+                entityClass, collectionName));
+    }
+
     /**
      * 根据 {@code Query} 条件查询满足条件的第一个文档。
      */
@@ -120,21 +226,30 @@ public abstract class BasicMongoService {
      * 查找满足 {@code query} 条件的第一个文档并修改。
      */
     public <T> T findAndModify(Query query, Update update, Class<T> entityClass) {
-        return mongoOps.findAndModify(query, update, entityClass);
+        T entity = mongoOps.findAndModify(query, update, entityClass);
+        evictRowCounts(entityClass);
+        evictDocument(entityClass, entity);
+        return entity;
     }
 
     /**
      * 查找满足 {@code query} 条件的第一个文档并修改。
      */
     public <T> T findAndModify(Query query, Update update, FindAndModifyOptions options, Class<T> entityClass) {
-        return mongoOps.findAndModify(query, update, options, entityClass);
+        T entity = mongoOps.findAndModify(query, update, options, entityClass);
+        evictRowCounts(entityClass);
+        evictDocument(entityClass, entity);
+        return entity;
     }
 
     /**
      * 查找满足 {@code query} 条件的第一个文档并修改。
      */
     public <T> T findAndModify(Query query, Update update, Class<T> entityClass, String collectionName) {
-        return mongoOps.findAndModify(query, update, entityClass, collectionName);
+        T entity = mongoOps.findAndModify(query, update, entityClass, collectionName);
+        evictRowCounts(collectionName);
+        evictDocument(collectionName, entity);
+        return entity;
     }
 
     /**
@@ -142,21 +257,30 @@ public abstract class BasicMongoService {
      */
     public <T> T findAndModify(Query query, Update update, FindAndModifyOptions options, Class<T> entityClass,
             String collectionName) {
-        return mongoOps.findAndModify(query, update, options, entityClass, collectionName);
+        T entity = mongoOps.findAndModify(query, update, options, entityClass, collectionName);
+        evictRowCounts(collectionName);
+        evictDocument(collectionName, entity);
+        return entity;
     }
 
     /**
      * 查找满足 {@code query} 条件的第一个文档并删除。
      */
     public <T> T findAndRemove(Query query, Class<T> entityClass) {
-        return mongoOps.findAndRemove(query, entityClass);
+        T entity = mongoOps.findAndRemove(query, entityClass);
+        evictRowCounts(entityClass);
+        evictDocument(entityClass, entity);
+        return entity;
     }
 
     /**
      * 查找满足 {@code query} 条件的第一个文档并删除。
      */
     public <T> T findAndRemove(Query query, Class<T> entityClass, String collectionName) {
-        return mongoOps.findAndRemove(query, entityClass, collectionName);
+        T entity = mongoOps.findAndRemove(query, entityClass, collectionName);
+        evictRowCounts(collectionName);
+        evictDocument(collectionName, entity);
+        return entity;
     }
 
     /**
@@ -173,6 +297,48 @@ public abstract class BasicMongoService {
         return mongoOps.find(query, entityClass, collectionName);
     }
 
+    /**
+     * 根据 {@code Query} 条件获取文档列表，只返回 {@code projection} 指定的字段。
+     */
+    public <T> List<T> find(Query query, MongoProjection projection, Class<T> entityClass) {
+        return find(query, projection, entityClass, null);
+    }
+
+    /**
+     * 根据 {@code Query} 条件获取文档列表，只返回 {@code projection} 指定的字段。
+     */
+    public <T> List<T> find(Query query, MongoProjection projection, Class<T> entityClass, String collectionName) {
+        return mongoOps.find(applyProjection(query, projection), entityClass, getCollectionName(entityClass,
+                collectionName));
+    }
+
+    /**
+     * 根据 {@code Query} 条件获取文档列表，转换为投影类的对象，只读取投影类中的字段，参见 {@link MongoProjection#of(Class)}。
+     * 投影类的属性名需要和实体类一致。
+     *
+     * @param entityClass
+     *            实体类，用于确定集合
+     * @param projectionClass
+     *            投影类
+     */
+    public <R> List<R> findAs(Query query, Class<?> entityClass, Class<R> projectionClass) {
+        return findAs(query, entityClass, projectionClass, null);
+    }
+
+    /**
+     * 根据 {@code Query} 条件获取文档列表，转换为投影类的对象，只读取投影类中的字段，参见 {@link MongoProjection#of(Class)}。
+     * 投影类的属性名需要和实体类一致。
+     *
+     * @param entityClass
+     *            实体类，集合名为空时用于确定集合
+     * @param projectionClass
+     *            投影类
+     */
+    public <R> List<R> findAs(Query query, Class<?> entityClass, Class<R> projectionClass, String collectionName) {
+        return mongoOps.find(MongoProjection.of(projectionClass).applyTo(query), projectionClass, getCollectionName(
+                entityClass, collectionName));
+    }
+
     /**
      * 根据 {@code Query} 条件以分页方式获取文档列表。
      */
@@ -183,40 +349,284 @@ public abstract class BasicMongoService {
     /**
      * 根据 {@code Query} 条件以分页方式获取文档列表。
      */
-    @SuppressWarnings("deprecation")
     public <T> List<T> find(Query query, Pagination page, Class<T> entityClass, String collectionName) {
+        return findPage(query, page, null, entityClass, entityClass, collectionName);
+    }
+
+    /**
+     * 根据 {@code Query} 条件以分页方式获取文档列表，只返回 {@code projection} 指定的字段。使用 keyset 分页或锚点时，
+     * 排序字段会自动加入投影。
+     */
+    public <T> List<T> find(Query query, Pagination page, MongoProjection projection, Class<T> entityClass) {
+        return find(query, page, projection, entityClass, null);
+    }
+
+    /**
+     * 根据 {@code Query} 条件以分页方式获取文档列表，只返回 {@code projection} 指定的字段。使用 keyset 分页或锚点时，
+     * 排序字段会自动加入投影。
+     */
+    public <T> List<T> find(Query query, Pagination page, MongoProjection projection, Class<T> entityClass,
+            String collectionName) {
+        return findPage(query, page, projection, entityClass, entityClass, collectionName);
+    }
+
+    /**
+     * 根据 {@code Query} 条件以分页方式获取文档列表，转换为投影类的对象，参见 {@link #findAs(Query, Class, Class)}。
+     * 使用 keyset 分页或锚点时，投影类中必须包含排序字段和 id。
+     */
+    public <R> List<R> findAs(Query query, Pagination page, Class<?> entityClass, Class<R> projectionClass) {
+        return findAs(query, page, entityClass, projectionClass, null);
+    }
+
+    /**
+     * 根据 {@code Query} 条件以分页方式获取文档列表，转换为投影类的对象，参见 {@link #findAs(Query, Class, Class)}。
+     * 使用 keyset 分页或锚点时，投影类中必须包含排序字段和 id。
+     */
+    public <R> List<R> findAs(Query query, Pagination page, Class<?> entityClass, Class<R> projectionClass,
+            String collectionName) {
+        return findPage(query, page, MongoProjection.of(projectionClass), entityClass, projectionClass,
+                collectionName);
+    }
+
+    /**
+     * 分页查询，总记录数按实体类计算，查询结果转换为 {@code resultClass} 的对象。
+     */
+    private <T> List<T> findPage(Query query, Pagination page, MongoProjection projection, Class<?> entityClass,
+            Class<T> resultClass, String collectionName) {
+        String collection = getCollectionName(entityClass, collectionName);
         Integer count = null;
+        Future<Integer> pendingCount = null;
         if (page.isPageCountEnable()) {
-            count = (int) mongoOps.count(query, entityClass); // 先获取结果集数量
-            page.setRowCount(count); // 计算分页
+            count = getCachedPageRowCount(query, page, collection);
+            if (count == null && countExecutor != null) {
+                pendingCount = countExecutor.submit(() -> countPageRowsAndCache(query, page, entityClass,
+                        collection));
+            } else if (count == null) {
+                count = countPageRowsAndCache(query, page, entityClass, collection); // 先获取结果集数量
+            }
+        }
+
+        if (pendingCount == null) {
+            if (count != null) {
+                setPageRowCount(page, count); // 计算分页
+            }
+            page.initialize();
+            logPageQuery(page, count);
+            return queryPage(query, page, page.getPageNum(), projection, entityClass, resultClass, collection);
         }
 
+        // 按请求的页码乐观地查询，count 查询同时执行
+        int pageNum = Math.max(1, page.getPageNum());
+        List<T> list;
+        try {
+            list = queryPage(query, page, pageNum, projection, entityClass, resultClass, collection);
+        } catch (RuntimeException e) {
+            pendingCount.cancel(true);
+            throw e;
+        }
+
+        count = waitForCount(pendingCount);
+        setPageRowCount(page, count);
         page.initialize();
+        logPageQuery(page, count);
 
-        if (count == null) {
-            logger.debug("Page query: skip={}, limit={}", page.getCurrentRowNum(), page.getPageSize());
-        } else {
-            logger.debug("Page query: count={}, skip={}, limit={}", count, page.getCurrentRowNum(), page.getPageSize());
+        // 请求的页码超出了范围，按修正后的页码重新查询。页码超出范围时第一次查询的结果一定为空
+        if (!page.isSeekEnable() && page.getPageNum() > 0 && page.getPageNum() != pageNum) {
+            logger.debug("Page {} out of range, query page {} again", pageNum, page.getPageNum());
+            list = queryPage(query, page, page.getPageNum(), projection, entityClass, resultClass, collection);
         }
+        return list;
+    }
 
-        // 只获取分页下的数据
-        query.skip(page.getCurrentRowNum() - 1).limit(page.getPageSize());
+    /**
+     * 查询第 {@code pageNum} 页的文档，{@code page} 中的总记录数和页码不会被修改。分页条件加在派生的查询对象上，
+     * 追加的 id 排序字段只加在分页对象的副本中，调用者的 {@code query} 和排序方式不会被修改，count 查询也可以同时使用原始的查询条件。
+     */
+    @SuppressWarnings("deprecation")
+    private <T> List<T> queryPage(Query query, Pagination page, int pageNum, MongoProjection projection,
+            Class<?> entityClass, Class<T> resultClass, String collection) {
+        Query pageQuery = new DerivedQuery(query);
+        boolean anchorEnable = isSeekAnchorUsable(page);
+        Pagination seekPage = null;
+        String sortIndexKey = null;
+        if (page.isSeekEnable() || anchorEnable) {
+            seekPage = copySeekPage(page);
+            sortIndexKey = addSortIndexHint(pageQuery, seekPage, entityClass, collection);
+
+            // 获取下一页需要读取最后一个文档的排序字段值
+            if (projection != null) {
+                List<String> sortFields = new ArrayList<>();
+                for (Pair<String, Boolean> sort : seekPage.getSorts()) {
+                    sortFields.add(sort.getLeft());
+                }
+                projection = projection.with(sortFields);
+            }
+        }
+        applyProjection(pageQuery, projection);
+
+        if (page.isSeekEnable()) {
+            // keyset 分页：根据上一页最后一个文档的排序字段值生成范围条件，不使用 skip
+            addSeekCriteria(pageQuery, seekPage);
+            pageQuery.limit(page.getPageSize());
+        } else {
+            int skip = Math.max(0, (pageNum - 1) * page.getPageSize());
+            if (anchorEnable) {
+                // 从最近的锚点开始定位，只跳过锚点和当前页之间的文档
+                page.setSeekAnchorScope(getSeekAnchorScope(query, seekPage, collection));
+                Map.Entry<Integer, List<Object>> anchor = skip > 0 ? page.getSeekAnchorBefore(pageNum) : null;
+                if (anchor != null) {
+                    seekPage.setSeekValues(new ArrayList<>(anchor.getValue()));
+                    addSeekCriteria(pageQuery, seekPage);
+                    skip = (pageNum - 1 - anchor.getKey()) * page.getPageSize();
+                    logger.debug("Page query: seek from anchor of page {}, skip={}", anchor.getKey(), skip);
+                }
+            }
+
+            // 只获取分页下的数据
+            pageQuery.skip(skip).limit(page.getPageSize());
+        }
 
         // 老版本的排序方式处理
         if (!StringUtils.isBlank(page.getOrderBy())) {
-            query.with(new Sort(page.isDesc() ? Direction.DESC : Direction.ASC, page.getOrderBy()));
+            pageQuery.with(new Sort(page.isDesc() ? Direction.DESC : Direction.ASC, page.getOrderBy()));
         }
 
         // 新版本的排序方式处理
-        for (Pair<String, Boolean> sort : page.getSorts()) {
-            query.with(new Sort(sort.getRight() ? Direction.DESC : Direction.ASC, sort.getLeft()));
+        for (Pair<String, Boolean> sort : (seekPage != null ? seekPage : page).getSorts()) {
+            pageQuery.with(new Sort(sort.getRight() ? Direction.DESC : Direction.ASC, sort.getLeft()));
         }
 
-        if (StringUtils.isBlank(collectionName)) {
-            return mongoOps.find(query, entityClass);
+        List<T> list;
+        try {
+            list = mongoOps.find(pageQuery, resultClass, collection);
+        } catch (RuntimeException e) {
+            if (sortIndexKey == null || !isBadHint(e)) {
+                throw e;
+            }
+
+            // 缓存的索引已经被删除或重建，清除后不带索引提示重新查询，下次分页查询时重新查找索引
+            logger.warn("Page query: index {} is no longer usable on {}, retry without hint", pageQuery.getHint(),
+                    collection);
+            sortIndexes.remove(sortIndexKey);
+            ((DerivedQuery) pageQuery).disableHint();
+            list = mongoOps.find(pageQuery, resultClass, collection);
         }
 
-        return mongoOps.find(query, entityClass, collectionName);
+        if (seekPage != null && !list.isEmpty()) {
+            seekPage.seekAfter(list.get(list.size() - 1));
+            if (anchorEnable) {
+                page.putSeekAnchor(pageNum, seekPage.getSeekValues());
+            } else {
+                page.setSeekValues(seekPage.getSeekValues());
+            }
+        }
+        return list;
+    }
+
+    /**
+     * 以游标方式逐个读取满足 {@code query} 条件的文档，参见 {@link #stream(Query, Class, String, int, boolean)}。
+     */
+    public <T> CloseableIterator<T> stream(Query query, Class<T> entityClass) {
+        return stream(query, entityClass, null);
+    }
+
+    /**
+     * 以游标方式逐个读取满足 {@code query} 条件的文档，参见 {@link #stream(Query, Class, String, int, boolean)}。
+     */
+    public <T> CloseableIterator<T> stream(Query query, Class<T> entityClass, String collectionName) {
+        return stream(query, entityClass, collectionName, DEFAULT_STREAM_BATCH_SIZE, false);
+    }
+
+    /**
+     * 以游标方式逐个读取满足 {@code query} 条件的文档。文档按批从服务器读取，内存占用和集合的大小无关，适合导出、重建索引等任务。
+     * 返回的迭代器读取完所有文档时自动关闭，没有读取完时需要调用 {@code close()} 关闭，可以使用 try-with-resources。
+     *
+     * @param batchSize
+     *            每批从服务器读取的文档数
+     * @param noCursorTimeout
+     *            是否禁止服务器关闭空闲超过 10 分钟的游标，处理每批文档较慢时使用。此时必须关闭迭代器，否则游标会一直占用服务器资源
+     */
+    public <T> CloseableIterator<T> stream(Query query, Class<T> entityClass, String collectionName, int batchSize,
+            boolean noCursorTimeout) {
+        MongoPersistentEntity<?> entity = getPersistentEntity(entityClass);
+        DBObject mappedQuery = new QueryMapper(mongoOps.getConverter()).getMappedObject(query.getQueryObject(),
+                entity);
+        return openCursor(query, mappedQuery, entityClass, getCollectionName(entityClass, collectionName),
+                batchSize, noCursorTimeout);
+    }
+
+    /**
+     * 并行处理满足 {@code query} 条件的文档，使用并行度为 {@code parallelism} 的 ForkJoinPool，参见
+     * {@link #forEachParallel(Query, Class, String, ForkJoinPool, Consumer)}。
+     */
+    public <T> void forEachParallel(Query query, Class<T> entityClass, String collectionName, int parallelism,
+            Consumer<? super T> consumer) {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            forEachParallel(query, entityClass, collectionName, pool, consumer);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * 并行处理满足 {@code query} 条件的文档。按 {@code _id} 的范围把集合拆分成 {@code pool} 并行度个分区，每个分区使用一个游标，
+     * 在 {@code pool} 中并行读取和处理，内存占用和集合的大小无关。分区的边界通过在 {@code _id} 索引上跳过文档得到，只扫描索引。
+     *
+     * <p>
+     * {@code consumer} 会在多个线程中同时调用，必须是线程安全的；文档的处理顺序不确定，{@code query} 中不能设置 skip 和 limit。
+     */
+    public <T> void forEachParallel(Query query, Class<T> entityClass, String collectionName, ForkJoinPool pool,
+            Consumer<? super T> consumer) {
+        if (query.getSkip() > 0 || query.getLimit() > 0) {
+            throw new IllegalArgumentException("Skip and limit are not supported in parallel processing");
+        }
+
+        String collection = getCollectionName(entityClass, collectionName);
+        DBObject mappedQuery = new QueryMapper(mongoOps.getConverter()).getMappedObject(query.getQueryObject(),
+                getPersistentEntity(entityClass));
+        List<Object> boundaries = getIdBoundaries(collection, pool.getParallelism());
+
+        // ForkJoinPool 在其他线程中重新抛出异常时会创建一个新的异常，记录原来的异常
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        List<Callable<Void>> tasks = new ArrayList<>(boundaries.size() + 1);
+        for (int i = 0; i <= boundaries.size(); i++) {
+            BasicDBObject range = new BasicDBObject();
+            if (i > 0) {
+                range.put("$gte", boundaries.get(i - 1));
+            }
+            if (i < boundaries.size()) {
+                range.put("$lt", boundaries.get(i));
+            }
+            DBObject partitionQuery = range.isEmpty() ? mappedQuery : new BasicDBObject("$and", Arrays.asList(
+                    mappedQuery, new BasicDBObject("_id", range)));
+
+            tasks.add(() -> {
+                try (CloseableIterator<T> iterator = openCursor(query, partitionQuery, entityClass, collection,
+                        DEFAULT_STREAM_BATCH_SIZE, false)) {
+                    while (iterator.hasNext()) {
+                        consumer.accept(iterator.next());
+                    }
+                } catch (RuntimeException e) {
+                    failure.compareAndSet(null, e);
+                    throw e;
+                }
+                return null;
+            });
+        }
+
+        logger.debug("Process {} in {} partitions, boundaries: {}", collection, tasks.size(), boundaries);
+        try {
+            for (Future<Void> future : pool.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = failure.get() != null ? failure.get() : e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+        }
     }
 
     public <T> long count(Query query, Class<T> entityClass) {
@@ -259,6 +669,8 @@ public abstract class BasicMongoService {
      */
     public void save(Object object) {
         mongoOps.save(object);
+        evictRowCounts(object.getClass());
+        evictDocument(object.getClass(), object);
     }
 
     /**
@@ -267,6 +679,8 @@ public abstract class BasicMongoService {
      */
     public void save(Object object, String collectionName) {
         mongoOps.save(object, collectionName);
+        evictRowCounts(collectionName);
+        evictDocument(collectionName, object);
     }
 
     /**
@@ -277,6 +691,7 @@ public abstract class BasicMongoService {
         convertBlankIdToNull(object);
         setCreationTimeIfPossible(object);
         mongoOps.insert(object);
+        evictRowCounts(object.getClass());
     }
 
     /**
@@ -287,6 +702,7 @@ public abstract class BasicMongoService {
         convertBlankIdToNull(object);
         setCreationTimeIfPossible(object);
         mongoOps.insert(object, collectionName);
+        evictRowCounts(collectionName);
     }
 
     /**
@@ -315,6 +731,7 @@ public abstract class BasicMongoService {
             setCreationTimeIfPossible(object);
         }
         mongoOps.insert(objects, entityClass);
+        evictRowCounts(entityClass);
     }
 
     /**
@@ -327,6 +744,7 @@ public abstract class BasicMongoService {
             setCreationTimeIfPossible(object);
         }
         mongoOps.insert(objects, collectionName);
+        evictRowCounts(collectionName);
     }
 
     /**
@@ -341,7 +759,10 @@ public abstract class BasicMongoService {
      */
     public <T> WriteResult updateById(Object id, Update update, Class<T> entityClass, boolean autoUpdateModifyTime) {
         setModifyTimeIfPossible(update, autoUpdateModifyTime);
-        return mongoOps.updateFirst(getQueryById(id), update, entityClass);
+        WriteResult result = mongoOps.updateFirst(getQueryById(id), update, entityClass);
+        evictRowCounts(entityClass);
+        evictDocuments(entityClass, Collections.singletonList(id));
+        return result;
     }
 
     /**
@@ -356,7 +777,10 @@ public abstract class BasicMongoService {
      */
     public WriteResult updateById(Object id, Update update, String collectionName, boolean autoUpdateModifyTime) {
         setModifyTimeIfPossible(update, autoUpdateModifyTime);
-        return mongoOps.updateFirst(getQueryById(id), update, collectionName);
+        WriteResult result = mongoOps.updateFirst(getQueryById(id), update, collectionName);
+        evictRowCounts(collectionName);
+        evictDocuments(collectionName, Collections.singletonList(id));
+        return result;
     }
 
     /**
@@ -371,7 +795,10 @@ public abstract class BasicMongoService {
      */
     public <T> WriteResult updateFirst(Query query, Update update, Class<T> entityClass, boolean autoUpdateModifyTime) {
         setModifyTimeIfPossible(update, autoUpdateModifyTime);
-        return mongoOps.updateFirst(query, update, entityClass);
+        WriteResult result = mongoOps.updateFirst(query, update, entityClass);
+        evictRowCounts(entityClass);
+        evictDocuments(entityClass, null);
+        return result;
     }
 
     /**
@@ -386,7 +813,10 @@ public abstract class BasicMongoService {
      */
     public WriteResult updateFirst(Query query, Update update, String collectionName, boolean autoUpdateModifyTime) {
         setModifyTimeIfPossible(update, autoUpdateModifyTime);
-        return mongoOps.updateFirst(query, update, collectionName);
+        WriteResult result = mongoOps.updateFirst(query, update, collectionName);
+        evictRowCounts(collectionName);
+        evictDocuments(collectionName, null);
+        return result;
     }
 
     /**
@@ -401,7 +831,10 @@ public abstract class BasicMongoService {
      */
     public <T> WriteResult updateMulti(Query query, Update update, Class<T> entityClass, boolean autoUpdateModifyTime) {
         setModifyTimeIfPossible(update, autoUpdateModifyTime);
-        return mongoOps.updateMulti(query, update, entityClass);
+        WriteResult result = mongoOps.updateMulti(query, update, entityClass);
+        evictRowCounts(entityClass);
+        evictDocuments(entityClass, null);
+        return result;
     }
 
     /**
@@ -416,7 +849,10 @@ public abstract class BasicMongoService {
      */
     public WriteResult updateMulti(Query query, Update update, String collectionName, boolean autoUpdateModifyTime) {
         setModifyTimeIfPossible(update, autoUpdateModifyTime);
-        return mongoOps.updateMulti(query, update, collectionName);
+        WriteResult result = mongoOps.updateMulti(query, update, collectionName);
+        evictRowCounts(collectionName);
+        evictDocuments(collectionName, null);
+        return result;
     }
 
     /**
@@ -424,6 +860,8 @@ public abstract class BasicMongoService {
      */
     public void remove(Object object) {
         mongoOps.remove(object);
+        evictRowCounts(object.getClass());
+        evictDocument(object.getClass(), object);
     }
 
     /**
@@ -431,6 +869,8 @@ public abstract class BasicMongoService {
      */
     public void remove(Object object, String collectionName) {
         mongoOps.remove(object, collectionName);
+        evictRowCounts(collectionName);
+        evictDocument(collectionName, object);
     }
 
     /**
@@ -438,6 +878,8 @@ public abstract class BasicMongoService {
      */
     public <T> void remove(Query query, Class<T> entityClass) {
         mongoOps.remove(query, entityClass);
+        evictRowCounts(entityClass);
+        evictDocuments(entityClass, null);
     }
 
     /**
@@ -445,6 +887,8 @@ public abstract class BasicMongoService {
      */
     public void remove(Query query, String collectionName) {
         mongoOps.remove(query, collectionName);
+        evictRowCounts(collectionName);
+        evictDocuments(collectionName, null);
     }
 
     /**
@@ -453,6 +897,8 @@ public abstract class BasicMongoService {
     public <T> void removeById(Object id, Class<T> entityClass) {
         if (!isEmptyId(id)) {
             mongoOps.remove(getQueryById(id), entityClass);
+            evictRowCounts(entityClass);
+            evictDocuments(entityClass, Collections.singletonList(id));
         }
     }
 
@@ -462,6 +908,8 @@ public abstract class BasicMongoService {
     public void removeById(Object id, String collectionName) {
         if (!isEmptyId(id)) {
             mongoOps.remove(getQueryById(id), collectionName);
+            evictRowCounts(collectionName);
+            evictDocuments(collectionName, Collections.singletonList(id));
         }
     }
 
@@ -470,7 +918,9 @@ public abstract class BasicMongoService {
      */
     public <T> void removeByIds(Collection<?> ids, Class<T> entityClass) {
         if (!CollectionUtils.isEmpty(ids)) {
-            remove(getQueryByIds(ids), entityClass);
+            mongoOps.remove(getQueryByIds(ids), entityClass);
+            evictRowCounts(entityClass);
+            evictDocuments(entityClass, ids);
         }
     }
 
@@ -479,10 +929,45 @@ public abstract class BasicMongoService {
      */
     public void removeByIds(Collection<?> ids, String collectionName) {
         if (!CollectionUtils.isEmpty(ids)) {
-            remove(getQueryByIds(ids), collectionName);
+            mongoOps.remove(getQueryByIds(ids), collectionName);
+            evictRowCounts(collectionName);
+            evictDocuments(collectionName, ids);
         }
     }
 
+    /**
+     * 获取实体类对应集合的批量写入对象，插入、更新、upsert、删除操作在队列中累积后以批量写入的方式提交，参见 {@link MongoBulkWriter}。
+     */
+    public MongoBulkWriter bulk(Class<?> entityClass) {
+        return bulk(entityClass, null);
+    }
+
+    /**
+     * 获取指定集合的批量写入对象，插入、更新、upsert、删除操作在队列中累积后以批量写入的方式提交，参见 {@link MongoBulkWriter}。
+     */
+    public MongoBulkWriter bulk(Class<?> entityClass, String collectionName) {
+        return new MongoBulkWriter(this, entityClass, collectionName);
+    }
+
+    /**
+     * 设置分页查询时并发执行 count 查询的线程池，为 null 时在分页查询之前串行执行 count 查询。
+     *
+     * <p>
+     * 并发执行时按请求的页码查询分页数据，count 查询完成后如果发现页码超出范围，再按修正后的页码查询一次。线程池应该是有界的，
+     * 队列满时建议由调用线程执行。
+     */
+    public void setCountExecutor(ExecutorService countExecutor) {
+        this.countExecutor = countExecutor;
+    }
+
+    /**
+     * 设置分页查询时自动选择的索引提示在缓存中的有效时间，默认为 60 秒，小于等于 0 时每次分页查询都重新查找索引。
+     * 缓存的索引被删除后，使用它的查询会失败，此时清除缓存并不带索引提示重新查询一次。
+     */
+    public void setSortIndexTtl(long ttl, TimeUnit unit) {
+        this.sortIndexTtl = unit.toMillis(ttl);
+    }
+
     /**
      * 获取根据 ID 查询的 Query 对象。
      */
@@ -555,10 +1040,447 @@ public abstract class BasicMongoService {
         return hasUpdate ? update : null;
     }
 
+    /**
+     * 让实体类对应集合中缓存的分页总记录数失效。
+     */
+    protected void evictRowCounts(Class<?> entityClass) {
+        if (rowCountCache != null) {
+            rowCountCache.evict(mongoOps.getCollectionName(entityClass));
+        }
+    }
+
+    /**
+     * 让集合中缓存的分页总记录数失效。
+     */
+    protected void evictRowCounts(String collectionName) {
+        if (rowCountCache != null) {
+            rowCountCache.evict(collectionName);
+        }
+    }
+
+    /**
+     * 让实体类对应集合中缓存的文档失效，{@code ids} 为 null 时让整个集合的缓存失效。
+     */
+    protected void evictDocuments(Class<?> entityClass, Collection<?> ids) {
+        if (documentCache != null) {
+            evictDocuments(mongoOps.getCollectionName(entityClass), ids);
+        }
+    }
+
+    /**
+     * 让集合中缓存的文档失效，{@code ids} 为 null 时让整个集合的缓存失效。
+     */
+    protected void evictDocuments(String collectionName, Collection<?> ids) {
+        if (documentCache == null) {
+            return;
+        }
+
+        if (ids == null) {
+            documentCache.evictAll(collectionName);
+        } else if (!ids.isEmpty()) {
+            documentCache.evict(collectionName, ids);
+        }
+    }
+
+    /**
+     * 让写操作涉及的文档的缓存失效，取不到文档 ID 时让整个集合的缓存失效。{@code object} 为 null 时没有文档被修改。
+     */
+    private void evictDocument(Class<?> entityClass, Object object) {
+        if (documentCache != null && object != null) {
+            evictDocument(mongoOps.getCollectionName(entityClass), object);
+        }
+    }
+
+    private void evictDocument(String collectionName, Object object) {
+        if (documentCache == null || object == null) {
+            return;
+        }
+
+        Object id;
+        if (object instanceof DBObject) {
+            id = ((DBObject) object).get("_id");
+        } else {
+            MongoPersistentEntity<?> entity = getPersistentEntity(object.getClass());
+            id = entity == null || entity.getIdProperty() == null ? null : ObjectHelper.getPropertyValueQuietly(
+                    object, entity.getIdProperty().getName());
+        }
+        evictDocuments(collectionName, id == null ? null : Collections.singletonList(id));
+    }
+
+    /**
+     * 获取缓存的分页查询总记录数，没有配置记录数缓存、分页对象不允许使用缓存或者缓存不存在时返回 null。
+     */
+    private Integer getCachedPageRowCount(Query query, Pagination page, String collection) {
+        if (rowCountCache == null || !page.isCountCacheEnable()) {
+            return null;
+        }
+        return rowCountCache.get(collection, getCountCacheKey(query, page));
+    }
+
+    /**
+     * 查询分页查询的总记录数，配置了记录数缓存并且分页对象允许时放入缓存。
+     */
+    private int countPageRowsAndCache(Query query, Pagination page, Class<?> entityClass, String collection) {
+        boolean cacheEnable = rowCountCache != null && page.isCountCacheEnable();
+        long cacheVersion = cacheEnable ? rowCountCache.getVersion(collection) : 0;
+        int count = (int) Math.min(Integer.MAX_VALUE, countPageRows(query, page, entityClass, collection));
+        if (cacheEnable) {
+            rowCountCache.put(collection, getCountCacheKey(query, page), count, cacheVersion);
+        }
+        return count;
+    }
+
+    private static int waitForCount(Future<Integer> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void logPageQuery(Pagination page, Integer count) {
+        if (count == null) {
+            logger.debug("Page query: skip={}, limit={}", page.getCurrentRowNum(), page.getPageSize());
+        } else {
+            logger.debug("Page query: count={}, skip={}, limit={}", count, page.getCurrentRowNum(), page.getPageSize());
+        }
+    }
+
+    /**
+     * 按分页对象的计数方式获取总记录数。CAPPED 方式下多计数一个文档，用于判断总记录数是否超过了上限。
+     */
+    private long countPageRows(Query query, Pagination page, Class<?> entityClass, String collection) {
+        switch (page.getCountMode()) {
+        case ESTIMATED:
+            // 不带查询条件的 count 直接读取集合的元数据，不扫描文档
+            return mongoOps.getCollection(collection).getCount();
+        case CAPPED:
+            QueryMapper queryMapper = new QueryMapper(mongoOps.getConverter());
+            DBObject mappedQuery = queryMapper.getMappedObject(query.getQueryObject(), mongoOps.getConverter()
+                    .getMappingContext().getPersistentEntity(entityClass));
+            return mongoOps.getCollection(collection).getCount(mappedQuery, null, page.getCountCap() + 1, 0);
+        default:
+            return mongoOps.count(query, entityClass, collection);
+        }
+    }
+
+    /**
+     * 打开满足 {@code mappedQuery} 条件的游标，排序、返回字段、skip、limit 和索引提示使用 {@code query} 中的设置。
+     */
+    private <T> CloseableIterator<T> openCursor(Query query, DBObject mappedQuery, Class<T> entityClass,
+            String collection, int batchSize, boolean noCursorTimeout) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be greater than 0");
+        }
+
+        MongoPersistentEntity<?> entity = getPersistentEntity(entityClass);
+        QueryMapper queryMapper = new QueryMapper(mongoOps.getConverter());
+        DBObject fields = query.getFieldsObject() == null ? null : queryMapper.getMappedFields(
+                query.getFieldsObject(), entity);
+        DBObject sort = query.getSortObject() == null ? null : queryMapper.getMappedSort(query.getSortObject(),
+                entity);
+
+        DBCursor cursor = mongoOps.execute(collection, dbCollection -> {
+            DBCursor dbCursor = dbCollection.find(mappedQuery, fields).batchSize(batchSize);
+            if (sort != null) {
+                dbCursor.sort(sort);
+            }
+            if (query.getSkip() > 0) {
+                dbCursor.skip(query.getSkip());
+            }
+            if (query.getLimit() > 0) {
+                dbCursor.limit(query.getLimit());
+            }
+            if (StringUtils.isNotBlank(query.getHint())) {
+                dbCursor.hint(query.getHint());
+            }
+            if (noCursorTimeout) {
+                dbCursor.addOption(Bytes.QUERYOPTION_NOTIMEOUT);
+            }
+            return dbCursor;
+        });
+        return new MongoCursorIterator<>(cursor, dbObject -> mongoOps.getConverter().read(entityClass, dbObject));
+    }
+
+    /**
+     * 获取把集合按 {@code _id} 拆分成 {@code partitions} 个分区的边界，每次从上一个边界开始在 {@code _id} 索引上跳过
+     * {@code 总文档数 / partitions} 个文档，总共只扫描一遍索引。集合的文档很少时返回的边界数少于 {@code partitions - 1}。
+     */
+    private List<Object> getIdBoundaries(String collection, int partitions) {
+        return mongoOps.execute(collection, dbCollection -> {
+            List<Object> boundaries = new ArrayList<>();
+            long step = partitions <= 1 ? 0 : dbCollection.getCount() / partitions;
+            if (step == 0) {
+                return boundaries;
+            }
+
+            DBObject idOnly = new BasicDBObject("_id", 1);
+            Object boundary = null;
+            for (int i = 1; i < partitions; i++) {
+                DBObject query = boundary == null ? new BasicDBObject() : new BasicDBObject("_id",
+                        new BasicDBObject("$gte", boundary));
+                DBCursor cursor = dbCollection.find(query, idOnly).sort(idOnly).skip((int) Math.min(step,
+                        Integer.MAX_VALUE)).limit(1);
+                try {
+                    if (!cursor.hasNext()) {
+                        break;
+                    }
+                    boundary = cursor.next().get("_id");
+                } finally {
+                    cursor.close();
+                }
+                boundaries.add(boundary);
+            }
+            return boundaries;
+        });
+    }
+
+    private static Query applyProjection(Query query, MongoProjection projection) {
+        return projection == null ? query : projection.applyTo(query);
+    }
+
+    private String getCollectionName(Class<?> entityClass, String collectionName) {
+        return StringUtils.isBlank(collectionName) ? mongoOps.getCollectionName(entityClass) : collectionName;
+    }
+
+    private MongoPersistentEntity<?> getPersistentEntity(Class<?> entityClass) {
+        return mongoOps.getConverter().getMappingContext().getPersistentEntity(entityClass);
+    }
+
+    /**
+     * 获取总记录数在缓存中的 key，不同计数方式得到的记录数分开缓存。
+     */
+    private static String getCountCacheKey(Query query, Pagination page) {
+        switch (page.getCountMode()) {
+        case ESTIMATED:
+            return CountMode.ESTIMATED.name();
+        case CAPPED:
+            return CountMode.CAPPED.name() + page.getCountCap() + query.getQueryObject();
+        default:
+            return query.getQueryObject().toString();
+        }
+    }
+
+    /**
+     * 根据获取到的总记录数设置分页对象，估算的记录数和超过上限的记录数不是精确值。
+     */
+    private static void setPageRowCount(Pagination page, int count) {
+        if (page.getCountMode() == CountMode.ESTIMATED) {
+            page.setEstimatedRowCount(count);
+        } else if (page.getCountMode() == CountMode.CAPPED && count > page.getCountCap()) {
+            page.setEstimatedRowCount(page.getCountCap());
+        } else {
+            page.setRowCount(count);
+        }
+    }
+
+    /**
+     * 复制分页对象的排序方式和上一页最后一行的排序字段值，用于 keyset 分页和锚点。如果排序字段中没有 id，在副本中追加 id
+     * 作为最后一个排序字段，保证排序字段的组合能唯一确定一个文档。
+     */
+    private static Pagination copySeekPage(Pagination page) {
+        List<Pair<String, Boolean>> sorts = page.getSorts();
+        if (sorts.isEmpty()) {
+            throw new IllegalArgumentException("Sorts must be specified for seek pagination");
+        }
+
+        Pagination seekPage = new Pagination(page.getPageSize());
+        seekPage.setSorts(new ArrayList<>(sorts));
+        seekPage.setSeekValues(new ArrayList<>(page.getSeekValues()));
+        for (Pair<String, Boolean> sort : sorts) {
+            if ("id".equals(sort.getLeft()) || "_id".equals(sort.getLeft())) {
+                return seekPage;
+            }
+        }
+        seekPage.addSort("id", sorts.get(sorts.size() - 1).getRight());
+        return seekPage;
+    }
+
+    /**
+     * 判断偏移量分页能否使用锚点，使用老版本排序方式时不能使用。
+     */
+    @SuppressWarnings("deprecation")
+    private static boolean isSeekAnchorUsable(Pagination page) {
+        return page.isSeekAnchorEnable() && !page.isSeekEnable() && !page.getSorts().isEmpty()
+                && StringUtils.isBlank(page.getOrderBy());
+    }
+
+    /**
+     * 获取锚点对应的查询，查询条件、排序方式、每页行数任何一个变化时，分页对象中已记录的锚点都不能再使用。
+     */
+    private static String getSeekAnchorScope(Query query, Pagination seekPage, String collection) {
+        return collection + query.getQueryObject() + seekPage.getSorts() + seekPage.getPageSize();
+    }
+
+    /**
+     * 没有指定索引提示时，查找能按排序字段顺序读取的索引作为提示，让范围条件和排序使用同一个索引，避免 Mongo 选择其他索引后在内存中排序。
+     * 查找结果按集合、等值条件字段和排序方式缓存，参见 {@link #setSortIndexTtl(long, TimeUnit)}。
+     *
+     * @return 添加了索引提示时返回缓存的 key，否则返回 null
+     */
+    private String addSortIndexHint(Query query, Pagination seekPage, Class<?> entityClass, String collection) {
+        if (StringUtils.isNotBlank(query.getHint())) {
+            return null;
+        }
+
+        MongoPersistentEntity<?> entity = getPersistentEntity(entityClass);
+        QueryMapper queryMapper = new QueryMapper(mongoOps.getConverter());
+        Set<String> equalityFields = new HashSet<>();
+        addEqualityFields(queryMapper.getMappedObject(query.getQueryObject(), entity), equalityFields);
+
+        BasicDBObject sortObject = new BasicDBObject();
+        for (Pair<String, Boolean> sort : seekPage.getSorts()) {
+            sortObject.put(sort.getLeft(), sort.getRight() ? -1 : 1);
+        }
+        DBObject mappedSort = queryMapper.getMappedSort(sortObject, entity);
+
+        String key = collection + new TreeSet<>(equalityFields) + mappedSort;
+        long now = System.currentTimeMillis();
+        SortIndex index = sortIndexes.get(key);
+        if (index == null || index.expireTime <= now) {
+            index = new SortIndex(findSortIndex(collection, equalityFields, mappedSort), now + sortIndexTtl);
+            if (sortIndexTtl > 0) {
+                sortIndexes.put(key, index);
+            }
+        }
+
+        if (index.name == null) {
+            return null;
+        }
+        query.withHint(index.name);
+        return key;
+    }
+
+    /**
+     * 判断异常是否是索引提示不可用导致的，Mongo 返回的错误信息中包含 bad hint。
+     */
+    private static boolean isBadHint(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            String message = cause.getMessage();
+            if (message != null && message.contains("bad hint")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 收集查询条件中的等值条件字段，包括 {@code $and} 中的字段。
+     */
+    @SuppressWarnings("unchecked")
+    private static void addEqualityFields(DBObject mappedQuery, Set<String> equalityFields) {
+        for (String key : mappedQuery.keySet()) {
+            Object value = mappedQuery.get(key);
+            if ("$and".equals(key) && value instanceof List) {
+                for (DBObject subQuery : (List<DBObject>) value) {
+                    addEqualityFields(subQuery, equalityFields);
+                }
+            } else if (!key.startsWith("$") && !(value instanceof Pattern) && !(value instanceof DBObject
+                    && ((DBObject) value).keySet().stream().anyMatch(field -> field.startsWith("$")))) {
+                equalityFields.add(key);
+            }
+        }
+    }
+
+    /**
+     * 查找索引字段依次为：全部等值条件字段（顺序任意，已经是排序字段的除外）、排序字段（最后的 _id 可以没有），
+     * 并且方向和排序方向全部相同或者全部相反的索引。等值条件字段不全是索引的前缀时，索引不能直接按排序字段的顺序读取满足条件的文档，
+     * 所以不使用。
+     *
+     * @return 索引名，没有时返回 null
+     */
+    private String findSortIndex(String collection, Set<String> equalityFields, DBObject mappedSort) {
+        List<String> sortFields = new ArrayList<>(mappedSort.keySet());
+        Set<String> prefixFields = new HashSet<>(equalityFields);
+        prefixFields.removeAll(sortFields);
+
+        int start = prefixFields.size();
+        for (DBObject index : mongoOps.execute(collection, DBCollection::getIndexInfo)) {
+            DBObject key = (DBObject) index.get("key");
+            List<String> indexFields = new ArrayList<>(key.keySet());
+            if (indexFields.size() < start || !prefixFields.equals(new HashSet<>(indexFields.subList(0, start)))) {
+                continue;
+            }
+
+            int matched = 0;
+            Boolean reversed = null;
+            for (String field : sortFields) {
+                if (start + matched >= indexFields.size() || !field.equals(indexFields.get(start + matched))) {
+                    break;
+                }
+
+                Object indexDirection = key.get(field);
+                if (!(indexDirection instanceof Number)) {
+                    break;
+                }
+                boolean same = Math.signum(((Number) indexDirection).doubleValue()) == Math.signum(
+                        ((Number) mappedSort.get(field)).doubleValue());
+                if (reversed != null && reversed == same) {
+                    break;
+                }
+                reversed = !same;
+                matched++;
+            }
+
+            if (matched == sortFields.size() || (matched == sortFields.size() - 1 && matched > 0
+                    && "_id".equals(sortFields.get(matched)))) {
+                logger.debug("Use index {} for sort {} on {}", index.get("name"), mappedSort, collection);
+                return (String) index.get("name");
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 根据上一页最后一个文档的排序字段值生成 keyset 分页的范围条件，例如排序字段为 a asc, b desc 时，生成的条件为：
+     * {@code $or: [{a: {$gt: v0}}, {a: v0, b: {$lt: v1}}]}。
+     *
+     * @param seekPage
+     *            {@link #copySeekPage(Pagination)} 得到的分页对象副本
+     */
+    private void addSeekCriteria(Query query, Pagination seekPage) {
+        if (!seekPage.hasSeekValues()) {
+            return;
+        }
+
+        List<Pair<String, Boolean>> sorts = seekPage.getSorts();
+        List<Object> values = seekPage.getSeekValues();
+        if (values.size() != sorts.size()) {
+            throw new IllegalArgumentException("Seek values " + values + " do not match sorts " + sorts);
+        }
+
+        // 和 null 比较的范围条件不会满足任何文档，分页会在这里意外结束
+        for (int i = 0; i < sorts.size(); i++) {
+            if (values.get(i) == null) {
+                throw new IllegalArgumentException("Seek value of sort field " + sorts.get(i).getLeft()
+                        + " must not be null");
+            }
+        }
+
+        Criteria[] criterias = new Criteria[sorts.size()];
+        for (int i = 0; i < sorts.size(); i++) {
+            Criteria criteria = null;
+            for (int j = 0; j < i; j++) {
+                String field = sorts.get(j).getLeft();
+                criteria = (criteria == null ? Criteria.where(field) : criteria.and(field)).is(values.get(j));
+            }
+
+            Pair<String, Boolean> sort = sorts.get(i);
+            criteria = criteria == null ? Criteria.where(sort.getLeft()) : criteria.and(sort.getLeft());
+            criterias[i] = sort.getRight() ? criteria.lt(values.get(i)) : criteria.gt(values.get(i));
+        }
+        query.addCriteria(new Criteria().orOperator(criterias));
+    }
+
     /**
      * 将空串的 ID 设置为 NULL，让 MongoDB 自动生成 ID。
      */
-    private void convertBlankIdToNull(Object object) {
+    void convertBlankIdToNull(Object object) {
         if (object instanceof StringIdEntity) {
             StringIdEntity entity = (StringIdEntity) object;
             if (StringUtils.isBlank(entity.getId())) {
@@ -567,7 +1489,7 @@ public abstract class BasicMongoService {
         }
     }
 
-    private void setCreationTimeIfPossible(Object object) {
+    void setCreationTimeIfPossible(Object object) {
         if (object instanceof StringIdEntity) {
             StringIdEntity entity = (StringIdEntity) object;
             if (entity.getCreationTime() == null) {
@@ -591,7 +1513,7 @@ public abstract class BasicMongoService {
         }
     }
 
-    private void setModifyTimeIfPossible(Update update, boolean autoUpdateModifyTime) {
+    void setModifyTimeIfPossible(Update update, boolean autoUpdateModifyTime) {
         if (update == null) {
             return;
         }
@@ -613,4 +1535,87 @@ public abstract class BasicMongoService {
         return false;
     }
 
+    /**
+     * 以另一个查询对象为基础的查询，添加的条件、返回字段、排序等不会修改基础查询对象，用于分页查询时不修改调用者的查询对象。
+     */
+    private static class DerivedQuery extends Query {
+
+        private final Query base;
+        private boolean hintDisabled;
+
+        DerivedQuery(Query base) {
+            this.base = base;
+            if (base.getHint() != null) {
+                withHint(base.getHint());
+            }
+            if (base.getMeta() != null) {
+                setMeta(base.getMeta());
+            }
+        }
+
+        /**
+         * 不再使用索引提示，{@code Query} 设置索引提示后不能清除。
+         */
+        void disableHint() {
+            hintDisabled = true;
+        }
+
+        @Override
+        public String getHint() {
+            return hintDisabled ? null : super.getHint();
+        }
+
+        @Override
+        public DBObject getQueryObject() {
+            return merge(base.getQueryObject(), super.getQueryObject(), true);
+        }
+
+        @Override
+        public DBObject getFieldsObject() {
+            return merge(base.getFieldsObject(), super.getFieldsObject(), false);
+        }
+
+        @Override
+        public DBObject getSortObject() {
+            return merge(base.getSortObject(), super.getSortObject(), false);
+        }
+
+        /**
+         * 合并基础查询和派生查询的设置，查询条件中有相同的字段时用 {@code $and} 组合。
+         */
+        private static DBObject merge(DBObject baseObject, DBObject object, boolean criteria) {
+            if (object == null || object.keySet().isEmpty()) {
+                return baseObject;
+            }
+            if (baseObject == null || baseObject.keySet().isEmpty()) {
+                return object;
+            }
+
+            if (criteria && baseObject.keySet().stream().anyMatch(object::containsField)) {
+                return new BasicDBObject("$and", Arrays.asList(baseObject, object));
+            }
+
+            BasicDBObject merged = new BasicDBObject(baseObject.toMap());
+            merged.putAll(object);
+            return merged;
+        }
+
+    }
+
+    /**
+     * 缓存的索引查找结果。
+     */
+    private static class SortIndex {
+
+        // 索引名，没有合适的索引时为 null
+        final String name;
+        final long expireTime;
+
+        SortIndex(String name, long expireTime) {
+            this.name = name;
+            this.expireTime = expireTime;
+        }
+
+    }
+
 }
@@ -0,0 +1,302 @@
+/*
+ * @(#)MongoBatchLoader.java    Created on 2026-10-18
+ * Copyright (c) 2026 Guomi. All rights reserved.
+ */
+package com.guomi.meazza.mongo;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import com.guomi.meazza.util.ObjectHelper;
+import com.guomi.meazza.util.StringUtils;
+
+/**
+ * 批量、去重的按 ID 查询，用于把一次请求中分散的多次 findById 合并为一次 {@code $in} 查询（DataLoader 方式）。
+ *
+ * <p>
+ * {@link #load(Object, Class)} 只登记要查询的 ID 并返回结果的 Future，同一个集合中登记的 ID 在调用 {@link #dispatch()}、
+ * 同步获取结果（{@link #get(Object, Class)}、{@link #getAll(Collection, Class)}）或者登记的 ID 数达到 {@code maxBatchSize} 时，
+ * 通过一次 {@link BasicMongoService#findByIds(List, Class, String)} 查询。重复的 ID 只查询一次，查询结果（包括不存在的 ID）
+ * 会被记住，直到调用 {@link #clear()}，所以修改文档后需要清除。
+ *
+ * <p>
+ * 对象的生命周期应该和请求一致，例如每个请求创建一个，或者声明为 request 作用域的 Bean。此类是线程安全的，
+ * 但 Future 的回调在执行查询的线程中执行。
+ *
+ * @author akuma
+ */
+public class MongoBatchLoader {
+
+    /**
+     * 默认每次查询的最大 ID 数。
+     */
+    public static final int DEFAULT_MAX_BATCH_SIZE = 500;
+
+    private final BasicMongoService mongoService;
+    private final int maxBatchSize;
+
+    private final Map<Source, Batch> batches = new LinkedHashMap<>();
+
+    /**
+     * 构造方法。
+     */
+    public MongoBatchLoader(BasicMongoService mongoService) {
+        this(mongoService, DEFAULT_MAX_BATCH_SIZE);
+    }
+
+    /**
+     * 构造方法。
+     *
+     * @param maxBatchSize
+     *            每次查询的最大 ID 数，登记的 ID 数达到此值时立即查询
+     */
+    public MongoBatchLoader(BasicMongoService mongoService, int maxBatchSize) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("maxBatchSize must be greater than 0");
+        }
+        this.mongoService = mongoService;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * 登记要查询的 ID，返回文档的 Future，文档不存在时结果为 null。
+     */
+    public <T> CompletableFuture<T> load(Object id, Class<T> entityClass) {
+        return load(id, entityClass, null);
+    }
+
+    /**
+     * 登记要查询的 ID，返回文档的 Future，文档不存在时结果为 null。
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> load(Object id, Class<T> entityClass, String collectionName) {
+        if (id == null || (id instanceof CharSequence && StringUtils.isBlank((CharSequence) id))) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        Batch batch;
+        CompletableFuture<Object> future;
+        synchronized (this) {
+            batch = batches.computeIfAbsent(new Source(entityClass, collectionName), key -> new Batch());
+            String key = String.valueOf(id);
+            future = batch.futures.get(key);
+            if (future == null) {
+                future = new CompletableFuture<>();
+                batch.futures.put(key, future);
+                batch.pendingIds.put(key, id);
+            }
+            if (batch.pendingIds.size() < maxBatchSize) {
+                return (CompletableFuture<T>) future;
+            }
+        }
+
+        dispatch();
+        return (CompletableFuture<T>) future;
+    }
+
+    /**
+     * 登记要查询的多个 ID，返回文档列表的 Future，列表的顺序和 ID 的顺序一致，不存在的文档不包括在列表中。
+     */
+    public <T> CompletableFuture<List<T>> loadMany(Collection<?> ids, Class<T> entityClass) {
+        return loadMany(ids, entityClass, null);
+    }
+
+    /**
+     * 登记要查询的多个 ID，返回文档列表的 Future，列表的顺序和 ID 的顺序一致，不存在的文档不包括在列表中。
+     */
+    public <T> CompletableFuture<List<T>> loadMany(Collection<?> ids, Class<T> entityClass, String collectionName) {
+        List<CompletableFuture<T>> futures = new ArrayList<>(ids.size());
+        for (Object id : ids) {
+            futures.add(load(id, entityClass, collectionName));
+        }
+
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()])).thenApply(v -> {
+            List<T> list = new ArrayList<>(futures.size());
+            for (CompletableFuture<T> future : futures) {
+                T entity = future.join();
+                if (entity != null) {
+                    list.add(entity);
+                }
+            }
+            return list;
+        });
+    }
+
+    /**
+     * 查询文档，同时查询所有已登记的 ID。
+     */
+    public <T> T get(Object id, Class<T> entityClass) {
+        return get(id, entityClass, null);
+    }
+
+    /**
+     * 查询文档，同时查询所有已登记的 ID。
+     */
+    public <T> T get(Object id, Class<T> entityClass, String collectionName) {
+        CompletableFuture<T> future = load(id, entityClass, collectionName);
+        dispatch();
+        return join(future);
+    }
+
+    /**
+     * 查询多个文档，同时查询所有已登记的 ID。列表的顺序和 ID 的顺序一致，不存在的文档不包括在列表中。
+     */
+    public <T> List<T> getAll(Collection<?> ids, Class<T> entityClass) {
+        return getAll(ids, entityClass, null);
+    }
+
+    /**
+     * 查询多个文档，同时查询所有已登记的 ID。列表的顺序和 ID 的顺序一致，不存在的文档不包括在列表中。
+     */
+    public <T> List<T> getAll(Collection<?> ids, Class<T> entityClass, String collectionName) {
+        CompletableFuture<List<T>> future = loadMany(ids, entityClass, collectionName);
+        dispatch();
+        return join(future);
+    }
+
+    /**
+     * 查询所有已登记的 ID，每个集合每 {@code maxBatchSize} 个 ID 执行一次查询。Future 的回调中登记的 ID 也会在返回前查询。
+     */
+    public void dispatch() {
+        while (true) {
+            Source source = null;
+            Batch batch = null;
+            Map<String, Object> ids = new LinkedHashMap<>();
+            Map<String, CompletableFuture<Object>> futures = new HashMap<>();
+            synchronized (this) {
+                for (Map.Entry<Source, Batch> entry : batches.entrySet()) {
+                    if (!entry.getValue().pendingIds.isEmpty()) {
+                        source = entry.getKey();
+                        batch = entry.getValue();
+                        break;
+                    }
+                }
+                if (source == null) {
+                    return;
+                }
+
+                for (Map.Entry<String, Object> pending : batch.pendingIds.entrySet()) {
+                    ids.put(pending.getKey(), pending.getValue());
+                    futures.put(pending.getKey(), batch.futures.get(pending.getKey()));
+                    if (ids.size() >= maxBatchSize) {
+                        break;
+                    }
+                }
+                batch.pendingIds.keySet().removeAll(ids.keySet());
+            }
+
+            load(source, batch, ids, futures);
+        }
+    }
+
+    /**
+     * 清除记住的所有查询结果。
+     */
+    public synchronized void clear() {
+        for (Batch batch : batches.values()) {
+            batch.futures.keySet().retainAll(batch.pendingIds.keySet());
+        }
+    }
+
+    /**
+     * 清除记住的某个文档的查询结果，修改或删除文档后调用。
+     */
+    public void clear(Object id, Class<?> entityClass) {
+        clear(id, entityClass, null);
+    }
+
+    /**
+     * 清除记住的某个文档的查询结果，修改或删除文档后调用。
+     */
+    public synchronized void clear(Object id, Class<?> entityClass, String collectionName) {
+        Batch batch = batches.get(new Source(entityClass, collectionName));
+        String key = String.valueOf(id);
+        if (batch != null && !batch.pendingIds.containsKey(key)) {
+            batch.futures.remove(key);
+        }
+    }
+
+    private void load(Source source, Batch batch, Map<String, Object> ids,
+            Map<String, CompletableFuture<Object>> futures) {
+        List<?> entities;
+        try {
+            entities = mongoService.findByIds(new ArrayList<>(ids.values()), source.entityClass,
+                    source.collectionName);
+        } catch (RuntimeException e) {
+            // 失败的 ID 不记住，下次可以重新查询
+            synchronized (this) {
+                for (Map.Entry<String, CompletableFuture<Object>> entry : futures.entrySet()) {
+                    batch.futures.remove(entry.getKey(), entry.getValue());
+                }
+            }
+            for (CompletableFuture<Object> future : futures.values()) {
+                future.completeExceptionally(e);
+            }
+            return;
+        }
+
+        Map<String, Object> entitiesById = new HashMap<>(entities.size() * 4 / 3 + 1);
+        for (Object entity : entities) {
+            entitiesById.put(String.valueOf(ObjectHelper.getPropertyValueQuietly(entity, "id")), entity);
+        }
+        for (Map.Entry<String, CompletableFuture<Object>> entry : futures.entrySet()) {
+            entry.getValue().complete(entitiesById.get(entry.getKey()));
+        }
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : e;
+        }
+    }
+
+    /**
+     * 查询的集合。
+     */
+    private static class Source {
+
+        final Class<?> entityClass;
+        final String collectionName;
+
+        Source(Class<?> entityClass, String collectionName) {
+            this.entityClass = entityClass;
+            this.collectionName = StringUtils.isBlank(collectionName) ? null : collectionName;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Source)) {
+                return false;
+            }
+            Source other = (Source) obj;
+            return entityClass.equals(other.entityClass) && Objects.equals(collectionName, other.collectionName);
+        }
+
+        @Override
+        public int hashCode() {
+            return entityClass.hashCode() * 31 + Objects.hashCode(collectionName);
+        }
+
+    }
+
+    /**
+     * 一个集合中登记的 ID 和查询结果。
+     */
+    private static class Batch {
+
+        final Map<String, Object> pendingIds = new LinkedHashMap<>();
+        final Map<String, CompletableFuture<Object>> futures = new HashMap<>();
+
+    }
+
+}
@@ -0,0 +1,505 @@
+/*
+ * @(#)MongoBulkWriter.java    Created on 2026-10-18
+ * Copyright (c) 2026 Guomi. All rights reserved.
+ */
+package com.guomi.meazza.mongo;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.convert.QueryMapper;
+import org.springframework.data.mongodb.core.convert.UpdateMapper;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentProperty;
+import org.springframework.data.mongodb.core.query.Update;
+
+import com.guomi.meazza.support.LongIdEntity;
+import com.guomi.meazza.support.StringIdEntity;
+import com.guomi.meazza.util.ObjectHelper;
+import com.guomi.meazza.util.StringUtils;
+import com.mongodb.BasicDBObject;
+import com.mongodb.BulkWriteError;
+import com.mongodb.BulkWriteException;
+import com.mongodb.BulkWriteOperation;
+import com.mongodb.BulkWriteResult;
+import com.mongodb.BulkWriteUpsert;
+import com.mongodb.DBObject;
+
+/**
+ * Mongo 批量写入，通过 {@link BasicMongoService#bulk(Class)} 获取。
+ *
+ * <p>
+ * 插入、按 ID 更新、按 ID upsert、按 ID 删除的操作先放到队列中，队列中的操作达到 {@code batchSize} 个或者调用
+ * {@link #flush()}、{@link #execute()} 时，以一次无序的（unordered）批量写入提交给 Mongo，每批只需要一次网络往返。
+ * 无序写入中某个操作失败不会影响其他操作，失败的操作记录在结果中，不会抛出异常。
+ *
+ * <p>
+ * 和 {@link BasicMongoService} 的单个写入方法一样，插入时会把空串 ID 设置为 null 并设置创建时间，更新时会设置修改时间。
+ * 插入的文档没有 ID 时会生成 {@link ObjectId}，并回写到实体的 String 或 ObjectId 类型的 ID 属性中。
+ *
+ * <p>
+ * 此类不是线程安全的。
+ *
+ * @author akuma
+ */
+public class MongoBulkWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(MongoBulkWriter.class);
+
+    /**
+     * 默认每批提交的操作数。
+     */
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    /**
+     * 操作类型。
+     */
+    public enum OpType {
+
+        INSERT, UPDATE, UPSERT, REMOVE
+
+    }
+
+    private final BasicMongoService service;
+    private final MongoOperations mongoOps;
+    private final Class<?> entityClass;
+    private final String collectionName;
+    private final MongoPersistentEntity<?> persistentEntity;
+    private final QueryMapper queryMapper;
+    private final UpdateMapper updateMapper;
+
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private boolean autoUpdateModifyTime = true;
+
+    private final List<Op> pending = new ArrayList<>();
+    private final Result result = new Result();
+    private int nextIndex;
+
+    MongoBulkWriter(BasicMongoService service, Class<?> entityClass, String collectionName) {
+        if (entityClass == null) {
+            throw new IllegalArgumentException("entityClass must not be null");
+        }
+
+        this.service = service;
+        this.mongoOps = service.mongoOps;
+        this.entityClass = entityClass;
+        this.collectionName = StringUtils.isBlank(collectionName) ? mongoOps.getCollectionName(entityClass)
+                : collectionName;
+        this.persistentEntity = mongoOps.getConverter().getMappingContext().getPersistentEntity(entityClass);
+        this.queryMapper = new QueryMapper(mongoOps.getConverter());
+        this.updateMapper = new UpdateMapper(mongoOps.getConverter());
+    }
+
+    /**
+     * 设置每批提交的操作数，默认 1000。
+     */
+    public MongoBulkWriter batchSize(int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be greater than 0");
+        }
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * 设置更新时是否自动设置 {@code modifyTime}，默认为 true。
+     */
+    public MongoBulkWriter autoUpdateModifyTime(boolean autoUpdateModifyTime) {
+        this.autoUpdateModifyTime = autoUpdateModifyTime;
+        return this;
+    }
+
+    /**
+     * 将对象作为一个新文档添加到集合中。
+     */
+    public MongoBulkWriter insert(Object object) {
+        service.convertBlankIdToNull(object);
+        service.setCreationTimeIfPossible(object);
+
+        BasicDBObject document = new BasicDBObject();
+        mongoOps.getConverter().write(object, document);
+        Object id = document.get("_id");
+        if (id == null) {
+            id = generateId(object);
+            document.put("_id", id);
+        }
+        return add(OpType.INSERT, id, null, document);
+    }
+
+    /**
+     * 将多个对象作为新文档添加到集合中。
+     */
+    public MongoBulkWriter insert(Collection<?> objects) {
+        for (Object object : objects) {
+            insert(object);
+        }
+        return this;
+    }
+
+    /**
+     * 更新指定 {@code id} 的文档。
+     */
+    public MongoBulkWriter updateById(Object id, Update update) {
+        service.setModifyTimeIfPossible(update, autoUpdateModifyTime);
+        return add(OpType.UPDATE, id, getMappedQuery(id), getMappedUpdate(update));
+    }
+
+    /**
+     * 更新指定 {@code id} 的文档，文档不存在时插入。如果实体是 {@code StringIdEntity} 或 {@code LongIdEntity} 的子类，
+     * 插入时会设置 {@code creationTime} 属性为当前系统时间。
+     */
+    public MongoBulkWriter upsertById(Object id, Update update) {
+        service.setModifyTimeIfPossible(update, autoUpdateModifyTime);
+        if ((StringIdEntity.class.isAssignableFrom(entityClass) || LongIdEntity.class.isAssignableFrom(entityClass))
+                && !update.modifies("creationTime")) {
+            update.setOnInsert("creationTime", new Date());
+        }
+        return add(OpType.UPSERT, id, getMappedQuery(id), getMappedUpdate(update));
+    }
+
+    /**
+     * 删除指定 {@code id} 的文档。
+     */
+    public MongoBulkWriter removeById(Object id) {
+        return add(OpType.REMOVE, id, getMappedQuery(id), null);
+    }
+
+    /**
+     * 获取队列中还没有提交的操作数。
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * 提交队列中的所有操作。
+     */
+    public MongoBulkWriter flush() {
+        while (!pending.isEmpty()) {
+            List<Op> batch = new ArrayList<>(pending.subList(0, Math.min(batchSize, pending.size())));
+            pending.subList(0, batch.size()).clear();
+            write(batch);
+        }
+        return this;
+    }
+
+    /**
+     * 提交队列中的所有操作，返回目前为止所有操作的结果。
+     */
+    public Result execute() {
+        flush();
+        return result;
+    }
+
+    private MongoBulkWriter add(OpType type, Object id, DBObject query, DBObject document) {
+        pending.add(new Op(nextIndex++, type, id, query, document));
+        if (pending.size() >= batchSize) {
+            flush();
+        }
+        return this;
+    }
+
+    private void write(List<Op> batch) {
+        long start = System.currentTimeMillis();
+        mongoOps.execute(collectionName, collection -> {
+            BulkWriteOperation bulk = collection.initializeUnorderedBulkOperation();
+            for (Op op : batch) {
+                op.addTo(bulk);
+            }
+
+            try {
+                result.merge(batch, bulk.execute(), Collections.<BulkWriteError> emptyList());
+            } catch (BulkWriteException e) {
+                if (e.getWriteConcernError() != null) {
+                    logger.warn("Bulk write concern error: {}", e.getWriteConcernError());
+                }
+                result.merge(batch, e.getWriteResult(), e.getWriteErrors());
+            }
+            return null;
+        });
+        service.evictRowCounts(collectionName);
+        service.evictDocuments(collectionName, batch.stream().filter(op -> op.type != OpType.INSERT && op.id != null)
+                .map(op -> op.id).collect(Collectors.toList()));
+
+        logger.debug("Bulk write {} ops to {} in {} ms", batch.size(), collectionName,
+                System.currentTimeMillis() - start);
+    }
+
+    private DBObject getMappedQuery(Object id) {
+        return queryMapper.getMappedObject(service.getQueryById(id).getQueryObject(), persistentEntity);
+    }
+
+    private DBObject getMappedUpdate(Update update) {
+        return updateMapper.getMappedObject(update.getUpdateObject(), persistentEntity);
+    }
+
+    /**
+     * 生成新文档的 ID，并回写到实体中。ID 属性不是 String 或 ObjectId 类型时由驱动生成，不回写。
+     */
+    private Object generateId(Object object) {
+        MongoPersistentProperty idProperty = persistentEntity == null ? null : persistentEntity.getIdProperty();
+        if (idProperty == null) {
+            return null;
+        }
+
+        ObjectId id = new ObjectId();
+        if (String.class.equals(idProperty.getType())) {
+            ObjectHelper.setPropertyValueQuietly(object, idProperty.getName(), id.toString());
+        } else if (ObjectId.class.equals(idProperty.getType())) {
+            ObjectHelper.setPropertyValueQuietly(object, idProperty.getName(), id);
+        } else {
+            return null;
+        }
+        return id;
+    }
+
+    /**
+     * 队列中的操作。
+     */
+    static class Op {
+
+        final int index;
+        final OpType type;
+        final Object id;
+        final DBObject query;
+        final DBObject document;
+
+        Op(int index, OpType type, Object id, DBObject query, DBObject document) {
+            this.index = index;
+            this.type = type;
+            this.id = id;
+            this.query = query;
+            this.document = document;
+        }
+
+        void addTo(BulkWriteOperation bulk) {
+            switch (type) {
+            case INSERT:
+                bulk.insert(document);
+                break;
+            case UPDATE:
+                bulk.find(query).updateOne(document);
+                break;
+            case UPSERT:
+                bulk.find(query).upsert().updateOne(document);
+                break;
+            default:
+                bulk.find(query).removeOne();
+            }
+        }
+
+    }
+
+    /**
+     * 批量写入的结果，包括各类操作的文档数和每个操作的结果。
+     */
+    public static class Result {
+
+        private int insertedCount;
+        private int matchedCount;
+        private int modifiedCount;
+        private int removedCount;
+        private int upsertedCount;
+        private boolean acknowledged = true;
+        private boolean modifiedCountAvailable = true;
+
+        private final List<OpResult> opResults = new ArrayList<>();
+        private final List<OpResult> errors = new ArrayList<>();
+
+        /**
+         * 合并一批操作的结果，{@code writeResult} 和 {@code writeErrors} 中的序号是操作在这一批中的位置。
+         */
+        void merge(List<Op> batch, BulkWriteResult writeResult, List<BulkWriteError> writeErrors) {
+            List<OpResult> results = new ArrayList<>(batch.size());
+            for (Op op : batch) {
+                results.add(new OpResult(op.index, op.type, op.id));
+            }
+
+            if (writeResult.isAcknowledged()) {
+                insertedCount += writeResult.getInsertedCount();
+                matchedCount += writeResult.getMatchedCount();
+                removedCount += writeResult.getRemovedCount();
+                if (writeResult.isModifiedCountAvailable()) {
+                    modifiedCount += writeResult.getModifiedCount();
+                } else {
+                    modifiedCountAvailable = false;
+                }
+
+                for (BulkWriteUpsert upsert : writeResult.getUpserts()) {
+                    OpResult opResult = results.get(upsert.getIndex());
+                    opResult.upserted = true;
+                    opResult.id = upsert.getId();
+                    upsertedCount++;
+                }
+            } else {
+                acknowledged = false;
+            }
+
+            for (BulkWriteError error : writeErrors) {
+                OpResult opResult = results.get(error.getIndex());
+                opResult.errorCode = error.getCode();
+                opResult.errorMessage = error.getMessage();
+                errors.add(opResult);
+            }
+            opResults.addAll(results);
+        }
+
+        /**
+         * 获取插入的文档数。
+         */
+        public int getInsertedCount() {
+            return insertedCount;
+        }
+
+        /**
+         * 获取更新操作匹配到的文档数。
+         */
+        public int getMatchedCount() {
+            return matchedCount;
+        }
+
+        /**
+         * 获取实际修改的文档数，服务器版本低于 2.6 时不可用，参见 {@link #isModifiedCountAvailable()}。
+         */
+        public int getModifiedCount() {
+            return modifiedCount;
+        }
+
+        /**
+         * 获取删除的文档数。
+         */
+        public int getRemovedCount() {
+            return removedCount;
+        }
+
+        /**
+         * 获取 upsert 操作插入的文档数。
+         */
+        public int getUpsertedCount() {
+            return upsertedCount;
+        }
+
+        /**
+         * 判断写入是否得到了服务器的确认，写关注为 {@code UNACKNOWLEDGED} 时各类文档数都不可用。
+         */
+        public boolean isAcknowledged() {
+            return acknowledged;
+        }
+
+        /**
+         * 判断实际修改的文档数是否可用。
+         */
+        public boolean isModifiedCountAvailable() {
+            return modifiedCountAvailable;
+        }
+
+        /**
+         * 判断是否有失败的操作。
+         */
+        public boolean hasErrors() {
+            return !errors.isEmpty();
+        }
+
+        /**
+         * 获取失败的操作。
+         */
+        public List<OpResult> getErrors() {
+            return errors;
+        }
+
+        /**
+         * 获取每个操作的结果，顺序和操作加入队列的顺序一致。
+         */
+        public List<OpResult> getOpResults() {
+            return opResults;
+        }
+
+        @Override
+        public String toString() {
+            return "Result(inserted: " + insertedCount + ", matched: " + matchedCount + ", modified: "
+                    + modifiedCount + ", removed: " + removedCount + ", upserted: " + upsertedCount + ", errors: "
+                    + errors.size() + ")";
+        }
+
+    }
+
+    /**
+     * 单个操作的结果。
+     */
+    public static class OpResult {
+
+        private final int index;
+        private final OpType type;
+        private Object id;
+        private boolean upserted;
+        private Integer errorCode;
+        private String errorMessage;
+
+        OpResult(int index, OpType type, Object id) {
+            this.index = index;
+            this.type = type;
+            this.id = id;
+        }
+
+        /**
+         * 获取操作加入队列的序号，从 0 开始。
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        public OpType getType() {
+            return type;
+        }
+
+        /**
+         * 获取操作的文档 ID，upsert 插入了新文档时为新文档的 ID。
+         */
+        public Object getId() {
+            return id;
+        }
+
+        /**
+         * 判断 upsert 操作是否插入了新文档。
+         */
+        public boolean isUpserted() {
+            return upserted;
+        }
+
+        public boolean isSuccess() {
+            return errorCode == null;
+        }
+
+        public Integer getErrorCode() {
+            return errorCode;
+        }
+
+        public String getErrorMessage() {
+            return errorMessage;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder("OpResult(");
+            sb.append(index).append(", ").append(type).append(", id: ").append(id);
+            if (upserted) {
+                sb.append(", upserted");
+            }
+            if (errorCode != null) {
+                sb.append(", error: ").append(errorCode).append(" ").append(errorMessage);
+            }
+            sb.append(")");
+            return sb.toString();
+        }
+
+    }
+
+}
@@ -0,0 +1,82 @@
+/*
+ * @(#)MongoCursorIterator.java    Created on 2026-10-18
+ * Copyright (c) 2026 Guomi. All rights reserved.
+ */
+package com.guomi.meazza.mongo;
+
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.mongodb.core.MongoExceptionTranslator;
+import org.springframework.data.util.CloseableIterator;
+
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+
+/**
+ * 基于 Mongo 游标的迭代器，每次从服务器读取一批文档，读取时把文档转换为实体。游标中的文档读取完后自动关闭，
+ * 没有读取完时需要调用 {@link #close()} 关闭。迭代过程中的 Mongo 异常转换为 Spring 的 {@link DataAccessException}。
+ *
+ * @author akuma
+ */
+class MongoCursorIterator<T> implements CloseableIterator<T> {
+
+    private static final MongoExceptionTranslator exceptionTranslator = new MongoExceptionTranslator();
+
+    private final DBCursor cursor;
+    private final Function<DBObject, T> reader;
+    private boolean closed;
+
+    MongoCursorIterator(DBCursor cursor, Function<DBObject, T> reader) {
+        this.cursor = cursor;
+        this.reader = reader;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (closed) {
+            return false;
+        }
+
+        try {
+            if (cursor.hasNext()) {
+                return true;
+            }
+        } catch (RuntimeException e) {
+            close();
+            throw translate(e);
+        }
+
+        close();
+        return false;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        try {
+            return reader.apply(cursor.next());
+        } catch (RuntimeException e) {
+            close();
+            throw translate(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            cursor.close();
+        }
+    }
+
+    private static RuntimeException translate(RuntimeException e) {
+        DataAccessException translated = exceptionTranslator.translateExceptionIfPossible(e);
+        return translated == null ? e : translated;
+    }
+
+}
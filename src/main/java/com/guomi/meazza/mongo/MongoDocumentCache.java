@@ -0,0 +1,518 @@
+/*
+ * @(#)MongoDocumentCache.java    Created on 2026-10-18
+ * Copyright (c) 2026 Guomi. All rights reserved.
+ */
+package com.guomi.meazza.mongo;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.bson.types.ObjectId;
+
+import com.mongodb.DBObject;
+
+/**
+ * {@link BasicMongoService} 按 ID 读取文档时使用的本地缓存（near cache），缓存的是从 Mongo 读到的原始文档，每次读取时再转换为实体，
+ * 调用方修改实体不会影响缓存。
+ *
+ * <p>
+ * 缓存同时受文档个数和文档的估算字节数限制，超出时按 LRU 淘汰。每个集合可以单独设置有效期，有效期为 0 的集合不缓存。
+ * 不存在的文档不缓存。
+ *
+ * <p>
+ * 通过同一个 {@link BasicMongoService} 的写操作会让缓存失效：知道 ID 的写操作只让对应的文档失效，按条件的写操作
+ * （{@code updateFirst}、{@code updateMulti}、{@code remove(Query)} 等）增加集合的版本号，让整个集合的缓存失效。
+ * 其他进程的修改只能等缓存过期，所以只适合配置、用户资料等读多写少、能接受短暂延迟的集合。
+ *
+ * @author akuma
+ */
+public class MongoDocumentCache {
+
+    private static final int DEFAULT_MAX_SIZE = 10000;
+    private static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+    private static final long DEFAULT_TTL_SECONDS = 60;
+    private static final int SEGMENT_COUNT = 16;
+
+    private final Segment[] segments;
+    private final int maxSize;
+    private final long maxBytes;
+    private final long defaultTtlMillis;
+
+    private final ConcurrentMap<String, Region> regions = new ConcurrentHashMap<>();
+    private final AtomicLong evictionCount = new AtomicLong();
+    private final AtomicLong invalidationCount = new AtomicLong();
+
+    /**
+     * 构造方法，最多缓存 10000 个文档、64MB，所有集合的有效期都是 60 秒。
+     */
+    public MongoDocumentCache() {
+        this(DEFAULT_MAX_SIZE, DEFAULT_MAX_BYTES, DEFAULT_TTL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 构造方法。
+     *
+     * @param maxSize
+     *            最多缓存多少个文档
+     * @param maxBytes
+     *            缓存文档的最大估算字节数
+     * @param defaultTtl
+     *            没有单独设置有效期的集合的有效期，为 0 时只缓存单独设置了有效期的集合
+     * @param unit
+     *            有效期的时间单位
+     */
+    public MongoDocumentCache(int maxSize, long maxBytes, long defaultTtl, TimeUnit unit) {
+        if (maxSize <= 0 || maxBytes <= 0) {
+            throw new IllegalArgumentException("maxSize and maxBytes must be greater than 0");
+        }
+
+        segments = new Segment[SEGMENT_COUNT];
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = new Segment((maxSize + SEGMENT_COUNT - 1) / SEGMENT_COUNT, (maxBytes + SEGMENT_COUNT - 1)
+                    / SEGMENT_COUNT, evictionCount);
+        }
+        this.maxSize = maxSize;
+        this.maxBytes = maxBytes;
+        this.defaultTtlMillis = unit.toMillis(defaultTtl);
+    }
+
+    /**
+     * 设置集合的有效期，为 0 时不缓存该集合。
+     */
+    public void setTtl(String collectionName, long ttl, TimeUnit unit) {
+        getRegion(collectionName).ttlMillis = unit.toMillis(ttl);
+    }
+
+    /**
+     * 设置多个集合的有效期（秒），便于在 Spring 配置文件中配置。
+     */
+    public void setTtls(Map<String, Long> ttlSeconds) {
+        ttlSeconds.forEach((collectionName, ttl) -> setTtl(collectionName, ttl, TimeUnit.SECONDS));
+    }
+
+    /**
+     * 判断集合是否需要缓存。
+     */
+    public boolean isCacheable(String collectionName) {
+        return getRegion(collectionName).ttlMillis > 0;
+    }
+
+    /**
+     * 获取缓存的文档，缓存中没有时通过 {@code loader} 加载并放入缓存。返回的文档是共享的，不能修改。
+     *
+     * @param loader
+     *            加载文档的方法，文档不存在时返回 null
+     * @return 文档，不存在时返回 null
+     */
+    public DBObject get(String collectionName, Object id, Function<Object, DBObject> loader) {
+        Region region = getRegion(collectionName);
+        Key key = new Key(collectionName, id);
+        DBObject document = getDocument(region, key);
+        if (document != null) {
+            region.hitCount.incrementAndGet();
+            return document;
+        }
+
+        region.missCount.incrementAndGet();
+        long loadModCount = region.modCount.get();
+        document = loader.apply(id);
+        if (document != null) {
+            put(region, key, document, loadModCount);
+        }
+        return document;
+    }
+
+    /**
+     * 批量获取缓存的文档，缓存中没有的 ID 通过 {@code loader} 一次加载并放入缓存。返回的文档是共享的，不能修改。
+     *
+     * @param loader
+     *            加载文档的方法，参数是缓存中没有的 ID，不存在的文档不需要返回
+     * @return 文档列表，顺序和 {@code ids} 一致，重复的 ID 只返回一次，不包含不存在的文档
+     */
+    public List<DBObject> getAll(String collectionName, Collection<?> ids,
+            Function<List<Object>, ? extends Collection<DBObject>> loader) {
+        Region region = getRegion(collectionName);
+        Map<Key, DBObject> documents = new LinkedHashMap<>(ids.size() * 4 / 3 + 1);
+        List<Object> missingIds = new ArrayList<>();
+        for (Object id : ids) {
+            Key key = new Key(collectionName, id);
+            if (documents.containsKey(key)) {
+                continue;
+            }
+
+            DBObject document = getDocument(region, key);
+            if (document == null) {
+                missingIds.add(id);
+            }
+            documents.put(key, document);
+        }
+        region.hitCount.addAndGet(documents.size() - missingIds.size());
+
+        if (!missingIds.isEmpty()) {
+            region.missCount.addAndGet(missingIds.size());
+            long loadModCount = region.modCount.get();
+            for (DBObject document : loader.apply(missingIds)) {
+                Key key = new Key(collectionName, document.get("_id"));
+                documents.put(key, document);
+                put(region, key, document, loadModCount);
+            }
+        }
+
+        List<DBObject> list = new ArrayList<>(documents.size());
+        for (DBObject document : documents.values()) {
+            if (document != null) {
+                list.add(document);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * 让集合中指定 ID 的文档失效。
+     */
+    public void evict(String collectionName, Object id) {
+        getRegion(collectionName).modCount.incrementAndGet();
+        Key key = new Key(collectionName, id);
+        segmentFor(key).remove(key);
+    }
+
+    /**
+     * 让集合中多个 ID 的文档失效。
+     */
+    public void evict(String collectionName, Collection<?> ids) {
+        getRegion(collectionName).modCount.incrementAndGet();
+        for (Object id : ids) {
+            Key key = new Key(collectionName, id);
+            segmentFor(key).remove(key);
+        }
+    }
+
+    /**
+     * 让集合中的所有文档失效。只是增加集合的版本号，旧版本的文档在读取时被忽略，并最终被 LRU 淘汰。
+     */
+    public void evictAll(String collectionName) {
+        Region region = getRegion(collectionName);
+        region.modCount.incrementAndGet();
+        region.generation.incrementAndGet();
+        invalidationCount.incrementAndGet();
+    }
+
+    /**
+     * 清空所有缓存。
+     */
+    public void clear() {
+        for (Region region : regions.values()) {
+            region.modCount.incrementAndGet();
+        }
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /**
+     * 获取缓存的文档个数，包括已过期、尚未被淘汰的文档。
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * 获取缓存文档的估算字节数。
+     */
+    public long getByteSize() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            bytes += segment.getBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * 获取缓存命中次数。
+     */
+    public long getHitCount() {
+        return regions.values().stream().mapToLong(region -> region.hitCount.get()).sum();
+    }
+
+    /**
+     * 获取集合的缓存命中次数。
+     */
+    public long getHitCount(String collectionName) {
+        return getRegion(collectionName).hitCount.get();
+    }
+
+    /**
+     * 获取缓存未命中次数。
+     */
+    public long getMissCount() {
+        return regions.values().stream().mapToLong(region -> region.missCount.get()).sum();
+    }
+
+    /**
+     * 获取集合的缓存未命中次数。
+     */
+    public long getMissCount(String collectionName) {
+        return getRegion(collectionName).missCount.get();
+    }
+
+    /**
+     * 获取缓存命中率，没有访问记录时返回 0。
+     */
+    public double getHitRate() {
+        long hits = getHitCount();
+        long total = hits + getMissCount();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * 获取因容量限制被淘汰的文档个数。
+     */
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    /**
+     * 获取整个集合失效的次数。
+     */
+    public long getInvalidationCount() {
+        return invalidationCount.get();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("MongoDocumentCache(");
+        sb.append("size: " + size() + "/" + maxSize);
+        sb.append(", bytes: " + getByteSize() + "/" + maxBytes);
+        sb.append(", hits: " + getHitCount());
+        sb.append(", misses: " + getMissCount());
+        sb.append(", evictions: " + getEvictionCount());
+        sb.append(", invalidations: " + getInvalidationCount() + ")");
+        return sb.toString();
+    }
+
+    /**
+     * 估算文档占用的内存字节数，只用于限制缓存大小，不需要精确。
+     */
+    static long estimateSize(Object value) {
+        if (value == null) {
+            return 8;
+        }
+        if (value instanceof CharSequence) {
+            return 40 + 2L * ((CharSequence) value).length();
+        }
+        if (value instanceof byte[]) {
+            return 16 + ((byte[]) value).length;
+        }
+        if (value instanceof Number || value instanceof Boolean || value instanceof Date
+                || value instanceof ObjectId) {
+            return 24;
+        }
+        if (value instanceof Collection) {
+            long size = 40;
+            for (Object element : (Collection<?>) value) {
+                size += 8 + estimateSize(element);
+            }
+            return size;
+        }
+        if (value instanceof DBObject) {
+            DBObject document = (DBObject) value;
+            long size = 48;
+            for (String key : document.keySet()) {
+                size += 32 + estimateSize(key) + estimateSize(document.get(key));
+            }
+            return size;
+        }
+        return 32;
+    }
+
+    private Region getRegion(String collectionName) {
+        Region region = regions.get(collectionName);
+        if (region == null) {
+            region = regions.computeIfAbsent(collectionName, name -> new Region(defaultTtlMillis));
+        }
+        return region;
+    }
+
+    private DBObject getDocument(Region region, Key key) {
+        Segment segment = segmentFor(key);
+        Entry entry = segment.get(key);
+        if (entry == null) {
+            return null;
+        }
+
+        if (entry.generation != region.generation.get() || entry.expireTime < System.currentTimeMillis()) {
+            segment.remove(key, entry);
+            return null;
+        }
+        return entry.document;
+    }
+
+    /**
+     * 放入缓存。加载期间集合发生过修改时不放入，避免把修改前读到的旧文档放回缓存。
+     */
+    private void put(Region region, Key key, DBObject document, long loadModCount) {
+        long ttl = region.ttlMillis;
+        if (ttl <= 0 || region.modCount.get() != loadModCount) {
+            return;
+        }
+
+        Segment segment = segmentFor(key);
+        Entry entry = new Entry(document, estimateSize(document), region.generation.get(), System.currentTimeMillis()
+                + ttl);
+        segment.put(key, entry);
+        if (region.modCount.get() != loadModCount) {
+            segment.remove(key, entry);
+        }
+    }
+
+    private Segment segmentFor(Key key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return segments[h & (SEGMENT_COUNT - 1)];
+    }
+
+    /**
+     * 集合的缓存设置、版本号和统计。
+     */
+    private static class Region {
+
+        volatile long ttlMillis;
+        // 整个集合失效时增加，旧版本的文档不再有效
+        final AtomicLong generation = new AtomicLong();
+        // 集合中任何文档失效时增加，用于丢弃失效之前开始加载的文档
+        final AtomicLong modCount = new AtomicLong();
+        final AtomicLong hitCount = new AtomicLong();
+        final AtomicLong missCount = new AtomicLong();
+
+        Region(long ttlMillis) {
+            this.ttlMillis = ttlMillis;
+        }
+
+    }
+
+    /**
+     * 缓存的 key，由集合名称和 ID 组成，ID 统一转换为字符串，{@code ObjectId} 和它的十六进制字符串是同一个 key。
+     */
+    private static class Key {
+
+        final String collectionName;
+        final String id;
+
+        Key(String collectionName, Object id) {
+            this.collectionName = collectionName;
+            this.id = String.valueOf(id);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return id.equals(other.id) && Objects.equals(collectionName, other.collectionName);
+        }
+
+        @Override
+        public int hashCode() {
+            return id.hashCode() * 31 + Objects.hashCode(collectionName);
+        }
+
+    }
+
+    private static class Entry {
+
+        final DBObject document;
+        final long bytes;
+        final long generation;
+        final long expireTime;
+
+        Entry(DBObject document, long bytes, long generation, long expireTime) {
+            this.document = document;
+            this.bytes = bytes;
+            this.generation = generation;
+            this.expireTime = expireTime;
+        }
+
+    }
+
+    /**
+     * 缓存分段，按访问顺序排列，文档个数或字节数超出容量时淘汰最久未被访问的文档。
+     */
+    private static class Segment {
+
+        private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private final int capacity;
+        private final long maxBytes;
+        private final AtomicLong evictionCount;
+        private long bytes;
+
+        Segment(int capacity, long maxBytes, AtomicLong evictionCount) {
+            this.capacity = capacity;
+            this.maxBytes = maxBytes;
+            this.evictionCount = evictionCount;
+        }
+
+        synchronized Entry get(Key key) {
+            return entries.get(key);
+        }
+
+        synchronized void put(Key key, Entry entry) {
+            Entry old = entries.put(key, entry);
+            if (old != null) {
+                bytes -= old.bytes;
+            }
+            bytes += entry.bytes;
+
+            Iterator<Entry> it = entries.values().iterator();
+            while ((entries.size() > capacity || bytes > maxBytes) && it.hasNext()) {
+                Entry eldest = it.next();
+                it.remove();
+                bytes -= eldest.bytes;
+                evictionCount.incrementAndGet();
+            }
+        }
+
+        synchronized void remove(Key key) {
+            Entry old = entries.remove(key);
+            if (old != null) {
+                bytes -= old.bytes;
+            }
+        }
+
+        synchronized void remove(Key key, Entry entry) {
+            if (entries.remove(key, entry)) {
+                bytes -= entry.bytes;
+            }
+        }
+
+        synchronized void clear() {
+            entries.clear();
+            bytes = 0;
+        }
+
+        synchronized int size() {
+            return entries.size();
+        }
+
+        synchronized long getBytes() {
+            return bytes;
+        }
+
+    }
+
+}
@@ -0,0 +1,125 @@
+/*
+ * @(#)MongoProjection.java    Created on 2026-10-18
+ * Copyright (c) 2026 Guomi. All rights reserved.
+ */
+package com.guomi.meazza.mongo;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.data.annotation.Transient;
+import org.springframework.data.mongodb.core.query.Query;
+
+/**
+ * Mongo 查询返回的字段，只读取列表等场景需要的字段，减少网络传输和文档到对象的转换。不可变对象，可以共享。
+ *
+ * <p>
+ * 可以指定包含或者排除的字段（不能同时指定），也可以根据投影类（DTO）的字段生成，投影类的字段只在第一次使用时解析一次。
+ * 字段名是实体或投影类的属性名，查询时和查询条件一样转换为文档中的字段名。
+ *
+ * @author akuma
+ */
+public final class MongoProjection {
+
+    private static final ConcurrentMap<Class<?>, MongoProjection> classProjections = new ConcurrentHashMap<>();
+
+    private final Set<String> fields;
+    private final boolean exclude;
+
+    private MongoProjection(Collection<String> fields, boolean exclude) {
+        if (fields.isEmpty()) {
+            throw new IllegalArgumentException("Projection fields must not be empty");
+        }
+        this.fields = Collections.unmodifiableSet(new LinkedHashSet<>(fields));
+        this.exclude = exclude;
+    }
+
+    /**
+     * 只返回指定的字段，{@code id} 总是会返回。
+     */
+    public static MongoProjection include(String... fields) {
+        return new MongoProjection(Arrays.asList(fields), false);
+    }
+
+    /**
+     * 返回指定字段以外的所有字段。
+     */
+    public static MongoProjection exclude(String... fields) {
+        return new MongoProjection(Arrays.asList(fields), true);
+    }
+
+    /**
+     * 只返回投影类中的字段，包括父类中的字段，不包括静态字段、{@code transient} 字段和标注了 {@link Transient} 的字段。
+     */
+    public static MongoProjection of(Class<?> projectionClass) {
+        return classProjections.computeIfAbsent(projectionClass, clazz -> {
+            Set<String> fields = new LinkedHashSet<>();
+            for (Class<?> c = clazz; c != null && c != Object.class; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    int modifiers = field.getModifiers();
+                    if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers) && !field.isSynthetic()
+                            && !field.isAnnotationPresent(Transient.class)) {
+                        fields.add(field.getName());
+                    }
+                }
+            }
+            return new MongoProjection(fields, false);
+        });
+    }
+
+    /**
+     * 获取包含或排除的字段。
+     */
+    public Set<String> getFields() {
+        return fields;
+    }
+
+    /**
+     * 判断是否是排除字段的投影。
+     */
+    public boolean isExclude() {
+        return exclude;
+    }
+
+    /**
+     * 返回同时包含了 {@code extraFields} 的投影，例如分页排序需要的字段。排除字段的投影中去掉 {@code extraFields}。
+     */
+    public MongoProjection with(Collection<String> extraFields) {
+        Set<String> newFields = new LinkedHashSet<>(fields);
+        boolean changed = exclude ? newFields.removeAll(extraFields) : newFields.addAll(extraFields);
+        if (!changed) {
+            return this;
+        }
+        return newFields.isEmpty() ? null : new MongoProjection(newFields, exclude);
+    }
+
+    /**
+     * 把投影设置到查询对象中。
+     *
+     * @return 查询对象本身
+     */
+    public Query applyTo(Query query) {
+        org.springframework.data.mongodb.core.query.Field queryFields = query.fields();
+        for (String field : fields) {
+            if (exclude) {
+                queryFields.exclude(field);
+            } else {
+                queryFields.include(field);
+            }
+        }
+        return query;
+    }
+
+    @Override
+    public String toString() {
+        return "MongoProjection(" + (exclude ? "exclude: " : "include: ") + fields + ")";
+    }
+
+}
@@ -4,45 +4,105 @@
  */
 package com.guomi.meazza.orm.mybatis;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 import javax.annotation.Resource;
 
 import org.apache.ibatis.annotations.MapKey;
+import org.apache.ibatis.exceptions.PersistenceException;
+import org.apache.ibatis.executor.BatchResult;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
 import org.mybatis.spring.SqlSessionTemplate;
 import org.mybatis.spring.support.SqlSessionDaoSupport;
+import org.springframework.dao.DataAccessException;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import com.guomi.meazza.dao.EntityCache;
+import com.guomi.meazza.dao.ReadWriteContext;
+import com.guomi.meazza.dao.RowCountCache;
+import com.guomi.meazza.util.ObjectHelper;
 import com.guomi.meazza.util.Pagination;
+import com.guomi.meazza.util.SqlUtils;
 
 /**
  * @author akuma
  */
-public class DefaultMyBatisBasicDao<T> extends SqlSessionDaoSupport implements MyBatisBasicDao<T> {
+public class DefaultMyBatisBasicDao<T> extends SqlSessionDaoSupport implements MyBatisBulkDao<T> {
+
+    private static final int DEFAULT_BATCH_SIZE = 500;
 
     @Resource
     protected SqlSessionTemplate sqlSessionTemplate;
 
+    // 批量写入时每批执行的语句数
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    // 并发执行拆分后的 IN 查询的线程池，为 null 时串行执行
+    private ExecutorService chunkExecutor;
+
+    // 逐行读取时使用的 fetch size，为 null 时使用数据库方言的设置
+    private Integer streamingFetchSize;
+
+    // 原语句 ID 和启动时注册的逐行读取语句 ID 的映射
+    private Map<String, String> streamingStatements = Collections.emptyMap();
+
+    // 按 ID 缓存的实体，为 null 时不缓存
+    private EntityCache<String, T> entityCache;
+
     @Override
     public <PK> T find(PK id) {
-        return getSqlSession().selectOne("find", id);
+        if (!isEntityCacheEnabled()) {
+            return selectOne("find", id);
+        }
+        return entityCache.get(String.valueOf(id), key -> this.<T> selectOne("find", id));
     }
 
     @Override
     public List<T> findAll() {
-        return getSqlSession().selectList("findAll");
+        return selectList("findAll", null);
     }
 
+    /**
+     * 根据 ID 列表查询，ID 很多时拆分成多次 IN 查询，参见 {@link SqlUtils#partitionInArgs(Object[])}。
+     * 拆分成多次查询或者使用实体缓存时，结果按 ID 的请求顺序排列；否则结果的顺序和 Mapper 中定义的一致。
+     */
     @SuppressWarnings("unchecked")
     @Override
     public <PK> List<T> findByIds(PK... ids) {
-        return getSqlSession().selectList("findByIds", ids);
+        PK[] distinctIds = distinct(ids);
+        if (distinctIds == null || distinctIds.length == 0) {
+            return new ArrayList<>(0);
+        }
+        if (isEntityCacheEnabled()) {
+            return new ArrayList<>(findCachedEntities(distinctIds).values());
+        }
+
+        List<PK[]> chunks = SqlUtils.partitionInArgs(distinctIds);
+
+        List<List<T>> results = executeChunks(chunks, chunk -> this.<T> selectList("findByIds", chunk));
+        return results.size() == 1 ? results.get(0) : mergeInRequestOrder(ids, results);
     }
 
     @Override
     public List<T> findByEntity(T entity) {
-        return getSqlSession().selectList("findByEntity", entity);
+        return selectList("findByEntity", entity);
     }
 
     @Override
@@ -50,12 +110,12 @@ public class DefaultMyBatisBasicDao<T> extends SqlSessionDaoSupport implements M
         Map<String, Object> params = new HashMap<>();
         params.put("param1", entity);
         params.put("param2", page);
-        return getSqlSession().selectList("findByEntityWithPage", params);
+        return seekAfterLastRow(selectList("findByEntityWithPage", params), page);
     }
 
     @Override
     public List<T> findByParam(Object param) {
-        return getSqlSession().selectList("findByParam", param);
+        return selectList("findByParam", param);
     }
 
     @Override
@@ -63,35 +123,525 @@ public class DefaultMyBatisBasicDao<T> extends SqlSessionDaoSupport implements M
         Map<String, Object> params = new HashMap<>();
         params.put("param1", param);
         params.put("param2", page);
-        return getSqlSession().selectList("findByParamWithPage", params);
+        return seekAfterLastRow(selectList("findByParamWithPage", params), page);
     }
 
+    @Override
+    public void streamAll(Consumer<T> consumer) {
+        stream("findAll", null, consumer);
+    }
+
+    @Override
+    public void streamByParam(Object param, Consumer<T> consumer) {
+        stream("findByParam", param, consumer);
+    }
+
+    @Override
+    public void forEachBatch(int size, Consumer<List<T>> consumer) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("size must be greater than 0");
+        }
+
+        List<T> batch = new ArrayList<>(size);
+        stream("findAll", null, row -> {
+            batch.add(row);
+            if (batch.size() >= size) {
+                consumer.accept(new ArrayList<>(batch));
+                batch.clear();
+            }
+        });
+        if (!batch.isEmpty()) {
+            consumer.accept(batch);
+        }
+    }
+
+    /**
+     * 根据 ID 列表查询，返回 ID 和实体的映射，ID 很多时拆分成多次 IN 查询。拆分成多次查询时，映射的迭代顺序和 ID 的请求顺序一致。
+     */
     @SuppressWarnings("unchecked")
     @Override
     @MapKey("id")
     public <PK> Map<PK, T> findMap(PK... ids) {
-        return getSqlSession().selectMap("findMap", ids, "id");
+        PK[] distinctIds = distinct(ids);
+        if (distinctIds != null && distinctIds.length > 0 && isEntityCacheEnabled()) {
+            Map<String, T> entities = findCachedEntities(distinctIds);
+            Map<PK, T> map = new LinkedHashMap<>(entities.size() * 4 / 3 + 1);
+            for (PK id : distinctIds) {
+                T entity = entities.get(String.valueOf(id));
+                if (entity != null) {
+                    map.put(id, entity);
+                }
+            }
+            return map;
+        }
+
+        List<PK[]> chunks = SqlUtils.partitionInArgs(distinctIds);
+        if (chunks.size() <= 1) {
+            return chunks.isEmpty() ? new HashMap<PK, T>(0) : this.<PK, T> selectMap("findMap",
+                    chunks.get(0), "id");
+        }
+
+        Map<PK, T> rows = new HashMap<>();
+        for (Map<PK, T> result : executeChunks(chunks, chunk -> this.<PK, T> selectMap("findMap", chunk,
+                "id"))) {
+            rows.putAll(result);
+        }
+
+        Map<PK, T> map = new LinkedHashMap<>(rows.size() * 4 / 3 + 1);
+        for (PK id : ids) {
+            T row = rows.remove(id);
+            if (row != null) {
+                map.put(id, row);
+            }
+        }
+        map.putAll(rows);
+        return map;
     }
 
     @Override
     public void insert(T entity) {
+        ReadWriteContext.markWrite();
         getSqlSession().insert("insert", entity);
+        evictRowCounts("insert");
+
+        // 插入前可能缓存了该 ID 不存在
+        Object id = getEntityId(entity);
+        if (id != null) {
+            evictCachedEntities(Collections.singletonList(id));
+        }
     }
 
     @Override
     public void update(T entity) {
+        ReadWriteContext.markWrite();
         getSqlSession().update("update", entity);
+        evictRowCounts("update");
+        evictCachedEntities(Collections.singletonList(getEntityId(entity)));
     }
 
     @Override
     public void updateIfPossible(T entity) {
+        ReadWriteContext.markWrite();
         getSqlSession().update("updateIfPossible", entity);
+        evictRowCounts("updateIfPossible");
+        evictCachedEntities(Collections.singletonList(getEntityId(entity)));
     }
 
+    /**
+     * 根据 ID 列表删除，ID 很多时拆分成多次删除。
+     */
     @SuppressWarnings("unchecked")
     @Override
     public <PK> void delete(PK... ids) {
-        getSqlSession().delete("delete", ids);
+        ReadWriteContext.markWrite();
+        for (PK[] chunk : SqlUtils.partitionInArgs(distinct(ids))) {
+            getSqlSession().delete("delete", chunk);
+        }
+        evictRowCounts("delete");
+        if (ids != null) {
+            evictCachedEntities(Arrays.asList(ids));
+        }
+    }
+
+    @Override
+    public int[] insertBatch(Collection<T> entities) {
+        try {
+            return executeBatch("insert", entities);
+        } finally {
+            evictCachedEntities(getEntityIds(entities));
+        }
+    }
+
+    @Override
+    public int[] updateBatch(Collection<T> entities) {
+        try {
+            return executeBatch("update", entities);
+        } finally {
+            evictCachedEntities(getEntityIds(entities));
+        }
+    }
+
+    @Override
+    public int[] upsertBatch(Collection<T> entities) {
+        try {
+            return executeBatch("upsert", entities);
+        } finally {
+            evictCachedEntities(getEntityIds(entities));
+        }
+    }
+
+    /**
+     * 设置并发执行拆分后的 IN 查询的线程池，为 null 时串行执行。在事务中总是串行执行，以保证使用事务中的连接。
+     */
+    public void setChunkExecutor(ExecutorService chunkExecutor) {
+        this.chunkExecutor = chunkExecutor;
+    }
+
+    /**
+     * 设置逐行读取时使用的 fetch size，默认使用 {@link MyBatisPagePlugin} 中配置的数据库方言的设置。Mapper 中指定了 fetchSize 的语句不受影响。
+     * 逐行读取的语句在初始化时注册，之后修改不再生效。
+     */
+    public void setStreamingFetchSize(Integer streamingFetchSize) {
+        this.streamingFetchSize = streamingFetchSize;
+    }
+
+    /**
+     * 获取按 ID 缓存实体的缓存，可以用于查看缓存的命中率和加载时间，没有设置时返回 null。
+     */
+    public EntityCache<String, T> getEntityCache() {
+        return entityCache;
+    }
+
+    /**
+     * 设置按 ID 缓存实体的缓存，为 null 时不缓存（默认）。find、findByIds、findMap 优先从缓存中读取，只查询缓存中没有的 ID；
+     * insert、update、updateIfPossible、delete 和批量写入方法会让相应 ID 的缓存失效。缓存的 key 是 ID 的字符串形式。
+     *
+     * <p>
+     * 在事务中读取时不使用缓存，事务中修改的实体在事务结束后会再次失效，以免缓存其他线程在事务提交前读到的旧数据。
+     * 子类中自定义的修改方法需要调用 {@link #evictCachedEntities(Collection)}。
+     */
+    public void setEntityCache(EntityCache<String, T> entityCache) {
+        this.entityCache = entityCache;
+    }
+
+    /**
+     * 获取批量写入时每批执行的语句数。
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * 设置批量写入时每批执行的语句数，默认 500。
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be greater than 0");
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * 使用 {@code ExecutorType.BATCH} 的 {@code SqlSession} 批量执行写入语句，每 {@link #getBatchSize()} 个语句提交一次批处理。
+     *
+     * <p>
+     * 在 Spring 事务中执行时，批处理使用事务中的连接，由事务提交；不在事务中时，全部执行完成后提交。
+     *
+     * @param statement
+     *            写入语句的 id，例如 insert
+     * @param parameters
+     *            每个语句的参数
+     * @return 每个语句影响的行数，顺序和参数一致。部分 JDBC 驱动在批处理中不返回影响的行数，此时为
+     *         {@link java.sql.Statement#SUCCESS_NO_INFO}
+     */
+    protected int[] executeBatch(String statement, Collection<?> parameters) {
+        int[] results = new int[parameters.size()];
+        if (parameters.isEmpty()) {
+            return results;
+        }
+
+        ReadWriteContext.markWrite();
+        try (SqlSession session = sqlSessionTemplate.getSqlSessionFactory().openSession(ExecutorType.BATCH)) {
+            int index = 0;
+            int count = 0;
+            for (Object parameter : parameters) {
+                session.update(statement, parameter);
+                if (++count % batchSize == 0) {
+                    index = copyUpdateCounts(session.flushStatements(), results, index);
+                }
+            }
+            copyUpdateCounts(session.flushStatements(), results, index);
+            session.commit();
+        } catch (PersistenceException e) {
+            DataAccessException dae = sqlSessionTemplate.getPersistenceExceptionTranslator()
+                    .translateExceptionIfPossible(e);
+            throw dae == null ? e : dae;
+        } finally {
+            evictRowCounts(statement);
+        }
+        return results;
+    }
+
+    /**
+     * 使用 keyset 方式分页时，记录当前页最后一行的排序字段值，作为获取下一页的依据。
+     */
+    protected <E> List<E> seekAfterLastRow(List<E> rows, Pagination page) {
+        if (page != null && page.isSeekEnable() && !rows.isEmpty()) {
+            page.seekAfter(rows.get(rows.size() - 1));
+        }
+        return rows;
+    }
+
+    /**
+     * 让 {@code statement} 所在命名空间下缓存的分页总记录数失效，子类中自定义的修改方法也应该调用此方法。
+     * 在事务中调用时，事务结束后会再次失效，事务提交之前其他线程读到并缓存的旧记录数不会在提交后继续使用。
+     */
+    protected void evictRowCounts(String statement) {
+        Configuration configuration = getSqlSession().getConfiguration();
+        RowCountCache rowCountCache = MyBatisUtils.getRowCountCache(configuration);
+        if (rowCountCache == null || !configuration.hasStatement(statement)) {
+            return;
+        }
+
+        String region = MyBatisUtils.getNamespace(configuration.getMappedStatement(statement));
+        rowCountCache.evict(region);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+                @Override
+                public void afterCompletion(int status) {
+                    rowCountCache.evict(region);
+                }
+
+            });
+        }
+    }
+
+    /**
+     * 让指定 ID 的实体缓存失效，ID 中有 null 时清空缓存。在事务中调用时，事务结束后会再次失效。
+     */
+    protected void evictCachedEntities(Collection<?> ids) {
+        if (entityCache == null || ids.isEmpty()) {
+            return;
+        }
+
+        List<String> keys = new ArrayList<>(ids.size());
+        for (Object id : ids) {
+            if (id == null) {
+                keys = null;
+                break;
+            }
+            keys.add(String.valueOf(id));
+        }
+
+        List<String> evictKeys = keys;
+        evictCachedEntityKeys(evictKeys);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+                @Override
+                public void afterCompletion(int status) {
+                    evictCachedEntityKeys(evictKeys);
+                }
+
+            });
+        }
+    }
+
+    private void evictCachedEntityKeys(List<String> keys) {
+        if (keys == null) {
+            entityCache.clear();
+        } else {
+            keys.forEach(entityCache::evict);
+        }
+    }
+
+    private boolean isEntityCacheEnabled() {
+        return entityCache != null && !TransactionSynchronizationManager.isActualTransactionActive();
+    }
+
+    /**
+     * 从实体缓存中读取实体，缓存中没有的 ID 通过 findByIds 语句查询。返回的映射以 ID 的字符串形式为 key，顺序和 {@code ids} 一致。
+     */
+    private <PK> Map<String, T> findCachedEntities(PK[] ids) {
+        Map<String, PK> idsByKey = new LinkedHashMap<>(ids.length * 4 / 3 + 1);
+        for (PK id : ids) {
+            idsByKey.put(String.valueOf(id), id);
+        }
+
+        return entityCache.getAll(idsByKey.keySet(), keys -> {
+            PK[] missingIds = Arrays.copyOf(ids, keys.size());
+            for (int i = 0; i < missingIds.length; i++) {
+                missingIds[i] = idsByKey.get(keys.get(i));
+            }
+
+            Map<String, T> entities = new HashMap<>(missingIds.length * 4 / 3 + 1);
+            for (List<T> rows : executeChunks(SqlUtils.partitionInArgs(missingIds),
+                    chunk -> this.<T> selectList("findByIds", chunk))) {
+                for (T row : rows) {
+                    Object id = getEntityId(row);
+                    if (id != null) {
+                        entities.put(id.toString(), row);
+                    }
+                }
+            }
+            return entities;
+        });
+    }
+
+    private static Object getEntityId(Object entity) {
+        return entity == null ? null : ObjectHelper.getPropertyValueQuietly(entity, "id");
+    }
+
+    private static List<Object> getEntityIds(Collection<?> entities) {
+        List<Object> ids = new ArrayList<>(entities.size());
+        for (Object entity : entities) {
+            ids.add(getEntityId(entity));
+        }
+        return ids;
+    }
+
+    /**
+     * 初始化时注册逐行读取的语句，参见 {@link #getStreamingStatements()}。
+     */
+    @Override
+    protected void checkDaoConfig() {
+        super.checkDaoConfig();
+
+        Configuration configuration = getSqlSession().getConfiguration();
+        Integer fetchSize = getStreamingFetchSize(configuration);
+        if (fetchSize == null) {
+            return;
+        }
+
+        Map<String, String> statements = new HashMap<>();
+        for (String statement : getStreamingStatements()) {
+            if (configuration.hasStatement(statement)) {
+                statements.put(statement, MyBatisUtils.registerStreamingStatement(configuration, statement,
+                        fetchSize));
+            }
+        }
+        streamingStatements = statements;
+    }
+
+    /**
+     * 获取需要逐行读取的语句，初始化时为这些语句注册使用 fetch size 的副本。默认为 findAll 和 findByParam，
+     * 子类中通过 {@link #stream(String, Object, Consumer)} 读取其他语句时需要覆盖此方法。
+     */
+    protected Collection<String> getStreamingStatements() {
+        return Arrays.asList("findAll", "findByParam");
+    }
+
+    /**
+     * 逐行读取查询结果，每读取一行调用一次 {@code consumer}，读取完后才返回。初始化时注册过的语句使用 fetch size 读取，
+     * 其他语句按原样执行。
+     *
+     * <p>
+     * MySQL 逐行读取时，读取完之前同一个连接上不能执行其他语句，因此在事务中使用时 {@code consumer} 中不能访问数据库。
+     */
+    @SuppressWarnings("unchecked")
+    protected void stream(String statement, Object param, Consumer<? super T> consumer) {
+        String streamingStatement = streamingStatements.getOrDefault(statement, statement);
+        ReadWriteContext.read(() -> getSqlSession().select(streamingStatement, param, context -> consumer
+                .accept((T) context.getResultObject())));
+    }
+
+    /**
+     * 以只读方式执行查询，连接可以来自只读库，参见 {@link ReadWriteContext}。
+     */
+    protected <E> E selectOne(String statement, Object parameter) {
+        return ReadWriteContext.read(() -> getSqlSession().<E> selectOne(statement, parameter));
+    }
+
+    /**
+     * 以只读方式执行查询，连接可以来自只读库，参见 {@link ReadWriteContext}。
+     */
+    protected <E> List<E> selectList(String statement, Object parameter) {
+        return ReadWriteContext.read(() -> getSqlSession().<E> selectList(statement, parameter));
+    }
+
+    /**
+     * 以只读方式执行查询，连接可以来自只读库，参见 {@link ReadWriteContext}。
+     */
+    protected <K, V> Map<K, V> selectMap(String statement, Object parameter, String mapKey) {
+        return ReadWriteContext.read(() -> getSqlSession().<K, V> selectMap(statement, parameter, mapKey));
+    }
+
+    private Integer getStreamingFetchSize(Configuration configuration) {
+        if (streamingFetchSize != null) {
+            return streamingFetchSize;
+        }
+
+        MyBatisPagePlugin pagePlugin = MyBatisUtils.getInterceptor(configuration, MyBatisPagePlugin.class);
+        int fetchSize = pagePlugin == null ? 0 : pagePlugin.getDialect().getStreamingFetchSize();
+        return fetchSize == 0 ? null : fetchSize;
+    }
+
+    /**
+     * 执行拆分后的 IN 查询，配置了线程池并且不在事务中时并发执行。返回的结果和拆分后的参数顺序一致。
+     */
+    protected <P, R> List<R> executeChunks(List<P> chunks, Function<P, R> query) {
+        List<R> results = new ArrayList<>(chunks.size());
+        if (chunkExecutor == null || chunks.size() == 1 || TransactionSynchronizationManager.isActualTransactionActive()) {
+            for (P chunk : chunks) {
+                results.add(query.apply(chunk));
+            }
+            return results;
+        }
+
+        List<Future<R>> futures = new ArrayList<>(chunks.size());
+        for (P chunk : chunks) {
+            futures.add(chunkExecutor.submit(ReadWriteContext.wrap(() -> query.apply(chunk))));
+        }
+
+        try {
+            for (Future<R> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+        } finally {
+            for (Future<R> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 把多次查询的结果按 ID 的请求顺序合并，ID 通过实体的 id 属性获取，没有 id 属性的实体排在最后。
+     */
+    static <PK, E> List<E> mergeInRequestOrder(PK[] ids, List<List<E>> results) {
+        Map<String, E> rowsById = new LinkedHashMap<>();
+        List<E> others = new ArrayList<>();
+        for (List<E> rows : results) {
+            for (E row : rows) {
+                Object id = ObjectHelper.getPropertyValueQuietly(row, "id");
+                if (id == null) {
+                    others.add(row);
+                } else {
+                    rowsById.put(id.toString(), row);
+                }
+            }
+        }
+
+        List<E> list = new ArrayList<>(rowsById.size() + others.size());
+        for (PK id : ids) {
+            E row = rowsById.remove(String.valueOf(id));
+            if (row != null) {
+                list.add(row);
+            }
+        }
+        list.addAll(rowsById.values());
+        list.addAll(others);
+        return list;
+    }
+
+    /**
+     * 去掉重复的 ID，保持原有顺序。
+     */
+    private static <PK> PK[] distinct(PK[] ids) {
+        if (ids == null || ids.length <= 1) {
+            return ids;
+        }
+
+        Set<PK> set = new LinkedHashSet<>(Arrays.asList(ids));
+        return set.size() == ids.length ? ids : set.toArray(Arrays.copyOf(ids, 0));
+    }
+
+    private static int copyUpdateCounts(List<BatchResult> batchResults, int[] results, int index) {
+        for (BatchResult batchResult : batchResults) {
+            for (int updateCount : batchResult.getUpdateCounts()) {
+                if (index < results.length) {
+                    results[index++] = updateCount;
+                }
+            }
+        }
+        return index;
     }
 
     /**
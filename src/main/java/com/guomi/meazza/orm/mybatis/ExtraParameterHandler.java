@@ -0,0 +1,71 @@
+/*
+ * @(#)ExtraParameterHandler.java    Created on 2026-10-18
+ * Copyright (c) 2026 Guomi. All rights reserved.
+ */
+package com.guomi.meazza.orm.mybatis;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Date;
+
+import org.apache.ibatis.executor.parameter.ParameterHandler;
+import org.apache.ibatis.type.JdbcType;
+
+/**
+ * 在原有参数之后追加额外参数的 {@code ParameterHandler}，用于设置插件改写 SQL 时追加的占位符的值。
+ *
+ * @author akuma
+ */
+class ExtraParameterHandler implements ParameterHandler {
+
+    private final ParameterHandler delegate;
+    private final int parameterCount;
+    private final Object[] extraArgs;
+    private final JdbcType jdbcTypeForNull;
+
+    /**
+     * 构造方法。
+     *
+     * @param delegate
+     *            原有的 ParameterHandler
+     * @param parameterCount
+     *            原有参数的个数，额外参数从第 {@code parameterCount + 1} 个占位符开始设置
+     * @param extraArgs
+     *            额外参数的值
+     * @param jdbcTypeForNull
+     *            额外参数为 null 时使用的 JDBC 类型，一般为 MyBatis 配置中的 {@code jdbcTypeForNull}。Oracle 和 SQL Server
+     *            的驱动不接受 {@code Types.OTHER}
+     */
+    ExtraParameterHandler(ParameterHandler delegate, int parameterCount, Object[] extraArgs,
+            JdbcType jdbcTypeForNull) {
+        this.delegate = delegate;
+        this.parameterCount = parameterCount;
+        this.extraArgs = extraArgs;
+        this.jdbcTypeForNull = jdbcTypeForNull;
+    }
+
+    @Override
+    public Object getParameterObject() {
+        return delegate.getParameterObject();
+    }
+
+    @Override
+    public void setParameters(PreparedStatement ps) throws SQLException {
+        delegate.setParameters(ps);
+        for (int i = 0; i < extraArgs.length; i++) {
+            setParameter(ps, parameterCount + i + 1, extraArgs[i]);
+        }
+    }
+
+    private void setParameter(PreparedStatement ps, int index, Object value) throws SQLException {
+        if (value == null) {
+            ps.setNull(index, jdbcTypeForNull.TYPE_CODE);
+        } else if (value.getClass() == Date.class) {
+            ps.setTimestamp(index, new Timestamp(((Date) value).getTime()));
+        } else {
+            ps.setObject(index, value);
+        }
+    }
+
+}
@@ -0,0 +1,59 @@
+/*
+ * @(#)MyBatisBulkDao.java    Created on 2026-10-18
+ * Copyright (c) 2026 Guomi. All rights reserved.
+ */
+package com.guomi.meazza.orm.mybatis;
+
+import java.sql.Statement;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 支持逐行读取和批量写入的 MyBatis DAO 接口。
+ *
+ * <p>
+ * 这些方法需要使用 SqlSession 实现，不能由 Mapper 代理执行，因此没有放在 {@link MyBatisBasicDao} 中，
+ * 此接口也不能作为 Mapper 扫描。
+ *
+ * @author akuma
+ */
+public interface MyBatisBulkDao<T> extends MyBatisBasicDao<T> {
+
+    /**
+     * 逐行处理所有记录，使用 findAll 语句。结果集不会全部读到内存中，适合处理大量记录。
+     */
+    void streamAll(Consumer<T> consumer);
+
+    /**
+     * 逐行处理符合条件的记录，使用 findByParam 语句。结果集不会全部读到内存中，适合处理大量记录。
+     */
+    void streamByParam(Object param, Consumer<T> consumer);
+
+    /**
+     * 分批处理所有记录，使用 findAll 语句，每批最多 {@code size} 条。
+     */
+    void forEachBatch(int size, Consumer<List<T>> consumer);
+
+    /**
+     * 批量插入，使用 insert 语句。
+     *
+     * @return 每个实体影响的行数，顺序和参数一致，不知道影响的行数时为 {@link Statement#SUCCESS_NO_INFO}
+     */
+    int[] insertBatch(Collection<T> entities);
+
+    /**
+     * 批量更新，使用 update 语句。
+     *
+     * @return 每个实体影响的行数，顺序和参数一致，不知道影响的行数时为 {@link Statement#SUCCESS_NO_INFO}
+     */
+    int[] updateBatch(Collection<T> entities);
+
+    /**
+     * 批量插入或更新，使用 upsert 语句，需要在 Mapper 中按数据库的语法定义。
+     *
+     * @return 每个实体影响的行数，顺序和参数一致，不知道影响的行数时为 {@link Statement#SUCCESS_NO_INFO}
+     */
+    int[] upsertBatch(Collection<T> entities);
+
+}
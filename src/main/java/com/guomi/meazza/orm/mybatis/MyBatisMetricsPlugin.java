@@ -0,0 +1,316 @@
+/*
+ * @(#)MyBatisMetricsPlugin.java    Created on 2026-10-18
+ * Copyright (c) 2026 Guomi. All rights reserved.
+ */
+package com.guomi.meazza.orm.mybatis;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import javax.annotation.PreDestroy;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Plugin;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * 统计 MyBatis 语句执行情况的插件类。
+ *
+ * <p>
+ * 按 Mapper 语句 ID 记录执行次数、耗时分布（{@link com.guomi.meazza.util.LatencyHistogram}）、返回或影响的行数和失败次数，记录时不加锁。
+ * 耗时超过 {@code slowThreshold} 毫秒（默认 1000）的语句以 WARN 级别输出 SQL 和绑定的参数值。
+ *
+ * <p>
+ * 同时配置了 {@link MyBatisPagePlugin} 时，分页查询的 count 查询单独记录在语句 ID 加上 {@value #COUNT_STATEMENT_SUFFIX} 后缀的统计中；
+ * 串行执行的 count 查询的耗时同时也包含在分页查询语句本身的耗时中。
+ * count 查询超过 {@code slowThreshold} 时同样输出 SQL 和参数值。
+ *
+ * <p>
+ * 配置了 {@code jmxName} 属性（例如 {@code com.guomi.meazza:type=MyBatisMetrics}）时，插件注册为 MBean，可以通过 JMX 查看
+ * JSON 格式的统计数据；也可以通过 {@link #getSnapshots()} 在自定义的接口中输出。注册的 MBean 在 {@link #destroy()} 中注销，
+ * 不是由 Spring 创建的插件需要在关闭时自己调用。
+ *
+ * @author akuma
+ */
+@Intercepts({
+        @Signature(type = Executor.class, method = "query", args = { MappedStatement.class, Object.class,
+                RowBounds.class, ResultHandler.class }),
+        @Signature(type = Executor.class, method = "query", args = { MappedStatement.class, Object.class,
+                RowBounds.class, ResultHandler.class, CacheKey.class, BoundSql.class }),
+        @Signature(type = Executor.class, method = "update", args = { MappedStatement.class, Object.class }) })
+public class MyBatisMetricsPlugin implements Interceptor, MyBatisMetricsPluginMBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(MyBatisMetricsPlugin.class);
+
+    /**
+     * count 查询统计使用的语句 ID 后缀。
+     */
+    public static final String COUNT_STATEMENT_SUFFIX = "!count";
+
+    private static final long DEFAULT_SLOW_THRESHOLD = 1000;
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final ConcurrentMap<String, StatementMetrics> metrics = new ConcurrentHashMap<>();
+
+    private volatile long slowThreshold = DEFAULT_SLOW_THRESHOLD;
+
+    // 注册的 MBean 名称，没有注册时为 null
+    private volatile ObjectName objectName;
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        Object[] args = invocation.getArgs();
+        MappedStatement ms = (MappedStatement) args[0];
+
+        long start = System.nanoTime();
+        Object result = null;
+        boolean error = true;
+        try {
+            result = invocation.proceed();
+            error = false;
+            return result;
+        } finally {
+            long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+            boolean slow = isSlow(micros);
+            getStatementMetrics(ms.getId()).record(micros, getRows(result), error, slow);
+            if (slow) {
+                BoundSql boundSql = args.length == 6 ? (BoundSql) args[5] : ms.getBoundSql(args[1]);
+                logSlowStatement(ms.getId(), micros, boundSql.getSql(), () -> MyBatisUtils.getParameterValues(
+                        ms.getConfiguration(), boundSql));
+            }
+        }
+    }
+
+    @Override
+    public Object plugin(Object target) {
+        return Plugin.wrap(target, this);
+    }
+
+    @Override
+    public void setProperties(Properties properties) {
+        String threshold = properties.getProperty("slowThreshold");
+        if (StringUtils.isNotBlank(threshold)) {
+            setSlowThreshold(Long.parseLong(threshold.trim()));
+        }
+
+        String jmxName = properties.getProperty("jmxName");
+        if (StringUtils.isNotBlank(jmxName)) {
+            registerMBean(jmxName.trim());
+        }
+    }
+
+    /**
+     * 记录一次执行，供其他插件记录自己执行的语句，例如 {@link MyBatisPagePlugin} 的 count 查询。
+     *
+     * @param id
+     *            语句 ID
+     * @param micros
+     *            耗时（微秒）
+     * @param rows
+     *            返回或影响的行数
+     * @param error
+     *            是否执行失败
+     */
+    public void record(String id, long micros, long rows, boolean error) {
+        record(id, micros, rows, error, null, null);
+    }
+
+    /**
+     * 记录一次执行，耗时超过 {@code slowThreshold} 时和 Mapper 语句一样输出 SQL 和绑定的参数值。
+     *
+     * @param id
+     *            语句 ID
+     * @param micros
+     *            耗时（微秒）
+     * @param rows
+     *            返回或影响的行数
+     * @param error
+     *            是否执行失败
+     * @param sql
+     *            执行的 SQL，为 null 时慢语句日志中只输出语句 ID
+     * @param parameters
+     *            获取绑定的参数值，只在输出慢语句日志时调用，可以为 null
+     */
+    public void record(String id, long micros, long rows, boolean error, String sql,
+            Supplier<List<Object>> parameters) {
+        boolean slow = isSlow(micros);
+        getStatementMetrics(id).record(micros, rows, error, slow);
+        if (slow) {
+            logSlowStatement(id, micros, sql, parameters);
+        }
+    }
+
+    /**
+     * 获取指定语句的统计数据，没有执行过时返回 null。
+     */
+    public StatementMetrics getMetrics(String id) {
+        return metrics.get(id);
+    }
+
+    /**
+     * 获取所有语句的统计数据，按总耗时倒序排列。
+     */
+    public List<StatementMetrics> getSnapshots() {
+        return sortByTotalTime(metrics.values());
+    }
+
+    @Override
+    public long getSlowThreshold() {
+        return slowThreshold;
+    }
+
+    @Override
+    public void setSlowThreshold(long slowThreshold) {
+        if (slowThreshold < 0) {
+            throw new IllegalArgumentException("slowThreshold must not be negative");
+        }
+        this.slowThreshold = slowThreshold;
+    }
+
+    @Override
+    public int getStatementCount() {
+        return metrics.size();
+    }
+
+    @Override
+    public String topStatements(int limit) {
+        List<StatementMetrics> snapshots = getSnapshots();
+        return toJson(snapshots.subList(0, Math.min(Math.max(limit, 0), snapshots.size())));
+    }
+
+    @Override
+    public String snapshot() {
+        return toJson(getSnapshots());
+    }
+
+    @Override
+    public void reset() {
+        metrics.clear();
+    }
+
+    private StatementMetrics getStatementMetrics(String id) {
+        StatementMetrics statementMetrics = metrics.get(id);
+        if (statementMetrics == null) {
+            statementMetrics = metrics.computeIfAbsent(id, StatementMetrics::new);
+        }
+        return statementMetrics;
+    }
+
+    private boolean isSlow(long micros) {
+        long threshold = slowThreshold;
+        return threshold > 0 && micros >= TimeUnit.MILLISECONDS.toMicros(threshold);
+    }
+
+    private void logSlowStatement(String id, long micros, String sql, Supplier<List<Object>> parameters) {
+        if (!logger.isWarnEnabled()) {
+            return;
+        }
+        if (sql == null) {
+            logger.warn("Slow statement {} elapsed {} ms", id, micros / 1000);
+            return;
+        }
+
+        try {
+            List<Object> params = parameters == null ? null : parameters.get();
+            logger.warn("Slow statement {} elapsed {} ms: {}, parameters: {}", id, micros / 1000,
+                    StringUtils.normalizeSpace(sql), params);
+        } catch (RuntimeException e) {
+            logger.warn("Slow statement {} elapsed {} ms", id, micros / 1000);
+        }
+    }
+
+    /**
+     * 注销注册的 MBean，重新部署应用时同名的 MBean 可以再次注册，旧的插件实例也不会被 MBeanServer 引用而无法回收。
+     */
+    @PreDestroy
+    public void destroy() {
+        ObjectName name = objectName;
+        if (name == null) {
+            return;
+        }
+
+        objectName = null;
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException e) {
+            logger.warn("Unregister MBean " + name + " failed", e);
+        }
+    }
+
+    private void registerMBean(String jmxName) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(jmxName);
+            if (server.isRegistered(name)) {
+                logger.warn("MBean {} already registered, skipped", jmxName);
+                return;
+            }
+            server.registerMBean(this, name);
+            objectName = name;
+        } catch (JMException e) {
+            throw new RuntimeException("Register MBean " + jmxName + " failed", e);
+        }
+    }
+
+    private static long getRows(Object result) {
+        if (result instanceof Collection) {
+            return ((Collection<?>) result).size();
+        }
+        if (result instanceof Integer) {
+            // 批处理时返回的是一个负数的占位值
+            return Math.max((Integer) result, 0);
+        }
+        return 0;
+    }
+
+    private static List<StatementMetrics> sortByTotalTime(Collection<StatementMetrics> values) {
+        // 排序时统计数据可能还在变化，先取出总耗时再排序
+        Map<StatementMetrics, Double> totalTimes = new IdentityHashMap<>();
+        for (StatementMetrics value : values) {
+            totalTimes.put(value, value.getTotalTime());
+        }
+
+        List<StatementMetrics> list = new ArrayList<>(totalTimes.keySet());
+        list.sort((a, b) -> Double.compare(totalTimes.get(b), totalTimes.get(a)));
+        return list;
+    }
+
+    private static String toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+}
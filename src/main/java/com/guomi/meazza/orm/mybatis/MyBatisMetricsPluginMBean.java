@@ -0,0 +1,47 @@
+/*
+ * @(#)MyBatisMetricsPluginMBean.java    Created on 2026-10-18
+ * Copyright (c) 2026 Guomi. All rights reserved.
+ */
+package com.guomi.meazza.orm.mybatis;
+
+/**
+ * {@link MyBatisMetricsPlugin} 的 JMX 管理接口。
+ *
+ * @author akuma
+ */
+public interface MyBatisMetricsPluginMBean {
+
+    /**
+     * 获取慢查询的阈值（毫秒）。
+     */
+    long getSlowThreshold();
+
+    /**
+     * 设置慢查询的阈值（毫秒），为 0 时不记录慢查询。
+     */
+    void setSlowThreshold(long slowThreshold);
+
+    /**
+     * 获取有统计数据的语句个数。
+     */
+    int getStatementCount();
+
+    /**
+     * 获取总耗时最多的若干个语句的统计数据，JSON 格式。
+     *
+     * @param limit
+     *            最多返回多少个语句
+     */
+    String topStatements(int limit);
+
+    /**
+     * 获取所有语句的统计数据，JSON 格式，按总耗时倒序排列。
+     */
+    String snapshot();
+
+    /**
+     * 清空统计数据。
+     */
+    void reset();
+
+}
@@ -8,11 +8,24 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
-
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.apache.commons.lang3.ArrayUtils;
 import org.apache.ibatis.executor.parameter.ParameterHandler;
+import org.apache.ibatis.executor.resultset.ResultSetHandler;
 import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
 import org.apache.ibatis.plugin.Interceptor;
 import org.apache.ibatis.plugin.Intercepts;
 import org.apache.ibatis.plugin.Invocation;
@@ -21,41 +34,228 @@ import org.apache.ibatis.plugin.Signature;
 import org.apache.ibatis.reflection.MetaObject;
 import org.apache.ibatis.reflection.SystemMetaObject;
 import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ResultHandler;
 import org.apache.ibatis.session.RowBounds;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.util.StopWatch;
 
+import com.guomi.meazza.dao.DefaultRowCountCache;
 import com.guomi.meazza.dao.Dialect;
 import com.guomi.meazza.dao.MySqlDialect;
 import com.guomi.meazza.dao.OracleDialect;
+import com.guomi.meazza.dao.ReadWriteContext;
+import com.guomi.meazza.dao.RowCountCache;
 import com.guomi.meazza.dao.SqlServerDialect;
+import com.guomi.meazza.util.LruCache;
 import com.guomi.meazza.util.Pagination;
+import com.guomi.meazza.util.Pagination.CountMode;
 import com.guomi.meazza.util.SqlUtils;
 import com.guomi.meazza.util.StringUtils;
 
 /**
  * 支持 MyBatis 物理 SQL 分页查询的插件类。
  *
+ * <p>
+ * 默认情况下 count 查询在分页查询之前、在同一个连接上执行，和分页查询处于同一个事务中，预编译的 count 语句在事务范围内按连接缓存。
+ *
+ * <p>
+ * 配置了 {@code countThreads} 属性时，count 查询会在独立的线程池中和分页查询同时执行：分页区间先按请求的页码计算，
+ * 如果 count 结果表明请求的页码超出了范围，再按修正后的页码重新查询一次。JDBC 连接不能被多个线程同时使用，
+ * 所以并发执行的 count 查询需要从数据源获取另外的连接，不在当前事务中。当前线程的读写状态（{@link ReadWriteContext}）会传递给 count 查询。
+ *
+ * <p>
+ * 分页对象启用了 keyset 方式分页（{@link Pagination#isSeekEnable()}）时，分页 SQL 根据上一页最后一行的排序字段值定位，不使用偏移量。
+ *
+ * <p>
+ * 分页 SQL 中的偏移量和记录限制条数使用占位符（{@link Dialect#getLimitSql(String, boolean)}），翻页时 SQL 不变，
+ * 追加的参数在原有参数之后设置。
+ *
+ * <p>
+ * 总记录数按分页对象的计数方式（{@link Pagination#getCountMode()}）获取：精确计数、通过方言估算、有上限的计数，或者不计数。
+ *
+ * <p>
+ * 同时配置了 {@link MyBatisMetricsPlugin} 时，count 查询的耗时单独记录在该插件的统计中。
+ *
  * @author akuma
  */
-@Intercepts({ @Signature(type = StatementHandler.class, method = "prepare", args = { Connection.class }) })
+@Intercepts({ @Signature(type = StatementHandler.class, method = "prepare", args = { Connection.class }),
+        @Signature(type = StatementHandler.class, method = "parameterize", args = { Statement.class }),
+        @Signature(type = StatementHandler.class, method = "query", args = { Statement.class, ResultHandler.class }) })
 public class MyBatisPagePlugin implements Interceptor {
 
     private static final Logger logger = LoggerFactory.getLogger(MyBatisPagePlugin.class);
 
     private static final String DELEGATE_BOUND_SQL = "delegate.boundSql.sql";
     private static final String DELEGATE_CONFIGURATION = "delegate.configuration";
+    private static final String DELEGATE_MAPPED_STATEMENT = "delegate.mappedStatement";
+    private static final String DELEGATE_PARAMETER_HANDLER = "delegate.parameterHandler";
+    private static final String DELEGATE_RESULT_SET_HANDLER = "delegate.resultSetHandler";
     private static final String DELEGATE_ROW_BOUNDS_LIMIT = "delegate.rowBounds.limit";
     private static final String DELEGATE_ROW_BOUNDS_OFFSET = "delegate.rowBounds.offset";
 
     private static final String DEFAULT_DIALECT = "mysql";
+    private static final int DEFAULT_SQL_CACHE_SIZE = 512;
+    private static final int COUNT_QUEUE_SIZE_PER_THREAD = 16;
+    private static final int DEFAULT_STATEMENT_CACHE_SIZE = 16;
 
     private String sqlPattern;
     private Dialect dialect;
 
+    // 以原始 SQL 为 key 缓存解析后的分页 SQL 模板，避免每次分页查询都重新生成 count SQL
+    private LruCache<String, PageSqlTemplate> sqlCache = new LruCache<>(DEFAULT_SQL_CACHE_SIZE);
+
+    // 总记录数缓存，为 null 时不缓存
+    private RowCountCache rowCountCache;
+
+    // 并发执行 count 查询的线程池，为 null 时在分页查询之前串行执行 count 查询
+    private ExecutorService countExecutor;
+
+    // 在事务范围内按连接缓存串行执行的 count 语句，为 null 时不缓存
+    private StatementCache statementCache = new StatementCache(DEFAULT_STATEMENT_CACHE_SIZE);
+
+    // 当前线程中和分页查询同时执行的 count 查询，在分页查询执行完成后获取其结果。prepare 到 query 之间出错时清除
+    final ThreadLocal<PendingCount> pendingCounts = new ThreadLocal<>();
+
     @Override
     public Object intercept(Invocation invocation) throws Throwable {
+        switch (invocation.getMethod().getName()) {
+        case "query":
+            return interceptQuery(invocation);
+        case "parameterize":
+            return interceptParameterize(invocation);
+        default:
+            return interceptPrepare(invocation);
+        }
+    }
+
+    @Override
+    public Object plugin(Object target) {
+        return Plugin.wrap(target, this);
+    }
+
+    @Override
+    public void setProperties(Properties properties) {
+        sqlPattern = properties.getProperty("sqlPattern");
+        if (StringUtils.isBlank(sqlPattern)) {
+            throw new RuntimeException("sqlPattern property must be specified");
+        }
+
+        String dialectType = StringUtils.defaultString(properties.getProperty("dialect"), DEFAULT_DIALECT);
+        if (dialectType.equalsIgnoreCase("mysql")) {
+            dialect = new MySqlDialect();
+        } else if (dialectType.equalsIgnoreCase("oracle")) {
+            dialect = new OracleDialect();
+        } else if (dialectType.equalsIgnoreCase("sqlserver")) {
+            dialect = new SqlServerDialect();
+        } else {
+            throw new RuntimeException("dialect '" + dialectType + "' not supported");
+        }
+
+        String sqlCacheSize = properties.getProperty("sqlCacheSize");
+        if (StringUtils.isNotBlank(sqlCacheSize)) {
+            sqlCache = new LruCache<>(Integer.parseInt(sqlCacheSize.trim()));
+        }
+
+        // 配置了 countCacheTtl（秒）时启用默认的总记录数缓存
+        String countCacheTtl = properties.getProperty("countCacheTtl");
+        if (StringUtils.isNotBlank(countCacheTtl)) {
+            int countCacheSize = Integer.parseInt(properties.getProperty("countCacheSize", "10000").trim());
+            rowCountCache = new DefaultRowCountCache(countCacheSize, Long.parseLong(countCacheTtl.trim()),
+                    TimeUnit.SECONDS);
+        }
+
+        // countStatementCacheSize 为每个事务中每个连接缓存的 count 语句个数，为 0 时不缓存
+        String statementCacheSize = properties.getProperty("countStatementCacheSize");
+        if (StringUtils.isNotBlank(statementCacheSize)) {
+            int size = Integer.parseInt(statementCacheSize.trim());
+            statementCache = size > 0 ? new StatementCache(size) : null;
+        }
+
+        // 配置了 countThreads 时启用 count 查询和分页查询并发执行的模式
+        String countThreads = properties.getProperty("countThreads");
+        if (StringUtils.isNotBlank(countThreads)) {
+            countExecutor = newCountExecutor(Integer.parseInt(countThreads.trim()));
+        }
+    }
+
+    /**
+     * 获取配置的数据库方言。
+     */
+    public Dialect getDialect() {
+        return dialect;
+    }
+
+    /**
+     * 获取总记录数缓存。
+     */
+    public RowCountCache getRowCountCache() {
+        return rowCountCache;
+    }
+
+    /**
+     * 设置总记录数缓存，为 null 时不缓存。
+     */
+    public void setRowCountCache(RowCountCache rowCountCache) {
+        this.rowCountCache = rowCountCache;
+    }
+
+    /**
+     * 设置并发执行 count 查询的线程池，为 null 时串行执行 count 查询。线程池应该是有界的，队列满时建议由调用线程执行。
+     */
+    public void setCountExecutor(ExecutorService countExecutor) {
+        this.countExecutor = countExecutor;
+    }
+
+    /**
+     * 获取分页 SQL 模板缓存，可以用于查看缓存的命中情况。
+     */
+    public LruCache<String, PageSqlTemplate> getSqlCache() {
+        return sqlCache;
+    }
+
+    /**
+     * 拦截 {@code StatementHandler.prepare} 方法，查询总记录数并将原始 SQL 替换为分页 SQL。
+     */
+    private Object interceptPrepare(Invocation invocation) throws Throwable {
+        // 之前的分页查询在 prepare 之后没有执行 query，丢弃遗留的 count 查询
+        clearPendingCount();
+        try {
+            return preparePage(invocation);
+        } catch (Throwable e) {
+            clearPendingCount();
+            throw e;
+        }
+    }
+
+    /**
+     * 拦截 {@code StatementHandler.parameterize} 方法，设置参数出错时不会再执行 query，清除并发执行的 count 查询。
+     */
+    private Object interceptParameterize(Invocation invocation) throws Throwable {
+        try {
+            return invocation.proceed();
+        } catch (Throwable e) {
+            clearPendingCount();
+            throw e;
+        }
+    }
+
+    /**
+     * 取消并清除当前线程中并发执行的 count 查询。
+     */
+    private void clearPendingCount() {
+        PendingCount pending = pendingCounts.get();
+        if (pending != null) {
+            pendingCounts.remove();
+            pending.future.cancel(true);
+        }
+    }
+
+    /**
+     * 查询总记录数并将原始 SQL 替换为分页 SQL，并发执行 count 查询时记录在当前线程中。
+     */
+    private Object preparePage(Invocation invocation) throws Throwable {
         StopWatch stopWatch = new StopWatch("MyBatis Pagination Plugin");
 
         stopWatch.start("Get page object");
@@ -63,20 +263,8 @@ public class MyBatisPagePlugin implements Interceptor {
         StatementHandler statementHandler = (StatementHandler) invocation.getTarget();
         MetaObject metaObject = SystemMetaObject.forObject(statementHandler);
 
-        Pagination page = null;
-        ParameterHandler parameterHandler = statementHandler.getParameterHandler();
-        Object parameterObject = parameterHandler.getParameterObject();
-        if (parameterObject instanceof Map) {
-            @SuppressWarnings("unchecked")
-            Map<String, Object> params = (Map<String, Object>) parameterObject;
-            for (Map.Entry<String, Object> entry : params.entrySet()) {
-                Object parameter = entry.getValue();
-                if (parameter instanceof Pagination) {
-                    page = (Pagination) parameter;
-                    break;
-                }
-            }
-        }
+        final ParameterHandler parameterHandler = statementHandler.getParameterHandler();
+        Pagination page = getPagination(parameterHandler.getParameterObject());
 
         stopWatch.stop();
 
@@ -86,24 +274,88 @@ public class MyBatisPagePlugin implements Interceptor {
 
         stopWatch.start("Count result");
 
-        String originSql = statementHandler.getBoundSql().getSql();
+        final BoundSql boundSql = statementHandler.getBoundSql();
+        String originSql = boundSql.getSql();
         logger.debug("Original SQL: {}", originSql);
 
-        // 查询总记录数
-        Configuration configuration = (Configuration) metaObject.getValue(DELEGATE_CONFIGURATION);
-        int rowCount = getQueryCount(configuration, statementHandler);
+        PageSqlTemplate sqlTemplate = sqlCache.get(originSql, sql -> new PageSqlTemplate(sql, dialect));
+
+        // 查询总记录数，允许使用缓存时先从缓存中获取
+        final Configuration configuration = (Configuration) metaObject.getValue(DELEGATE_CONFIGURATION);
+        final MappedStatement mappedStatement = (MappedStatement) metaObject.getValue(DELEGATE_MAPPED_STATEMENT);
+        final CountQuery countQuery = newCountQuery(mappedStatement.getId(), originSql, sqlTemplate, page,
+                () -> MyBatisUtils.getParameterValues(configuration, boundSql));
+        final MyBatisMetricsPlugin metricsPlugin = MyBatisUtils.getInterceptor(configuration,
+                MyBatisMetricsPlugin.class);
+        String cacheRegion = null;
+        String cacheKey = null;
+        long cacheVersion = 0;
+        Integer rowCount = null;
+        if (countQuery != null && rowCountCache != null && page.isCountCacheEnable()) {
+            cacheRegion = MyBatisUtils.getNamespace(mappedStatement);
+            cacheKey = countQuery.sql + MyBatisUtils.getParameterValues(configuration, boundSql);
+            // 在 count 查询之前获取版本号，查询期间缓存失效时不缓存查询结果
+            cacheVersion = rowCountCache.getVersion(cacheRegion);
+            rowCount = rowCountCache.get(cacheRegion, cacheKey);
+            logger.debug("Cached row count: {}", rowCount);
+        }
 
-        stopWatch.stop();
+        int offset;
+        if (countQuery == null) {
+            // 不获取总记录数
+            page.initialize();
+            offset = getOffset(page);
+        } else if (rowCount == null && countExecutor != null) {
+            // 按请求的页码乐观地计算分页区间，count 查询和分页查询同时执行
+            Future<Integer> future = countExecutor.submit(ReadWriteContext.wrap(() -> getQueryCount(configuration,
+                    parameterHandler, countQuery, metricsPlugin)));
+            offset = getOptimisticOffset(page);
+            pendingCounts.set(new PendingCount(statementHandler, page, future, countQuery, sqlTemplate,
+                    parameterHandler, offset, cacheRegion, cacheKey, cacheVersion));
+        } else {
+            if (rowCount == null) {
+                // 在当前连接上执行 count 查询，和分页查询在同一个事务中，不占用额外的连接
+                Connection connection = (Connection) invocation.getArgs()[0];
+                rowCount = getQueryCount(connection, parameterHandler, countQuery, true, metricsPlugin);
+                if (cacheKey != null) {
+                    rowCountCache.put(cacheRegion, cacheKey, rowCount, cacheVersion);
+                }
+            }
 
-        // 根据查询得到的总记录数初始化分页对象
-        page.setRowCount(rowCount);
-        page.initialize();
+            // 根据查询得到的总记录数初始化分页对象
+            setRowCount(page, countQuery, rowCount);
+            page.initialize();
+            offset = getOffset(page);
+        }
+
+        stopWatch.stop();
 
         stopWatch.start("Generate page sql");
 
         // 分页查询 本地化对象 修改数据库注意修改实现
-        String pageSql = generatePageSql(originSql, page, dialect);
-        logger.debug("Pagination SQL: {}", pageSql);
+        String pageSql;
+        Object[] extraArgs;
+        if (page.isSeekEnable()) {
+            // keyset 分页：根据上一页最后一行的排序字段值定位
+            String seekSql = SqlUtils.generateSeekSql(originSql, page.getSorts(), page.hasSeekValues(),
+                    dialect.isBackslashEscape());
+            pageSql = dialect.supportsLimit() ? dialect.getLimitSql(seekSql, false) : seekSql;
+            if (pageSql == null) {
+                pageSql = dialect.getLimitSql(seekSql, 0, page.getPageSize());
+            }
+            extraArgs = ArrayUtils.addAll(SqlUtils.getSeekArgs(page.getSeekValues()),
+                    getLimitArgs(0, page.getPageSize()));
+        } else {
+            pageSql = sqlTemplate.getPageSql(offset, page.getPageSize());
+            extraArgs = getLimitArgs(offset, page.getPageSize());
+        }
+        logger.debug("Pagination SQL: {}, extra args: {}", pageSql, extraArgs);
+
+        // 追加的占位符在原有参数之后设置
+        if (extraArgs.length > 0) {
+            metaObject.setValue(DELEGATE_PARAMETER_HANDLER, newPageParameterHandler(statementHandler,
+                    parameterHandler, extraArgs));
+        }
 
         metaObject.setValue(DELEGATE_BOUND_SQL, pageSql);
         metaObject.setValue(DELEGATE_ROW_BOUNDS_OFFSET, RowBounds.NO_ROW_OFFSET);
@@ -118,67 +370,367 @@ public class MyBatisPagePlugin implements Interceptor {
         return invocation.proceed();
     }
 
-    @Override
-    public Object plugin(Object target) {
-        return Plugin.wrap(target, this);
+    /**
+     * 拦截 {@code StatementHandler.query} 方法，在分页查询完成后获取并发执行的 count 查询结果，页码超出范围时重新查询。
+     */
+    private Object interceptQuery(Invocation invocation) throws Throwable {
+        PendingCount pending = pendingCounts.get();
+        if (pending == null) {
+            return invocation.proceed();
+        }
+
+        pendingCounts.remove();
+        if (pending.statementHandler != invocation.getTarget()) {
+            pending.future.cancel(true);
+            return invocation.proceed();
+        }
+
+        Object result;
+        try {
+            result = invocation.proceed();
+        } catch (Throwable e) {
+            pending.future.cancel(true);
+            throw e;
+        }
+
+        int rowCount = waitForCount(pending.future);
+        if (pending.cacheKey != null) {
+            rowCountCache.put(pending.cacheRegion, pending.cacheKey, rowCount, pending.cacheVersion);
+        }
+
+        Pagination page = pending.page;
+        setRowCount(page, pending.countQuery, rowCount);
+        page.initialize();
+
+        int offset = getOffset(page);
+        if (rowCount == 0 || page.isSeekEnable() || offset == pending.offset) {
+            return result;
+        }
+
+        // 请求的页码超出了范围，按修正后的页码重新查询
+        String pageSql = pending.sqlTemplate.getPageSql(offset, page.getPageSize());
+        logger.debug("Page out of range, query again: {}", pageSql);
+
+        StatementHandler statementHandler = pending.statementHandler;
+        MetaObject metaObject = SystemMetaObject.forObject(statementHandler);
+        ResultSetHandler resultSetHandler = (ResultSetHandler) metaObject.getValue(DELEGATE_RESULT_SET_HANDLER);
+        ParameterHandler parameterHandler = newPageParameterHandler(statementHandler, pending.parameterHandler,
+                getLimitArgs(offset, page.getPageSize()));
+
+        Statement statement = (Statement) invocation.getArgs()[0];
+        try (PreparedStatement ps = statement.getConnection().prepareStatement(pageSql)) {
+            parameterHandler.setParameters(ps);
+            ps.execute();
+            return resultSetHandler.handleResultSets(ps);
+        }
     }
 
-    @Override
-    public void setProperties(Properties properties) {
-        sqlPattern = properties.getProperty("sqlPattern");
-        if (StringUtils.isBlank(sqlPattern)) {
-            throw new RuntimeException("sqlPattern property must be specified");
+    /**
+     * 从查询参数中获取分页对象，不存在时返回 null。
+     */
+    private static Pagination getPagination(Object parameterObject) {
+        if (parameterObject instanceof Map) {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> params = (Map<String, Object>) parameterObject;
+            for (Map.Entry<String, Object> entry : params.entrySet()) {
+                Object parameter = entry.getValue();
+                if (parameter instanceof Pagination) {
+                    return (Pagination) parameter;
+                }
+            }
         }
+        return null;
+    }
 
-        String dialectType = StringUtils.defaultString(properties.getProperty("dialect"), DEFAULT_DIALECT);
-        if (dialectType.equalsIgnoreCase("mysql")) {
-            dialect = new MySqlDialect();
-        } else if (dialectType.equalsIgnoreCase("oracle")) {
-            dialect = new OracleDialect();
-        } else if (dialectType.equalsIgnoreCase("sqlserver")) {
-            dialect = new SqlServerDialect();
+    /**
+     * 根据分页对象的计数方式生成 count 查询，不需要获取总记录数时返回 null。
+     */
+    private CountQuery newCountQuery(String statementId, String originSql, PageSqlTemplate sqlTemplate,
+            Pagination page, Supplier<List<Object>> parameters) {
+        switch (page.getCountMode()) {
+        case NONE:
+            return null;
+        case ESTIMATED:
+            // 数据库不支持估算时使用精确计数
+            if (sqlTemplate.getEstimatedCountSql() != null) {
+                return new CountQuery(statementId, sqlTemplate.getEstimatedCountSql(), CountMode.ESTIMATED, 0,
+                        dialect.isEstimatedCountParameterized(), parameters);
+            }
+            break;
+        case CAPPED:
+            // 多计数一行，用于判断总记录数是否超过了上限
+            int cap = page.getCountCap();
+            return new CountQuery(statementId, dialect.getCappedCountSql(originSql, cap + 1), CountMode.CAPPED, cap,
+                    true, parameters);
+        default:
+            break;
+        }
+        return new CountQuery(statementId, sqlTemplate.getCountSql(), CountMode.EXACT, 0, true, parameters);
+    }
+
+    /**
+     * 根据 count 查询的结果设置分页对象的总记录数。
+     */
+    private static void setRowCount(Pagination page, CountQuery countQuery, int count) {
+        if (countQuery.mode == CountMode.ESTIMATED) {
+            page.setEstimatedRowCount(count);
+        } else if (countQuery.mode == CountMode.CAPPED && count > countQuery.cap) {
+            page.setEstimatedRowCount(countQuery.cap);
         } else {
-            throw new RuntimeException("dialect '" + dialectType + "' not supported");
+            page.setRowCount(count);
         }
     }
 
     /**
      * 获取 SQL 查询结果的记录数。
      */
-    private static int getQueryCount(final Configuration configuration, final StatementHandler statementHandler)
+    private int getQueryCount(final Configuration configuration, final ParameterHandler parameterHandler,
+            final CountQuery countQuery, MyBatisMetricsPlugin metricsPlugin) throws SQLException {
+        try (Connection connection = configuration.getEnvironment().getDataSource().getConnection()) {
+            return getQueryCount(connection, parameterHandler, countQuery, false, metricsPlugin);
+        }
+    }
+
+    /**
+     * 在指定的连接上获取 SQL 查询结果的记录数。
+     *
+     * @param cacheStatement
+     *            是否使用连接上缓存的 count 语句
+     * @param metricsPlugin
+     *            记录 count 查询耗时的统计插件，没有配置时为 null
+     */
+    private int getQueryCount(Connection connection, ParameterHandler parameterHandler, CountQuery countQuery,
+            boolean cacheStatement, MyBatisMetricsPlugin metricsPlugin) throws SQLException {
+        long start = System.nanoTime();
+        logger.debug("Count SQL: {}", countQuery.sql);
+
+        boolean error = true;
+        try {
+            int count;
+            if (cacheStatement && statementCache != null) {
+                PreparedStatement countStmt = statementCache.prepare(connection, countQuery.sql);
+                try {
+                    count = executeCount(countStmt, parameterHandler, countQuery);
+                } finally {
+                    statementCache.release(connection, countStmt);
+                }
+            } else {
+                try (PreparedStatement countStmt = connection.prepareStatement(countQuery.sql)) {
+                    count = executeCount(countStmt, parameterHandler, countQuery);
+                }
+            }
+            error = false;
+            return count;
+        } finally {
+            long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+            logger.debug("Query page count elapsed {} ms.", micros / 1000);
+            if (metricsPlugin != null) {
+                metricsPlugin.record(countQuery.statementId + MyBatisMetricsPlugin.COUNT_STATEMENT_SUFFIX, micros, 1,
+                        error, countQuery.sql, countQuery.parameterized ? countQuery.parameters : null);
+            }
+        }
+    }
+
+    private int executeCount(PreparedStatement countStmt, ParameterHandler parameterHandler, CountQuery countQuery)
             throws SQLException {
-        long start = System.currentTimeMillis();
-        String originSql = statementHandler.getBoundSql().getSql();
-        String countSql = SqlUtils.generateCountSql(originSql);
-        logger.debug("Count SQL: {}", countSql);
-
-        try (Connection connection = configuration.getEnvironment().getDataSource().getConnection();
-             PreparedStatement countStmt = connection.prepareStatement(countSql)) {
-            // 使用 parameterHandler 设置 count 语句中的参数
-            statementHandler.getParameterHandler().setParameters(countStmt);
-            ResultSet rs = countStmt.executeQuery();
+        // 使用 parameterHandler 设置 count 语句中的参数
+        if (countQuery.parameterized) {
+            parameterHandler.setParameters(countStmt);
+        }
+
+        try (ResultSet rs = countStmt.executeQuery()) {
+            if (countQuery.mode == CountMode.ESTIMATED) {
+                return dialect.getEstimatedCount(rs);
+            }
+
             int count = 0;
             if (rs.next()) {
                 count = rs.getInt(1);
             }
             return count;
-        } finally {
-            long elapsed = System.currentTimeMillis() - start;
-            logger.debug("Query page count elapsed {} ms.", elapsed);
         }
     }
 
     /**
-     * 根据原始 SQL 生成分页查询 SQL。
+     * 等待并发执行的 count 查询完成，并返回其结果。
+     */
+    private static int waitForCount(Future<Integer> future) throws Throwable {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * 获取分页对象初始化之后的结果集偏移量。
+     */
+    private static int getOffset(Pagination page) {
+        return (page.getCurrentRowNum() <= 0) ? 0 : (page.getCurrentRowNum() - 1);
+    }
+
+    /**
+     * 在总记录数未知的情况下，按请求的页码计算结果集偏移量。
+     */
+    private static int getOptimisticOffset(Pagination page) {
+        int pageNum = page.getPageNum() < 1 ? 1 : page.getPageNum();
+        return (pageNum - 1) * page.getPageSize();
+    }
+
+    /**
+     * 获取分页 SQL 中追加的偏移量和记录限制条数参数，数据库不支持 limit 时返回空数组。
+     */
+    private Object[] getLimitArgs(int offset, int limit) {
+        return dialect.supportsLimit() ? dialect.getLimitArgs(offset, limit) : ArrayUtils.EMPTY_OBJECT_ARRAY;
+    }
+
+    /**
+     * 创建设置分页 SQL 参数的 {@code ParameterHandler}，在原有参数之后设置追加的参数，值为 null 的参数使用配置中的
+     * {@code jdbcTypeForNull}。
+     */
+    private static ParameterHandler newPageParameterHandler(StatementHandler statementHandler,
+            ParameterHandler parameterHandler, Object[] extraArgs) {
+        Configuration configuration = (Configuration) SystemMetaObject.forObject(statementHandler).getValue(
+                DELEGATE_CONFIGURATION);
+        int parameterCount = statementHandler.getBoundSql().getParameterMappings().size();
+        return new ExtraParameterHandler(parameterHandler, parameterCount, extraArgs,
+                configuration.getJdbcTypeForNull());
+    }
+
+    /**
+     * 创建执行 count 查询的线程池，线程数固定，队列满时由调用线程执行 count 查询。
+     */
+    private static ExecutorService newCountExecutor(int threads) {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("mybatis-page-count-");
+        threadFactory.setDaemon(true);
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(threads * COUNT_QUEUE_SIZE_PER_THREAD), threadFactory,
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * 由原始 SQL 解析得到的分页 SQL 模板，同一条 SQL 只需解析一次。
+     */
+    public static class PageSqlTemplate {
+
+        private final String originSql;
+        private final Dialect dialect;
+        private final String countSql;
+        private final String estimatedCountSql;
+        private final String limitSql;
+        private final String offsetLimitSql;
+
+        PageSqlTemplate(String originSql, Dialect dialect) {
+            this.originSql = originSql;
+            this.dialect = dialect;
+            this.countSql = SqlUtils.generateCountSql(originSql, dialect.isBackslashEscape());
+            this.estimatedCountSql = dialect.getEstimatedCountSql(originSql);
+            if (dialect.supportsLimit()) {
+                this.limitSql = dialect.getLimitSql(originSql, false);
+                this.offsetLimitSql = dialect.getLimitSql(originSql, true);
+            } else {
+                this.limitSql = originSql;
+                this.offsetLimitSql = originSql;
+            }
+        }
+
+        /**
+         * 获取 count SQL。
+         */
+        public String getCountSql() {
+            return countSql;
+        }
+
+        /**
+         * 获取估算记录数的 SQL，数据库不支持估算时返回 null。
+         */
+        public String getEstimatedCountSql() {
+            return estimatedCountSql;
+        }
+
+        /**
+         * 获取参数化的分页 SQL，方言不支持时返回 null。
+         *
+         * @param hasOffset
+         *            结果集的偏移量是否大于 0
+         */
+        public String getLimitSql(boolean hasOffset) {
+            return hasOffset ? offsetLimitSql : limitSql;
+        }
+
+        /**
+         * 获取指定区间的分页 SQL，方言不支持参数化的分页 SQL 时，偏移量和记录限制条数直接写在 SQL 中。
+         *
+         * @param offset
+         *            结果集的偏移量
+         * @param limit
+         *            记录限制条数
+         */
+        public String getPageSql(int offset, int limit) {
+            String sql = getLimitSql(offset > 0);
+            return sql != null ? sql : dialect.getLimitSql(originSql, offset, limit);
+        }
+
+    }
+
+    /**
+     * 按分页对象的计数方式生成的 count 查询。
+     */
+    private static class CountQuery {
+
+        final String statementId;
+        final String sql;
+        final CountMode mode;
+        final int cap;
+        final boolean parameterized;
+        final Supplier<List<Object>> parameters;
+
+        CountQuery(String statementId, String sql, CountMode mode, int cap, boolean parameterized,
+                Supplier<List<Object>> parameters) {
+            this.statementId = statementId;
+            this.sql = sql;
+            this.mode = mode;
+            this.cap = cap;
+            this.parameterized = parameterized;
+            this.parameters = parameters;
+        }
+
+    }
+
+    /**
+     * 和分页查询同时执行的 count 查询。
      */
-    private static String generatePageSql(final String originSql, Pagination page, Dialect dialect) {
-        if (!dialect.supportsLimit()) {
-            return originSql;
+    private static class PendingCount {
+
+        final StatementHandler statementHandler;
+        final Pagination page;
+        final Future<Integer> future;
+        final CountQuery countQuery;
+        final PageSqlTemplate sqlTemplate;
+        final ParameterHandler parameterHandler;
+        final int offset;
+        final String cacheRegion;
+        final String cacheKey;
+        final long cacheVersion;
+
+        PendingCount(StatementHandler statementHandler, Pagination page, Future<Integer> future,
+                CountQuery countQuery, PageSqlTemplate sqlTemplate, ParameterHandler parameterHandler, int offset,
+                String cacheRegion, String cacheKey, long cacheVersion) {
+            this.statementHandler = statementHandler;
+            this.page = page;
+            this.future = future;
+            this.countQuery = countQuery;
+            this.sqlTemplate = sqlTemplate;
+            this.parameterHandler = parameterHandler;
+            this.offset = offset;
+            this.cacheRegion = cacheRegion;
+            this.cacheKey = cacheKey;
+            this.cacheVersion = cacheVersion;
         }
 
-        int offset = (page.getCurrentRowNum() <= 0) ? 0 : (page.getCurrentRowNum() - 1);
-        int limit = page.getPageSize();
-        return dialect.getLimitSql(originSql, offset, limit);
     }
 
 }
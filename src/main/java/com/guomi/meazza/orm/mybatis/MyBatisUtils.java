@@ -0,0 +1,146 @@
+/*
+ * @(#)MyBatisUtils.java    Created on 2026-10-18
+ * Copyright (c) 2026 Guomi. All rights reserved.
+ */
+package com.guomi.meazza.orm.mybatis;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.mapping.ParameterMode;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.session.Configuration;
+
+import com.guomi.meazza.dao.RowCountCache;
+
+/**
+ * MyBatis 相关的工具类。
+ *
+ * @author akuma
+ */
+public abstract class MyBatisUtils {
+
+    /**
+     * 逐行读取结果集时使用的语句 ID 后缀。
+     */
+    public static final String STREAMING_STATEMENT_SUFFIX = "!stream";
+
+    /**
+     * 获取 SQL 语句中绑定的参数值，顺序和 SQL 中的占位符一致。取值方式和 MyBatis 的 {@code DefaultParameterHandler} 相同。
+     */
+    public static List<Object> getParameterValues(Configuration configuration, BoundSql boundSql) {
+        List<ParameterMapping> parameterMappings = boundSql.getParameterMappings();
+        if (parameterMappings == null || parameterMappings.isEmpty()) {
+            return new ArrayList<>(0);
+        }
+
+        Object parameterObject = boundSql.getParameterObject();
+        MetaObject metaObject = null;
+        List<Object> values = new ArrayList<>(parameterMappings.size());
+        for (ParameterMapping parameterMapping : parameterMappings) {
+            if (parameterMapping.getMode() == ParameterMode.OUT) {
+                continue;
+            }
+
+            Object value;
+            String propertyName = parameterMapping.getProperty();
+            if (boundSql.hasAdditionalParameter(propertyName)) {
+                value = boundSql.getAdditionalParameter(propertyName);
+            } else if (parameterObject == null) {
+                value = null;
+            } else if (configuration.getTypeHandlerRegistry().hasTypeHandler(parameterObject.getClass())) {
+                value = parameterObject;
+            } else {
+                if (metaObject == null) {
+                    metaObject = configuration.newMetaObject(parameterObject);
+                }
+                value = metaObject.getValue(propertyName);
+            }
+            values.add(value);
+        }
+        return values;
+    }
+
+    /**
+     * 获取 Mapper 语句所在的命名空间，例如 {@code com.foo.UserDao.findByIds} 的命名空间是 {@code com.foo.UserDao}。
+     */
+    public static String getNamespace(MappedStatement mappedStatement) {
+        String id = mappedStatement.getId();
+        int index = id.lastIndexOf('.');
+        return index == -1 ? id : id.substring(0, index);
+    }
+
+    /**
+     * 注册逐行读取结果集时使用的 Mapper 语句。Mapper 中没有指定 fetchSize 时，复制一个使用指定 fetchSize、不使用二级缓存的语句，
+     * ID 为原语句 ID 加上 {@value #STREAMING_STATEMENT_SUFFIX} 后缀，注册到 MyBatis 配置中。
+     *
+     * <p>
+     * MyBatis 读取配置中的语句时不加锁，因此只能在启动时（执行语句之前）调用，例如在 DAO 初始化时。
+     *
+     * @param configuration
+     *            MyBatis 配置
+     * @param statement
+     *            原语句 ID
+     * @param fetchSize
+     *            fetch size，为 null 时使用原语句
+     * @return 逐行读取时使用的语句 ID
+     */
+    public static String registerStreamingStatement(Configuration configuration, String statement,
+            Integer fetchSize) {
+        MappedStatement ms = configuration.getMappedStatement(statement);
+        if (fetchSize == null || ms.getFetchSize() != null) {
+            return ms.getId();
+        }
+
+        String id = ms.getId() + STREAMING_STATEMENT_SUFFIX;
+        if (!configuration.hasStatement(id, false)) {
+            configuration.addMappedStatement(copyMappedStatement(ms, id).fetchSize(fetchSize).useCache(false).build());
+        }
+        return id;
+    }
+
+    /**
+     * 复制 Mapper 语句，返回可以修改属性的 Builder。
+     */
+    public static MappedStatement.Builder copyMappedStatement(MappedStatement ms, String id) {
+        MappedStatement.Builder builder = new MappedStatement.Builder(ms.getConfiguration(), id, ms.getSqlSource(),
+                ms.getSqlCommandType());
+        builder.resource(ms.getResource()).parameterMap(ms.getParameterMap()).resultMaps(ms.getResultMaps())
+                .fetchSize(ms.getFetchSize()).timeout(ms.getTimeout()).statementType(ms.getStatementType())
+                .resultSetType(ms.getResultSetType()).cache(ms.getCache()).flushCacheRequired(ms.isFlushCacheRequired())
+                .useCache(ms.isUseCache()).resultOrdered(ms.isResultOrdered()).keyGenerator(ms.getKeyGenerator())
+                .keyProperty(join(ms.getKeyProperties())).keyColumn(join(ms.getKeyColumns()))
+                .databaseId(ms.getDatabaseId()).lang(ms.getLang()).resulSets(join(ms.getResulSets()));
+        return builder;
+    }
+
+    /**
+     * 获取 {@link MyBatisPagePlugin} 中配置的记录数缓存，没有配置时返回 null。
+     */
+    public static RowCountCache getRowCountCache(Configuration configuration) {
+        MyBatisPagePlugin pagePlugin = getInterceptor(configuration, MyBatisPagePlugin.class);
+        return pagePlugin == null ? null : pagePlugin.getRowCountCache();
+    }
+
+    /**
+     * 获取 MyBatis 中配置的指定类型的插件，没有配置时返回 null。
+     */
+    public static <T extends Interceptor> T getInterceptor(Configuration configuration, Class<T> interceptorClass) {
+        for (Interceptor interceptor : configuration.getInterceptors()) {
+            if (interceptorClass.isInstance(interceptor)) {
+                return interceptorClass.cast(interceptor);
+            }
+        }
+        return null;
+    }
+
+    private static String join(String[] values) {
+        return values == null ? null : StringUtils.join(values, ',');
+    }
+
+}
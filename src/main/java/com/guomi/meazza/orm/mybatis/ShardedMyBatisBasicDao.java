@@ -0,0 +1,500 @@
+/*
+ * @(#)ShardedMyBatisBasicDao.java    Created on 2026-10-18
+ * Copyright (c) 2026 Guomi. All rights reserved.
+ */
+package com.guomi.meazza.orm.mybatis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.guomi.meazza.dao.ReadWriteContext;
+import com.guomi.meazza.util.ObjectHelper;
+import com.guomi.meazza.util.Pagination;
+
+/**
+ * 分库的 MyBatis DAO，同一张表按分片键（默认是 ID）分布在多个数据库中，每个数据库对应一个 {@link MyBatisBulkDao}。
+ *
+ * <p>
+ * 按 ID 或实体的读写（find、findByIds、findMap、insert、update、delete 及批量方法）根据分片键路由到对应的分片；
+ * 条件查询（findAll、findByEntity、findByParam）在所有分片上执行，结果按分片的顺序拼接；分页查询在所有分片上执行，
+ * 按分页对象的排序字段对各分片的结果进行多路归并，总记录数为各分片之和。
+ *
+ * <p>
+ * 配置了线程池并且不在事务中时，多个分片上的查询并发执行。写入操作不是分布式事务，跨分片的批量写入在每个分片上分别执行。
+ *
+ * <p>
+ * 使用偏移量分页时，每个分片都需要查询前 {@code 页码 * 每页行数} 行才能保证归并结果正确，页码越大代价越高；
+ * 翻页较深的场景应该使用 keyset 方式分页（{@link Pagination#setSeekEnable(boolean)}），每个分片只需查询一页。
+ *
+ * @author akuma
+ */
+public class ShardedMyBatisBasicDao<T> implements MyBatisBulkDao<T> {
+
+    private final List<MyBatisBulkDao<T>> shards;
+    private final ToIntFunction<Object> shardResolver;
+
+    // 从实体中获取分片键，默认使用 id 属性
+    private Function<? super T, Object> shardKeyExtractor = entity -> ObjectHelper.getPropertyValueQuietly(entity,
+            "id");
+
+    // 并发查询多个分片的线程池，为 null 时串行执行
+    private ExecutorService executor;
+
+    /**
+     * 构造方法。
+     *
+     * @param shards
+     *            每个分片对应的 DAO
+     * @param shardResolver
+     *            根据分片键返回分片的序号（从 0 开始），可以使用 {@link #rangeResolver(long...)}
+     */
+    public ShardedMyBatisBasicDao(List<? extends MyBatisBulkDao<T>> shards, ToIntFunction<Object> shardResolver) {
+        if (shards == null || shards.isEmpty()) {
+            throw new IllegalArgumentException("shards must not be empty");
+        }
+        if (shardResolver == null) {
+            throw new IllegalArgumentException("shardResolver must not be null");
+        }
+        this.shards = new ArrayList<>(shards);
+        this.shardResolver = shardResolver;
+    }
+
+    /**
+     * 按 ID 范围分片：第 i 个分片（i &gt; 0）保存 {@code [lowerBounds[i - 1], lowerBounds[i])} 范围内的 ID，
+     * 第 0 个分片保存小于 {@code lowerBounds[0]} 的 ID，最后一个分片保存大于等于最后一个边界的 ID。分片数为边界数加 1。
+     *
+     * @param lowerBounds
+     *            第 1 个到最后一个分片的起始 ID，必须递增
+     */
+    public static ToIntFunction<Object> rangeResolver(long... lowerBounds) {
+        for (int i = 1; i < lowerBounds.length; i++) {
+            if (lowerBounds[i] <= lowerBounds[i - 1]) {
+                throw new IllegalArgumentException("lowerBounds must be increasing");
+            }
+        }
+
+        long[] bounds = lowerBounds.clone();
+        return key -> {
+            if (key == null) {
+                throw new IllegalArgumentException("Shard key must not be null");
+            }
+
+            long value = key instanceof Number ? ((Number) key).longValue() : Long.parseLong(key.toString());
+            int index = Arrays.binarySearch(bounds, value);
+            return index >= 0 ? index + 1 : -index - 1;
+        };
+    }
+
+    @Override
+    public <PK> T find(PK id) {
+        return getShard(id).find(id);
+    }
+
+    @Override
+    public List<T> findAll() {
+        return concat(executeShards(shards, MyBatisBulkDao::findAll));
+    }
+
+    /**
+     * 根据 ID 列表查询，ID 按分片分组后在各分片上查询，结果按 ID 的请求顺序排列。
+     */
+    @SuppressWarnings("unchecked")
+    @Override
+    public <PK> List<T> findByIds(PK... ids) {
+        if (ids == null || ids.length == 0) {
+            return new ArrayList<>(0);
+        }
+
+        Map<Integer, PK[]> groups = groupIds(ids);
+        if (groups.size() == 1) {
+            Map.Entry<Integer, PK[]> group = groups.entrySet().iterator().next();
+            return shards.get(group.getKey()).findByIds(group.getValue());
+        }
+
+        List<List<T>> results = executeShards(new ArrayList<>(groups.entrySet()), group -> shards.get(group.getKey())
+                .findByIds(group.getValue()));
+        return DefaultMyBatisBasicDao.mergeInRequestOrder(ids, results);
+    }
+
+    @Override
+    public List<T> findByEntity(T entity) {
+        return concat(executeShards(shards, shard -> shard.findByEntity(entity)));
+    }
+
+    @Override
+    public List<T> findByEntityWithPage(T entity, Pagination page) {
+        return findWithPage(page, (shard, shardPage) -> shard.findByEntityWithPage(entity, shardPage));
+    }
+
+    @Override
+    public List<T> findByParam(Object param) {
+        return concat(executeShards(shards, shard -> shard.findByParam(param)));
+    }
+
+    @Override
+    public List<T> findByParamWithPage(Object param, Pagination page) {
+        return findWithPage(page, (shard, shardPage) -> shard.findByParamWithPage(param, shardPage));
+    }
+
+    /**
+     * 按分片的顺序逐行处理所有记录。
+     */
+    @Override
+    public void streamAll(Consumer<T> consumer) {
+        for (MyBatisBulkDao<T> shard : shards) {
+            shard.streamAll(consumer);
+        }
+    }
+
+    /**
+     * 按分片的顺序逐行处理符合条件的记录。
+     */
+    @Override
+    public void streamByParam(Object param, Consumer<T> consumer) {
+        for (MyBatisBulkDao<T> shard : shards) {
+            shard.streamByParam(param, consumer);
+        }
+    }
+
+    /**
+     * 按分片的顺序分批处理所有记录，每个分片分别分批，因此分片的最后一批可能不足 {@code size} 条。
+     */
+    @Override
+    public void forEachBatch(int size, Consumer<List<T>> consumer) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("size must be greater than 0");
+        }
+
+        for (MyBatisBulkDao<T> shard : shards) {
+            shard.forEachBatch(size, consumer);
+        }
+    }
+
+    /**
+     * 根据 ID 列表查询，返回 ID 和实体的映射，映射的迭代顺序和 ID 的请求顺序一致。
+     */
+    @SuppressWarnings("unchecked")
+    @Override
+    public <PK> Map<PK, T> findMap(PK... ids) {
+        if (ids == null || ids.length == 0) {
+            return new HashMap<>(0);
+        }
+
+        Map<Integer, PK[]> groups = groupIds(ids);
+        if (groups.size() == 1) {
+            Map.Entry<Integer, PK[]> group = groups.entrySet().iterator().next();
+            return shards.get(group.getKey()).findMap(group.getValue());
+        }
+
+        Map<PK, T> rows = new HashMap<>();
+        for (Map<PK, T> result : executeShards(new ArrayList<>(groups.entrySet()), group -> shards.get(
+                group.getKey()).findMap(group.getValue()))) {
+            rows.putAll(result);
+        }
+
+        Map<PK, T> map = new LinkedHashMap<>(rows.size() * 4 / 3 + 1);
+        for (PK id : ids) {
+            T row = rows.remove(id);
+            if (row != null) {
+                map.put(id, row);
+            }
+        }
+        map.putAll(rows);
+        return map;
+    }
+
+    @Override
+    public void insert(T entity) {
+        getShardOf(entity).insert(entity);
+    }
+
+    @Override
+    public void update(T entity) {
+        getShardOf(entity).update(entity);
+    }
+
+    @Override
+    public void updateIfPossible(T entity) {
+        getShardOf(entity).updateIfPossible(entity);
+    }
+
+    @Override
+    public int[] insertBatch(Collection<T> entities) {
+        return executeBatch(entities, MyBatisBulkDao::insertBatch);
+    }
+
+    @Override
+    public int[] updateBatch(Collection<T> entities) {
+        return executeBatch(entities, MyBatisBulkDao::updateBatch);
+    }
+
+    @Override
+    public int[] upsertBatch(Collection<T> entities) {
+        return executeBatch(entities, MyBatisBulkDao::upsertBatch);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <PK> void delete(PK... ids) {
+        if (ids == null || ids.length == 0) {
+            return;
+        }
+
+        for (Map.Entry<Integer, PK[]> group : groupIds(ids).entrySet()) {
+            shards.get(group.getKey()).delete(group.getValue());
+        }
+    }
+
+    /**
+     * 获取分片数。
+     */
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    /**
+     * 获取分片键对应的分片。
+     */
+    public MyBatisBulkDao<T> getShard(Object shardKey) {
+        return shards.get(indexOf(shardKey));
+    }
+
+    /**
+     * 设置从实体中获取分片键的方法，默认使用 id 属性。
+     */
+    public void setShardKeyExtractor(Function<? super T, Object> shardKeyExtractor) {
+        this.shardKeyExtractor = shardKeyExtractor;
+    }
+
+    /**
+     * 设置并发查询多个分片的线程池，为 null 时串行执行。
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    private MyBatisBulkDao<T> getShardOf(T entity) {
+        return getShard(shardKeyExtractor.apply(entity));
+    }
+
+    /**
+     * 在所有分片上执行分页查询，并按排序字段归并。
+     */
+    private List<T> findWithPage(Pagination page, PageQuery<T> query) {
+        if (page == null) {
+            return concat(executeShards(shards, shard -> query.apply(shard, null)));
+        }
+
+        // 偏移量分页时每个分片都要查询到请求页的最后一行；keyset 分页时每个分片从相同的位置开始查询一页
+        int pageNum = Math.max(page.getPageNum(), 1);
+        int shardPageSize = page.isSeekEnable() ? page.getPageSize() : pageNum * page.getPageSize();
+        List<Pagination> shardPages = new ArrayList<>(shards.size());
+        for (int i = 0; i < shards.size(); i++) {
+            shardPages.add(newShardPage(page, shardPageSize));
+        }
+
+        List<Integer> indexes = new ArrayList<>(shards.size());
+        for (int i = 0; i < shards.size(); i++) {
+            indexes.add(i);
+        }
+        List<List<T>> results = executeShards(indexes, i -> query.apply(shards.get(i), shardPages.get(i)));
+
+        // 汇总各分片的总记录数，任何一个分片不是精确值时总数也不是精确值
+        long rowCount = 0;
+        boolean exact = true;
+        for (Pagination shardPage : shardPages) {
+            rowCount += shardPage.getRowCount();
+            exact &= shardPage.isRowCountExact();
+        }
+        int total = (int) Math.min(rowCount, Integer.MAX_VALUE);
+        if (exact) {
+            page.setRowCount(total);
+        } else {
+            page.setEstimatedRowCount(total);
+        }
+        page.setPageNum(pageNum);
+        page.initialize();
+
+        int offset = page.isSeekEnable() ? 0 : Math.max(page.getCurrentRowNum() - 1, 0);
+        List<T> rows = mergeSorted(results, page, offset, page.getPageSize());
+        if (page.isSeekEnable() && !rows.isEmpty()) {
+            page.seekAfter(rows.get(rows.size() - 1));
+        }
+        return rows;
+    }
+
+    /**
+     * 多路归并各分片中已按分页对象的排序字段排好序的结果，跳过前 {@code offset} 行，最多返回 {@code limit} 行。
+     * 排序字段相同的行按分片的顺序排列；没有排序字段时按分片的顺序拼接。
+     */
+    static <E> List<E> mergeSorted(List<List<E>> results, Pagination page, int offset, int limit) {
+        List<E> rows = new ArrayList<>(Math.max(Math.min(limit, 1024), 0));
+        PriorityQueue<int[]> queue = new PriorityQueue<>(Math.max(results.size(), 1), (a, b) -> {
+            int result = page.compareRows(results.get(a[0]).get(a[1]), results.get(b[0]).get(b[1]));
+            return result != 0 ? result : Integer.compare(a[0], b[0]);
+        });
+        for (int i = 0; i < results.size(); i++) {
+            if (!results.get(i).isEmpty()) {
+                queue.add(new int[] { i, 0 });
+            }
+        }
+
+        int skipped = 0;
+        while (!queue.isEmpty() && rows.size() < limit) {
+            int[] cursor = queue.poll();
+            List<E> result = results.get(cursor[0]);
+            if (skipped < offset) {
+                skipped++;
+            } else {
+                rows.add(result.get(cursor[1]));
+            }
+            if (++cursor[1] < result.size()) {
+                queue.add(cursor);
+            }
+        }
+        return rows;
+    }
+
+    private static Pagination newShardPage(Pagination page, int pageSize) {
+        Pagination shardPage = new Pagination(1, pageSize, page.isPageCountEnable());
+        shardPage.setId(page.getId());
+        shardPage.setSorts(new ArrayList<>(page.getSorts()));
+        shardPage.setCountMode(page.getCountMode(), page.getCountCap());
+        shardPage.setCountCacheEnable(page.isCountCacheEnable());
+        shardPage.setSeekEnable(page.isSeekEnable());
+        shardPage.setSeekValues(new ArrayList<>(page.getSeekValues()));
+        return shardPage;
+    }
+
+    /**
+     * 按分片对 ID 分组，每组内保持 ID 的请求顺序。
+     */
+    private <PK> Map<Integer, PK[]> groupIds(PK[] ids) {
+        Map<Integer, List<PK>> groups = new LinkedHashMap<>();
+        for (PK id : ids) {
+            groups.computeIfAbsent(indexOf(id), key -> new ArrayList<>()).add(id);
+        }
+
+        Map<Integer, PK[]> arrays = new LinkedHashMap<>(groups.size() * 4 / 3 + 1);
+        for (Map.Entry<Integer, List<PK>> group : groups.entrySet()) {
+            arrays.put(group.getKey(), group.getValue().toArray(Arrays.copyOf(ids, 0)));
+        }
+        return arrays;
+    }
+
+    /**
+     * 在每个分片上分别执行批量写入，返回每个实体影响的行数，顺序和参数一致。
+     */
+    private int[] executeBatch(Collection<T> entities, BatchWrite<T> write) {
+        if (entities == null || entities.isEmpty()) {
+            return new int[0];
+        }
+
+        Map<Integer, List<T>> groups = new LinkedHashMap<>();
+        Map<Integer, List<Integer>> positions = new HashMap<>();
+        int position = 0;
+        for (T entity : entities) {
+            int index = indexOf(shardKeyExtractor.apply(entity));
+            groups.computeIfAbsent(index, key -> new ArrayList<>()).add(entity);
+            positions.computeIfAbsent(index, key -> new ArrayList<>()).add(position++);
+        }
+
+        int[] results = new int[entities.size()];
+        for (Map.Entry<Integer, List<T>> group : groups.entrySet()) {
+            int[] counts = write.apply(shards.get(group.getKey()), group.getValue());
+            List<Integer> groupPositions = positions.get(group.getKey());
+            for (int i = 0; i < counts.length && i < groupPositions.size(); i++) {
+                results[groupPositions.get(i)] = counts[i];
+            }
+        }
+        return results;
+    }
+
+    private int indexOf(Object shardKey) {
+        int index = shardResolver.applyAsInt(shardKey);
+        if (index < 0 || index >= shards.size()) {
+            throw new IllegalArgumentException("Invalid shard index " + index + " for key: " + shardKey);
+        }
+        return index;
+    }
+
+    /**
+     * 对每个参数执行查询，配置了线程池并且不在事务中时并发执行。返回的结果和参数的顺序一致。
+     */
+    private <P, R> List<R> executeShards(List<P> params, Function<P, R> query) {
+        List<R> results = new ArrayList<>(params.size());
+        if (executor == null || params.size() == 1 || TransactionSynchronizationManager.isActualTransactionActive()) {
+            for (P param : params) {
+                results.add(query.apply(param));
+            }
+            return results;
+        }
+
+        List<Future<R>> futures = new ArrayList<>(params.size());
+        for (P param : params) {
+            futures.add(executor.submit(ReadWriteContext.wrap(() -> query.apply(param))));
+        }
+
+        try {
+            for (Future<R> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+        } finally {
+            for (Future<R> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return results;
+    }
+
+    private static <E> List<E> concat(List<List<E>> results) {
+        if (results.size() == 1) {
+            return results.get(0);
+        }
+
+        int size = 0;
+        for (List<E> result : results) {
+            size += result.size();
+        }
+        List<E> list = new ArrayList<>(size);
+        for (List<E> result : results) {
+            list.addAll(result);
+        }
+        return list;
+    }
+
+    @FunctionalInterface
+    private interface PageQuery<T> {
+
+        List<T> apply(MyBatisBulkDao<T> shard, Pagination page);
+
+    }
+
+    @FunctionalInterface
+    private interface BatchWrite<T> {
+
+        int[] apply(MyBatisBulkDao<T> shard, List<T> entities);
+
+    }
+
+}
@@ -0,0 +1,191 @@
+/*
+ * @(#)StatementCache.java    Created on 2026-10-18
+ * Copyright (c) 2026 Guomi. All rights reserved.
+ */
+package com.guomi.meazza.orm.mybatis;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.ibatis.logging.jdbc.ConnectionLogger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * 在 Spring 事务（或事务同步）范围内按连接缓存 {@code PreparedStatement}，同一个事务中重复执行的 SQL 不需要重新预编译。
+ *
+ * <p>
+ * 连接池每次借出的连接对象一般不同，所以缓存只在事务范围内有效：事务中的连接不会被归还，缓存的语句在事务完成之前、
+ * 连接归还给连接池之前关闭，不会被其他借出该连接的线程使用。没有事务同步时不缓存，语句用完后直接关闭。
+ *
+ * <p>
+ * 每个连接最多缓存 {@code maxStatements} 个语句，超出时关闭最久没有使用的语句。语句通过传入的连接预编译，
+ * MyBatis 用于打印日志的连接代理仍然有效，只是在识别同一个连接时会被去掉。
+ *
+ * @author akuma
+ */
+class StatementCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(StatementCache.class);
+
+    private final int maxStatements;
+
+    /**
+     * 构造方法。
+     *
+     * @param maxStatements
+     *            每个连接最多缓存多少个语句
+     */
+    StatementCache(int maxStatements) {
+        this.maxStatements = maxStatements;
+    }
+
+    /**
+     * 获取连接上指定 SQL 的 {@code PreparedStatement}，缓存中没有或已经关闭时重新预编译。返回的语句已经清除了参数，
+     * 使用后需要调用 {@link #release(Connection, PreparedStatement)}。
+     */
+    PreparedStatement prepare(Connection connection, String sql) throws SQLException {
+        Map<String, PreparedStatement> statements = getStatements(connection, true);
+        if (statements == null) {
+            return connection.prepareStatement(sql);
+        }
+
+        PreparedStatement ps = statements.get(sql);
+        if (ps != null && !ps.isClosed()) {
+            ps.clearParameters();
+            return ps;
+        }
+
+        ps = connection.prepareStatement(sql);
+        statements.put(sql, ps);
+        return ps;
+    }
+
+    /**
+     * 释放 {@link #prepare(Connection, String)} 返回的语句，没有被缓存的语句会被关闭。
+     */
+    void release(Connection connection, PreparedStatement ps) {
+        Map<String, PreparedStatement> statements = getStatements(connection, false);
+        if (statements == null || !statements.containsValue(ps)) {
+            closeQuietly(ps);
+        }
+    }
+
+    /**
+     * 获取当前事务中连接上缓存的语句，没有事务同步时返回 null。
+     *
+     * @param create
+     *            当前事务中还没有该连接的缓存时是否创建
+     */
+    private Map<String, PreparedStatement> getStatements(Connection connection, boolean create) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return null;
+        }
+
+        @SuppressWarnings("unchecked")
+        Map<Connection, Map<String, PreparedStatement>> connections = (Map<Connection, Map<String, PreparedStatement>>)
+                TransactionSynchronizationManager.getResource(this);
+        if (connections == null) {
+            if (!create) {
+                return null;
+            }
+            connections = new IdentityHashMap<>();
+            bind(connections);
+        }
+
+        Connection key = unwrap(connection);
+        Map<String, PreparedStatement> statements = connections.get(key);
+        if (statements == null && create) {
+            statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                    if (size() <= maxStatements) {
+                        return false;
+                    }
+
+                    closeQuietly(eldest.getValue());
+                    return true;
+                }
+
+            };
+            connections.put(key, statements);
+        }
+        return statements;
+    }
+
+    /**
+     * 把缓存绑定到当前事务，事务完成之前关闭所有缓存的语句。事务挂起时解除绑定，挂起期间使用其它连接的事务不会用到这些语句。
+     */
+    private void bind(final Map<Connection, Map<String, PreparedStatement>> connections) {
+        TransactionSynchronizationManager.bindResource(this, connections);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+            @Override
+            public int getOrder() {
+                // 在 Spring 释放连接和 MyBatis 关闭 SqlSession 之前关闭语句
+                return DataSourceUtils.CONNECTION_SYNCHRONIZATION_ORDER - 2;
+            }
+
+            @Override
+            public void suspend() {
+                TransactionSynchronizationManager.unbindResource(StatementCache.this);
+            }
+
+            @Override
+            public void resume() {
+                TransactionSynchronizationManager.bindResource(StatementCache.this, connections);
+            }
+
+            @Override
+            public void beforeCompletion() {
+                TransactionSynchronizationManager.unbindResourceIfPossible(StatementCache.this);
+                for (Map<String, PreparedStatement> statements : connections.values()) {
+                    for (PreparedStatement ps : statements.values()) {
+                        closeQuietly(ps);
+                    }
+                }
+                connections.clear();
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                // beforeCompletion 没有被调用时（例如事务提交之前出错）也要关闭语句
+                beforeCompletion();
+            }
+
+        });
+    }
+
+    /**
+     * 去掉 MyBatis 用于打印日志的连接代理，同一个连接每次执行语句时的日志代理对象不同。
+     */
+    private static Connection unwrap(Connection connection) {
+        if (Proxy.isProxyClass(connection.getClass())) {
+            Object handler = Proxy.getInvocationHandler(connection);
+            if (handler instanceof ConnectionLogger) {
+                return ((ConnectionLogger) handler).getConnection();
+            }
+        }
+        return connection;
+    }
+
+    private static void closeQuietly(PreparedStatement ps) {
+        try {
+            ps.close();
+        } catch (SQLException e) {
+            logger.debug("Close cached statement failed", e);
+        }
+    }
+
+}
@@ -0,0 +1,108 @@
+/*
+ * @(#)StatementMetrics.java    Created on 2026-10-18
+ * Copyright (c) 2026 Guomi. All rights reserved.
+ */
+package com.guomi.meazza.orm.mybatis;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import com.guomi.meazza.util.LatencyHistogram;
+
+/**
+ * 单个 Mapper 语句的执行统计，包括执行次数、耗时分布、返回或影响的行数、失败次数和慢查询次数。耗时以毫秒为单位返回。
+ *
+ * @author akuma
+ */
+public class StatementMetrics {
+
+    private final String id;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder rowCount = new LongAdder();
+    private final LongAdder errorCount = new LongAdder();
+    private final LongAdder slowCount = new LongAdder();
+
+    /**
+     * 构造方法。
+     *
+     * @param id
+     *            语句 ID
+     */
+    public StatementMetrics(String id) {
+        this.id = id;
+    }
+
+    /**
+     * 记录一次执行。
+     *
+     * @param micros
+     *            耗时（微秒）
+     * @param rows
+     *            返回或影响的行数，失败时为 0
+     * @param error
+     *            是否执行失败
+     * @param slow
+     *            是否是慢查询
+     */
+    public void record(long micros, long rows, boolean error, boolean slow) {
+        latency.record(micros);
+        rowCount.add(rows);
+        if (error) {
+            errorCount.increment();
+        }
+        if (slow) {
+            slowCount.increment();
+        }
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public long getCount() {
+        return latency.getCount();
+    }
+
+    public long getRowCount() {
+        return rowCount.sum();
+    }
+
+    public long getErrorCount() {
+        return errorCount.sum();
+    }
+
+    public long getSlowCount() {
+        return slowCount.sum();
+    }
+
+    public double getTotalTime() {
+        return latency.getTotal() / 1000.0;
+    }
+
+    public double getMeanTime() {
+        return latency.getMean() / 1000.0;
+    }
+
+    public double getMaxTime() {
+        return latency.getMax() / 1000.0;
+    }
+
+    public double getP50Time() {
+        return latency.getPercentile(50) / 1000.0;
+    }
+
+    public double getP95Time() {
+        return latency.getPercentile(95) / 1000.0;
+    }
+
+    public double getP99Time() {
+        return latency.getPercentile(99) / 1000.0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s(count: %d, rows: %d, errors: %d, slow: %d, total: %.1fms, mean: %.3fms, "
+                + "p95: %.3fms, p99: %.3fms, max: %.3fms)", id, getCount(), getRowCount(), getErrorCount(),
+                getSlowCount(), getTotalTime(), getMeanTime(), getP95Time(), getP99Time(), getMaxTime());
+    }
+
+}
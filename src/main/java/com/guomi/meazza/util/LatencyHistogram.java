@@ -0,0 +1,138 @@
+/*
+ * @(#)LatencyHistogram.java    Created on 2026-10-18
+ * Copyright (c) 2026 Guomi. All rights reserved.
+ */
+package com.guomi.meazza.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 记录耗时分布的直方图，线程安全，记录时不加锁。
+ *
+ * <p>
+ * 耗时以微秒为单位。小于 16 的值每个值一个桶；其余的值按 2 的幂分段，每段再平均分成 8 个桶，所以百分位数的相对误差不超过 12.5%，
+ * 而桶的总数不超过 500 个。
+ *
+ * @author akuma
+ */
+public class LatencyHistogram {
+
+    private static final int LINEAR_BUCKETS = 16;
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int LINEAR_EXPONENT = 4;
+    private static final int BUCKET_COUNT = LINEAR_BUCKETS + (63 - LINEAR_EXPONENT) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * 记录一次耗时。
+     *
+     * @param micros
+     *            耗时（微秒），小于 0 时按 0 记录
+     */
+    public void record(long micros) {
+        long value = Math.max(micros, 0);
+        buckets.incrementAndGet(getBucketIndex(value));
+        count.incrementAndGet();
+        total.addAndGet(value);
+
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * 获取记录的次数。
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * 获取记录的总耗时（微秒）。
+     */
+    public long getTotal() {
+        return total.get();
+    }
+
+    /**
+     * 获取记录的最大耗时（微秒）。
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * 获取平均耗时（微秒），没有记录时返回 0。
+     */
+    public double getMean() {
+        long n = count.get();
+        return n == 0 ? 0 : (double) total.get() / n;
+    }
+
+    /**
+     * 获取百分位数（微秒），返回所在桶的上限，并且不超过最大耗时。没有记录时返回 0。
+     *
+     * @param percentile
+     *            百分位，例如 99 表示 99% 的耗时不超过返回值
+     */
+    public long getPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("percentile must be between 0 and 100");
+        }
+
+        long n = count.get();
+        if (n == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(n * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return Math.min(getBucketUpperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    static int getBucketIndex(long value) {
+        if (value < LINEAR_BUCKETS) {
+            return (int) value;
+        }
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR_BUCKETS + (exponent - LINEAR_EXPONENT) * SUB_BUCKETS + subBucket;
+    }
+
+    static long getBucketUpperBound(int index) {
+        if (index < LINEAR_BUCKETS) {
+            return index;
+        }
+
+        int exponent = (index - LINEAR_BUCKETS) / SUB_BUCKETS + LINEAR_EXPONENT;
+        int subBucket = (index - LINEAR_BUCKETS) % SUB_BUCKETS;
+        int shift = exponent - SUB_BUCKET_BITS;
+        long lower = (long) (SUB_BUCKETS + subBucket) << shift;
+        return lower + (1L << shift) - 1;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("LatencyHistogram(");
+        sb.append("count: " + getCount());
+        sb.append(", mean: " + String.format("%.1f", getMean()) + "us");
+        sb.append(", p99: " + getPercentile(99) + "us");
+        sb.append(", max: " + getMax() + "us)");
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,260 @@
+/*
+ * @(#)LruCache.java    Created on 2026-10-18
+ * Copyright (c) 2026 Guomi. All rights reserved.
+ */
+package com.guomi.meazza.util;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * 线程安全、容量有限的 LRU 缓存。
+ *
+ * <p>
+ * 缓存按 key 的 hash 值分成若干段，每段是一个按访问顺序排列的 {@code LinkedHashMap} 并单独加锁，超出容量时淘汰该段中最久未被访问的元素。
+ * 淘汰顺序是近似的全局 LRU，但多个线程不会竞争同一把锁。
+ *
+ * @author akuma
+ */
+public class LruCache<K, V> {
+
+    private static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+
+    private final List<Segment<K, V>> segments;
+    private final int segmentMask;
+    private final int maxSize;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    /**
+     * 构造方法。
+     *
+     * @param maxSize
+     *            缓存的最大元素个数
+     */
+    public LruCache(int maxSize) {
+        this(maxSize, DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    /**
+     * 构造方法。
+     *
+     * @param maxSize
+     *            缓存的最大元素个数
+     * @param concurrencyLevel
+     *            预计的并发访问线程数，用于决定分段数量
+     */
+    public LruCache(int maxSize, int concurrencyLevel) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be greater than 0");
+        }
+
+        int segmentCount = 1;
+        while (segmentCount < concurrencyLevel && segmentCount < maxSize) {
+            segmentCount <<= 1;
+        }
+
+        int segmentSize = (maxSize + segmentCount - 1) / segmentCount;
+        segments = new ArrayList<>(segmentCount);
+        for (int i = 0; i < segmentCount; i++) {
+            segments.add(new Segment<>(segmentSize, evictionCount));
+        }
+        segmentMask = segmentCount - 1;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * 获取缓存的值，不存在时返回 null。
+     */
+    public V get(K key) {
+        V value = segmentFor(key).get(key);
+        if (value == null) {
+            missCount.incrementAndGet();
+        } else {
+            hitCount.incrementAndGet();
+        }
+        return value;
+    }
+
+    /**
+     * 获取缓存的值，不存在时通过 {@code loader} 加载并放入缓存。{@code loader} 返回 null 时不会缓存。
+     *
+     * <p>
+     * 加载过程不持有锁，所以同一个 key 可能被并发加载多次，但最终只会保留先放入缓存的值。
+     */
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        Segment<K, V> segment = segmentFor(key);
+        V value = segment.get(key);
+        if (value != null) {
+            hitCount.incrementAndGet();
+            return value;
+        }
+
+        missCount.incrementAndGet();
+        value = loader.apply(key);
+        if (value == null) {
+            return null;
+        }
+        return segment.putIfAbsent(key, value);
+    }
+
+    /**
+     * 放入缓存。
+     */
+    public void put(K key, V value) {
+        if (value == null) {
+            remove(key);
+            return;
+        }
+        segmentFor(key).put(key, value);
+    }
+
+    /**
+     * 移除缓存的值，并返回被移除的值。
+     */
+    public V remove(K key) {
+        return segmentFor(key).remove(key);
+    }
+
+    /**
+     * 清空缓存。
+     */
+    public void clear() {
+        for (Segment<K, V> segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /**
+     * 获取缓存的元素个数。
+     */
+    public int size() {
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * 获取缓存的最大元素个数。
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * 获取缓存命中次数。
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * 获取缓存未命中次数。
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * 获取因容量限制被淘汰的元素个数。
+     */
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    /**
+     * 获取缓存命中率，没有访问记录时返回 0。
+     */
+    public double getHitRate() {
+        long hits = hitCount.get();
+        long total = hits + missCount.get();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("LruCache(");
+        sb.append("size: " + size() + "/" + maxSize);
+        sb.append(", hits: " + getHitCount());
+        sb.append(", misses: " + getMissCount());
+        sb.append(", evictions: " + getEvictionCount() + ")");
+        return sb.toString();
+    }
+
+    private Segment<K, V> segmentFor(Object key) {
+        int h = key == null ? 0 : key.hashCode();
+        h ^= (h >>> 16);
+        return segments.get(h & segmentMask);
+    }
+
+    /**
+     * 缓存分段，按访问顺序排列，超出容量时淘汰最久未被访问的元素。
+     */
+    private static class Segment<K, V> extends LinkedHashMap<K, V> {
+
+        private static final long serialVersionUID = 4620913307592532106L;
+
+        private final int capacity;
+        private final AtomicLong evictionCount;
+
+        Segment(int capacity, AtomicLong evictionCount) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+            this.evictionCount = evictionCount;
+        }
+
+        @Override
+        public synchronized V get(Object key) {
+            return super.get(key);
+        }
+
+        @Override
+        public synchronized V put(K key, V value) {
+            return super.put(key, value);
+        }
+
+        @Override
+        public synchronized V putIfAbsent(K key, V value) {
+            V existing = super.get(key);
+            if (existing != null) {
+                return existing;
+            }
+            super.put(key, value);
+            return value;
+        }
+
+        @Override
+        public synchronized V remove(Object key) {
+            return super.remove(key);
+        }
+
+        @Override
+        public synchronized void clear() {
+            super.clear();
+        }
+
+        @Override
+        public synchronized int size() {
+            return super.size();
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            if (size() > capacity) {
+                evictionCount.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+
+    }
+
+}
@@ -4,8 +4,16 @@
  */
 package com.guomi.meazza.util;
 
+import java.lang.reflect.InvocationTargetException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
 
 import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
@@ -21,6 +29,41 @@ public class Pagination {
     private static final Logger logger = LoggerFactory.getLogger(Pagination.class);
 
     private static final int DEFAULT_PAGE_SIZE = 10;
+    private static final int DEFAULT_COUNT_CAP = 10000;
+
+    // Mongo 的 ObjectId 类型，Mongo 驱动是可选的依赖，所以不直接引用
+    private static final String OBJECT_ID_CLASS_NAME = "org.bson.types.ObjectId";
+
+    /**
+     * 获取总记录数的方式。
+     */
+    public enum CountMode {
+
+        /**
+         * 精确计数，执行 count 查询。
+         */
+        EXACT,
+
+        /**
+         * 估算总记录数，不执行 count 查询，而是使用数据库的执行计划或统计信息，例如 MySQL 的 {@code EXPLAIN}、Oracle 的
+         * {@code num_rows}、Mongo 集合的元数据。除 MySQL 外，估算值不考虑查询条件，只适用于不带查询条件或条件选择性很低的超大表。
+         * 数据库不支持估算时使用精确计数。
+         */
+        ESTIMATED,
+
+        /**
+         * 最多计数到上限值（{@link Pagination#getCountCap()}），count 查询只扫描不超过上限的记录，所以代价不会随着表的增长而增长。
+         * 超过上限时总记录数为上限值，并且 {@link Pagination#isRowCountExact()} 返回 false。
+         */
+        CAPPED,
+
+        /**
+         * 不获取总记录数，也不显示总共有多少页，等同于不启用页数。
+         */
+        NONE
+
+    }
+
 
     private String id = StringUtils.EMPTY; // 分页信息的标识，会作为参数的后缀，在多个pagination共存的时候有用
 
@@ -31,7 +74,16 @@ public class Pagination {
     private Integer currentRowNum = 0; // 当前起始记录序号
 
     private List<Pair<String, Boolean>> sorts = new ArrayList<>(); // 排序方式
-    private boolean pageCountEnable = true; // 是否启用分页的页数，不启用的情况下不需要显示总共有多少页
+    private CountMode countMode = CountMode.EXACT; // 获取总记录数的方式，为 NONE 时不启用分页的页数
+    private int countCap = DEFAULT_COUNT_CAP; // CAPPED 方式下最多计数到多少行
+    private boolean rowCountExact = true; // 总记录数是否是精确值
+    private boolean countCacheEnable = true; // 是否允许使用缓存的总记录数，只在配置了记录数缓存时有效
+
+    private boolean seekEnable = false; // 是否使用 keyset（seek）方式分页，即根据上一页最后一行的排序字段值获取下一页
+    private List<Object> seekValues = new ArrayList<>(); // 上一页最后一行的排序字段值，顺序和排序字段一致
+    private boolean seekAnchorEnable = false; // 偏移量分页时是否记住每页最后一行的排序字段值，翻页时从最近的一页开始定位
+    private TreeMap<Integer, List<Object>> seekAnchors = new TreeMap<>(); // 已记录的锚点，key 为页码
+    private String seekAnchorScope; // 锚点对应的查询，查询条件、排序方式等变化时清除锚点
 
     @Deprecated
     private String orderBy;
@@ -76,14 +128,14 @@ public class Pagination {
     public Pagination(Integer pageNum, Integer pageSize, boolean pageCountEnable) {
         this.pageNum = pageNum == null ? 0 : pageNum;
         this.pageSize = pageSize == null ? 10 : pageSize;
-        this.pageCountEnable = pageCountEnable;
+        this.countMode = pageCountEnable ? CountMode.EXACT : CountMode.NONE;
     }
 
     /**
      * 初始化，计算出一共有多少页和当前起始记录序号。
      */
     public void initialize() {
-        if (pageCountEnable) {
+        if (isPageCountEnable()) {
             // 得到总共页数
             if (rowCount % pageSize == 0) {
                 pageCount = rowCount / pageSize;
@@ -91,15 +143,15 @@ public class Pagination {
                 pageCount = rowCount / pageSize + 1;
             }
 
-            // 校验当前页参数
-            if (pageNum > pageCount) {
+            // 校验当前页参数，总记录数不是精确值时不限制页码的上限
+            if (rowCountExact && pageNum > pageCount) {
                 pageNum = pageCount;
             } else if (pageNum < 1) {
                 pageNum = 1;
             }
 
             // 得到当前起始记录序号
-            if (rowCount == 0) {
+            if (rowCountExact && rowCount == 0) {
                 currentRowNum = 0;
                 pageNum = 0;
             } else {
@@ -110,8 +162,8 @@ public class Pagination {
         }
 
         if (logger.isInfoEnabled()) {
-            logger.info("page: {}/{}, row: {}/{}, size: {}, pageCountEnable: {}", new Object[] { pageNum, pageCount,
-                    currentRowNum, rowCount, pageSize, pageCountEnable });
+            logger.info("page: {}/{}, row: {}/{}, size: {}, countMode: {}", new Object[] { pageNum, pageCount,
+                    currentRowNum, rowCount, pageSize, countMode });
         }
     }
 
@@ -207,6 +259,27 @@ public class Pagination {
      */
     public void setRowCount(Integer rowCount) {
         this.rowCount = rowCount == null ? 0 : rowCount;
+        this.rowCountExact = true;
+    }
+
+    /**
+     * 设置估算的总记录数，或者 CAPPED 方式下的计数上限值。
+     *
+     * @param rowCount
+     *            估算的总记录数
+     */
+    public void setEstimatedRowCount(Integer rowCount) {
+        this.rowCount = rowCount == null ? 0 : rowCount;
+        this.rowCountExact = false;
+    }
+
+    /**
+     * 判断总记录数是否是精确值。估算的总记录数，或者 CAPPED 方式下超过上限时，总记录数不是精确值。
+     *
+     * @return true/false
+     */
+    public boolean isRowCountExact() {
+        return rowCountExact;
     }
 
     /**
@@ -328,7 +401,7 @@ public class Pagination {
      * @return true/false
      */
     public boolean isPageCountEnable() {
-        return pageCountEnable;
+        return countMode != CountMode.NONE;
     }
 
     /**
@@ -338,7 +411,294 @@ public class Pagination {
      *            是否使用页数
      */
     public void setPageCountEnable(boolean pageCountEnable) {
-        this.pageCountEnable = pageCountEnable;
+        if (!pageCountEnable) {
+            countMode = CountMode.NONE;
+        } else if (countMode == CountMode.NONE) {
+            countMode = CountMode.EXACT;
+        }
+    }
+
+    /**
+     * 获取总记录数的方式，默认为 {@link CountMode#EXACT}。
+     */
+    public CountMode getCountMode() {
+        return countMode;
+    }
+
+    /**
+     * 设置获取总记录数的方式，设置为 {@link CountMode#NONE} 等同于不启用页数。
+     *
+     * @param countMode
+     *            获取总记录数的方式
+     */
+    public void setCountMode(CountMode countMode) {
+        this.countMode = countMode == null ? CountMode.EXACT : countMode;
+    }
+
+    /**
+     * 设置获取总记录数的方式，以及 {@link CountMode#CAPPED} 方式下最多计数到多少行，例如
+     * {@code setCountMode(CountMode.CAPPED, 1000)}。
+     *
+     * @param countMode
+     *            获取总记录数的方式
+     * @param countCap
+     *            最多计数到多少行
+     */
+    public void setCountMode(CountMode countMode, int countCap) {
+        setCountMode(countMode);
+        setCountCap(countCap);
+    }
+
+    /**
+     * 获取 {@link CountMode#CAPPED} 方式下最多计数到多少行，默认 10000 行。
+     */
+    public int getCountCap() {
+        return countCap;
+    }
+
+    /**
+     * 设置 {@link CountMode#CAPPED} 方式下最多计数到多少行。
+     *
+     * @param countCap
+     *            最多计数到多少行，必须大于 0
+     */
+    public void setCountCap(int countCap) {
+        if (countCap <= 0) {
+            throw new IllegalArgumentException("countCap must be greater than 0");
+        }
+        this.countCap = countCap;
+    }
+
+    /**
+     * 判断是否允许使用缓存的总记录数。
+     *
+     * @return true/false
+     */
+    public boolean isCountCacheEnable() {
+        return countCacheEnable;
+    }
+
+    /**
+     * 设置是否允许使用缓存的总记录数，对实时性要求高的查询可以设置为 false。
+     *
+     * @param countCacheEnable
+     *            是否允许使用缓存的总记录数
+     */
+    public void setCountCacheEnable(boolean countCacheEnable) {
+        this.countCacheEnable = countCacheEnable;
+    }
+
+    /**
+     * 判断是否使用 keyset（seek）方式分页。
+     *
+     * @return true/false
+     */
+    public boolean isSeekEnable() {
+        return seekEnable;
+    }
+
+    /**
+     * 设置是否使用 keyset（seek）方式分页。
+     *
+     * <p>
+     * keyset 方式分页不使用偏移量，而是根据上一页最后一行的排序字段值来获取下一页，例如 {@code WHERE (a, b) > (?, ?) ORDER BY a, b}，
+     * 所以翻到很深的页时查询代价和第一页相同。使用 keyset 方式分页时必须设置排序字段，并且排序字段的组合能唯一确定一行数据。
+     * 排序字段的值不能为 null，null 值无法用范围条件定位，查询时会抛出 {@code IllegalArgumentException}。
+     * SQL 查询中的排序字段名必须是查询结果中的列名，并且只能是普通的标识符。
+     *
+     * @param seekEnable
+     *            是否使用 keyset 方式分页
+     */
+    public void setSeekEnable(boolean seekEnable) {
+        this.seekEnable = seekEnable;
+    }
+
+    /**
+     * 判断偏移量分页时是否使用锚点。
+     *
+     * @return true/false
+     */
+    public boolean isSeekAnchorEnable() {
+        return seekAnchorEnable;
+    }
+
+    /**
+     * 设置偏移量分页时是否使用锚点，目前只有 Mongo 分页查询支持。
+     *
+     * <p>
+     * 使用锚点时，每次查询后把当前页最后一行的排序字段值（锚点）记录在分页对象中，之后用同一个分页对象获取后面的页时，
+     * 从最近的锚点开始用范围条件定位，只跳过锚点和请求页之间的行。锚点只属于这个分页对象，所以只有在多次请求之间保留分页对象
+     * （例如保存在会话中）时才有效；查询条件、排序方式或每页行数变化时，已记录的锚点会被清除。和 keyset 方式分页一样，必须设置排序字段。
+     *
+     * <p>
+     * 注意：锚点不会随着数据的增删而更新。记录锚点之后，锚点之前有数据插入或删除时，从锚点定位的页和从头跳过得到的页会相差若干行，
+     * 翻页时可能漏掉或重复看到这些行。需要和偏移量分页完全一致时调用 {@link #clearSeekAnchors()}。
+     *
+     * @param seekAnchorEnable
+     *            是否使用锚点
+     */
+    public void setSeekAnchorEnable(boolean seekAnchorEnable) {
+        this.seekAnchorEnable = seekAnchorEnable;
+    }
+
+    /**
+     * 获取第 {@code pageNum} 页之前离它最近的锚点，没有时返回 null。
+     *
+     * @return key 为锚点所在的页码，value 为该页最后一行的排序字段值
+     */
+    public Map.Entry<Integer, List<Object>> getSeekAnchorBefore(int pageNum) {
+        return seekAnchors.lowerEntry(pageNum);
+    }
+
+    /**
+     * 记录第 {@code pageNum} 页最后一行的排序字段值。
+     */
+    public void putSeekAnchor(int pageNum, List<Object> values) {
+        seekAnchors.put(pageNum, new ArrayList<>(values));
+    }
+
+    /**
+     * 设置锚点对应的查询，和之前记录锚点时的查询不同时清除已记录的锚点。
+     *
+     * @param scope
+     *            标识查询条件、排序方式、每页行数等的字符串
+     */
+    public void setSeekAnchorScope(String scope) {
+        if (!Objects.equals(seekAnchorScope, scope)) {
+            seekAnchors.clear();
+            seekAnchorScope = scope;
+        }
+    }
+
+    /**
+     * 清除已记录的锚点，之后的查询重新从头跳过。
+     */
+    public void clearSeekAnchors() {
+        seekAnchors.clear();
+    }
+
+    /**
+     * 获取上一页最后一行的排序字段值，为空时表示获取第一页。
+     */
+    public List<Object> getSeekValues() {
+        return seekValues;
+    }
+
+    /**
+     * 设置上一页最后一行的排序字段值，顺序和排序字段一致。
+     */
+    public void setSeekValues(List<Object> seekValues) {
+        this.seekValues = seekValues == null ? new ArrayList<>() : seekValues;
+    }
+
+    /**
+     * 判断是否有上一页最后一行的排序字段值。
+     */
+    public boolean hasSeekValues() {
+        return !seekValues.isEmpty();
+    }
+
+    /**
+     * 从当前页的最后一行数据中读取排序字段值，作为获取下一页的依据。{@code lastRow} 可以是 JavaBean 或 Map，
+     * 对于 {@code user_name} 形式的排序字段，如果同名属性不存在，会再尝试读取 {@code userName} 属性。
+     *
+     * @param lastRow
+     *            当前页的最后一行数据
+     */
+    public void seekAfter(Object lastRow) {
+        if (lastRow == null) {
+            return;
+        }
+
+        List<Object> values = new ArrayList<>(sorts.size());
+        for (Pair<String, Boolean> sort : sorts) {
+            values.add(getRowValue(lastRow, sort.getLeft()));
+        }
+        seekValues = values;
+    }
+
+    /**
+     * 获取表示下一页位置的续页标记，可以传给客户端，在获取下一页时通过 {@link #setContinuationToken(String)} 设置回来。
+     *
+     * @return 续页标记，没有上一页最后一行的排序字段值时返回空串
+     */
+    public String getContinuationToken() {
+        if (seekValues.isEmpty()) {
+            return StringUtils.EMPTY;
+        }
+
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        StringBuilder sb = new StringBuilder();
+        for (Object value : seekValues) {
+            if (sb.length() > 0) {
+                sb.append('.');
+            }
+
+            char type = getTokenType(value);
+            sb.append(type);
+            if (value != null) {
+                String str = (value instanceof Date) ? String.valueOf(((Date) value).getTime()) : value.toString();
+                sb.append(encoder.encodeToString(str.getBytes(StandardCharsets.UTF_8)));
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 设置续页标记，同时启用 keyset 方式分页。标记为空时表示获取第一页。
+     *
+     * @param token
+     *            由 {@link #getContinuationToken()} 生成的续页标记
+     * @throws IllegalArgumentException
+     *             续页标记的格式不正确
+     */
+    public void setContinuationToken(String token) {
+        seekEnable = true;
+        if (StringUtils.isBlank(token)) {
+            seekValues = new ArrayList<>();
+            return;
+        }
+
+        Base64.Decoder decoder = Base64.getUrlDecoder();
+        List<Object> values = new ArrayList<>();
+        try {
+            for (String part : token.split("\\.")) {
+                char type = part.charAt(0);
+                String str = new String(decoder.decode(part.substring(1)), StandardCharsets.UTF_8);
+                values.add(parseTokenValue(type, str));
+            }
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid continuation token: " + token, e);
+        }
+        seekValues = values;
+    }
+
+    /**
+     * 按排序字段比较两行数据，可以用于合并多个数据源中各自排好序的结果。字段值的读取方式和 {@link #seekAfter(Object)} 一致，
+     * null 值小于其他值（和 MySQL 一致），不能比较的值按字符串比较。注意：字符串按 Java 的方式比较，可能和数据库的排序规则不同。
+     *
+     * @return 负数、0、正数分别表示 {@code row1} 排在 {@code row2} 之前、相同、之后
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public int compareRows(Object row1, Object row2) {
+        for (Pair<String, Boolean> sort : sorts) {
+            Object value1 = getRowValue(row1, sort.getLeft());
+            Object value2 = getRowValue(row2, sort.getLeft());
+
+            int result;
+            if (value1 == null || value2 == null) {
+                result = value1 == value2 ? 0 : value1 == null ? -1 : 1;
+            } else if (value1 instanceof Comparable && value1.getClass().isInstance(value2)) {
+                result = ((Comparable) value1).compareTo(value2);
+            } else {
+                result = value1.toString().compareTo(value2.toString());
+            }
+
+            if (result != 0) {
+                return Boolean.TRUE.equals(sort.getRight()) ? -result : result;
+            }
+        }
+        return 0;
     }
 
     /**
@@ -359,13 +719,98 @@ public class Pagination {
         return pageNum == pageCount;
     }
 
+    private static Object getRowValue(Object row, String field) {
+        if (row instanceof Map) {
+            return ((Map<?, ?>) row).get(field);
+        }
+
+        Object value = ObjectHelper.getPropertyValueQuietly(row, field);
+        if (value == null && field.indexOf('_') != -1) {
+            StringBuilder camelCase = new StringBuilder(field.length());
+            boolean upper = false;
+            for (char c : field.toLowerCase().toCharArray()) {
+                if (c == '_') {
+                    upper = true;
+                } else {
+                    camelCase.append(upper ? Character.toUpperCase(c) : c);
+                    upper = false;
+                }
+            }
+            value = ObjectHelper.getPropertyValueQuietly(row, camelCase.toString());
+        }
+        return value;
+    }
+
+    private static char getTokenType(Object value) {
+        if (value == null) {
+            return 'N';
+        } else if (value instanceof Integer) {
+            return 'I';
+        } else if (value instanceof Long) {
+            return 'L';
+        } else if (value instanceof Double || value instanceof Float) {
+            return 'D';
+        } else if (value instanceof BigDecimal) {
+            return 'B';
+        } else if (value instanceof Boolean) {
+            return 'Z';
+        } else if (value instanceof Date) {
+            return 'T';
+        } else if (OBJECT_ID_CLASS_NAME.equals(value.getClass().getName())) {
+            return 'O';
+        }
+        return 'S';
+    }
+
+    private static Object parseTokenValue(char type, String str) {
+        switch (type) {
+        case 'N':
+            return null;
+        case 'I':
+            return Integer.valueOf(str);
+        case 'L':
+            return Long.valueOf(str);
+        case 'D':
+            return Double.valueOf(str);
+        case 'B':
+            return new BigDecimal(str);
+        case 'Z':
+            return Boolean.valueOf(str);
+        case 'T':
+            return new Date(Long.parseLong(str));
+        case 'O':
+            return newObjectId(str);
+        case 'S':
+            return str;
+        default:
+            throw new IllegalArgumentException("Unknown value type: " + type);
+        }
+    }
+
+    private static Object newObjectId(String str) {
+        try {
+            return Class.forName(OBJECT_ID_CLASS_NAME).getConstructor(String.class).newInstance(str);
+        } catch (InvocationTargetException e) {
+            throw new IllegalArgumentException("Invalid ObjectId: " + str, e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Mongo driver is not available", e);
+        }
+    }
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder("Pagination(");
         sb.append("page: " + pageNum + "/" + pageCount);
         sb.append(", row: " + currentRowNum + "/" + rowCount);
         sb.append(", size: " + pageSize);
-        sb.append(", pageCountEnable: " + pageCountEnable + ")");
+        sb.append(", countMode: " + countMode);
+        if (!rowCountExact) {
+            sb.append(", rowCountExact: false");
+        }
+        if (seekEnable) {
+            sb.append(", seek: " + seekValues);
+        }
+        sb.append(")");
         return sb.toString();
     }
 
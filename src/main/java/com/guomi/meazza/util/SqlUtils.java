@@ -9,9 +9,16 @@ import java.io.Reader;
 import java.io.StreamTokenizer;
 import java.io.StringReader;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.function.IntUnaryOperator;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import org.apache.commons.lang3.tuple.Pair;
+
+import com.guomi.meazza.dao.SqlLexer;
+
 /**
  * 处理 SQL 语句的工具类。
  *
@@ -19,31 +26,306 @@ import java.util.regex.Pattern;
  */
 public abstract class SqlUtils {
 
+    /**
+     * IN 查询中最多的参数个数，Oracle 限制为 1000。
+     */
+    public static final int MAX_IN_SIZE = 1000;
+
+    // IN 查询的参数个数补齐到这几种固定的个数
+    private static final int[] IN_BUCKET_SIZES = { 1, 10, 50, 100, 500, MAX_IN_SIZE };
+
     private static final String SQL_COUNT_TEMPLATE = "SELECT COUNT(1) FROM (%s) AS tmp_count_result";
 
     private static final String SQL_SELECT_COUNT_PREFIX = "SELECT COUNT(1) FROM ";
 
-    private static final Pattern SQL_GROUP_BY_PATTERN = Pattern.compile(
-            "^.+( |\t|\r|\n)+group( |\t|\r|\n)+by( |\t|\r|\n)+.+$", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern SQL_TABLE_NAME_PATTERN = Pattern.compile("[\\w$#.\"\\[\\]`]+");
 
-    private static final Pattern SQL_UNION_PATTERN = Pattern.compile("^.+( |\t|\r|\n)+union( |\t|\r|\n)+.+$",
-            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
-
-    private static final Pattern SQL_FIRST_SELECT_PREFIX_PATTERN = Pattern.compile(
-            "^( |\t|\r|\n)*select( |\t|\r|\n)+.+?( |\t|\r|\n)+from( |\t|\r|\n)+", Pattern.CASE_INSENSITIVE
-                    | Pattern.DOTALL);
+    // 拼接到 SQL 中的排序字段名，只允许普通的标识符和用点号分隔的限定名
+    private static final Pattern SQL_SORT_FIELD_PATTERN = Pattern.compile(
+            "[A-Za-z_][A-Za-z0-9_]*(\\.[A-Za-z_][A-Za-z0-9_]*)*");
 
     /**
-     * 根据原始 SQL 生成 count SQL。
+     * 根据原始 SQL 生成 count SQL，最外层的 ORDER BY 子句会被去掉，避免数据库做不必要的排序。排序字段中带有 ? 占位符时
+     * ORDER BY 会保留，因为 count 查询和原 SQL 使用相同的参数。
+     *
+     * <p>
+     * 简单查询直接替换选择列表，带有 DISTINCT、GROUP BY、UNION 或限制行数子句的查询包装成子查询。字符串按标准 SQL 解析，
+     * 反斜杠不是转义字符。
      */
     public static String generateCountSql(String originSql) {
-        String countSql = null;
-        if (SQL_GROUP_BY_PATTERN.matcher(originSql).matches() || SQL_UNION_PATTERN.matcher(originSql).matches()) {
-            countSql = String.format(SQL_COUNT_TEMPLATE, originSql);
-        } else {
-            countSql = SQL_FIRST_SELECT_PREFIX_PATTERN.matcher(originSql).replaceFirst(SQL_SELECT_COUNT_PREFIX);
+        return generateCountSql(originSql, false);
+    }
+
+    /**
+     * 根据原始 SQL 生成 count SQL，参见 {@link #generateCountSql(String)}。
+     *
+     * @param backslashEscape
+     *            字符串中的反斜杠是否是转义字符，参见 {@link com.guomi.meazza.dao.Dialect#isBackslashEscape()}
+     */
+    public static String generateCountSql(String originSql, boolean backslashEscape) {
+        SqlLexer lexer = new SqlLexer(originSql, backslashEscape);
+        if (lexer.isSimpleSelect()) {
+            return SQL_SELECT_COUNT_PREFIX + lexer.getCountTables();
+        }
+        return String.format(SQL_COUNT_TEMPLATE, lexer.getCountBody());
+    }
+
+    /**
+     * 获取 SQL 查询中 from 之后的第一个表名，可以带有 schema 前缀，例如 {@code select * from db.user u where ...} 中的
+     * {@code db.user}。第一个表是子查询时返回 null。
+     */
+    public static String getTableName(String sql) {
+        SqlLexer lexer = new SqlLexer(sql);
+        if (!lexer.isSelect() || lexer.getTableIndex() == -1) {
+            return null;
+        }
+
+        Matcher matcher = SQL_TABLE_NAME_PATTERN.matcher(sql).region(lexer.getTableIndex(), sql.length());
+        return matcher.lookingAt() ? matcher.group() : null;
+    }
+
+    /**
+     * 根据原始 SQL 生成 keyset（seek）分页的 SQL，生成的 SQL 不包含 limit 部分。
+     *
+     * <p>
+     * 例如排序字段为 a asc, b desc 时，生成的 SQL 为：
+     *
+     * <pre>
+     * SELECT * FROM (原始 SQL) seek_result WHERE (a > ?) OR (a = ? AND b < ?) ORDER BY a, b DESC
+     * </pre>
+     *
+     * 其中参数的值通过 {@link #getSeekArgs(List)} 获取。原始 SQL 最外层的 ORDER BY 子句会被去掉，排序由外层查询指定：SQL Server
+     * 不允许派生表中带有 ORDER BY，MySQL 8.0.22 之前的版本会把带有 ORDER BY 的派生表物化。排序字段中带有 ? 占位符或者带有限制行数的子句时
+     * ORDER BY 会保留，否则之后的参数会错位。
+     *
+     * @param originSql
+     *            原始 SQL
+     * @param sorts
+     *            排序字段，排序字段名必须是原始 SQL 查询结果中的列名
+     * @param hasSeekValues
+     *            是否有上一页最后一行的排序字段值，没有时只生成排序部分
+     * @return keyset 分页的 SQL
+     * @throws IllegalArgumentException
+     *             没有排序字段，或者排序字段名不是合法的标识符。排序字段一般来自请求参数，会直接拼接到 SQL 中，所以必须检查
+     */
+    public static String generateSeekSql(String originSql, List<Pair<String, Boolean>> sorts, boolean hasSeekValues) {
+        return generateSeekSql(originSql, sorts, hasSeekValues, false);
+    }
+
+    /**
+     * 根据原始 SQL 生成 keyset 分页的 SQL，参见 {@link #generateSeekSql(String, List, boolean)}。
+     *
+     * @param backslashEscape
+     *            字符串中的反斜杠是否是转义字符，参见 {@link com.guomi.meazza.dao.Dialect#isBackslashEscape()}
+     */
+    public static String generateSeekSql(String originSql, List<Pair<String, Boolean>> sorts, boolean hasSeekValues,
+            boolean backslashEscape) {
+        if (sorts == null || sorts.isEmpty()) {
+            throw new IllegalArgumentException("Sorts must be specified for seek pagination");
+        }
+        for (Pair<String, Boolean> sort : sorts) {
+            if (sort.getLeft() == null || !SQL_SORT_FIELD_PATTERN.matcher(sort.getLeft()).matches()) {
+                throw new IllegalArgumentException("Invalid sort field: " + sort.getLeft());
+            }
+        }
+
+        SqlLexer lexer = new SqlLexer(originSql, backslashEscape);
+        String innerSql = lexer.isOrderByRemovable() ? lexer.removeOrderBy() : originSql;
+
+        StringBuilder sql = new StringBuilder(innerSql.length() + 64 + sorts.size() * 32);
+        sql.append("SELECT * FROM (").append(innerSql).append(") seek_result");
+
+        if (hasSeekValues) {
+            sql.append(" WHERE ");
+            for (int i = 0, n = sorts.size(); i < n; i++) {
+                if (i > 0) {
+                    sql.append(" OR ");
+                }
+
+                sql.append('(');
+                for (int j = 0; j < i; j++) {
+                    sql.append(sorts.get(j).getLeft()).append(" = ? AND ");
+                }
+                Pair<String, Boolean> sort = sorts.get(i);
+                sql.append(sort.getLeft()).append(sort.getRight() ? " < ?" : " > ?");
+                sql.append(')');
+            }
+        }
+
+        sql.append(" ORDER BY ");
+        for (int i = 0, n = sorts.size(); i < n; i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+
+            Pair<String, Boolean> sort = sorts.get(i);
+            sql.append(sort.getLeft());
+            if (sort.getRight()) {
+                sql.append(" DESC");
+            }
+        }
+        return sql.toString();
+    }
+
+    /**
+     * 获取 {@link #generateSeekSql(String, List, boolean)} 生成的 SQL 中的参数值。
+     *
+     * @param seekValues
+     *            上一页最后一行的排序字段值，顺序和排序字段一致
+     * @return 参数值数组，顺序和 SQL 中的占位符一致
+     * @throws IllegalArgumentException
+     *             排序字段值中有 null。和 null 比较的条件不会满足任何一行，分页会在这里意外结束
+     */
+    public static Object[] getSeekArgs(List<Object> seekValues) {
+        if (seekValues.contains(null)) {
+            throw new IllegalArgumentException("Seek values must not be null, sort fields of seek pagination "
+                    + "must be not null: " + seekValues);
+        }
+
+        int n = seekValues.size();
+        Object[] args = new Object[n * (n + 1) / 2];
+        int index = 0;
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j <= i; j++) {
+                args[index++] = seekValues.get(j);
+            }
+        }
+        return args;
+    }
+
+    /**
+     * 把 IN 查询的参数拆分成多组，每组不超过 {@link #MAX_IN_SIZE} 个，并用每组最后一个参数把该组补齐到 1、10、50、100、500、1000
+     * 这几种固定的个数之一。这样 IN 查询只有少数几种形式，可以利用数据库和 JDBC 驱动的语句缓存，重复的参数不影响 IN 查询的结果。
+     *
+     * @param args
+     *            IN 查询的参数
+     * @return 拆分并补齐后的参数，参数为空时返回空列表
+     */
+    public static <T> List<T[]> partitionInArgs(T[] args) {
+        if (args == null || args.length == 0) {
+            return new ArrayList<>(0);
+        }
+
+        List<T[]> chunks = new ArrayList<>((args.length + MAX_IN_SIZE - 1) / MAX_IN_SIZE);
+        for (int from = 0; from < args.length; from += MAX_IN_SIZE) {
+            int size = Math.min(MAX_IN_SIZE, args.length - from);
+            int bucketSize = getInBucketSize(size);
+            T[] chunk = Arrays.copyOfRange(args, from, from + bucketSize);
+            Arrays.fill(chunk, size, bucketSize, chunk[size - 1]);
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
+    /**
+     * 生成多行插入语句中 VALUES 之后的部分，例如 2 列 2 行时为 {@code (?, ?), (?, ?)}。
+     *
+     * @param columnCount
+     *            每行的列数
+     * @param rows
+     *            行数
+     */
+    public static String getRowValuesSql(int columnCount, int rows) {
+        String row = getRowValuesSql(columnCount);
+        StringBuilder sql = new StringBuilder((row.length() + 2) * rows);
+        for (int i = 0; i < rows; i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append(row);
+        }
+        return sql.toString();
+    }
+
+    /**
+     * 生成一行的参数占位符，例如 2 列时为 {@code (?, ?)}。
+     */
+    public static String getRowValuesSql(int columnCount) {
+        StringBuilder sql = new StringBuilder(columnCount * 3 + 1);
+        sql.append('(');
+        for (int i = 0; i < columnCount; i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        return sql.append(')').toString();
+    }
+
+    /**
+     * 生成 MERGE 语句中 USING 子句之后的部分，目标表的别名为 target，数据源的别名为 source。记录已存在时更新 {@code keyColumns} 以外的列，
+     * 只有 {@code keyColumns} 时不更新。
+     *
+     * @param columns
+     *            列名，包含 {@code keyColumns}
+     * @param keyColumns
+     *            判断记录是否已存在的列
+     * @return 例如 {@code ON (target.id = source.id) WHEN MATCHED THEN UPDATE SET target.name = source.name
+     *         WHEN NOT MATCHED THEN INSERT (id, name) VALUES (source.id, source.name)}
+     */
+    public static String getMergeClauses(String[] columns, String[] keyColumns) {
+        if (keyColumns == null || keyColumns.length == 0) {
+            throw new IllegalArgumentException("keyColumns must not be empty");
+        }
+
+        StringBuilder sql = new StringBuilder("ON (");
+        for (int i = 0; i < keyColumns.length; i++) {
+            if (i > 0) {
+                sql.append(" AND ");
+            }
+            sql.append("target.").append(keyColumns[i]).append(" = source.").append(keyColumns[i]);
+        }
+        sql.append(")");
+
+        StringBuilder updates = new StringBuilder();
+        StringBuilder values = new StringBuilder();
+        for (String column : columns) {
+            if (values.length() > 0) {
+                values.append(", ");
+            }
+            values.append("source.").append(column);
+
+            if (!ArrayUtils.contains(keyColumns, column)) {
+                updates.append(updates.length() == 0 ? "" : ", ");
+                updates.append("target.").append(column).append(" = source.").append(column);
+            }
+        }
+
+        if (updates.length() > 0) {
+            sql.append(" WHEN MATCHED THEN UPDATE SET ").append(updates);
+        }
+        sql.append(" WHEN NOT MATCHED THEN INSERT (").append(StringUtils.join(columns, ", ")).append(") VALUES (")
+                .append(values).append(")");
+        return sql.toString();
+    }
+
+    /**
+     * 检查多行插入语句的参数，不合法时抛出 {@code IllegalArgumentException}。
+     *
+     * @param columns
+     *            列名
+     * @param rows
+     *            行数
+     * @param maxRows
+     *            根据列数计算最多的行数，列名合法时才调用，例如 {@code dialect::getMaxInsertRows}
+     */
+    public static void checkInsertRows(String[] columns, int rows, IntUnaryOperator maxRows) {
+        if (columns == null || columns.length == 0) {
+            throw new IllegalArgumentException("columns must not be empty");
+        }
+        int max = maxRows.applyAsInt(columns.length);
+        if (rows <= 0 || rows > max) {
+            throw new IllegalArgumentException("rows must be between 1 and " + max + ", but was " + rows);
+        }
+    }
+
+    /**
+     * 获取一组不超过 {@link #MAX_IN_SIZE} 个的 IN 查询参数补齐后的个数，参见 {@link #partitionInArgs(Object[])}。
+     */
+    public static int getInBucketSize(int size) {
+        for (int bucketSize : IN_BUCKET_SIZES) {
+            if (size <= bucketSize) {
+                return bucketSize;
+            }
         }
-        return countSql;
+        return size;
     }
 
     /**
@@ -0,0 +1,58 @@
+/*
+ * @(#)DefaultRowCountCacheTest.java    Created on 2026-10-18
+ * Copyright (c) 2026 Guomi. All rights reserved.
+ */
+package com.guomi.meazza.dao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * @author akuma
+ */
+public class DefaultRowCountCacheTest {
+
+    @Test
+    public void testEvict() {
+        RowCountCache cache = new DefaultRowCountCache();
+        cache.put("user", "select count(1) from user[1]", 100);
+        cache.put("role", "select count(1) from role[]", 5);
+
+        assertEquals(Integer.valueOf(100), cache.get("user", "select count(1) from user[1]"));
+        assertNull(cache.get("user", "select count(1) from user[2]"));
+
+        cache.evict("user");
+        assertNull(cache.get("user", "select count(1) from user[1]"));
+        assertEquals(Integer.valueOf(5), cache.get("role", "select count(1) from role[]"));
+
+        cache.put("user", "select count(1) from user[1]", 101);
+        assertEquals(Integer.valueOf(101), cache.get("user", "select count(1) from user[1]"));
+    }
+
+    @Test
+    public void testEvictDuringCount() {
+        RowCountCache cache = new DefaultRowCountCache();
+        long version = cache.getVersion("user");
+
+        // count 查询期间数据被修改，查询结果不缓存
+        cache.evict("user");
+        cache.put("user", "count", 100, version);
+        assertNull(cache.get("user", "count"));
+
+        cache.put("user", "count", 99, cache.getVersion("user"));
+        assertEquals(Integer.valueOf(99), cache.get("user", "count"));
+    }
+
+    @Test
+    public void testExpire() throws InterruptedException {
+        RowCountCache cache = new DefaultRowCountCache(10, 10, TimeUnit.MILLISECONDS);
+        cache.put("user", "count", 100);
+        Thread.sleep(30);
+        assertNull(cache.get("user", "count"));
+    }
+
+}
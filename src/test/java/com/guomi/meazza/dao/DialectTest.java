@@ -0,0 +1,185 @@
+/*
+ * @(#)DialectTest.java    Created on 2026-10-18
+ * Copyright (c) 2026 Guomi. All rights reserved.
+ */
+package com.guomi.meazza.dao;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+/**
+ * @author akuma
+ */
+public class DialectTest {
+
+    @Test
+    public void testMySqlLimitSql() {
+        Dialect dialect = new MySqlDialect();
+        assertEquals("select * from t where a = ? limit ?, ?", dialect.getLimitSql("select * from t where a = ?", true));
+        assertArrayEquals(new Object[] { 20, 10 }, dialect.getLimitArgs(20, 10));
+    }
+
+    @Test
+    public void testMySqlCappedCountSql() {
+        Dialect dialect = new MySqlDialect();
+        assertEquals("SELECT COUNT(1) FROM (select * from t where a = ? limit 0, 101) AS tmp_count_result",
+                dialect.getCappedCountSql("select * from t where a = ? order by b", 101));
+        assertEquals("SELECT COUNT(1) FROM (select * from t order by field(a, ?) limit 0, 101) AS tmp_count_result",
+                dialect.getCappedCountSql("select * from t order by field(a, ?)", 101));
+
+        // 原 SQL 已经带有 LIMIT 时包装成子查询，不会出现两个 LIMIT
+        assertEquals("SELECT COUNT(1) FROM (SELECT 1 FROM (select * from t order by b limit 50) "
+                + "AS tmp_capped_result LIMIT 101) AS tmp_count_result",
+                dialect.getCappedCountSql("select * from t order by b limit 50", 101));
+
+        // MySQL 字符串中的反斜杠是转义字符，\' 不是字符串的结束
+        assertTrue(dialect.isBackslashEscape());
+        assertEquals("SELECT COUNT(1) FROM (select * from t where a = 'x\\' order by b' limit 0, 101) "
+                + "AS tmp_count_result", dialect.getCappedCountSql("select * from t where a = 'x\\' order by b' "
+                        + "order by b", 101));
+    }
+
+    @Test
+    public void testOracleLimitSql() {
+        Dialect dialect = new OracleDialect();
+        String sql = "select * from t where a = ? for update";
+        assertEquals("select * from (select row_.*, rownum rownum_ from (select * from t where a = ?) row_ "
+                + "where rownum <= ?) where rownum_ > ? for update", dialect.getLimitSql(sql, true));
+        assertArrayEquals(new Object[] { 30, 20 }, dialect.getLimitArgs(20, 10));
+        assertEquals("select * from (select * from t where a = ?) where rownum <= ? for update",
+                dialect.getLimitSql(sql, false));
+        assertArrayEquals(new Object[] { 10 }, dialect.getLimitArgs(0, 10));
+
+        assertEquals("select * from (select row_.*, rownum rownum_ from (select * from t) row_ "
+                + "where rownum <= 30) where rownum_ > 20", dialect.getLimitSql("select * from t", 20, 10));
+    }
+
+    @Test
+    public void testSqlServerLimitSql() {
+        Dialect dialect = new SqlServerDialect();
+        String sql = "select u.id, u.name from users u where u.age > ? order by u.name desc";
+        assertEquals("select row_.* from (select row_number() over(order by name desc) rownum, t.* from ("
+                + "select u.id, u.name from users u where u.age > ?) t) row_ where row_.rownum between ? and ?",
+                dialect.getLimitSql(sql, true));
+        assertArrayEquals(new Object[] { 21, 30 }, dialect.getLimitArgs(20, 10));
+
+        assertEquals("select row_.* from (select row_number() over(order by id) rownum, t.* from ("
+                + "select * from users) t) row_ where row_.rownum between 21 and 30",
+                dialect.getLimitSql("select * from users", 20, 10));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSqlServerLimitSqlWithOrderByParameter() {
+        // 排序字段中的占位符移到 row_number() over 中会排在 where 的占位符之前
+        new SqlServerDialect().getLimitSql("select * from users where age > ? order by case when id = ? then 0 end",
+                true);
+    }
+
+    @Test
+    public void testMultiRowInsertSql() {
+        String[] columns = { "id", "name" };
+        assertEquals("INSERT INTO t (id, name) VALUES (?, ?), (?, ?)",
+                new MySqlDialect().getMultiRowInsertSql("t", columns, 2));
+        assertEquals("INSERT INTO t (id, name) VALUES (?, ?), (?, ?)",
+                new SqlServerDialect().getMultiRowInsertSql("t", columns, 2));
+        assertEquals("INSERT ALL INTO t (id, name) VALUES (?, ?) INTO t (id, name) VALUES (?, ?) SELECT 1 FROM DUAL",
+                new OracleDialect().getMultiRowInsertSql("t", columns, 2));
+
+        assertEquals(32767, new MySqlDialect().getMaxInsertRows(2));
+        assertEquals(1000, new SqlServerDialect().getMaxInsertRows(2));
+        assertEquals(209, new SqlServerDialect().getMaxInsertRows(10));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMultiRowInsertTooManyRows() {
+        new SqlServerDialect().getMultiRowInsertSql("t", new String[] { "id", "name" }, 1001);
+    }
+
+    @Test
+    public void testMultiRowInsertWithoutColumns() {
+        // 先检查列名，不会因为按列数计算最多的行数而抛出其他异常
+        for (Dialect dialect : new Dialect[] { new MySqlDialect(), new SqlServerDialect(), new OracleDialect() }) {
+            for (String[] columns : new String[][] { new String[0], null }) {
+                assertInvalidColumns(() -> dialect.getMultiRowInsertSql("t", columns, 1));
+                assertInvalidColumns(() -> dialect.getUpsertSql("t", columns, new String[] { "id" }, 1));
+            }
+        }
+    }
+
+    @Test
+    public void testUpsertSql() {
+        String[] columns = { "id", "name", "age" };
+        String[] keys = { "id" };
+        assertEquals("INSERT INTO t (id, name, age) VALUES (?, ?, ?), (?, ?, ?) "
+                + "ON DUPLICATE KEY UPDATE name = VALUES(name), age = VALUES(age)",
+                new MySqlDialect().getUpsertSql("t", columns, keys, 2));
+
+        String merge = "ON (target.id = source.id) WHEN MATCHED THEN UPDATE SET target.name = source.name, "
+                + "target.age = source.age WHEN NOT MATCHED THEN INSERT (id, name, age) "
+                + "VALUES (source.id, source.name, source.age)";
+        assertEquals("MERGE INTO t AS target USING (VALUES (?, ?, ?), (?, ?, ?)) AS source (id, name, age) " + merge
+                + ";", new SqlServerDialect().getUpsertSql("t", columns, keys, 2));
+        assertEquals("MERGE INTO t target USING (SELECT ? id, ? name, ? age FROM DUAL UNION ALL "
+                + "SELECT ?, ?, ? FROM DUAL) source " + merge, new OracleDialect().getUpsertSql("t", columns, keys, 2));
+
+        assertEquals("INSERT INTO t (id) VALUES (?) ON DUPLICATE KEY UPDATE id = id",
+                new MySqlDialect().getUpsertSql("t", new String[] { "id" }, keys, 1));
+    }
+
+    @Test
+    public void testDefaultMethods() {
+        Dialect dialect = new Dialect() {
+
+            @Override
+            public boolean supportsLimit() {
+                return false;
+            }
+
+            @Override
+            public String getLimitSql(String sql, int offset, int limit) {
+                return sql;
+            }
+
+            @Override
+            public String getLimitSql(String sql, int offset, int limit, String orderBy) {
+                return sql;
+            }
+
+        };
+
+        assertEquals("SELECT COUNT(1) FROM t where a = ?", dialect.getCappedCountSql("select * from t where a = ?",
+                101));
+        assertNull(dialect.getEstimatedCountSql("select * from t"));
+        assertFalse(dialect.isEstimatedCountParameterized());
+        assertFalse(dialect.isBackslashEscape());
+        assertNull(dialect.getLimitSql("select * from t", true));
+        assertEquals(0, dialect.getLimitArgs(20, 10).length);
+
+        assertEquals(0, dialect.getStreamingFetchSize());
+        assertEquals(1, dialect.getMaxInsertRows(2));
+        assertEquals("INSERT INTO t (id, name) VALUES (?, ?)", dialect.getMultiRowInsertSql("t", new String[] { "id",
+                "name" }, 1));
+        try {
+            dialect.getUpsertSql("t", new String[] { "id", "name" }, new String[] { "id" }, 1);
+            fail();
+        } catch (UnsupportedOperationException e) {
+            // 默认不支持插入或更新
+        }
+    }
+
+    private static void assertInvalidColumns(Runnable action) {
+        try {
+            action.run();
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals("columns must not be empty", e.getMessage());
+        }
+    }
+
+}
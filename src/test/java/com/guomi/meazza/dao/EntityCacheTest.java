@@ -0,0 +1,93 @@
+/*
+ * @(#)EntityCacheTest.java    Created on 2026-10-18
+ * Copyright (c) 2026 Guomi. All rights reserved.
+ */
+package com.guomi.meazza.dao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * @author akuma
+ */
+public class EntityCacheTest {
+
+    @Test
+    public void testGet() {
+        EntityCache<Long, String> cache = new EntityCache<>();
+        AtomicInteger loads = new AtomicInteger();
+
+        assertEquals("user1", cache.get(1L, id -> "user" + loads.incrementAndGet()));
+        assertEquals("user1", cache.get(1L, id -> "user" + loads.incrementAndGet()));
+        assertNull(cache.get(2L, id -> {
+            loads.incrementAndGet();
+            return null;
+        }));
+        assertNull(cache.get(2L, id -> "user" + loads.incrementAndGet()));
+
+        assertEquals(2, loads.get());
+        assertEquals(2, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(0.5, cache.getHitRate(), 0.0001);
+
+        cache.evict(1L);
+        assertEquals("user3", cache.get(1L, id -> "user" + loads.incrementAndGet()));
+    }
+
+    @Test
+    public void testGetAll() {
+        EntityCache<Long, String> cache = new EntityCache<>();
+        cache.get(2L, id -> "cached2");
+
+        List<List<Long>> loadedKeys = new ArrayList<>();
+        Map<Long, String> values = cache.getAll(Arrays.asList(3L, 2L, 1L), keys -> {
+            loadedKeys.add(keys);
+            Map<Long, String> map = new HashMap<>();
+            map.put(1L, "user1");
+            return map;
+        });
+
+        assertEquals(Arrays.asList(Arrays.asList(3L, 1L)), loadedKeys);
+        assertEquals(Arrays.asList(2L, 1L), new ArrayList<>(values.keySet()));
+        assertEquals("cached2", values.get(2L));
+
+        // 不存在的 3 已被缓存，不会再次加载
+        values = cache.getAll(Arrays.asList(1L, 3L), keys -> {
+            throw new AssertionError("should not load " + keys);
+        });
+        assertEquals(1, values.size());
+        assertEquals("user1", values.get(1L));
+    }
+
+    @Test
+    public void testEvictDuringLoad() {
+        EntityCache<Long, String> cache = new EntityCache<>();
+        cache.get(1L, id -> {
+            cache.evict(id);
+            return "stale";
+        });
+        assertEquals("fresh", cache.get(1L, id -> "fresh"));
+    }
+
+    @Test
+    public void testExpire() throws InterruptedException {
+        EntityCache<Long, String> cache = new EntityCache<>(10, 10, 0, TimeUnit.MILLISECONDS);
+        cache.get(1L, id -> "user1");
+        cache.get(2L, id -> null);
+        assertEquals(1, cache.size());
+
+        Thread.sleep(30);
+        assertEquals("user1-reloaded", cache.get(1L, id -> "user1-reloaded"));
+    }
+
+}
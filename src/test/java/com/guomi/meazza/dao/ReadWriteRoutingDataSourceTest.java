@@ -0,0 +1,160 @@
+/*
+ * @(#)ReadWriteRoutingDataSourceTest.java    Created on 2026-10-18
+ * Copyright (c) 2026 Guomi. All rights reserved.
+ */
+package com.guomi.meazza.dao;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+
+import javax.sql.DataSource;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * @author akuma
+ */
+public class ReadWriteRoutingDataSourceTest {
+
+    @After
+    public void tearDown() {
+        ReadWriteContext.clear();
+    }
+
+    @Test
+    public void testRouting() throws Exception {
+        ReadWriteRoutingDataSource dataSource = new ReadWriteRoutingDataSource(newDataSource("primary"),
+                Arrays.asList(newDataSource("replica1"), newDataSource("replica2")));
+        dataSource.setStrategy(ReadWriteRoutingDataSource.Strategy.ROUND_ROBIN);
+
+        assertEquals("primary", getName(dataSource.getConnection()));
+        assertEquals("replica1", readConnection(dataSource));
+        assertEquals("replica2", readConnection(dataSource));
+
+        // 写入之后的一段时间内读取主库
+        ReadWriteContext.markWrite();
+        assertEquals("primary", readConnection(dataSource));
+
+        dataSource.setReadYourWritesWindow(0);
+        assertEquals("replica1", readConnection(dataSource));
+    }
+
+    @Test
+    public void testLeastActive() throws Exception {
+        ReadWriteRoutingDataSource dataSource = new ReadWriteRoutingDataSource(newDataSource("primary"),
+                Arrays.asList(newDataSource("replica1"), newDataSource("replica2")));
+
+        Connection first = ReadWriteContext.read(() -> getConnection(dataSource));
+        Connection second = ReadWriteContext.read(() -> getConnection(dataSource));
+        Connection third = ReadWriteContext.read(() -> getConnection(dataSource));
+        assertArrayEquals(new int[] { 2, 1 }, dataSource.getReplicaActiveCounts());
+        assertEquals(getName(first), getName(third));
+
+        first.close();
+        first.close();
+        second.close();
+        assertArrayEquals(new int[] { 1, 0 }, dataSource.getReplicaActiveCounts());
+        assertEquals("replica2", readConnection(dataSource));
+    }
+
+    @Test
+    public void testWrap() throws Exception {
+        ReadWriteRoutingDataSource dataSource = new ReadWriteRoutingDataSource(newDataSource("primary"),
+                Arrays.asList(newDataSource("replica")));
+
+        Callable<String> task = ReadWriteContext.read(() -> ReadWriteContext.wrap(() -> getName(dataSource
+                .getConnection())));
+        assertEquals("replica", task.call());
+        assertEquals("primary", getName(dataSource.getConnection()));
+    }
+
+    @Test
+    public void testReadOnlyTransaction() throws Exception {
+        ReadWriteRoutingDataSource dataSource = new ReadWriteRoutingDataSource(newDataSource("primary"),
+                Arrays.asList(newDataSource("replica")));
+        LazyConnectionDataSourceProxy lazyDataSource = new LazyConnectionDataSourceProxy();
+        lazyDataSource.setTargetDataSource(dataSource);
+        lazyDataSource.setDefaultAutoCommit(true);
+        lazyDataSource.setDefaultTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+        lazyDataSource.afterPropertiesSet();
+        TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(
+                lazyDataSource));
+
+        // 只读事务中不需要 ReadWriteContext.read 也使用只读库
+        transactionTemplate.setReadOnly(true);
+        assertEquals("replica", transactionTemplate.execute(status -> getName(DataSourceUtils.getConnection(
+                lazyDataSource))));
+
+        // 读写事务中即使以只读方式执行也使用主库
+        transactionTemplate.setReadOnly(false);
+        assertEquals("primary", transactionTemplate.execute(status -> readConnection(lazyDataSource)));
+    }
+
+    @Test
+    public void testSynchronizationScope() throws Exception {
+        ReadWriteRoutingDataSource dataSource = new ReadWriteRoutingDataSource(newDataSource("primary"),
+                Arrays.asList(newDataSource("replica")));
+        TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(
+                dataSource));
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_SUPPORTS);
+
+        // 没有实际事务的同步范围内，先读取获得的连接会被之后的写入复用，所以只读方式也使用主库
+        assertEquals("primary", transactionTemplate.execute(status -> {
+            String name = ReadWriteContext.read(() -> getName(DataSourceUtils.getConnection(dataSource)));
+            assertEquals(name, getName(DataSourceUtils.getConnection(dataSource)));
+            return name;
+        }));
+        assertEquals("replica", readConnection(dataSource));
+    }
+
+    private static String readConnection(DataSource dataSource) {
+        return ReadWriteContext.read(() -> getName(getConnection(dataSource)));
+    }
+
+    private static Connection getConnection(DataSource dataSource) {
+        try {
+            return dataSource.getConnection();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String getName(Connection connection) {
+        try {
+            return connection.getCatalog();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static DataSource newDataSource(String name) {
+        Connection connection = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[] { Connection.class }, (proxy, method, args) -> {
+                    if ("getCatalog".equals(method.getName())) {
+                        return name;
+                    } else if (method.getReturnType() == boolean.class) {
+                        return false;
+                    } else if (method.getReturnType() == int.class) {
+                        return 0;
+                    }
+                    return null;
+                });
+        return (DataSource) Proxy.newProxyInstance(DataSource.class.getClassLoader(),
+                new Class<?>[] { DataSource.class }, (proxy, method, args) -> {
+                    return "getConnection".equals(method.getName()) ? connection : null;
+                });
+    }
+
+}
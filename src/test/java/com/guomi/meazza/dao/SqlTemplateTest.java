@@ -0,0 +1,87 @@
+/*
+ * @(#)SqlTemplateTest.java    Created on 2026-10-18
+ * Copyright (c) 2026 Guomi. All rights reserved.
+ */
+package com.guomi.meazza.dao;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * @author akuma
+ */
+public class SqlTemplateTest {
+
+    private static final SqlTemplate USER_QUERY = SqlTemplate.builder("select * from user where")
+            .and("name = ?", Types.VARCHAR).and("age > ?", Types.INTEGER).andIn("dept_id", Types.BIGINT)
+            .and("deleted = 0").orderBy("id").build();
+
+    @Test
+    public void testBind() {
+        for (Object[] values : new Object[][] { { null, null, null, null }, { "akuma", null, null, null },
+                { null, 18, new Long[] { 1L, 2L }, true }, { "akuma", 18, Arrays.asList(1L), false } }) {
+            SqlCreator creator = new SqlCreator("select * from user where");
+            creator.and("name = ?", values[0], Types.VARCHAR, values[0] != null);
+            creator.and("age > ?", values[1], Types.INTEGER, values[1] != null);
+            Object[] deptIds = values[2] instanceof List ? ((List<?>) values[2]).toArray()
+                    : (Object[]) values[2];
+            creator.andIn("dept_id", deptIds, Types.BIGINT, deptIds != null);
+            creator.and("deleted = 0", Boolean.TRUE.equals(values[3]));
+            creator.orderBy("id");
+
+            SqlTemplate.Query query = USER_QUERY.bind(values);
+            assertEquals(creator.getSQL(), query.getSQL());
+            assertArrayEquals(creator.getArgs(), query.getArgs());
+            assertArrayEquals(creator.getArgTypes(), query.getArgTypes());
+        }
+
+        assertSame(USER_QUERY.bind("a", null, null, null).getSQL(), USER_QUERY.bind("b", null, null, null).getSQL());
+    }
+
+    @Test
+    public void testBindLargeIn() {
+        Long[] ids = new Long[1203];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = (long) i;
+        }
+
+        SqlCreator creator = new SqlCreator("select * from user", false);
+        creator.andIn("id", ids, Types.BIGINT, true);
+
+        SqlTemplate template = SqlTemplate.builder("select * from user", false).andIn("id", Types.BIGINT).build();
+        SqlTemplate.Query query = template.bind((Object) ids);
+        assertEquals(creator.getSQL(), query.getSQL());
+        assertEquals(1500, query.getArgs().length);
+        assertArrayEquals(creator.getArgs(), query.getArgs());
+    }
+
+    @Test
+    public void testLazyVariants() {
+        SqlTemplate.Builder builder = SqlTemplate.builder("select * from user", false);
+        for (int i = 0; i <= SqlTemplate.EAGER_PREDICATES; i++) {
+            builder.or("c" + i + " = ?", Types.INTEGER);
+        }
+        SqlTemplate template = builder.build();
+
+        Object[] values = new Object[template.getPredicateCount()];
+        values[1] = 1;
+        values[3] = 3;
+        SqlTemplate.Query query = template.bind(values);
+        assertEquals("select * from user WHERE c1 = ? OR c3 = ?", query.getSQL());
+        assertArrayEquals(new Object[] { 1, 3 }, query.getArgs());
+        assertSame(query.getSQL(), template.bind(values).getSQL());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBindWrongValueCount() {
+        USER_QUERY.bind("akuma");
+    }
+
+}
@@ -0,0 +1,92 @@
+/*
+ * @(#)AsyncMongoServiceTest.java    Created on 2026-10-18
+ * Copyright (c) 2026 Guomi. All rights reserved.
+ */
+package com.guomi.meazza.mongo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.mongodb.core.query.Query;
+
+/**
+ * @author akuma
+ */
+public class AsyncMongoServiceTest {
+
+    private CountDownLatch started;
+    private AsyncMongoService asyncService;
+
+    @Before
+    public void setUp() {
+        started = new CountDownLatch(2);
+        asyncService = new AsyncMongoService(new BasicMongoService() {
+
+            @Override
+            public <T> T findById(Object id, Class<T> entityClass, String collectionName) {
+                awaitOthers();
+                return entityClass.cast(id + "@" + Thread.currentThread().getName());
+            }
+
+            @Override
+            public long count(Query query, String collectionName) {
+                awaitOthers();
+                if ("missing".equals(collectionName)) {
+                    throw new IllegalStateException("collection not found");
+                }
+                return 42;
+            }
+
+        }, 2);
+    }
+
+    @After
+    public void tearDown() {
+        asyncService.destroy();
+    }
+
+    @Test
+    public void testParallel() {
+        // 两个操作互相等待对方开始，只有并发执行才能完成
+        CompletableFuture<String> user = asyncService.findById("u1", String.class, "users");
+        CompletableFuture<Long> count = asyncService.count(new Query(), "posts");
+
+        assertTrue(user.join().startsWith("u1@async-mongo-"));
+        assertEquals(42L, count.join().longValue());
+    }
+
+    @Test
+    public void testException() {
+        CompletableFuture<String> user = asyncService.findById("u1", String.class, "users");
+        CompletableFuture<Long> count = asyncService.count(new Query(), "missing");
+        try {
+            count.join();
+            fail();
+        } catch (CompletionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        assertTrue(user.join().startsWith("u1@"));
+    }
+
+    private void awaitOthers() {
+        started.countDown();
+        try {
+            if (!started.await(5, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("operations are not running concurrently");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
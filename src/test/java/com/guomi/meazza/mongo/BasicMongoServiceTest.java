@@ -0,0 +1,437 @@
+/*
+ * @(#)BasicMongoServiceTest.java    Created on 2026-10-18
+ * Copyright (c) 2026 Guomi. All rights reserved.
+ */
+package com.guomi.meazza.mongo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.mongodb.core.CollectionCallback;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.convert.DbRefResolver;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.QueryMapper;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import com.guomi.meazza.util.Pagination;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+
+/**
+ * @author akuma
+ */
+public class BasicMongoServiceTest {
+
+    private ExecutorService executor;
+    private BasicMongoService service;
+    private List<Integer> skips;
+    private CountDownLatch findStarted;
+    private long rowCount;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(2);
+        skips = Collections.synchronizedList(new ArrayList<>());
+        findStarted = new CountDownLatch(1);
+
+        service = new BasicMongoService() {
+        };
+        service.mongoOps = (MongoOperations) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { MongoOperations.class }, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                    case "count":
+                        // 分页查询开始后 count 查询才返回，验证两者是并发执行的
+                        assertTrue(findStarted.await(5, TimeUnit.SECONDS));
+                        Query countQuery = (Query) args[0];
+                        assertEquals(0, countQuery.getSkip());
+                        assertEquals("{ \"status\" : 1}", countQuery.getQueryObject().toString());
+                        return rowCount;
+                    case "find":
+                        Query query = (Query) args[0];
+                        assertEquals("{ \"status\" : 1}", query.getQueryObject().toString());
+                        skips.add(query.getSkip());
+                        findStarted.countDown();
+                        List<String> rows = new ArrayList<>();
+                        for (int i = query.getSkip(); i < Math.min(rowCount, query.getSkip() + query.getLimit()); i++) {
+                            rows.add("row" + i);
+                        }
+                        return rows;
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+        service.setCountExecutor(executor);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testConcurrentCount() {
+        rowCount = 23;
+        Query query = Query.query(Criteria.where("status").is(1));
+        Pagination page = new Pagination(2, 10, true);
+
+        List<String> rows = service.find(query, page, String.class, "items");
+        assertEquals(Collections.singletonList(10), skips);
+        assertEquals(10, rows.size());
+        assertEquals("row10", rows.get(0));
+        assertEquals(23, page.getRowCount().intValue());
+        assertEquals(3, page.getPageCount().intValue());
+        assertEquals(0, query.getSkip());
+    }
+
+    @Test
+    public void testPageOutOfRange() {
+        rowCount = 23;
+        Pagination page = new Pagination(5, 10, true);
+
+        List<String> rows = service.find(Query.query(Criteria.where("status").is(1)), page, String.class, "items");
+        assertEquals(2, skips.size());
+        assertEquals(40, skips.get(0).intValue());
+        assertEquals(20, skips.get(1).intValue());
+        assertEquals(3, rows.size());
+        assertEquals(3, page.getPageNum().intValue());
+    }
+
+    @Test
+    public void testEmpty() {
+        rowCount = 0;
+        Pagination page = new Pagination(3, 10, true);
+
+        List<String> rows = service.find(Query.query(Criteria.where("status").is(1)), page, String.class, "items");
+        assertEquals(1, skips.size());
+        assertTrue(rows.isEmpty());
+        assertEquals(0, page.getPageNum().intValue());
+    }
+
+    @Test
+    public void testForEachParallel() {
+        FakeMongoCollection collection = new FakeMongoCollection(newItemDocuments(10));
+        BasicMongoService service = newCursorService(collection);
+
+        Queue<Integer> ids = new ConcurrentLinkedQueue<>();
+        service.forEachParallel(Query.query(Criteria.where("status").is(1)), Item.class, "items", 3,
+                item -> ids.add(item.getId()));
+        List<Integer> sortedIds = new ArrayList<>(ids);
+        Collections.sort(sortedIds);
+        assertEquals(Arrays.asList(1, 3, 5, 7, 9), sortedIds);
+        assertEquals(0, collection.getOpenCursors());
+
+        // 从上一个边界开始在 _id 上跳过 10 / 3 个文档得到分区边界 3 和 6
+        List<FakeMongoCollection.Find> finds = collection.getFinds();
+        assertEquals(5, finds.size());
+        assertEquals("{ }", finds.get(0).query.toString());
+        assertEquals(3, finds.get(0).skip);
+        assertEquals(1, finds.get(0).limit);
+        assertEquals("{ \"_id\" : { \"$gte\" : 3}}", finds.get(1).query.toString());
+        assertEquals(3, finds.get(1).skip);
+
+        List<String> partitions = new ArrayList<>();
+        for (FakeMongoCollection.Find find : finds.subList(2, 5)) {
+            partitions.add(find.query.toString());
+        }
+        Collections.sort(partitions);
+        assertEquals(Arrays.asList(
+                "{ \"$and\" : [ { \"status\" : 1} , { \"_id\" : { \"$gte\" : 3 , \"$lt\" : 6}}]}",
+                "{ \"$and\" : [ { \"status\" : 1} , { \"_id\" : { \"$gte\" : 6}}]}",
+                "{ \"$and\" : [ { \"status\" : 1} , { \"_id\" : { \"$lt\" : 3}}]}"), partitions);
+    }
+
+    @Test
+    public void testForEachParallelSmallCollection() {
+        FakeMongoCollection collection = new FakeMongoCollection(newItemDocuments(2));
+        BasicMongoService service = newCursorService(collection);
+
+        // 文档数少于分区数时不拆分，只使用一个游标
+        List<Integer> ids = Collections.synchronizedList(new ArrayList<>());
+        service.forEachParallel(new Query(), Item.class, "items", 4, item -> ids.add(item.getId()));
+        assertEquals(2, ids.size());
+        assertEquals(1, collection.getFinds().size());
+        assertEquals("{ }", collection.getFinds().get(0).query.toString());
+    }
+
+    @Test
+    public void testForEachParallelFailure() {
+        FakeMongoCollection collection = new FakeMongoCollection(newItemDocuments(10));
+        BasicMongoService service = newCursorService(collection);
+
+        // 处理失败时抛出原来的异常，所有游标都已关闭
+        IllegalStateException failure = new IllegalStateException("failed");
+        try {
+            service.forEachParallel(new Query(), Item.class, "items", 2, item -> {
+                if (item.getId() == 7) {
+                    throw failure;
+                }
+            });
+            fail();
+        } catch (IllegalStateException e) {
+            assertSame(failure, e);
+        }
+        assertEquals(0, collection.getOpenCursors());
+    }
+
+    @Test
+    public void testSeekAnchor() {
+        FakeMongoCollection collection = new FakeMongoCollection(newItemDocuments(10));
+        BasicMongoService service = newCursorService(collection);
+        Query query = Query.query(Criteria.where("status").is(1));
+        Pagination page = new Pagination(1, 2, false);
+        page.setSeekAnchorEnable(true);
+        page.addSort("status", false);
+
+        assertEquals(Arrays.asList(1, 3), getIds(service.find(query, page, Item.class, "items")));
+
+        // 跳到第 3 页时从第 1 页的锚点开始定位，只跳过第 2 页
+        page.setPageNum(3);
+        assertEquals(Collections.singletonList(9), getIds(service.find(query, page, Item.class, "items")));
+        FakeMongoCollection.Find find = collection.getFinds().get(1);
+        assertTrue(find.query.containsField("$or"));
+        assertEquals(2, find.skip);
+
+        // 调用者的查询条件和排序方式不会被修改，追加的 id 排序字段只用于定位
+        assertEquals("{ \"status\" : 1}", query.getQueryObject().toString());
+        assertNull(query.getHint());
+        assertEquals(1, page.getSorts().size());
+        assertFalse(page.hasSeekValues());
+
+        // 锚点只属于记录它的分页对象，其他分页对象从头跳过
+        Pagination another = new Pagination(3, 2, false);
+        another.setSeekAnchorEnable(true);
+        another.addSort("status", false);
+        assertEquals(Collections.singletonList(9), getIds(service.find(query, another, Item.class, "items")));
+        find = collection.getFinds().get(2);
+        assertFalse(find.query.containsField("$or"));
+        assertEquals(4, find.skip);
+
+        // 查询条件变化后清除已记录的锚点
+        Query evenQuery = Query.query(Criteria.where("status").is(0));
+        assertEquals(Collections.singletonList(8), getIds(service.find(evenQuery, page, Item.class, "items")));
+        assertEquals(4, collection.getFinds().get(3).skip);
+    }
+
+    @Test
+    public void testSeek() {
+        FakeMongoCollection collection = new FakeMongoCollection(newItemDocuments(10));
+        BasicMongoService service = newCursorService(collection);
+        Pagination page = new Pagination(2, false);
+        page.setSeekEnable(true);
+        page.addSort("status", true);
+
+        // 排序字段值相同时按追加的 id 排序，读取下一页需要的 id 记录在上一页最后一行的排序字段值中
+        Query query = new Query();
+        assertEquals(Arrays.asList(9, 7), getIds(service.find(query, page, Item.class, "items")));
+        assertEquals(Arrays.<Object> asList(1, 7), page.getSeekValues());
+        assertEquals(Arrays.asList(5, 3), getIds(service.find(query, page, Item.class, "items")));
+        assertEquals(Arrays.<Object> asList(1, 3), page.getSeekValues());
+        assertEquals(1, page.getSorts().size());
+        assertEquals("{ }", query.getQueryObject().toString());
+
+        // 排序字段值为 null 时无法定位下一页，不能静默地返回空结果
+        page.setSeekValues(Arrays.<Object> asList(null, 3));
+        try {
+            service.find(query, page, Item.class, "items");
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals("Seek value of sort field status must not be null", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testSortIndexHint() {
+        FakeMongoCollection collection = new FakeMongoCollection(newItemDocuments(10));
+        BasicMongoService service = newCursorService(collection);
+        DBObject idIndex = newIndex("_id_", new BasicDBObject("_id", 1));
+        DBObject statusIndex = newIndex("status_id", new BasicDBObject("status", 1).append("_id", -1));
+        DBObject typeIndex = newIndex("type_status_id", new BasicDBObject("type", 1).append("status", 1).append(
+                "_id", 1));
+        collection.setIndexes(Arrays.asList(idIndex, typeIndex, statusIndex));
+        service.setSortIndexTtl(0, TimeUnit.SECONDS);
+        Pagination page = new Pagination(2, false);
+        page.setSeekEnable(true);
+        page.addSort("id", false);
+
+        // 等值条件字段是索引的前缀，索引方向和排序方向全部相反也可以使用
+        Query statusQuery = Query.query(Criteria.where("status").is(1));
+        service.find(statusQuery, page, Item.class, "items");
+        assertEquals("status_id", collection.getFinds().get(0).hint);
+        assertNull(statusQuery.getHint());
+
+        Query typeQuery = Query.query(Criteria.where("type").is(1).and("status").is(1));
+        page.setSeekValues(null);
+        service.find(typeQuery, page, Item.class, "items");
+        assertEquals("type_status_id", collection.getFinds().get(1).hint);
+
+        // 等值条件字段不全是索引的前缀时不使用索引提示
+        collection.setIndexes(Arrays.asList(idIndex, statusIndex));
+        service.find(typeQuery, page, Item.class, "items");
+        assertNull(collection.getFinds().get(2).hint);
+
+        // 不缓存时每次重新查找索引，删除的索引不会再被使用
+        collection.setIndexes(Collections.singletonList(idIndex));
+        page.setSeekValues(null);
+        service.find(statusQuery, page, Item.class, "items");
+        assertNull(collection.getFinds().get(3).hint);
+        assertEquals(4, collection.getIndexLookups());
+    }
+
+    @Test
+    public void testSortIndexHintCache() {
+        FakeMongoCollection collection = new FakeMongoCollection(newItemDocuments(10));
+        BasicMongoService service = newCursorService(collection);
+        DBObject idIndex = newIndex("_id_", new BasicDBObject("_id", 1));
+        collection.setIndexes(Arrays.asList(idIndex, newIndex("status_id", new BasicDBObject("status", 1).append(
+                "_id", 1))));
+        Query query = Query.query(Criteria.where("status").is(1));
+        Pagination page = new Pagination(2, false);
+        page.setSeekEnable(true);
+        page.addSort("id", false);
+
+        // 有效时间内翻页不再查找索引
+        assertEquals(Arrays.asList(1, 3), getIds(service.find(query, page, Item.class, "items")));
+        assertEquals(Arrays.asList(5, 7), getIds(service.find(query, page, Item.class, "items")));
+        assertEquals("status_id", collection.getFinds().get(1).hint);
+        assertEquals(1, collection.getIndexLookups());
+
+        // 缓存的索引被删除后查询失败，清除缓存并不带索引提示重新查询
+        collection.setIndexes(Collections.singletonList(idIndex));
+        page.setSeekValues(null);
+        assertEquals(Arrays.asList(1, 3), getIds(service.find(query, page, Item.class, "items")));
+        assertEquals("status_id", collection.getFinds().get(2).hint);
+        assertNull(collection.getFinds().get(3).hint);
+        assertEquals(1, collection.getIndexLookups());
+
+        // 下次分页查询重新查找索引
+        service.find(query, page, Item.class, "items");
+        assertNull(collection.getFinds().get(4).hint);
+        assertEquals(2, collection.getIndexLookups());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testForEachParallelWithLimit() {
+        BasicMongoService service = newCursorService(new FakeMongoCollection(newItemDocuments(2)));
+        service.forEachParallel(new Query().limit(10), Item.class, "items", 2, item -> {
+        });
+    }
+
+    /**
+     * 创建通过游标读取 {@code collection} 的服务，使用真实的 Mongo 映射转换器。
+     */
+    private static BasicMongoService newCursorService(FakeMongoCollection collection) {
+        DbRefResolver dbRefResolver = (DbRefResolver) Proxy.newProxyInstance(BasicMongoServiceTest.class
+                .getClassLoader(), new Class<?>[] { DbRefResolver.class }, (proxy, method, args) -> {
+                    throw new UnsupportedOperationException(method.getName());
+                });
+        MappingMongoConverter converter = new MappingMongoConverter(dbRefResolver, new MongoMappingContext());
+        converter.afterPropertiesSet();
+
+        BasicMongoService service = new BasicMongoService() {
+        };
+        service.mongoOps = (MongoOperations) Proxy.newProxyInstance(BasicMongoServiceTest.class.getClassLoader(),
+                new Class<?>[] { MongoOperations.class }, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                    case "getConverter":
+                        return converter;
+                    case "execute":
+                        assertEquals("items", args[0]);
+                        return ((CollectionCallback<?>) args[1]).doInCollection(collection.getCollection());
+                    case "find":
+                        // 和 MongoTemplate 一样映射查询条件和排序方式，通过游标读取
+                        assertEquals("items", args[2]);
+                        Query query = (Query) args[0];
+                        Class<?> entityClass = (Class<?>) args[1];
+                        MongoPersistentEntity<?> entity = converter.getMappingContext().getPersistentEntity(
+                                entityClass);
+                        QueryMapper queryMapper = new QueryMapper(converter);
+                        DBCursor cursor = collection.newCursor(queryMapper.getMappedObject(query.getQueryObject(),
+                                entity));
+                        if (query.getSortObject() != null) {
+                            cursor.sort(queryMapper.getMappedSort(query.getSortObject(), entity));
+                        }
+                        if (query.getHint() != null) {
+                            cursor.hint(query.getHint());
+                        }
+                        cursor.skip(query.getSkip()).limit(query.getLimit());
+                        List<Object> rows = new ArrayList<>();
+                        while (cursor.hasNext()) {
+                            rows.add(converter.read(entityClass, cursor.next()));
+                        }
+                        cursor.close();
+                        return rows;
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+        return service;
+    }
+
+    private static DBObject newIndex(String name, DBObject key) {
+        return new BasicDBObject("name", name).append("key", key);
+    }
+
+    private static List<Integer> getIds(List<Item> items) {
+        List<Integer> ids = new ArrayList<>(items.size());
+        for (Item item : items) {
+            ids.add(item.getId());
+        }
+        return ids;
+    }
+
+    private static List<DBObject> newItemDocuments(int count) {
+        List<DBObject> documents = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            documents.add(new BasicDBObject("_id", i).append("status", i % 2));
+        }
+        return documents;
+    }
+
+    public static class Item {
+
+        private Integer id;
+        private int status;
+
+        public Integer getId() {
+            return id;
+        }
+
+        public void setId(Integer id) {
+            this.id = id;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public void setStatus(int status) {
+            this.status = status;
+        }
+
+    }
+
+}
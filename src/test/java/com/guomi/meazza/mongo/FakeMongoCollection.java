@@ -0,0 +1,298 @@
+/*
+ * @(#)FakeMongoCollection.java    Created on 2026-10-18
+ * Copyright (c) 2026 Guomi. All rights reserved.
+ */
+package com.guomi.meazza.mongo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.cglib.proxy.Enhancer;
+import org.springframework.cglib.proxy.Factory;
+import org.springframework.cglib.proxy.MethodInterceptor;
+import org.springframework.objenesis.ObjenesisStd;
+
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import com.mongodb.MongoException;
+
+/**
+ * 测试用的 Mongo 集合，模拟 {@link DBCollection} 和 {@link DBCursor}，记录执行过的查询。
+ *
+ * <p>
+ * 没有排序时文档按 {@code _id} 的顺序返回，查询条件只支持字段相等、{@code $and}、{@code $or} 以及 {@code $gt}、{@code $gte}、
+ * {@code $lt}、{@code $lte} 比较，索引提示不是已有的索引名时，读取游标和 Mongo 一样抛出 bad hint 异常。
+ * {@code DBCollection} 有包私有的抽象方法，不能直接继承，所以通过 CGLIB 生成子类，不调用构造方法。
+ * JDK 9 以上运行时需要 pom 中 jdk9+ profile 设置的 {@code --add-opens} 参数。
+ *
+ * @author akuma
+ */
+class FakeMongoCollection {
+
+    private static final ObjenesisStd objenesis = new ObjenesisStd();
+
+    private final List<DBObject> documents;
+    private final List<Find> finds = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger openCursors = new AtomicInteger();
+    private final AtomicInteger indexLookups = new AtomicInteger();
+    private final DBCollection collection;
+    private volatile RuntimeException failure;
+    private volatile List<DBObject> indexes = Collections.emptyList();
+
+    /**
+     * 构造方法。
+     *
+     * @param documents
+     *            集合中的文档，按 {@code _id} 排列
+     */
+    FakeMongoCollection(List<DBObject> documents) {
+        this.documents = documents;
+        this.collection = newInstance(DBCollection.class, (obj, method, args, methodProxy) -> {
+            switch (method.getName()) {
+            case "find":
+                if (args.length == 2) {
+                    return newCursor((DBObject) args[0]);
+                }
+                break;
+            case "getIndexInfo":
+                indexLookups.incrementAndGet();
+                return new ArrayList<>(indexes);
+            case "getCount":
+                if (args.length == 0) {
+                    return (long) documents.size();
+                }
+                break;
+            case "toString":
+                return "FakeMongoCollection";
+            default:
+                break;
+            }
+            throw new UnsupportedOperationException(method.toString());
+        });
+    }
+
+    /**
+     * 获取模拟的集合。
+     */
+    DBCollection getCollection() {
+        return collection;
+    }
+
+    /**
+     * 创建满足 {@code query} 条件的游标。
+     */
+    DBCursor newCursor(DBObject query) {
+        Find find = new Find(query);
+        finds.add(find);
+        openCursors.incrementAndGet();
+        return newInstance(DBCursor.class, (obj, method, args, methodProxy) -> {
+            switch (method.getName()) {
+            case "sort":
+                find.sort = (DBObject) args[0];
+                return obj;
+            case "hint":
+                find.hint = (String) args[0];
+                return obj;
+            case "batchSize":
+            case "addOption":
+                return obj;
+            case "skip":
+                find.skip = (Integer) args[0];
+                return obj;
+            case "limit":
+                find.limit = (Integer) args[0];
+                return obj;
+            case "hasNext":
+                find.checkOpen();
+                return find.getIterator().hasNext();
+            case "next":
+                find.checkOpen();
+                return find.getIterator().next();
+            case "close":
+                if (!find.closed) {
+                    find.closed = true;
+                    openCursors.decrementAndGet();
+                }
+                return null;
+            case "toString":
+                return "FakeCursor" + query;
+            default:
+                throw new UnsupportedOperationException(method.toString());
+            }
+        });
+    }
+
+    /**
+     * 设置游标读取时抛出的异常，为 null 时正常读取。
+     */
+    void setFailure(RuntimeException failure) {
+        this.failure = failure;
+    }
+
+    /**
+     * 设置集合的索引，每个索引包含 {@code name} 和 {@code key}。
+     */
+    void setIndexes(List<DBObject> indexes) {
+        this.indexes = indexes;
+    }
+
+    /**
+     * 获取执行过的查询。
+     */
+    List<Find> getFinds() {
+        synchronized (finds) {
+            return new ArrayList<>(finds);
+        }
+    }
+
+    /**
+     * 获取查询索引信息的次数。
+     */
+    int getIndexLookups() {
+        return indexLookups.get();
+    }
+
+    /**
+     * 获取还没有关闭的游标个数。
+     */
+    int getOpenCursors() {
+        return openCursors.get();
+    }
+
+    /**
+     * 判断文档是否满足查询条件。
+     */
+    @SuppressWarnings("unchecked")
+    static boolean matches(DBObject query, DBObject document) {
+        for (String key : query.keySet()) {
+            Object condition = query.get(key);
+            if ("$and".equals(key)) {
+                for (DBObject subQuery : (List<DBObject>) condition) {
+                    if (!matches(subQuery, document)) {
+                        return false;
+                    }
+                }
+            } else if ("$or".equals(key)) {
+                if (!((List<DBObject>) condition).stream().anyMatch(subQuery -> matches(subQuery, document))) {
+                    return false;
+                }
+            } else if (condition instanceof DBObject) {
+                DBObject operators = (DBObject) condition;
+                for (String operator : operators.keySet()) {
+                    if (!compare(operator, document.get(key), operators.get(operator))) {
+                        return false;
+                    }
+                }
+            } else if (!Objects.equals(condition, document.get(key))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static boolean compare(String operator, Object value, Object operand) {
+        if (value == null) {
+            return false;
+        }
+
+        int result = ((Comparable) value).compareTo(operand);
+        switch (operator) {
+        case "$gt":
+            return result > 0;
+        case "$gte":
+            return result >= 0;
+        case "$lt":
+            return result < 0;
+        case "$lte":
+            return result <= 0;
+        default:
+            throw new UnsupportedOperationException(operator);
+        }
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static Comparator<DBObject> getComparator(DBObject sort) {
+        return (document1, document2) -> {
+            for (String key : sort.keySet()) {
+                int result = ((Comparable) document1.get(key)).compareTo(document2.get(key));
+                if (result != 0) {
+                    return ((Number) sort.get(key)).intValue() < 0 ? -result : result;
+                }
+            }
+            return 0;
+        };
+    }
+
+    private static <T> T newInstance(Class<T> type, MethodInterceptor interceptor) {
+        Enhancer enhancer = new Enhancer();
+        enhancer.setSuperclass(type);
+        enhancer.setCallbackType(MethodInterceptor.class);
+        enhancer.setUseCache(false);
+        Object instance = objenesis.newInstance(enhancer.createClass());
+        ((Factory) instance).setCallbacks(new MethodInterceptor[] { interceptor });
+        return type.cast(instance);
+    }
+
+    /**
+     * 执行过的查询和游标的状态。
+     */
+    class Find {
+
+        final DBObject query;
+        volatile DBObject sort;
+        volatile String hint;
+        volatile int skip;
+        volatile int limit;
+        volatile boolean closed;
+        private Iterator<DBObject> iterator;
+
+        Find(DBObject query) {
+            this.query = query;
+        }
+
+        private void checkOpen() {
+            if (closed) {
+                throw new IllegalStateException("Cursor is closed");
+            }
+            RuntimeException e = failure;
+            if (e != null) {
+                throw e;
+            }
+            if (hint != null && indexes.stream().noneMatch(index -> hint.equals(index.get("name")))) {
+                throw new MongoException(2, "bad hint");
+            }
+        }
+
+        private synchronized Iterator<DBObject> getIterator() {
+            if (iterator == null) {
+                List<DBObject> result = new ArrayList<>();
+                for (DBObject document : documents) {
+                    if (matches(query, document)) {
+                        result.add(document);
+                    }
+                }
+                if (sort != null) {
+                    result.sort(getComparator(sort));
+                }
+                int from = Math.min(skip, result.size());
+                int to = limit > 0 ? Math.min(from + limit, result.size()) : result.size();
+                iterator = result.subList(from, to).iterator();
+            }
+            return iterator;
+        }
+
+        @Override
+        public String toString() {
+            return query + " skip " + skip + " limit " + limit;
+        }
+
+    }
+
+}
@@ -0,0 +1,135 @@
+/*
+ * @(#)MongoBatchLoaderTest.java    Created on 2026-10-18
+ * Copyright (c) 2026 Guomi. All rights reserved.
+ */
+package com.guomi.meazza.mongo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author akuma
+ */
+public class MongoBatchLoaderTest {
+
+    private List<List<?>> queries;
+    private boolean failing;
+    private MongoBatchLoader loader;
+
+    @Before
+    public void setUp() {
+        queries = new ArrayList<>();
+        failing = false;
+        loader = new MongoBatchLoader(new BasicMongoService() {
+
+            @Override
+            public <T> List<T> findByIds(List<?> ids, Class<T> entityClass, String collectionName) {
+                queries.add(ids);
+                if (failing) {
+                    throw new IllegalStateException("mongo is down");
+                }
+
+                List<T> entities = new ArrayList<>();
+                for (Object id : ids) {
+                    if (!"missing".equals(id)) {
+                        entities.add(entityClass.cast(new Item(String.valueOf(id))));
+                    }
+                }
+                return entities;
+            }
+
+        }, 3);
+    }
+
+    @Test
+    public void testBatchAndDeduplicate() {
+        CompletableFuture<Item> a = loader.load("a", Item.class);
+        CompletableFuture<Item> b = loader.load("b", Item.class);
+        CompletableFuture<Item> a2 = loader.load("a", Item.class);
+        assertSame(a, a2);
+        assertFalse(a.isDone());
+        assertTrue(queries.isEmpty());
+
+        assertEquals("c", loader.get("c", Item.class).getId());
+        assertEquals(1, queries.size());
+        assertEquals(Arrays.asList("a", "b", "c"), queries.get(0));
+        assertEquals("a", a.join().getId());
+        assertEquals("b", b.join().getId());
+    }
+
+    @Test
+    public void testMaxBatchSize() {
+        CompletableFuture<List<Item>> items = loader.loadMany(Arrays.asList("a", "b", "c", "d", "missing"),
+                Item.class);
+        assertEquals(1, queries.size());
+        assertEquals(Arrays.asList("a", "b", "c"), queries.get(0));
+
+        loader.dispatch();
+        assertEquals(2, queries.size());
+        assertEquals(Arrays.asList("d", "missing"), queries.get(1));
+        assertEquals(4, items.join().size());
+    }
+
+    @Test
+    public void testMemoize() {
+        assertNull(loader.get("missing", Item.class));
+        Item a = loader.get("a", Item.class);
+        assertSame(a, loader.get("a", Item.class));
+        assertNull(loader.get("missing", Item.class));
+        assertEquals(2, queries.size());
+
+        // 不同集合分别查询
+        loader.get("a", Item.class, "archived_items");
+        assertEquals(3, queries.size());
+
+        loader.clear("a", Item.class);
+        loader.getAll(Arrays.asList("a", "missing"), Item.class);
+        assertEquals(Arrays.asList("a"), queries.get(3));
+
+        loader.clear();
+        loader.get("missing", Item.class);
+        assertEquals(5, queries.size());
+    }
+
+    @Test
+    public void testFailure() {
+        failing = true;
+        try {
+            loader.get("a", Item.class);
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("mongo is down", e.getMessage());
+        }
+
+        failing = false;
+        assertEquals("a", loader.get("a", Item.class).getId());
+        assertEquals(2, queries.size());
+    }
+
+    public static class Item {
+
+        private String id;
+
+        public Item(String id) {
+            this.id = id;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+    }
+
+}
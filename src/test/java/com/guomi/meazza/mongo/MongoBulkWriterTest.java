@@ -0,0 +1,104 @@
+/*
+ * @(#)MongoBulkWriterTest.java    Created on 2026-10-18
+ * Copyright (c) 2026 Guomi. All rights reserved.
+ */
+package com.guomi.meazza.mongo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.guomi.meazza.mongo.MongoBulkWriter.Op;
+import com.guomi.meazza.mongo.MongoBulkWriter.OpResult;
+import com.guomi.meazza.mongo.MongoBulkWriter.OpType;
+import com.guomi.meazza.mongo.MongoBulkWriter.Result;
+import com.mongodb.BasicDBObject;
+import com.mongodb.BulkWriteError;
+import com.mongodb.BulkWriteResult;
+import com.mongodb.BulkWriteUpsert;
+
+/**
+ * @author akuma
+ */
+public class MongoBulkWriterTest {
+
+    @Test
+    public void testMergeResult() {
+        Result result = new Result();
+        result.merge(Arrays.asList(newOp(0, OpType.INSERT, "a"), newOp(1, OpType.UPSERT, null)), newWriteResult(1, 0,
+                0, Collections.singletonList(new BulkWriteUpsert(1, "b"))), Collections.<BulkWriteError> emptyList());
+        result.merge(Arrays.asList(newOp(2, OpType.UPDATE, "c"), newOp(3, OpType.REMOVE, "d"), newOp(4,
+                OpType.INSERT, "a")), newWriteResult(0, 1, 1, Collections.<BulkWriteUpsert> emptyList()),
+                Collections.singletonList(new BulkWriteError(11000, "duplicate key", new BasicDBObject(), 2)));
+
+        assertEquals(1, result.getInsertedCount());
+        assertEquals(1, result.getMatchedCount());
+        assertEquals(1, result.getRemovedCount());
+        assertEquals(1, result.getUpsertedCount());
+
+        List<OpResult> opResults = result.getOpResults();
+        assertEquals(5, opResults.size());
+        assertTrue(opResults.get(1).isUpserted());
+        assertEquals("b", opResults.get(1).getId());
+
+        assertTrue(result.hasErrors());
+        OpResult error = result.getErrors().get(0);
+        assertEquals(4, error.getIndex());
+        assertEquals(11000, error.getErrorCode().intValue());
+        assertFalse(error.isSuccess());
+        assertTrue(opResults.get(3).isSuccess());
+    }
+
+    private static Op newOp(int index, OpType type, Object id) {
+        return new Op(index, type, id, null, null);
+    }
+
+    private static BulkWriteResult newWriteResult(int inserted, int matched, int removed,
+            List<BulkWriteUpsert> upserts) {
+        return new BulkWriteResult() {
+
+            @Override
+            public boolean isAcknowledged() {
+                return true;
+            }
+
+            @Override
+            public int getInsertedCount() {
+                return inserted;
+            }
+
+            @Override
+            public int getMatchedCount() {
+                return matched;
+            }
+
+            @Override
+            public int getRemovedCount() {
+                return removed;
+            }
+
+            @Override
+            public boolean isModifiedCountAvailable() {
+                return true;
+            }
+
+            @Override
+            public int getModifiedCount() {
+                return matched;
+            }
+
+            @Override
+            public List<BulkWriteUpsert> getUpserts() {
+                return upserts;
+            }
+
+        };
+    }
+
+}
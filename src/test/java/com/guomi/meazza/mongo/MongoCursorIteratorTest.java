@@ -0,0 +1,103 @@
+/*
+ * @(#)MongoCursorIteratorTest.java    Created on 2026-10-18
+ * Copyright (c) 2026 Guomi. All rights reserved.
+ */
+package com.guomi.meazza.mongo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.junit.Test;
+import org.springframework.dao.DataAccessException;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.mongodb.MongoException;
+
+/**
+ * @author akuma
+ */
+public class MongoCursorIteratorTest {
+
+    private final FakeMongoCollection collection = new FakeMongoCollection(Arrays.<DBObject> asList(
+            new BasicDBObject("_id", 1), new BasicDBObject("_id", 2), new BasicDBObject("_id", 3)));
+
+    @Test
+    public void testReadAll() {
+        MongoCursorIterator<Object> iterator = newIterator();
+        List<Object> ids = new ArrayList<>();
+        while (iterator.hasNext()) {
+            ids.add(iterator.next());
+        }
+        assertEquals(Arrays.asList(1, 2, 3), ids);
+
+        // 读取完后自动关闭游标，再次关闭没有影响
+        assertEquals(0, collection.getOpenCursors());
+        assertFalse(iterator.hasNext());
+        iterator.close();
+        try {
+            iterator.next();
+            fail();
+        } catch (NoSuchElementException e) {
+            // 已经没有文档
+        }
+    }
+
+    @Test
+    public void testClose() {
+        MongoCursorIterator<Object> iterator = newIterator();
+        assertEquals(1, iterator.next());
+        assertEquals(1, collection.getOpenCursors());
+
+        // 没有读取完时关闭游标，之后不再读取
+        iterator.close();
+        assertEquals(0, collection.getOpenCursors());
+        assertFalse(iterator.hasNext());
+    }
+
+    @Test
+    public void testTranslateException() {
+        MongoCursorIterator<Object> iterator = newIterator();
+        assertEquals(1, iterator.next());
+
+        // Mongo 异常转换为 DataAccessException，游标被关闭
+        collection.setFailure(new MongoException("cursor not found"));
+        try {
+            iterator.hasNext();
+            fail();
+        } catch (DataAccessException e) {
+            assertTrue(e.getCause() instanceof MongoException);
+        }
+        assertEquals(0, collection.getOpenCursors());
+        assertFalse(iterator.hasNext());
+    }
+
+    @Test
+    public void testReaderException() {
+        MongoCursorIterator<Object> iterator = new MongoCursorIterator<>(collection.newCursor(new BasicDBObject()),
+                dbObject -> {
+                    throw new IllegalStateException("bad document");
+                });
+
+        // 转换实体失败时也关闭游标，不能转换的异常原样抛出
+        try {
+            iterator.next();
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("bad document", e.getMessage());
+        }
+        assertEquals(0, collection.getOpenCursors());
+    }
+
+    private MongoCursorIterator<Object> newIterator() {
+        return new MongoCursorIterator<>(collection.newCursor(new BasicDBObject()), dbObject -> dbObject.get("_id"));
+    }
+
+}
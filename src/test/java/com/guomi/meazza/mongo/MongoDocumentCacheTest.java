@@ -0,0 +1,134 @@
+/*
+ * @(#)MongoDocumentCacheTest.java    Created on 2026-10-18
+ * Copyright (c) 2026 Guomi. All rights reserved.
+ */
+package com.guomi.meazza.mongo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bson.types.ObjectId;
+import org.junit.Test;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+
+/**
+ * @author akuma
+ */
+public class MongoDocumentCacheTest {
+
+    @Test
+    public void testGet() {
+        MongoDocumentCache cache = new MongoDocumentCache();
+        AtomicInteger loads = new AtomicInteger();
+
+        ObjectId id = new ObjectId();
+        DBObject doc = cache.get("users", id, key -> newDocument(key, loads));
+        assertSame(doc, cache.get("users", id.toString(), key -> newDocument(key, loads)));
+        assertNull(cache.get("users", "missing", key -> null));
+        assertNull(cache.get("users", "missing", key -> null));
+
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(3, cache.getMissCount("users"));
+        assertEquals(1, cache.size());
+        assertEquals(MongoDocumentCache.estimateSize(doc), cache.getByteSize());
+    }
+
+    @Test
+    public void testGetAll() {
+        MongoDocumentCache cache = new MongoDocumentCache();
+        AtomicInteger loads = new AtomicInteger();
+        cache.get("users", "a", key -> newDocument(key, loads));
+
+        List<List<Object>> queries = new ArrayList<>();
+        List<DBObject> docs = cache.getAll("users", Arrays.asList("b", "a", "b", "missing"), ids -> {
+            queries.add(ids);
+            return Collections.singletonList(newDocument("b", loads));
+        });
+        assertEquals(Collections.singletonList(Arrays.asList("b", "missing")), queries);
+        assertEquals(2, docs.size());
+        assertEquals("b", docs.get(0).get("_id"));
+        assertEquals("a", docs.get(1).get("_id"));
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void testEvict() {
+        MongoDocumentCache cache = new MongoDocumentCache();
+        AtomicInteger loads = new AtomicInteger();
+        cache.get("users", "a", key -> newDocument(key, loads));
+        cache.get("users", "b", key -> newDocument(key, loads));
+        cache.get("settings", "a", key -> newDocument(key, loads));
+
+        cache.evict("users", "a");
+        cache.get("users", "a", key -> newDocument(key, loads));
+        cache.get("users", "b", key -> newDocument(key, loads));
+        assertEquals(4, loads.get());
+
+        cache.evictAll("users");
+        cache.get("users", "b", key -> newDocument(key, loads));
+        cache.get("settings", "a", key -> newDocument(key, loads));
+        assertEquals(5, loads.get());
+        assertEquals(1, cache.getInvalidationCount());
+
+        // 加载期间文档失效，加载结果不放入缓存
+        cache.get("users", "c", key -> {
+            cache.evict("users", "c");
+            return newDocument(key, loads);
+        });
+        cache.get("users", "c", key -> newDocument(key, loads));
+        assertEquals(7, loads.get());
+    }
+
+    @Test
+    public void testTtl() throws Exception {
+        MongoDocumentCache cache = new MongoDocumentCache(100, 1024 * 1024, 0, TimeUnit.SECONDS);
+        cache.setTtl("settings", 50, TimeUnit.MILLISECONDS);
+        assertFalse(cache.isCacheable("users"));
+        assertTrue(cache.isCacheable("settings"));
+
+        AtomicInteger loads = new AtomicInteger();
+        cache.get("users", "a", key -> newDocument(key, loads));
+        cache.get("users", "a", key -> newDocument(key, loads));
+        cache.get("settings", "a", key -> newDocument(key, loads));
+        cache.get("settings", "a", key -> newDocument(key, loads));
+        assertEquals(3, loads.get());
+
+        Thread.sleep(80);
+        cache.get("settings", "a", key -> newDocument(key, loads));
+        assertEquals(4, loads.get());
+    }
+
+    @Test
+    public void testMaxBytes() {
+        DBObject doc = newDocument("a", new AtomicInteger());
+        long bytes = MongoDocumentCache.estimateSize(doc);
+        MongoDocumentCache cache = new MongoDocumentCache(1000, bytes * 16 * 2, 60, TimeUnit.SECONDS);
+
+        AtomicInteger loads = new AtomicInteger();
+        for (int i = 0; i < 200; i++) {
+            cache.get("users", "user" + i, key -> newDocument(key, loads));
+        }
+        assertTrue(cache.getByteSize() <= bytes * 16 * 2);
+        assertTrue(cache.getEvictionCount() > 0);
+        assertEquals(200, cache.size() + cache.getEvictionCount());
+    }
+
+    private static DBObject newDocument(Object id, AtomicInteger loads) {
+        loads.incrementAndGet();
+        return new BasicDBObject("_id", id).append("name", "user").append("tags", Arrays.asList("a", "b"));
+    }
+
+}
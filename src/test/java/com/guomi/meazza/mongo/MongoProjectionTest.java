@@ -0,0 +1,70 @@
+/*
+ * @(#)MongoProjectionTest.java    Created on 2026-10-18
+ * Copyright (c) 2026 Guomi. All rights reserved.
+ */
+package com.guomi.meazza.mongo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+import org.springframework.data.annotation.Transient;
+import org.springframework.data.mongodb.core.query.Query;
+
+/**
+ * @author akuma
+ */
+public class MongoProjectionTest {
+
+    @Test
+    public void testOf() {
+        MongoProjection projection = MongoProjection.of(UserItem.class);
+        assertSame(projection, MongoProjection.of(UserItem.class));
+        assertEquals(Arrays.asList("name", "avatar", "id"), Arrays.asList(projection.getFields().toArray()));
+        assertEquals("{ \"name\" : 1 , \"avatar\" : 1 , \"id\" : 1}", projection.applyTo(new Query())
+                .getFieldsObject().toString());
+    }
+
+    @Test
+    public void testWith() {
+        MongoProjection include = MongoProjection.include("name");
+        assertSame(include, include.with(Collections.singletonList("name")));
+        assertEquals(Arrays.asList("name", "creationTime"), Arrays.asList(include.with(
+                Collections.singletonList("creationTime")).getFields().toArray()));
+
+        MongoProjection exclude = MongoProjection.exclude("content", "creationTime");
+        assertTrue(exclude.with(Collections.singletonList("creationTime")).isExclude());
+        assertEquals("{ \"content\" : 0}", exclude.with(Collections.singletonList("creationTime")).applyTo(
+                new Query()).getFieldsObject().toString());
+        assertNull(MongoProjection.exclude("content").with(Collections.singletonList("content")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmpty() {
+        MongoProjection.include();
+    }
+
+    static class BaseItem {
+
+        String id;
+
+    }
+
+    static class UserItem extends BaseItem {
+
+        static final int VERSION = 1;
+
+        String name;
+        String avatar;
+        transient int rank;
+        @Transient
+        String display;
+
+    }
+
+}
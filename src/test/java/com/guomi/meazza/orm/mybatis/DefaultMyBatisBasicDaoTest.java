@@ -0,0 +1,202 @@
+/*
+ * @(#)DefaultMyBatisBasicDaoTest.java    Created on 2026-10-18
+ * Copyright (c) 2026 Guomi. All rights reserved.
+ */
+package com.guomi.meazza.orm.mybatis;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.guomi.meazza.dao.DefaultRowCountCache;
+import com.guomi.meazza.dao.ReadWriteContext;
+
+/**
+ * @author akuma
+ */
+public class DefaultMyBatisBasicDaoTest {
+
+    private FakeDataSource dataSource;
+    private SqlSessionTemplate sqlSessionTemplate;
+    private DefaultMyBatisBasicDao<Item> dao;
+
+    @Before
+    public void setUp() {
+        dataSource = new FakeDataSource();
+        Configuration configuration = dataSource.newConfiguration();
+        FakeDataSource.addStatement(configuration, "demo.ItemDao.insert",
+                "insert into item (id, name) values (#{id}, #{name})", SqlCommandType.INSERT, Item.class);
+        FakeDataSource.addStatement(configuration, "demo.ItemDao.update",
+                "update item set name = #{name} where id = #{id}", SqlCommandType.UPDATE, Item.class);
+        FakeDataSource.addStatement(configuration, "demo.ItemDao.upsert",
+                "merge into item (id, name) values (#{id}, #{name})", SqlCommandType.UPDATE, Item.class);
+        FakeDataSource.addStatement(configuration, "demo.ItemDao.findAll", "select name from item",
+                SqlCommandType.SELECT, String.class);
+        dataSource.setQueryHandler(execution -> Arrays.asList("item0", "item1", "item2"));
+
+        sqlSessionTemplate = new SqlSessionTemplate(new SqlSessionFactoryBuilder().build(configuration));
+        dao = newDao();
+    }
+
+    @After
+    public void tearDown() {
+        ReadWriteContext.clear();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    public void testInsertBatch() {
+        dao.setBatchSize(2);
+        List<Item> items = newItems(5);
+
+        int[] results = dao.insertBatch(items);
+        assertArrayEquals(new int[] { 1, 1, 1, 1, 1 }, results);
+
+        // 每 2 个语句提交一次批处理，语句和参数的顺序不变
+        List<FakeDataSource.Execution> executions = dataSource.getExecutions("insert into item");
+        assertEquals(5, executions.size());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(Arrays.asList((long) i, "item" + i), executions.get(i).getArgs());
+        }
+        assertEquals(3, dataSource.getPreparedSqls().size());
+        assertEquals(0, dataSource.getOpenConnections());
+    }
+
+    @Test
+    public void testUpdateAndUpsertBatch() {
+        List<Item> items = newItems(3);
+        assertArrayEquals(new int[] { 1, 1, 1 }, dao.updateBatch(items));
+        assertArrayEquals(new int[] { 1, 1, 1 }, dao.upsertBatch(items));
+
+        assertEquals(3, dataSource.getExecutions("update item").size());
+        assertEquals(Arrays.asList("item2", 2L), dataSource.getExecutions("update item").get(2).getArgs());
+        assertEquals(3, dataSource.getExecutions("merge into item").size());
+    }
+
+    @Test
+    public void testStreamAll() throws Exception {
+        DefaultMyBatisBasicDao<String> dao = newDao();
+        dao.setStreamingFetchSize(Integer.MIN_VALUE);
+        dao.afterPropertiesSet();
+
+        // 初始化时注册使用 fetch size 的语句，没有定义的 findByParam 语句被忽略
+        Configuration configuration = dao.getSqlSession().getConfiguration();
+        assertTrue(configuration.hasStatement("demo.ItemDao.findAll" + MyBatisUtils.STREAMING_STATEMENT_SUFFIX));
+        assertFalse(configuration.hasStatement("findByParam"));
+
+        List<String> rows = new ArrayList<>();
+        dao.streamAll(rows::add);
+        assertEquals(Arrays.asList("item0", "item1", "item2"), rows);
+        assertEquals(Integer.valueOf(Integer.MIN_VALUE), dataSource.getExecutions().get(0).fetchSize);
+
+        List<Integer> batchSizes = new ArrayList<>();
+        dao.forEachBatch(2, batch -> batchSizes.add(batch.size()));
+        assertEquals(Arrays.asList(2, 1), batchSizes);
+        assertEquals(Integer.valueOf(Integer.MIN_VALUE), dataSource.getExecutions().get(1).fetchSize);
+    }
+
+    @Test
+    public void testStreamWithoutFetchSize() throws Exception {
+        DefaultMyBatisBasicDao<String> dao = newDao();
+        dao.afterPropertiesSet();
+
+        // 没有设置 fetch size 时直接使用原语句
+        List<String> rows = new ArrayList<>();
+        dao.streamAll(rows::add);
+        assertEquals(3, rows.size());
+        assertNull(dataSource.getExecutions().get(0).fetchSize);
+        assertFalse(dao.getSqlSession().getConfiguration().hasStatement("demo.ItemDao.findAll"
+                + MyBatisUtils.STREAMING_STATEMENT_SUFFIX));
+    }
+
+    @Test
+    public void testEvictRowCountsAfterTransaction() {
+        DefaultRowCountCache rowCountCache = new DefaultRowCountCache();
+        MyBatisPagePlugin pagePlugin = new MyBatisPagePlugin();
+        pagePlugin.setRowCountCache(rowCountCache);
+        dao.getSqlSession().getConfiguration().addInterceptor(pagePlugin);
+
+        TransactionSynchronizationManager.initSynchronization();
+        dao.evictRowCounts("demo.ItemDao.update");
+
+        // 事务提交之前其他线程读到的旧记录数被缓存，事务结束后再次失效
+        rowCountCache.put("demo.ItemDao", "count", 3);
+        assertEquals(Integer.valueOf(3), rowCountCache.get("demo.ItemDao", "count"));
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+        }
+        assertNull(rowCountCache.get("demo.ItemDao", "count"));
+    }
+
+    @Test
+    public void testEmptyBatch() {
+        assertEquals(0, dao.insertBatch(Collections.<Item> emptyList()).length);
+        assertEquals(0, dataSource.getPreparedSqls().size());
+    }
+
+    private <E> DefaultMyBatisBasicDao<E> newDao() {
+        DefaultMyBatisBasicDao<E> dao = new DefaultMyBatisBasicDao<>();
+        dao.setSqlSessionTemplate(sqlSessionTemplate);
+        dao.sqlSessionTemplate = sqlSessionTemplate;
+        return dao;
+    }
+
+    private static List<Item> newItems(int count) {
+        List<Item> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            items.add(new Item((long) i, "item" + i));
+        }
+        return items;
+    }
+
+    public static class Item {
+
+        private Long id;
+        private String name;
+
+        public Item() {
+        }
+
+        Item(Long id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public void setId(Long id) {
+            this.id = id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+    }
+
+}
@@ -0,0 +1,424 @@
+/*
+ * @(#)FakeDataSource.java    Created on 2026-10-18
+ * Copyright (c) 2026 Guomi. All rights reserved.
+ */
+package com.guomi.meazza.orm.mybatis;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ResultMap;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.mapping.SqlSource;
+import org.apache.ibatis.scripting.xmltags.XMLLanguageDriver;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+
+/**
+ * 测试用的数据源，通过动态代理模拟 JDBC 连接、语句和结果集，记录执行过的 SQL 和参数。
+ *
+ * <p>
+ * 查询结果由 {@link #setQueryHandler(Function)} 指定的函数根据执行的 SQL 和参数返回，结果集只有一列。
+ *
+ * @author akuma
+ */
+class FakeDataSource implements DataSource {
+
+    private final List<Execution> executions = Collections.synchronizedList(new ArrayList<>());
+    private final List<String> preparedSqls = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger openConnections = new AtomicInteger();
+    private final AtomicInteger closedStatements = new AtomicInteger();
+    private volatile Function<Execution, List<?>> queryHandler = execution -> Collections.emptyList();
+
+    /**
+     * 设置根据执行的 SQL 和参数返回查询结果的函数，结果中的每个元素为一行。
+     */
+    void setQueryHandler(Function<Execution, List<?>> queryHandler) {
+        this.queryHandler = queryHandler;
+    }
+
+    /**
+     * 获取执行过的 SQL 和参数，批量执行时每一批参数记录一次。
+     */
+    List<Execution> getExecutions() {
+        synchronized (executions) {
+            return new ArrayList<>(executions);
+        }
+    }
+
+    /**
+     * 获取执行过的 SQL 中包含指定内容的记录。
+     */
+    List<Execution> getExecutions(String sqlPart) {
+        List<Execution> result = new ArrayList<>();
+        for (Execution execution : getExecutions()) {
+            if (execution.sql.contains(sqlPart)) {
+                result.add(execution);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 获取预编译过的 SQL。
+     */
+    List<String> getPreparedSqls() {
+        synchronized (preparedSqls) {
+            return new ArrayList<>(preparedSqls);
+        }
+    }
+
+    /**
+     * 获取还没有关闭的连接个数。
+     */
+    int getOpenConnections() {
+        return openConnections.get();
+    }
+
+    /**
+     * 获取已经关闭的语句个数。
+     */
+    int getClosedStatements() {
+        return closedStatements.get();
+    }
+
+    /**
+     * 创建使用该数据源的 MyBatis 配置。
+     */
+    Configuration newConfiguration() {
+        Configuration configuration = new Configuration(new Environment("test", new JdbcTransactionFactory(), this));
+        configuration.setUseGeneratedKeys(false);
+        return configuration;
+    }
+
+    /**
+     * 在 MyBatis 配置中添加一个查询语句，{@code sql} 中可以使用 #{...} 参数。
+     */
+    static MappedStatement addStatement(Configuration configuration, String id, String sql,
+            SqlCommandType commandType, Class<?> resultType) {
+        SqlSource sqlSource = new XMLLanguageDriver().createSqlSource(configuration, sql, Object.class);
+        ResultMap resultMap = new ResultMap.Builder(configuration, id + "-Inline", resultType,
+                new ArrayList<>()).build();
+        MappedStatement statement = new MappedStatement.Builder(configuration, id, sqlSource, commandType)
+                .resultMaps(Collections.singletonList(resultMap)).build();
+        configuration.addMappedStatement(statement);
+        return statement;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        openConnections.incrementAndGet();
+        return (Connection) newProxy(Connection.class, new ConnectionHandler());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return getConnection();
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return null;
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return 0;
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        throw new SQLException("Not a wrapper");
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return false;
+    }
+
+    private static Object newProxy(Class<?> type, InvocationHandler handler) {
+        return Proxy.newProxyInstance(FakeDataSource.class.getClassLoader(), new Class<?>[] { type }, handler);
+    }
+
+    /**
+     * 返回基本类型的默认值，其他类型返回 null。
+     */
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) {
+            return false;
+        } else if (type == int.class) {
+            return 0;
+        } else if (type == long.class) {
+            return 0L;
+        }
+        return null;
+    }
+
+    /**
+     * 执行过的 SQL 和参数。
+     */
+    static class Execution {
+
+        final String sql;
+        final Map<Integer, Object> params;
+        final Map<Integer, Integer> nullTypes;
+        final Integer fetchSize;
+
+        Execution(String sql, Map<Integer, Object> params, Map<Integer, Integer> nullTypes, Integer fetchSize) {
+            this.sql = sql;
+            this.params = params;
+            this.nullTypes = nullTypes;
+            this.fetchSize = fetchSize;
+        }
+
+        /**
+         * 按占位符的顺序获取参数值。
+         */
+        List<Object> getArgs() {
+            return new ArrayList<>(params.values());
+        }
+
+        @Override
+        public String toString() {
+            return sql + " " + params;
+        }
+
+    }
+
+    private class ConnectionHandler implements InvocationHandler {
+
+        private boolean closed;
+        private boolean autoCommit = true;
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+            case "prepareStatement":
+                if (closed) {
+                    throw new SQLException("Connection is closed");
+                }
+                preparedSqls.add((String) args[0]);
+                return newProxy(PreparedStatement.class, new StatementHandler((Connection) proxy, (String) args[0]));
+            case "getMetaData":
+                return newProxy(DatabaseMetaData.class, (p, m, a) -> defaultValue(m.getReturnType()));
+            case "getAutoCommit":
+                return autoCommit;
+            case "setAutoCommit":
+                autoCommit = (Boolean) args[0];
+                return null;
+            case "close":
+                if (!closed) {
+                    closed = true;
+                    openConnections.decrementAndGet();
+                }
+                return null;
+            case "isClosed":
+                return closed;
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "equals":
+                return proxy == args[0];
+            case "toString":
+                return "FakeConnection@" + Integer.toHexString(System.identityHashCode(proxy));
+            default:
+                return defaultValue(method.getReturnType());
+            }
+        }
+
+    }
+
+    private class StatementHandler implements InvocationHandler {
+
+        private final Connection connection;
+        private final String sql;
+        private final List<Execution> batch = new ArrayList<>();
+        private Map<Integer, Object> params = new TreeMap<>();
+        private Map<Integer, Integer> nullTypes = new TreeMap<>();
+        private Integer fetchSize;
+        private ResultSet resultSet;
+        private boolean closed;
+
+        StatementHandler(Connection connection, String sql) {
+            this.connection = connection;
+            this.sql = sql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("setFetchSize")) {
+                fetchSize = (Integer) args[0];
+                return null;
+            } else if (name.equals("setNull")) {
+                params.put((Integer) args[0], null);
+                nullTypes.put((Integer) args[0], (Integer) args[1]);
+                return null;
+            } else if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+                params.put((Integer) args[0], args[1]);
+                return null;
+            }
+
+            switch (name) {
+            case "execute":
+            case "executeQuery":
+                if (closed) {
+                    throw new SQLException("Statement is closed");
+                }
+                Execution execution = newExecution();
+                executions.add(execution);
+                List<?> rows = queryHandler.apply(execution);
+                resultSet = (ResultSet) newProxy(ResultSet.class, new ResultSetHandler((PreparedStatement) proxy,
+                        rows == null ? Collections.emptyList() : rows));
+                return name.equals("execute") ? Boolean.TRUE : resultSet;
+            case "executeUpdate":
+                executions.add(newExecution());
+                return 1;
+            case "addBatch":
+                batch.add(newExecution());
+                return null;
+            case "executeBatch":
+                executions.addAll(batch);
+                int[] counts = new int[batch.size()];
+                Arrays.fill(counts, 1);
+                batch.clear();
+                return counts;
+            case "clearParameters":
+                params = new TreeMap<>();
+                nullTypes = new TreeMap<>();
+                return null;
+            case "getResultSet":
+                ResultSet rs = resultSet;
+                resultSet = null;
+                return rs;
+            case "getUpdateCount":
+                return -1;
+            case "getConnection":
+                return connection;
+            case "close":
+                if (!closed) {
+                    closed = true;
+                    closedStatements.incrementAndGet();
+                }
+                return null;
+            case "isClosed":
+                return closed;
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "equals":
+                return proxy == args[0];
+            case "toString":
+                return "FakeStatement[" + sql + "]";
+            default:
+                return defaultValue(method.getReturnType());
+            }
+        }
+
+        private Execution newExecution() {
+            Execution execution = new Execution(sql, params, nullTypes, fetchSize);
+            params = new TreeMap<>(params);
+            nullTypes = new TreeMap<>(nullTypes);
+            return execution;
+        }
+
+    }
+
+    private static class ResultSetHandler implements InvocationHandler {
+
+        private final PreparedStatement statement;
+        private final List<?> rows;
+        private int index = -1;
+        private boolean wasNull;
+
+        ResultSetHandler(PreparedStatement statement, List<?> rows) {
+            this.statement = statement;
+            this.rows = rows;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+            case "next":
+                return ++index < rows.size();
+            case "getType":
+                return ResultSet.TYPE_FORWARD_ONLY;
+            case "getStatement":
+                return statement;
+            case "getMetaData":
+                return newProxy(ResultSetMetaData.class, (p, m, a) -> {
+                    switch (m.getName()) {
+                    case "getColumnCount":
+                        return 1;
+                    case "getColumnLabel":
+                    case "getColumnName":
+                        return "value";
+                    case "getColumnType":
+                        return Types.VARCHAR;
+                    case "getColumnClassName":
+                        return String.class.getName();
+                    default:
+                        return defaultValue(m.getReturnType());
+                    }
+                });
+            case "wasNull":
+                return wasNull;
+            case "getString":
+            case "getObject":
+                Object value = rows.get(index);
+                wasNull = value == null;
+                return value == null ? null : value.toString();
+            case "getInt":
+            case "getLong":
+                Number number = (Number) rows.get(index);
+                wasNull = number == null;
+                if (number == null) {
+                    return defaultValue(method.getReturnType());
+                }
+                return method.getReturnType() == int.class ? number.intValue() : (Object) number.longValue();
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "equals":
+                return proxy == args[0];
+            default:
+                return defaultValue(method.getReturnType());
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,99 @@
+/*
+ * @(#)MyBatisMetricsPluginTest.java    Created on 2026-10-18
+ * Copyright (c) 2026 Guomi. All rights reserved.
+ */
+package com.guomi.meazza.orm.mybatis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+/**
+ * @author akuma
+ */
+public class MyBatisMetricsPluginTest {
+
+    @Test
+    public void testRecord() {
+        MyBatisMetricsPlugin plugin = new MyBatisMetricsPlugin();
+        plugin.setSlowThreshold(100);
+
+        plugin.record("UserDao.findAll", 2000, 10, false);
+        plugin.record("UserDao.findAll", 150000, 20, false);
+        plugin.record("UserDao.find", 500, 1, false);
+        plugin.record("UserDao.find", 700, 0, true);
+
+        List<StatementMetrics> snapshots = plugin.getSnapshots();
+        assertEquals(2, snapshots.size());
+        assertEquals("UserDao.findAll", snapshots.get(0).getId());
+
+        StatementMetrics findAll = plugin.getMetrics("UserDao.findAll");
+        assertEquals(2, findAll.getCount());
+        assertEquals(30, findAll.getRowCount());
+        assertEquals(1, findAll.getSlowCount());
+        assertEquals(152.0, findAll.getTotalTime(), 0.001);
+        assertEquals(1, plugin.getMetrics("UserDao.find").getErrorCount());
+
+        String json = plugin.topStatements(1);
+        assertTrue(json.startsWith("[{"));
+        assertTrue(json.contains("\"id\":\"UserDao.findAll\""));
+        assertTrue(!json.contains("UserDao.find\""));
+
+        plugin.reset();
+        assertEquals(0, plugin.getStatementCount());
+    }
+
+    @Test
+    public void testRecordSlowStatement() {
+        MyBatisMetricsPlugin plugin = new MyBatisMetricsPlugin();
+        plugin.setSlowThreshold(100);
+
+        // 只在输出慢语句日志时获取参数值
+        AtomicInteger calls = new AtomicInteger();
+        plugin.record("UserDao.findPage!count", 2000, 1, false, "select count(1) from user where id > ?", () -> {
+            calls.incrementAndGet();
+            return Collections.singletonList((Object) 1);
+        });
+        assertEquals(0, calls.get());
+
+        plugin.record("UserDao.findPage!count", 150000, 1, false, "select count(1) from user where id > ?", () -> {
+            calls.incrementAndGet();
+            return Arrays.asList((Object) 1);
+        });
+        assertEquals(1, calls.get());
+        assertEquals(1, plugin.getMetrics("UserDao.findPage!count").getSlowCount());
+    }
+
+    @Test
+    public void testDestroy() throws Exception {
+        ObjectName name = new ObjectName("com.guomi.meazza:type=MyBatisMetricsPluginTest");
+        Properties properties = new Properties();
+        properties.setProperty("jmxName", name.toString());
+
+        MyBatisMetricsPlugin plugin = new MyBatisMetricsPlugin();
+        plugin.setProperties(properties);
+        assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+
+        // 注销后可以用同一个名称再次注册
+        plugin.destroy();
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+        plugin.destroy();
+
+        MyBatisMetricsPlugin another = new MyBatisMetricsPlugin();
+        another.setProperties(properties);
+        assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+        another.destroy();
+    }
+
+}
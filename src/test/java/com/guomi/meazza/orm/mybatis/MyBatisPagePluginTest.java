@@ -0,0 +1,250 @@
+/*
+ * @(#)MyBatisPagePluginTest.java    Created on 2026-10-18
+ * Copyright (c) 2026 Guomi. All rights reserved.
+ */
+package com.guomi.meazza.orm.mybatis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.guomi.meazza.util.Pagination;
+
+/**
+ * @author akuma
+ */
+public class MyBatisPagePluginTest {
+
+    private static final String FIND_PAGE_SQL = "select name from item where status = #{status} order by id";
+    private static final String FIND_ORDERED_PAGE_SQL = "select name from item where status = #{status} "
+            + "order by field(id, #{first}) desc, id";
+
+    private FakeDataSource dataSource;
+    private CountDownLatch pageQueryStarted;
+    private volatile boolean waitForPageQuery;
+    private volatile int rowCount;
+    private final List<String> countThreads = Collections.synchronizedList(new ArrayList<>());
+
+    @Before
+    public void setUp() {
+        pageQueryStarted = new CountDownLatch(1);
+        dataSource = new FakeDataSource();
+        dataSource.setQueryHandler(execution -> {
+            if (execution.sql.toLowerCase().contains("count(")) {
+                countThreads.add(Thread.currentThread().getName());
+                if (waitForPageQuery) {
+                    // 分页查询开始后 count 查询才返回，验证两者是并发执行的
+                    try {
+                        assertTrue(pageQueryStarted.await(5, TimeUnit.SECONDS));
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+                return Collections.singletonList(rowCount);
+            }
+
+            pageQueryStarted.countDown();
+            List<Object> args = execution.getArgs();
+            int offset = (Integer) args.get(args.size() - 2);
+            int limit = (Integer) args.get(args.size() - 1);
+            List<String> rows = new ArrayList<>();
+            for (int i = offset; i < Math.min(rowCount, offset + limit); i++) {
+                rows.add("row" + i);
+            }
+            return rows;
+        });
+    }
+
+    @Test
+    public void testSerialCount() {
+        rowCount = 23;
+        Pagination page = new Pagination(2, 10, true);
+
+        List<String> rows = findPage(newConfiguration(null), page);
+        assertEquals(10, rows.size());
+        assertEquals("row10", rows.get(0));
+        assertEquals(23, page.getRowCount().intValue());
+        assertEquals(3, page.getPageCount().intValue());
+
+        // count 查询在分页查询之前、在调用线程中执行
+        List<FakeDataSource.Execution> executions = dataSource.getExecutions();
+        assertEquals(2, executions.size());
+        assertTrue(executions.get(0).sql.toLowerCase().contains("count("));
+        assertEquals(Collections.singletonList(1), executions.get(0).getArgs());
+        assertEquals(Arrays.asList(1, 10, 10), executions.get(1).getArgs());
+        assertEquals(Collections.singletonList(Thread.currentThread().getName()), countThreads);
+    }
+
+    @Test
+    public void testConcurrentCount() {
+        rowCount = 23;
+        waitForPageQuery = true;
+        Pagination page = new Pagination(2, 10, true);
+
+        List<String> rows = findPage(newConfiguration("2"), page);
+        assertEquals(10, rows.size());
+        assertEquals("row10", rows.get(0));
+        assertEquals(23, page.getRowCount().intValue());
+        assertEquals(3, page.getPageCount().intValue());
+
+        // count 查询在线程池中使用另外的连接执行，连接用完后已经关闭
+        assertEquals(1, countThreads.size());
+        assertNotSame(Thread.currentThread().getName(), countThreads.get(0));
+        assertTrue(countThreads.get(0).startsWith("mybatis-page-count-"));
+        assertEquals(1, dataSource.getExecutions("limit").size());
+        assertEquals(0, dataSource.getOpenConnections());
+    }
+
+    @Test
+    public void testPageOutOfRange() {
+        rowCount = 23;
+        Pagination page = new Pagination(5, 10, true);
+
+        List<String> rows = findPage(newConfiguration("2"), page);
+        assertEquals(3, rows.size());
+        assertEquals("row20", rows.get(0));
+        assertEquals(3, page.getPageNum().intValue());
+
+        // 先按请求的页码查询，count 结果表明页码超出范围后按最后一页重新查询
+        List<FakeDataSource.Execution> pageQueries = dataSource.getExecutions("limit");
+        assertEquals(2, pageQueries.size());
+        assertEquals(Arrays.asList(1, 40, 10), pageQueries.get(0).getArgs());
+        assertEquals(Arrays.asList(1, 20, 10), pageQueries.get(1).getArgs());
+    }
+
+    @Test
+    public void testConcurrentEmpty() {
+        rowCount = 0;
+        Pagination page = new Pagination(3, 10, true);
+
+        List<String> rows = findPage(newConfiguration("2"), page);
+        assertTrue(rows.isEmpty());
+        assertEquals(0, page.getRowCount().intValue());
+        assertEquals(1, dataSource.getExecutions("limit").size());
+    }
+
+    @Test
+    public void testSeek() {
+        rowCount = 23;
+        Pagination page = new Pagination(2, 10, true);
+        page.setSeekEnable(true);
+        page.addSort("id", false);
+        page.setSeekValues(Arrays.asList((Object) 7));
+
+        Configuration configuration = newConfiguration(null);
+        findPage(configuration, page);
+
+        // 内层的 ORDER BY 被去掉，排序字段值在原有参数之后设置
+        List<FakeDataSource.Execution> pageQueries = dataSource.getExecutions("limit");
+        assertEquals(1, pageQueries.size());
+        FakeDataSource.Execution pageQuery = pageQueries.get(0);
+        assertEquals("SELECT * FROM (select name from item where status = ?) seek_result WHERE (id > ?) "
+                + "ORDER BY id limit ?, ?", pageQuery.sql);
+        assertEquals(Arrays.asList(1, 7, 0, 10), pageQuery.getArgs());
+
+        // 排序字段值为 null 时无法定位下一页，不能静默地返回空结果
+        page.setSeekValues(Arrays.asList((Object) null));
+        try {
+            findPage(configuration, page);
+            fail();
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("Seek values must not be null"));
+        }
+    }
+
+    @Test
+    public void testParameterizedOrderBy() {
+        rowCount = 23;
+        Pagination page = new Pagination(2, 10, true);
+        Map<String, Object> params = new HashMap<>();
+        params.put("status", 1);
+        params.put("first", 7);
+        params.put("page", page);
+
+        SqlSessionFactory sessionFactory = new SqlSessionFactoryBuilder().build(newConfiguration(null));
+        try (SqlSession session = sessionFactory.openSession()) {
+            assertEquals(10, session.selectList("demo.ItemDao.findOrderedPage", params).size());
+        }
+
+        // count 查询保留带有占位符的 order by，参数个数和原 SQL 一致
+        List<FakeDataSource.Execution> executions = dataSource.getExecutions();
+        assertEquals("SELECT COUNT(1) FROM (" + FIND_ORDERED_PAGE_SQL.replaceAll("#\\{\\w+\\}", "?")
+                + ") AS tmp_count_result", executions.get(0).sql);
+        assertEquals(Arrays.asList(1, 7), executions.get(0).getArgs());
+        assertEquals(Arrays.asList(1, 7, 10, 10), executions.get(1).getArgs());
+        assertEquals(23, page.getRowCount().intValue());
+    }
+
+    @Test
+    public void testClearPendingCountOnFailure() {
+        rowCount = 23;
+        Configuration configuration = newConfiguration("2");
+        MyBatisPagePlugin plugin = MyBatisUtils.getInterceptor(configuration, MyBatisPagePlugin.class);
+
+        // count 查询已经开始后生成分页 SQL 失败，不会遗留在当前线程中
+        Pagination page = new Pagination(2, 10, true);
+        page.setSeekEnable(true);
+        try {
+            findPage(configuration, page);
+            fail();
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("Sorts must be specified"));
+        }
+        assertNull(plugin.pendingCounts.get());
+
+        // 之后的分页查询不受影响
+        List<String> rows = findPage(configuration, new Pagination(3, 10, true));
+        assertEquals(3, rows.size());
+        assertNull(plugin.pendingCounts.get());
+    }
+
+    private Configuration newConfiguration(String countThreads) {
+        Configuration configuration = dataSource.newConfiguration();
+        FakeDataSource.addStatement(configuration, "demo.ItemDao.findPage", FIND_PAGE_SQL, SqlCommandType.SELECT,
+                String.class);
+        FakeDataSource.addStatement(configuration, "demo.ItemDao.findOrderedPage", FIND_ORDERED_PAGE_SQL,
+                SqlCommandType.SELECT, String.class);
+
+        Properties properties = new Properties();
+        properties.setProperty("sqlPattern", ".*Page");
+        properties.setProperty("dialect", "mysql");
+        if (countThreads != null) {
+            properties.setProperty("countThreads", countThreads);
+        }
+        MyBatisPagePlugin plugin = new MyBatisPagePlugin();
+        plugin.setProperties(properties);
+        configuration.addInterceptor(plugin);
+        return configuration;
+    }
+
+    private static List<String> findPage(Configuration configuration, Pagination page) {
+        Map<String, Object> params = new HashMap<>();
+        params.put("status", 1);
+        params.put("page", page);
+        SqlSessionFactory sessionFactory = new SqlSessionFactoryBuilder().build(configuration);
+        try (SqlSession session = sessionFactory.openSession()) {
+            return session.selectList("demo.ItemDao.findPage", params);
+        }
+    }
+
+}
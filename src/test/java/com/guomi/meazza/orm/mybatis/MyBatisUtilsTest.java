@@ -0,0 +1,42 @@
+/*
+ * @(#)MyBatisUtilsTest.java    Created on 2026-10-18
+ * Copyright (c) 2026 Guomi. All rights reserved.
+ */
+package com.guomi.meazza.orm.mybatis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+import org.apache.ibatis.builder.StaticSqlSource;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.session.Configuration;
+import org.junit.Test;
+
+/**
+ * @author akuma
+ */
+public class MyBatisUtilsTest {
+
+    @Test
+    public void testRegisterStreamingStatement() {
+        Configuration configuration = new Configuration();
+        MappedStatement findAll = new MappedStatement.Builder(configuration, "com.foo.UserDao.findAll",
+                new StaticSqlSource(configuration, "select * from user"), SqlCommandType.SELECT).build();
+        configuration.addMappedStatement(findAll);
+
+        assertEquals("com.foo.UserDao.findAll", MyBatisUtils.registerStreamingStatement(configuration, "findAll",
+                null));
+
+        String id = MyBatisUtils.registerStreamingStatement(configuration, "findAll", Integer.MIN_VALUE);
+        assertEquals("com.foo.UserDao.findAll!stream", id);
+        MappedStatement streaming = configuration.getMappedStatement(id);
+        assertEquals(Integer.valueOf(Integer.MIN_VALUE), streaming.getFetchSize());
+        assertFalse(streaming.isUseCache());
+        assertSame(findAll.getSqlSource(), streaming.getSqlSource());
+        assertSame(streaming, configuration.getMappedStatement(MyBatisUtils.registerStreamingStatement(configuration,
+                "findAll", Integer.MIN_VALUE)));
+    }
+
+}
@@ -0,0 +1,186 @@
+/*
+ * @(#)ShardedMyBatisBasicDaoTest.java    Created on 2026-10-18
+ * Copyright (c) 2026 Guomi. All rights reserved.
+ */
+package com.guomi.meazza.orm.mybatis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.ToIntFunction;
+
+import org.junit.Test;
+
+import com.guomi.meazza.util.Pagination;
+
+/**
+ * @author akuma
+ */
+public class ShardedMyBatisBasicDaoTest {
+
+    @Test
+    public void testRangeResolver() {
+        ToIntFunction<Object> resolver = ShardedMyBatisBasicDao.rangeResolver(100, 200);
+        assertEquals(0, resolver.applyAsInt(5L));
+        assertEquals(1, resolver.applyAsInt(100));
+        assertEquals(1, resolver.applyAsInt("199"));
+        assertEquals(2, resolver.applyAsInt(200L));
+        assertEquals(2, resolver.applyAsInt(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testRouting() {
+        ShardedMyBatisBasicDao<Row> dao = newDao();
+        assertEquals(103L, dao.find(103L).getId().longValue());
+        assertEquals(Arrays.asList(205L, 3L, 102L, 6L), getIds(dao.findByIds(205L, 3L, 102L, 999L, 6L)));
+        assertEquals(Arrays.asList(205L, 6L), new ArrayList<>(dao.findMap(205L, 6L).keySet()));
+    }
+
+    @Test
+    public void testFindWithPage() {
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            ShardedMyBatisBasicDao<Row> dao = newDao();
+            dao.setExecutor(executor);
+            List<Row> all = dao.findAll();
+            all.sort((a, b) -> {
+                int result = Integer.compare(b.getScore(), a.getScore());
+                return result != 0 ? result : Long.compare(a.getId(), b.getId());
+            });
+
+            Pagination page = newPage(3, 4);
+            List<Row> rows = dao.findByParamWithPage(null, page);
+            assertEquals(all.size(), page.getRowCount().intValue());
+            assertTrue(page.isRowCountExact());
+            assertEquals(getIds(all.subList(8, 12)), getIds(rows));
+
+            // keyset 分页逐页读取，结果和整体排序一致
+            Pagination seekPage = newPage(1, 5);
+            seekPage.setSeekEnable(true);
+            List<Row> seekRows = new ArrayList<>();
+            List<Row> pageRows;
+            do {
+                pageRows = dao.findByParamWithPage(null, seekPage);
+                seekRows.addAll(pageRows);
+            } while (pageRows.size() == 5);
+            assertEquals(getIds(all), getIds(seekRows));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testMergeSorted() {
+        Pagination page = new Pagination(10);
+        page.addSort("score", true);
+        List<List<Row>> results = Arrays.asList(Arrays.asList(new Row(1L, 9), new Row(2L, 3)), new ArrayList<>(),
+                Arrays.asList(new Row(3L, 9), new Row(4L, 5)));
+        assertEquals(Arrays.asList(1L, 3L, 4L, 2L), getIds(ShardedMyBatisBasicDao.mergeSorted(results, page, 0, 10)));
+        assertEquals(Arrays.asList(3L, 4L), getIds(ShardedMyBatisBasicDao.mergeSorted(results, page, 1, 2)));
+        assertFalse(ShardedMyBatisBasicDao.mergeSorted(results, page, 4, 2).iterator().hasNext());
+    }
+
+    private static Pagination newPage(int pageNum, int pageSize) {
+        Pagination page = new Pagination(pageNum, pageSize, true);
+        page.addSort("score", true);
+        page.addSort("id", false);
+        return page;
+    }
+
+    private static List<Long> getIds(List<Row> rows) {
+        List<Long> ids = new ArrayList<>(rows.size());
+        for (Row row : rows) {
+            ids.add(row.getId());
+        }
+        return ids;
+    }
+
+    private static ShardedMyBatisBasicDao<Row> newDao() {
+        List<MyBatisBulkDao<Row>> shards = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            List<Row> rows = new ArrayList<>();
+            for (long id = i * 100; id < i * 100 + 7; id++) {
+                rows.add(new Row(id, (int) (id * 7 % 10)));
+            }
+            shards.add(newShard(rows));
+        }
+        return new ShardedMyBatisBasicDao<>(shards, ShardedMyBatisBasicDao.rangeResolver(100, 200));
+    }
+
+    /**
+     * 在内存中模拟一个分片，分页查询按分页对象的排序字段排序，并设置总记录数。
+     */
+    @SuppressWarnings("unchecked")
+    private static MyBatisBulkDao<Row> newShard(List<Row> rows) {
+        return (MyBatisBulkDao<Row>) Proxy.newProxyInstance(MyBatisBulkDao.class.getClassLoader(),
+                new Class<?>[] { MyBatisBulkDao.class }, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                    case "find":
+                        return rows.stream().filter(row -> row.getId().equals(args[0])).findFirst().orElse(null);
+                    case "findAll":
+                        return new ArrayList<>(rows);
+                    case "findByIds":
+                    case "findMap":
+                        List<Object> ids = Arrays.asList((Object[]) args[0]);
+                        List<Row> found = new ArrayList<>();
+                        rows.stream().filter(row -> ids.contains(row.getId())).forEach(found::add);
+                        if ("findByIds".equals(method.getName())) {
+                            return found;
+                        }
+                        Map<Long, Row> map = new HashMap<>();
+                        found.forEach(row -> map.put(row.getId(), row));
+                        return map;
+                    case "findByParamWithPage":
+                        Pagination page = (Pagination) args[1];
+                        List<Row> sorted = new ArrayList<>(rows);
+                        sorted.sort(page::compareRows);
+                        if (page.hasSeekValues()) {
+                            Row last = new Row((Long) page.getSeekValues().get(1), (Integer) page.getSeekValues()
+                                    .get(0));
+                            sorted.removeIf(row -> page.compareRows(row, last) <= 0);
+                        }
+                        page.setRowCount(rows.size());
+                        page.initialize();
+                        int offset = page.isSeekEnable() ? 0 : page.getCurrentRowNum() - 1;
+                        List<Row> pageRows = new ArrayList<>(sorted.subList(Math.min(offset, sorted.size()),
+                                Math.min(offset + page.getPageSize(), sorted.size())));
+                        if (!pageRows.isEmpty()) {
+                            page.seekAfter(pageRows.get(pageRows.size() - 1));
+                        }
+                        return pageRows;
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    public static class Row {
+
+        private Long id;
+        private Integer score;
+
+        public Row(Long id, Integer score) {
+            this.id = id;
+            this.score = score;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public Integer getScore() {
+            return score;
+        }
+
+    }
+
+}
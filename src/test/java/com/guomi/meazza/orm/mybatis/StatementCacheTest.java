@@ -0,0 +1,133 @@
+/*
+ * @(#)StatementCacheTest.java    Created on 2026-10-18
+ * Copyright (c) 2026 Guomi. All rights reserved.
+ */
+package com.guomi.meazza.orm.mybatis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+
+import org.apache.ibatis.logging.LogFactory;
+import org.apache.ibatis.logging.jdbc.ConnectionLogger;
+import org.apache.ibatis.logging.jdbc.PreparedStatementLogger;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * @author akuma
+ */
+public class StatementCacheTest {
+
+    private final FakeDataSource dataSource = new FakeDataSource();
+
+    @After
+    public void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        for (Object key : TransactionSynchronizationManager.getResourceMap().keySet()) {
+            TransactionSynchronizationManager.unbindResource(key);
+        }
+    }
+
+    @Test
+    public void testWithoutTransaction() throws Exception {
+        StatementCache cache = new StatementCache(16);
+        Connection connection = dataSource.getConnection();
+
+        PreparedStatement first = cache.prepare(connection, "select 1");
+        cache.release(connection, first);
+        PreparedStatement second = cache.prepare(connection, "select 1");
+        cache.release(connection, second);
+
+        // 没有事务同步时不缓存，用完即关闭
+        assertNotSame(first, second);
+        assertEquals(2, dataSource.getPreparedSqls().size());
+        assertEquals(2, dataSource.getClosedStatements());
+    }
+
+    @Test
+    public void testTransactionScope() throws Exception {
+        StatementCache cache = new StatementCache(16);
+        TransactionSynchronizationManager.initSynchronization();
+        Connection connection = dataSource.getConnection();
+
+        // MyBatis 每次执行语句时创建新的日志代理，仍然识别为同一个连接，语句通过日志代理预编译
+        Connection logger1 = ConnectionLogger.newInstance(connection, LogFactory.getLog("test"), 0);
+        Connection logger2 = ConnectionLogger.newInstance(connection, LogFactory.getLog("test"), 0);
+        PreparedStatement first = cache.prepare(logger1, "select 1");
+        cache.release(logger1, first);
+        PreparedStatement second = cache.prepare(logger2, "select 1");
+        cache.release(logger2, second);
+        assertSame(first, second);
+        assertTrue(Proxy.getInvocationHandler(first) instanceof PreparedStatementLogger);
+        assertEquals(1, dataSource.getPreparedSqls().size());
+        assertEquals(0, dataSource.getClosedStatements());
+
+        // 事务完成之前关闭缓存的语句，之后的事务重新预编译
+        completeTransaction();
+        assertEquals(1, dataSource.getClosedStatements());
+        assertFalse(TransactionSynchronizationManager.hasResource(cache));
+
+        TransactionSynchronizationManager.initSynchronization();
+        PreparedStatement third = cache.prepare(connection, "select 1");
+        assertNotSame(first, third);
+        completeTransaction();
+        assertEquals(2, dataSource.getClosedStatements());
+    }
+
+    @Test
+    public void testEvictStatement() throws Exception {
+        StatementCache cache = new StatementCache(2);
+        TransactionSynchronizationManager.initSynchronization();
+        Connection connection = dataSource.getConnection();
+
+        PreparedStatement first = cache.prepare(connection, "select 1");
+        cache.prepare(connection, "select 2");
+        cache.prepare(connection, "select 3");
+        assertTrue(first.isClosed());
+        assertEquals(1, dataSource.getClosedStatements());
+
+        // 每个连接的语句分别缓存
+        Connection another = dataSource.getConnection();
+        assertNotSame(cache.prepare(connection, "select 3"), cache.prepare(another, "select 3"));
+        completeTransaction();
+        assertEquals(4, dataSource.getClosedStatements());
+    }
+
+    @Test
+    public void testSuspend() throws Exception {
+        StatementCache cache = new StatementCache(16);
+        TransactionSynchronizationManager.initSynchronization();
+        Connection connection = dataSource.getConnection();
+        PreparedStatement first = cache.prepare(connection, "select 1");
+
+        // 事务挂起时解除绑定，恢复后继续使用
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.suspend();
+        }
+        assertFalse(TransactionSynchronizationManager.hasResource(cache));
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.resume();
+        }
+        assertSame(first, cache.prepare(connection, "select 1"));
+    }
+
+    private static void completeTransaction() {
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.beforeCompletion();
+            synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+        }
+        TransactionSynchronizationManager.clearSynchronization();
+    }
+
+}
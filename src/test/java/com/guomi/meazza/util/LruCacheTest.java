@@ -0,0 +1,67 @@
+/*
+ * @(#)LruCacheTest.java    Created on 2026-10-18
+ * Copyright (c) 2026 Guomi. All rights reserved.
+ */
+package com.guomi.meazza.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * @author akuma
+ */
+public class LruCacheTest {
+
+    @Test
+    public void testGetWithLoader() {
+        LruCache<String, String> cache = new LruCache<>(10);
+        AtomicInteger loads = new AtomicInteger();
+
+        for (int i = 0; i < 3; i++) {
+            String value = cache.get("a", k -> {
+                loads.incrementAndGet();
+                return k.toUpperCase();
+            });
+            assertEquals("A", value);
+        }
+
+        assertEquals(1, loads.get());
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+
+        assertNull(cache.get("b", k -> null));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testEviction() {
+        LruCache<Integer, Integer> cache = new LruCache<>(4, 1);
+        for (int i = 0; i < 4; i++) {
+            cache.put(i, i);
+        }
+
+        cache.get(0); // 0 变成最近访问的元素
+        cache.put(4, 4);
+
+        assertEquals(4, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        assertNull(cache.get(1));
+        assertEquals(Integer.valueOf(0), cache.get(0));
+    }
+
+    @Test
+    public void testBounded() {
+        LruCache<Integer, Integer> cache = new LruCache<>(100);
+        for (int i = 0; i < 10000; i++) {
+            cache.put(i, i);
+        }
+        assertTrue(cache.size() <= 100 + 16);
+        assertTrue(cache.getEvictionCount() > 0);
+    }
+
+}
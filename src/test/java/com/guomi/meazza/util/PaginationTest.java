@@ -0,0 +1,105 @@
+/*
+ * @(#)PaginationTest.java    Created on 2026-10-18
+ * Copyright (c) 2026 Guomi. All rights reserved.
+ */
+package com.guomi.meazza.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.bson.types.ObjectId;
+import org.junit.Test;
+
+import com.guomi.meazza.util.Pagination.CountMode;
+
+/**
+ * @author akuma
+ */
+public class PaginationTest {
+
+    @Test
+    public void testContinuationToken() {
+        Pagination page = new Pagination(20);
+        page.setSeekValues(Arrays.<Object> asList(1, 2L, "a.b:c", new Date(1000L), new BigDecimal("1.50"), null,
+                true));
+
+        String token = page.getContinuationToken();
+
+        Pagination next = new Pagination(20);
+        next.setContinuationToken(token);
+        assertTrue(next.isSeekEnable());
+        assertEquals(page.getSeekValues(), next.getSeekValues());
+
+        next.setContinuationToken("");
+        assertTrue(next.isSeekEnable());
+        assertTrue(next.getSeekValues().isEmpty());
+    }
+
+    @Test
+    public void testObjectIdContinuationToken() {
+        // ObjectId 还原后仍然是 ObjectId，否则按 _id 定位时和字符串比较，不会匹配任何文档
+        ObjectId id = new ObjectId();
+        Pagination page = new Pagination(20);
+        page.setSeekValues(Arrays.<Object> asList("x", id));
+
+        Pagination next = new Pagination(20);
+        next.setContinuationToken(page.getContinuationToken());
+        assertEquals(Arrays.<Object> asList("x", id), next.getSeekValues());
+        assertTrue(next.getSeekValues().get(1) instanceof ObjectId);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidObjectIdContinuationToken() {
+        new Pagination().setContinuationToken("O" + Base64.getUrlEncoder().encodeToString("xyz".getBytes()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidContinuationToken() {
+        new Pagination().setContinuationToken("X123");
+    }
+
+    @Test
+    public void testSeekAfter() {
+        Pagination page = new Pagination(20);
+        page.setSort("creation_time:desc");
+        page.addSort("id", true);
+
+        Map<String, Object> row = new HashMap<>();
+        row.put("creation_time", new Date(1000L));
+        row.put("id", 10);
+        page.seekAfter(row);
+        assertEquals(Arrays.<Object> asList(new Date(1000L), 10), page.getSeekValues());
+    }
+
+    @Test
+    public void testCountMode() {
+        Pagination page = new Pagination(20, false);
+        assertEquals(CountMode.NONE, page.getCountMode());
+        page.setPageCountEnable(true);
+        assertEquals(CountMode.EXACT, page.getCountMode());
+
+        // 总记录数超过上限时不限制页码的上限
+        page.setCountMode(CountMode.CAPPED, 100);
+        page.setPageNum(8);
+        page.setEstimatedRowCount(100);
+        page.initialize();
+        assertFalse(page.isRowCountExact());
+        assertEquals(Integer.valueOf(5), page.getPageCount());
+        assertEquals(Integer.valueOf(8), page.getPageNum());
+        assertEquals(Integer.valueOf(141), page.getCurrentRowNum());
+
+        page.setRowCount(100);
+        page.initialize();
+        assertTrue(page.isRowCountExact());
+        assertEquals(Integer.valueOf(5), page.getPageNum());
+    }
+
+}
@@ -4,8 +4,18 @@
  */
 package com.guomi.meazza.util;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.lang3.tuple.Pair;
 import org.junit.Test;
 
 /**
@@ -30,23 +40,27 @@ public class SqlUtilsTest {
         countSql = SqlUtils.generateCountSql(sql);
         assertEquals("SELECT COUNT(1) FROM "
                 + "( select a from bb)\n aaa,  \t test a, \ntest1 b where a.id = b.id "
-                + "and exists (select 1 \nfrom c where c.id = a.id) order by id", countSql);
+                + "and exists (select 1 \nfrom c where c.id = a.id)", countSql);
 
         String originSql = "select id, count(1) num from t where name = ? group by id order by id desc";
         countSql = SqlUtils.generateCountSql(originSql);
-        assertEquals("SELECT COUNT(1) FROM (" + originSql + ") AS tmp_count_result", countSql);
+        assertEquals("SELECT COUNT(1) FROM (" + originSql.replace(" order by id desc", "") + ") AS tmp_count_result",
+                countSql);
 
         originSql = "select id, count(1) num from t where name = ?   group    by id order by id desc";
         countSql = SqlUtils.generateCountSql(originSql);
-        assertEquals("SELECT COUNT(1) FROM (" + originSql + ") AS tmp_count_result", countSql);
+        assertEquals("SELECT COUNT(1) FROM (" + originSql.replace(" order by id desc", "") + ") AS tmp_count_result",
+                countSql);
 
         originSql = "select id, count(1) num from t where name = ?   \ngroup  \n  by id order by id desc";
         countSql = SqlUtils.generateCountSql(originSql);
-        assertEquals("SELECT COUNT(1) FROM (" + originSql + ") AS tmp_count_result", countSql);
+        assertEquals("SELECT COUNT(1) FROM (" + originSql.replace(" order by id desc", "") + ") AS tmp_count_result",
+                countSql);
 
         originSql = "select id, count(1) num from t where name = ?   \n  group \t \n  by\nid order by id desc";
         countSql = SqlUtils.generateCountSql(originSql);
-        assertEquals("SELECT COUNT(1) FROM (" + originSql + ") AS tmp_count_result", countSql);
+        assertEquals("SELECT COUNT(1) FROM (" + originSql.replace(" order by id desc", "") + ") AS tmp_count_result",
+                countSql);
 
         originSql = "select"
                 + "            id as id,"
@@ -103,4 +117,134 @@ public class SqlUtilsTest {
         //        System.out.println(elapsed);
     }
 
+    @Test
+    public void testGenerateSeekSql() {
+        List<Pair<String, Boolean>> sorts = new ArrayList<>();
+        sorts.add(Pair.of("a", false));
+        sorts.add(Pair.of("b", true));
+
+        String seekSql = SqlUtils.generateSeekSql("select a, b from t where c = ?", sorts, false);
+        assertEquals("SELECT * FROM (select a, b from t where c = ?) seek_result ORDER BY a, b DESC", seekSql);
+
+        seekSql = SqlUtils.generateSeekSql("select a, b from t where c = ?", sorts, true);
+        assertEquals("SELECT * FROM (select a, b from t where c = ?) seek_result "
+                + "WHERE (a > ?) OR (a = ? AND b < ?) ORDER BY a, b DESC", seekSql);
+
+        // 内层的 ORDER BY 被去掉，带有占位符或限制行数时保留
+        seekSql = SqlUtils.generateSeekSql("select a, b from t where c = ? order by a, b desc", sorts, false);
+        assertEquals("SELECT * FROM (select a, b from t where c = ?) seek_result ORDER BY a, b DESC", seekSql);
+        seekSql = SqlUtils.generateSeekSql("select a, b from t where c = ? order by field(a, ?)", sorts, false);
+        assertEquals("SELECT * FROM (select a, b from t where c = ? order by field(a, ?)) seek_result "
+                + "ORDER BY a, b DESC", seekSql);
+        seekSql = SqlUtils.generateSeekSql("select a, b from t order by a limit 100", sorts, false);
+        assertEquals("SELECT * FROM (select a, b from t order by a limit 100) seek_result ORDER BY a, b DESC",
+                seekSql);
+
+        Object[] args = SqlUtils.getSeekArgs(Arrays.<Object> asList(1, "x"));
+        assertArrayEquals(new Object[] { 1, 1, "x" }, args);
+
+        // 和 null 比较的条件不会满足任何一行，排序字段值为 null 时报错
+        try {
+            SqlUtils.getSeekArgs(Arrays.<Object> asList(1, null));
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().startsWith("Seek values must not be null"));
+        }
+    }
+
+    @Test
+    public void testGenerateSeekSqlWithInvalidSort() {
+        // 排序字段来自请求参数，不是合法标识符的排序字段不能拼接到 SQL 中
+        Pagination page = new Pagination();
+        page.setSort("a:asc");
+        page.setSort("(select password from user limit 1):desc");
+        try {
+            SqlUtils.generateSeekSql("select a from t", page.getSorts(), true);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals("Invalid sort field: (select password from user limit 1)", e.getMessage());
+        }
+
+        for (String field : new String[] { "a; drop table t", "a--", "1a", "a.", "" }) {
+            try {
+                SqlUtils.generateSeekSql("select a from t", Collections.singletonList(Pair.of(field, false)), false);
+                fail(field);
+            } catch (IllegalArgumentException e) {
+                // 不合法的排序字段
+            }
+        }
+        assertEquals("SELECT * FROM (select a from t) seek_result ORDER BY t.a_1", SqlUtils.generateSeekSql(
+                "select a from t", Collections.singletonList(Pair.of("t.a_1", false)), false));
+    }
+
+    @Test
+    public void testGetTableName() {
+        assertEquals("user", SqlUtils.getTableName("select count(id), name from user u where id > ?"));
+        assertEquals("db.user", SqlUtils.getTableName("SELECT *\n  FROM db.user WHERE id > ?"));
+        assertNull(SqlUtils.getTableName("select * from (select id from user) t"));
+        assertNull(SqlUtils.getTableName("update user set name = ?"));
+    }
+
+    @Test
+    public void testGenerateCountSqlWithLexer() {
+        // 字符串、注释和子查询中的关键字不影响 count SQL
+        String countSql = SqlUtils.generateCountSql("select a, 'x from y' b /* from z */ from t where c = ') order by'"
+                + " order by a");
+        assertEquals("SELECT COUNT(1) FROM t where c = ') order by'", countSql);
+
+        countSql = SqlUtils.generateCountSql("select (select max(x) from y group by z) m from t order by m");
+        assertEquals("SELECT COUNT(1) FROM t", countSql);
+
+        countSql = SqlUtils.generateCountSql("select distinct a from t order by a");
+        assertEquals("SELECT COUNT(1) FROM (select distinct a from t) AS tmp_count_result", countSql);
+
+        // 带有 limit 时排序会影响结果，保留 order by
+        countSql = SqlUtils.generateCountSql("select a from t order by a limit 10");
+        assertEquals("SELECT COUNT(1) FROM (select a from t order by a limit 10) AS tmp_count_result", countSql);
+
+        countSql = SqlUtils.generateCountSql("select a from t where b = ? order by a for update");
+        assertEquals("SELECT COUNT(1) FROM t where b = ?", countSql);
+
+        // 排序字段中带有占位符时保留 order by，count 查询的参数和原 SQL 一致
+        countSql = SqlUtils.generateCountSql("select a from t where b = ? order by field(a, ?, '?')");
+        assertEquals("SELECT COUNT(1) FROM (select a from t where b = ? order by field(a, ?, '?')) "
+                + "AS tmp_count_result", countSql);
+        countSql = SqlUtils.generateCountSql("select a from t where b = ? order by a /* ? */, 'c?'");
+        assertEquals("SELECT COUNT(1) FROM t where b = ?", countSql);
+    }
+
+    @Test
+    public void testGenerateCountSqlWithBackslash() {
+        // Oracle、SQL Server 中反斜杠不是转义字符，'C:\' 是完整的字符串
+        String countSql = SqlUtils.generateCountSql("select a from t where p = 'C:\\' and q = ? order by a");
+        assertEquals("SELECT COUNT(1) FROM t where p = 'C:\\' and q = ?", countSql);
+        String seekSql = SqlUtils.generateSeekSql("select a from t where p = 'C:\\' order by a",
+                Collections.singletonList(Pair.of("a", false)), false);
+        assertEquals("SELECT * FROM (select a from t where p = 'C:\\') seek_result ORDER BY a", seekSql);
+
+        // MySQL 中反斜杠是转义字符
+        countSql = SqlUtils.generateCountSql("select a from t where p = 'it\\'s' order by a", true);
+        assertEquals("SELECT COUNT(1) FROM t where p = 'it\\'s'", countSql);
+    }
+
+    @Test
+    public void testPartitionInArgs() {
+        assertEquals(0, SqlUtils.partitionInArgs(new Long[0]).size());
+
+        List<Long[]> chunks = SqlUtils.partitionInArgs(new Long[] { 1L, 2L, 3L });
+        assertEquals(1, chunks.size());
+        assertArrayEquals(new Long[] { 1L, 2L, 3L, 3L, 3L, 3L, 3L, 3L, 3L, 3L }, chunks.get(0));
+
+        Long[] ids = new Long[1203];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = (long) i;
+        }
+        chunks = SqlUtils.partitionInArgs(ids);
+        assertEquals(2, chunks.size());
+        assertEquals(1000, chunks.get(0).length);
+        assertEquals(500, chunks.get(1).length);
+        assertEquals(Long.valueOf(1000), chunks.get(1)[0]);
+        assertEquals(Long.valueOf(1202), chunks.get(1)[499]);
+    }
+
 }